@@ -3,7 +3,9 @@ package com.ibm.crail;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.concurrent.Future;
 
@@ -11,6 +13,9 @@ import org.slf4j.Logger;
 
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.RangeCache;
+import com.ibm.crail.utils.ReadAheadWindow;
+import com.ibm.crail.utils.ReadPlanner;
 import com.ibm.crail.utils.RingBuffer;
 
 public abstract class CrailBufferedInputStream extends InputStream {
@@ -30,11 +35,25 @@ public abstract class CrailBufferedInputStream extends InputStream {
 	private CrailBufferedStatistics statistics;
 	private int actualSliceSize;
 	private long capacity;
+	//slices are allocated lazily as the readahead window grows, up to maxDepth
+	private int maxDepth;
+	private int allocatedSlices;
+	private ReadAheadWindow readAhead;
+	//positional reads: nearby ranges are merged, recently read ranges and the file tail are cached
+	private ReadPlanner planner;
+	private RangeCache rangeCache;
+	private long lastRangeEnd;
 	
 	public abstract CrailInputStream getStream() throws Exception;
 	public abstract void putStream() throws Exception;
 	
 	CrailBufferedInputStream(CrailFS fs, int queueDepth, long capacity) throws Exception {
+		this(fs, queueDepth, queueDepth, capacity);
+	}
+	
+	//queueDepth slices are read ahead initially, sequential access grows the window up to maxDepth 
+	//slices while random access shrinks it to the slice being read
+	CrailBufferedInputStream(CrailFS fs, int queueDepth, int maxDepth, long capacity) throws Exception {
 		this.fs = fs;
 		this.position = 0;
 		this.capacity = capacity;
@@ -43,32 +62,21 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		this.statistics = new CrailBufferedStatistics("buffered/in");
 		
 		this.actualSliceSize = Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE);
-		int allocationSize = queueDepth*actualSliceSize;
+		this.maxDepth = Math.max(queueDepth, maxDepth);
+		this.allocatedSlices = 0;
+		this.readAhead = new ReadAheadWindow((queueDepth - 1)*(long) actualSliceSize, actualSliceSize, (this.maxDepth - 1)*(long) actualSliceSize);
 		this.originalBuffers = new LinkedList<CrailBuffer>();
-		this.readySlices = new RingBuffer<CrailBuffer>(queueDepth);
-		this.pendingSlices = new RingBuffer<CrailBuffer>(queueDepth);
-		this.freeSlices = new RingBuffer<CrailBuffer>(queueDepth);
-		this.pendingFutures = new RingBuffer<Future<CrailResult>>(queueDepth);
-		this.tmpSlices = new RingBuffer<CrailBuffer>(queueDepth);
+		this.readySlices = new RingBuffer<CrailBuffer>(this.maxDepth);
+		this.pendingSlices = new RingBuffer<CrailBuffer>(this.maxDepth);
+		this.freeSlices = new RingBuffer<CrailBuffer>(this.maxDepth);
+		this.pendingFutures = new RingBuffer<Future<CrailResult>>(this.maxDepth);
+		this.tmpSlices = new RingBuffer<CrailBuffer>(this.maxDepth);
+		this.planner = new ReadPlanner(CrailConstants.READ_COALESCE_GAP, CrailConstants.READ_COALESCE_MAX);
+		this.rangeCache = new RangeCache(CrailConstants.READ_CACHE_SIZE);
+		this.lastRangeEnd = -1;
 		
-		for (int currentSize = 0; currentSize < allocationSize; currentSize += CrailConstants.BUFFER_SIZE){
-			CrailBuffer buffer = fs.allocateBuffer();
-			originalBuffers.add(buffer);
-		}
-		for (CrailBuffer buffer : originalBuffers){
-			while(buffer.hasRemaining()){
-				buffer.limit(buffer.position() + actualSliceSize);
-				CrailBuffer slice = buffer.slice();
-				slice.clear();
-				freeSlices.add(slice);
-				if (freeSlices.size() >= queueDepth){
-					break;
-				}
-				
-				int newpos = buffer.position() + actualSliceSize;
-				buffer.clear();
-				buffer.position(newpos);
-			}			
+		while (allocatedSlices < queueDepth){
+			allocateSlices(queueDepth);
 		}
 		this.open = true;
 	}
@@ -82,16 +90,218 @@ public abstract class CrailBufferedInputStream extends InputStream {
         return read(b, 0, b.length);
     }	
 
+	//positional read, served from the range cache or the prefetched slices if they cover the position 
+	//and read at the given offset otherwise. A read near the end of the file fetches the whole tail, 
+	//a small read starting at most gap bytes after the previous one fetches the following gap bytes 
+	//as well, both are kept in the range cache. Neither the stream position nor the readahead window change
 	public final int read(long position, byte[] buffer, int offset, int length) throws IOException {
-		long oldPos = position();
-		int nread = -1;
+		if (buffer == null) {
+			throw new NullPointerException();
+		} else if (offset < 0 || length < 0 || length > buffer.length - offset) {
+			throw new IndexOutOfBoundsException("off " + offset + ", len " + length + ", length " + buffer.length);
+		} else if (!open) { 
+			throw new IOException("strem closed");
+		} else if (position < 0) {
+			throw new IOException("position out of range " + position);
+		} else if (length == 0) {
+			return 0;
+		} else if (position >= capacity) {
+			return -1;
+		}
+		
+		try {
+			length = (int) Math.min(length, capacity - position);
+			long previousEnd = lastRangeEnd;
+			lastRangeEnd = position + length;
+			if (rangeCache.get(position, ByteBuffer.wrap(buffer, offset, length))){
+				statistics.incRangeOps();
+				statistics.incCachedRangeOps();
+				return length;
+			}
+			int nread = readPrefetched(position, buffer, offset, length);
+			if (nread > 0){
+				return nread;
+			}
+			
+			long fetchPosition = position;
+			int fetchLength = length;
+			boolean tail = false;
+			if (CrailConstants.READ_CACHE_TAIL > 0 && !rangeCache.hasTail() && position >= capacity - CrailConstants.READ_CACHE_TAIL){
+				fetchPosition = Math.max(0, capacity - CrailConstants.READ_CACHE_TAIL);
+				fetchLength = (int) (capacity - fetchPosition);
+				tail = true;
+			} else if (CrailConstants.READ_CACHE_SIZE > 0 && length < CrailConstants.READ_COALESCE_GAP && previousEnd >= 0 
+					&& position >= previousEnd && position <= previousEnd + CrailConstants.READ_COALESCE_GAP){
+				fetchLength = (int) Math.min(length + CrailConstants.READ_COALESCE_GAP, capacity - position);
+			}
+			if (fetchLength == length){
+				nread = (int) readv(new long[]{ position }, new ByteBuffer[]{ ByteBuffer.wrap(buffer, offset, length) });
+				return nread > 0 ? nread : -1;
+			}
+			byte[] data = new byte[fetchLength];
+			readv(new long[]{ fetchPosition }, new ByteBuffer[]{ ByteBuffer.wrap(data) });
+			if (tail){
+				rangeCache.putTail(fetchPosition, data);
+			} else {
+				rangeCache.put(fetchPosition, data);
+			}
+			System.arraycopy(data, (int) (position - fetchPosition), buffer, offset, length);
+			return length;
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
+	//positional vectored read, each buffer is filled from its own file position and the slices 
+	//of the sequential read path are not disturbed. Ranges held by the range cache are copied from 
+	//there, the others are planned into reads, merging ranges that lie close to each other
+	public long readv(long[] positions, ByteBuffer[] buffers) throws IOException {
+		if (positions.length != buffers.length){
+			throw new IndexOutOfBoundsException("positions " + positions.length + ", buffers " + buffers.length);
+		} else if (!open) { 
+			throw new IOException("strem closed");
+		}
+		
+		try {
+			long sumLen = 0;
+			int[] lengths = new int[positions.length];
+			for (int i = 0; i < positions.length; i++){
+				if (positions[i] < 0){
+					throw new IOException("position out of range " + positions[i]);
+				}
+				statistics.incRangeOps();
+				int len = (int) Math.min(buffers[i].remaining(), Math.max(0, capacity - positions[i]));
+				ByteBuffer view = buffers[i].duplicate();
+				view.limit(view.position() + len);
+				if (len > 0 && rangeCache.get(positions[i], view)){
+					buffers[i].position(view.position());
+					statistics.incCachedRangeOps();
+					sumLen += len;
+				} else {
+					lengths[i] = len;
+				}
+			}
+			
+			//a read holding a single range goes straight to the caller's buffer
+			int reads = planner.plan(positions, lengths);
+			long[] readPositions = new long[reads];
+			ByteBuffer[] readBuffers = new ByteBuffer[reads];
+			byte[][] readData = new byte[reads][];
+			int[] owners = new int[reads];
+			Arrays.fill(owners, -1);
+			for (int i = 0; i < positions.length; i++){
+				int read = planner.getRead(i);
+				if (read >= 0){
+					owners[read] = owners[read] == -1 ? i : -2;
+				}
+			}
+			for (int read = 0; read < reads; read++){
+				readPositions[read] = planner.getReadPosition(read);
+				int owner = owners[read];
+				if (owner >= 0 && lengths[owner] == planner.getReadLength(read)){
+					readBuffers[read] = buffers[owner].duplicate();
+					readBuffers[read].limit(readBuffers[read].position() + lengths[owner]);
+				} else {
+					readData[read] = new byte[planner.getReadLength(read)];
+					readBuffers[read] = ByteBuffer.wrap(readData[read]);
+				}
+			}
+			statistics.incRangeReads(reads);
+			readRanges(readPositions, readBuffers);
+			
+			for (int i = 0; i < positions.length; i++){
+				int read = planner.getRead(i);
+				if (read < 0){
+					continue;
+				} else if (readData[read] == null){
+					buffers[i].position(readBuffers[read].position());
+				} else {
+					buffers[i].put(readData[read], (int) (positions[i] - readPositions[read]), lengths[i]);
+				}
+				sumLen += lengths[i];
+			}
+			for (int read = 0; read < reads; read++){
+				if (readData[read] != null){
+					rangeCache.put(readPositions[read], readData[read]);
+				}
+			}
+			return sumLen;
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
+	//fills each buffer from its own file position, ranges are staged through at most maxDepth 
+	//buffers per round, each round is a single vectored read on the underlying stream
+	private long readRanges(long[] positions, ByteBuffer[] buffers) throws IOException {
+		CrailBuffer[] stagingBuffers = new CrailBuffer[maxDepth];
 		try {
-			seek(position);
-			nread = read(buffer, offset, length);
+			long[] offsets = new long[maxDepth];
+			CrailBuffer[] staging = new CrailBuffer[maxDepth];
+			ByteBuffer[] targets = new ByteBuffer[maxDepth];
+			long sumLen = 0;
+			int range = 0;
+			long rangeOffset = 0;
+			while (range < buffers.length){
+				int count = 0;
+				long staged = 0;
+				while (count < maxDepth && range < buffers.length){
+					long pos = positions[range] + rangeOffset;
+					long len = Math.min(buffers[range].remaining() - staged, capacity - pos);
+					if (len <= 0){
+						range++;
+						rangeOffset = 0;
+						staged = 0;
+						continue;
+					}
+					if (stagingBuffers[count] == null){
+						stagingBuffers[count] = fs.allocateBuffer();
+					}
+					CrailBuffer stagingBuffer = stagingBuffers[count];
+					stagingBuffer.clear();
+					stagingBuffer.limit((int) Math.min(len, stagingBuffer.capacity()));
+					offsets[count] = pos;
+					staging[count] = stagingBuffer;
+					targets[count] = buffers[range];
+					count++;
+					rangeOffset += stagingBuffer.remaining();
+					staged += stagingBuffer.remaining();
+					if (stagingBuffer.remaining() == len){
+						range++;
+						rangeOffset = 0;
+						staged = 0;
+					}
+				}
+				if (count == 0){
+					break;
+				}
+				
+				CrailInputStream inputStream = getStream();
+				Future<CrailResult> future = inputStream.readv(Arrays.copyOf(offsets, count), Arrays.copyOf(staging, count));
+				putStream();
+				future.get();
+				for (int i = 0; i < count; i++){
+					staging[i].flip();
+					sumLen += staging[i].remaining();
+					targets[i].put(staging[i].getByteBuffer());
+				}
+			}
+			return sumLen;
+		} catch (Exception e) {
+			throw new IOException(e);
 		} finally {
-			seek(oldPos);
+			for (int i = 0; i < stagingBuffers.length && stagingBuffers[i] != null; i++){
+				try {
+					fs.freeBuffer(stagingBuffers[i]);
+				} catch(Exception e){
+					LOG.info("failed to free staging buffer " + e.getMessage());
+				}
+			}
 		}
-		return nread;
 	}
 	
 	@Override
@@ -147,6 +357,14 @@ public abstract class CrailBufferedInputStream extends InputStream {
 			int len = dataBuf.remaining();
 			int sumLen = 0;
 			while (len > 0) {
+				if (isPassthrough(dataBuf, len)){
+					int directLen = readDirect(dataBuf, len);
+					len -= directLen;
+					sumLen += directLen;
+					if (directLen > 0){
+						continue;
+					}
+				}
 				CrailBuffer slice = getSlice(false);
 				if (slice == null){
 					break;
@@ -250,6 +468,39 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		}
 	}		
 	
+	//bulk reads of primitive arrays, blocking until all len values are read
+	public final void readInt(int[] values) throws Exception {
+		readValues(values, 0, values.length, Integer.BYTES);
+	}
+	
+	public final void readInt(int[] values, int off, int len) throws Exception {
+		readValues(values, off, len, Integer.BYTES);
+	}
+	
+	public final void readLong(long[] values) throws Exception {
+		readValues(values, 0, values.length, Long.BYTES);
+	}
+	
+	public final void readLong(long[] values, int off, int len) throws Exception {
+		readValues(values, off, len, Long.BYTES);
+	}
+	
+	public final void readFloat(float[] values) throws Exception {
+		readValues(values, 0, values.length, Float.BYTES);
+	}
+	
+	public final void readFloat(float[] values, int off, int len) throws Exception {
+		readValues(values, off, len, Float.BYTES);
+	}
+	
+	public final void readDouble(double[] values) throws Exception {
+		readValues(values, 0, values.length, Double.BYTES);
+	}
+	
+	public final void readDouble(double[] values, int off, int len) throws Exception {
+		readValues(values, off, len, Double.BYTES);
+	}
+	
 	@Override
 	public void close() throws IOException {
 		try {
@@ -319,8 +570,12 @@ public abstract class CrailBufferedInputStream extends InputStream {
 					tmpSlices.add(pendingSlices.poll());
 				}
 				while(!tmpSlices.isEmpty()){
-					triggerRead(tmpSlices.poll());
+					freeSlices.add(tmpSlices.poll());
+				}
+				if (currentPosition != startPosition){
+					readAhead.access(currentPosition, 0);
 				}
+				fill();
 				this.position = pos;				
 				CrailBuffer slice = getSlice(true);
 				long bufPosition = pos - currentPosition;
@@ -341,8 +596,10 @@ public abstract class CrailBufferedInputStream extends InputStream {
 					tmpSlices.add(pendingSlices.poll());
 				}
 				while(!tmpSlices.isEmpty()){
-					triggerRead(tmpSlices.poll());
-				}				
+					freeSlices.add(tmpSlices.poll());
+				}
+				readAhead.access(sliceStart, 0);
+				fill();
 				this.position = pos;				
 				CrailBuffer slice = getSlice(true);
 				long bufPosition = pos - sliceStart;
@@ -379,13 +636,7 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		if (slice == null){
 			Future<CrailResult> future = pendingFutures.peek();
 			if (future == null){
-				tmpSlices.clear();
-				while(!freeSlices.isEmpty()){
-					tmpSlices.add(freeSlices.poll());
-				}
-				while(!tmpSlices.isEmpty()){
-					triggerRead(tmpSlices.poll());
-				}
+				fill();
 				future = pendingFutures.peek();
 			}
 			if (future != null){
@@ -413,22 +664,208 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		CrailBuffer slice = readySlices.peek();
 		if (slice != null && slice.remaining() == 0){
 			slice = readySlices.poll();
-			triggerRead(slice);
+			freeSlices.add(slice);
+			readAhead.access(CrailUtils.bufferStartAddress(position - 1, actualSliceSize), actualSliceSize);
+			fill();
 		}		
 	}
 	
-	private void triggerRead(CrailBuffer slice) throws Exception {
+	//keeps the slice being read plus the readahead window in flight
+	private void fill() throws Exception {
+		int target = 1 + (int) (readAhead.getWindow() / actualSliceSize);
+		while (readySlices.size() + pendingSlices.size() < target){
+			if (freeSlices.isEmpty() && allocatedSlices < maxDepth){
+				allocateSlices(maxDepth);
+			}
+			CrailBuffer slice = freeSlices.poll();
+			if (slice == null || !triggerRead(slice)){
+				break;
+			}
+		}
+	}
+	
+	private boolean triggerRead(CrailBuffer slice) throws Exception {
 		slice.clear();
 		CrailInputStream inputStream = getStream();
+		//reading ahead of the writer of a stream file would block while buffered data is ready
+		if (inputStream != null && inputStream.available() == 0 && inputStream.getFile().getType().isStreamFile() 
+				&& readySlices.size() + pendingSlices.size() > 0){
+			putStream();
+			inputStream = null;
+		} 
 		if (inputStream != null){
 			Future<CrailResult> future = inputStream.read(slice);
+			putStream();
 			if (future != null){
 				pendingSlices.add(slice);
 				pendingFutures.add(future);
+				return true;
+			} 
+		}
+		freeSlices.add(slice);
+		return false;
+	}
+	
+	//large reads into buffers allocated through the file system skip the slices, once the stream is at a slice boundary. 
+	//Other memory is not registered with the storage tiers and goes through the slices
+	boolean isPassthrough(ByteBuffer dataBuf, int len) throws Exception {
+		return CrailConstants.BUFFERED_PASSTHROUGH > 0 && len >= CrailConstants.BUFFERED_PASSTHROUGH && dataBuf.isDirect() 
+				&& position % actualSliceSize == 0 && readySlices.isEmpty() && fs.wrapBuffer(dataBuf) != null;
+	}
+	
+	//drains the slices in flight into the caller's buffer, then reads whole slices straight into the 
+	//caller's memory and moves the slice pipeline behind them
+	private int readDirect(ByteBuffer dataBuf, int len) throws Exception {
+		int sumLen = 0;
+		while (!pendingFutures.isEmpty() && len > 0){
+			pendingFutures.poll().get();
+			CrailBuffer slice = pendingSlices.poll();
+			slice.flip();
+			int bufferRemaining = Math.min(len, slice.remaining());
+			int oldLimit = slice.limit();
+			slice.limit(slice.position() + bufferRemaining);
+			dataBuf.put(slice.getByteBuffer());
+			slice.limit(oldLimit);
+			len -= bufferRemaining;
+			sumLen += bufferRemaining;
+			position += bufferRemaining;
+			if (slice.remaining() > 0){
+				readySlices.add(slice);
+				return sumLen;
+			}
+			freeSlices.add(slice);
+		}
+		
+		long directLen = Math.min(len - len % actualSliceSize, capacity - position);
+		if (directLen <= 0){
+			return sumLen;
+		}
+		ByteBuffer view = dataBuf.duplicate();
+		view.limit(view.position() + (int) directLen);
+		CrailBuffer directBuffer = fs.wrapBuffer(view.slice());
+		long directPosition = position;
+		Future<CrailResult> future = getStream().readv(new long[]{ directPosition }, new CrailBuffer[]{ directBuffer });
+		putStream();
+		int readLen = (int) future.get().getLen();
+		dataBuf.position(dataBuf.position() + readLen);
+		position += readLen;
+		sumLen += readLen;
+		getStream().seek(position);
+		putStream();
+		readAhead.access(directPosition, readLen);
+		statistics.incPassthroughOps();
+		return sumLen;
+	}
+	
+	//copies all values a slice holds with one bulk transfer through a typed view of the slice, a value 
+	//split by a slice boundary is assembled in the boundary buffer
+	private void readValues(Object values, int off, int len, int size) throws Exception {
+		if (off < 0 || len < 0 || len > Array.getLength(values) - off) {
+			throw new IndexOutOfBoundsException("off " + off + ", len " + len + ", length " + Array.getLength(values));
+		} else if (!open) { 
+			throw new IOException("strem closed");
+		}
+		while (len > 0){
+			CrailBuffer slice = getSlice(true);
+			if (slice == null){
+				throw new EOFException();
+			}
+			int count = Math.min(len, slice.remaining() / size);
+			if (count > 0){
+				getValues(slice.getByteBuffer(), values, off, count);
+				slice.position(slice.position() + count*size);
+				position += count*size;
+				syncSlice();
 			} else {
-				freeSlices.add(slice);
+				count = 1;
+				tmpBoundaryBuffer.clear();
+				tmpBoundaryBuffer.limit(size);
+				while (tmpBoundaryBuffer.hasRemaining()){
+					slice = getSlice(true);
+					if (slice == null){
+						throw new EOFException();
+					}
+					int bufferRemaining = Math.min(tmpBoundaryBuffer.remaining(), slice.remaining());
+					int oldLimit = slice.limit();
+					slice.limit(slice.position() + bufferRemaining);
+					tmpBoundaryBuffer.put(slice.getByteBuffer());
+					slice.limit(oldLimit);
+					position += bufferRemaining;
+					syncSlice();
+				}
+				tmpBoundaryBuffer.flip();
+				getValues(tmpBoundaryBuffer, values, off, count);
 			}
-			putStream();
+			off += count;
+			len -= count;
+		}
+	}
+	
+	private static void getValues(ByteBuffer buffer, Object values, int off, int count){
+		if (values instanceof int[]){
+			buffer.asIntBuffer().get((int[]) values, off, count);
+		} else if (values instanceof long[]){
+			buffer.asLongBuffer().get((long[]) values, off, count);
+		} else if (values instanceof float[]){
+			buffer.asFloatBuffer().get((float[]) values, off, count);
+		} else {
+			buffer.asDoubleBuffer().get((double[]) values, off, count);
+		}
+	}
+	
+	//copies the part of [pos, pos + length) held by ready or pending slices, starting at pos, 
+	//pending slices are waited for but stay queued
+	private int readPrefetched(long pos, byte[] buffer, int offset, int length) throws Exception {
+		long sliceStart = CrailUtils.bufferStartAddress(position, actualSliceSize);
+		int sumLen = 0;
+		while (length > 0 && pos >= sliceStart){
+			int index = (int) ((pos - sliceStart) / actualSliceSize);
+			int sliceOffset = (int) ((pos - sliceStart) % actualSliceSize);
+			CrailBuffer slice = null;
+			int valid = 0;
+			if (index < readySlices.size()){
+				slice = readySlices.get(index);
+				valid = slice.limit();
+			} else if (index < readySlices.size() + pendingSlices.size()){
+				index -= readySlices.size();
+				pendingFutures.get(index).get();
+				slice = pendingSlices.get(index);
+				valid = slice.position();
+			} else {
+				break;
+			}
+			int len = Math.min(length, valid - sliceOffset);
+			if (len <= 0){
+				break;
+			}
+			ByteBuffer sliceBuffer = slice.getByteBuffer().duplicate();
+			sliceBuffer.limit(sliceOffset + len);
+			sliceBuffer.position(sliceOffset);
+			sliceBuffer.get(buffer, offset, len);
+			pos += len;
+			offset += len;
+			length -= len;
+			sumLen += len;
+			if (valid < actualSliceSize){
+				break;
+			}
+		}
+		return sumLen;
+	}
+	
+	private void allocateSlices(int limit) throws Exception {
+		CrailBuffer buffer = fs.allocateBuffer();
+		originalBuffers.add(buffer);
+		while(buffer.hasRemaining() && allocatedSlices < limit){
+			buffer.limit(buffer.position() + actualSliceSize);
+			CrailBuffer slice = buffer.slice();
+			slice.clear();
+			freeSlices.add(slice);
+			allocatedSlices++;
+			
+			int newpos = buffer.position() + actualSliceSize;
+			buffer.clear();
+			buffer.position(newpos);
 		}
 	}
 	
@@ -23,6 +23,7 @@ package com.ibm.crail;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
 import java.util.concurrent.Future;
@@ -33,6 +34,7 @@ import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.utils.CrailImmediateOperation;
 import com.ibm.crail.utils.CrailUtils;
 import com.ibm.crail.utils.RingBuffer;
+import com.ibm.crail.utils.WriteBehindWindow;
 
 
 public class CrailBufferedOutputStream extends OutputStream {
@@ -49,7 +51,9 @@ public class CrailBufferedOutputStream extends OutputStream {
 	private long position;
 	private boolean open;
 	private CrailBufferedStatistics statistics;
-	private int actualSliceSize;
+	//every slice is a buffer of its own, the window decides how much of it is written per 
+	//operation and how many slices are kept, buffers are allocated on demand
+	private WriteBehindWindow window;
 
 	private CrailImmediateOperation noOp;
 	private ByteBuffer tmpBoundaryBuffer;
@@ -62,30 +66,12 @@ public class CrailBufferedOutputStream extends OutputStream {
 		this.outputStream = null;
 		this.statistics = new CrailBufferedStatistics("buffered/out");
 		
-		int allocationSize = Math.max(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE);
-		this.actualSliceSize = Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE);
-		int sliceCount = allocationSize / actualSliceSize;		
+		int maxDepth = (int) Math.max(1, CrailConstants.WRITEBEHIND_MAX / CrailConstants.BUFFER_SIZE);
+		this.window = new WriteBehindWindow(Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE), CrailConstants.BUFFER_SIZE, maxDepth);
 		this.originalBuffers = new LinkedList<CrailBuffer>();
-		this.readySlices = new RingBuffer<CrailBuffer>(sliceCount);
-		this.pendingSlices = new RingBuffer<CrailBuffer>(sliceCount);
-		this.pendingFutures = new RingBuffer<Future<CrailResult>>(sliceCount);
-		
-		for (int currentSize = 0; currentSize < allocationSize; currentSize += CrailConstants.BUFFER_SIZE){
-			CrailBuffer buffer = crailFS.allocateBuffer();
-			originalBuffers.add(buffer);
-		}
-		for (CrailBuffer buffer : originalBuffers){
-			while(buffer.hasRemaining()){
-				buffer.limit(buffer.position() + actualSliceSize);
-				CrailBuffer slice = buffer.slice();
-				slice.clear();
-				readySlices.add(slice);
-				
-				int newpos = buffer.position() + actualSliceSize;
-				buffer.clear();
-				buffer.position(newpos);
-			}
-		}
+		this.readySlices = new RingBuffer<CrailBuffer>(maxDepth);
+		this.pendingSlices = new RingBuffer<CrailBuffer>(maxDepth);
+		this.pendingFutures = new RingBuffer<Future<CrailResult>>(maxDepth);
 		this.tmpByteBuf = new byte[1];
 		this.tmpBoundaryBuffer = ByteBuffer.allocate(8);
 		this.noOp = new CrailImmediateOperation(0);
@@ -140,6 +126,10 @@ public class CrailBufferedOutputStream extends OutputStream {
 			
 			int len = dataBuf.remaining();
 			while (len > 0) {
+				if (isPassthrough(dataBuf, len)){
+					writeDirect(dataBuf, len);
+					break;
+				}
 				CrailBuffer slice = getSlice();
 				int bufferRemaining = Math.min(len, slice.remaining());
 				int oldLimit = dataBuf.limit();
@@ -211,29 +201,56 @@ public class CrailBufferedOutputStream extends OutputStream {
 		}			
 	}		
 	
+	//bulk writes of primitive arrays
+	public final void writeInt(int[] values) throws Exception {
+		writeValues(values, 0, values.length, Integer.BYTES);
+	}
+	
+	public final void writeInt(int[] values, int off, int len) throws Exception {
+		writeValues(values, off, len, Integer.BYTES);
+	}
+	
+	public final void writeLong(long[] values) throws Exception {
+		writeValues(values, 0, values.length, Long.BYTES);
+	}
+	
+	public final void writeLong(long[] values, int off, int len) throws Exception {
+		writeValues(values, off, len, Long.BYTES);
+	}
+	
+	public final void writeFloat(float[] values) throws Exception {
+		writeValues(values, 0, values.length, Float.BYTES);
+	}
+	
+	public final void writeFloat(float[] values, int off, int len) throws Exception {
+		writeValues(values, off, len, Float.BYTES);
+	}
+	
+	public final void writeDouble(double[] values) throws Exception {
+		writeValues(values, 0, values.length, Double.BYTES);
+	}
+	
+	public final void writeDouble(double[] values, int off, int len) throws Exception {
+		writeValues(values, off, len, Double.BYTES);
+	}
+	
 	public Future<CrailResult> purge() throws IOException {
 		if (!open) {
 			throw new IOException("stream closed");
 		} 
 		
 		try {
-			while(!readySlices.isEmpty()){
-				CrailBuffer slice = readySlices.poll();
-				if (slice.position() > 0){
-					slice.flip();
-					Future<CrailResult> future = outputStream().write(slice);
-					pendingSlices.add(slice);
-					pendingFutures.add(future);					
-				}
-			}
+			flushSlices();
 	
 			if (pendingFutures.isEmpty()){
 				return noOp;
 			} else {
+				//the futures stay pending so that their slices are reclaimed by later writes
 				CrailPurgeOperation purgeOp = new CrailPurgeOperation();
-				while(!pendingFutures.isEmpty()){
+				for (int i = 0; i < pendingFutures.size(); i++){
 					Future<CrailResult> future = pendingFutures.poll();
 					purgeOp.add(future);
+					pendingFutures.add(future);
 				}		
 				return purgeOp;
 			}
@@ -253,19 +270,12 @@ public class CrailBufferedOutputStream extends OutputStream {
 				return;
 			}
 			
-			while(!readySlices.isEmpty()){
-				CrailBuffer slice = readySlices.poll();
-				if (slice.position() > 0){
-					slice.flip();
-					Future<CrailResult> future = outputStream().write(slice);
-					pendingSlices.add(slice);
-					pendingFutures.add(future);					
-				}
-			}
+			flushSlices();
 			
 			while(!pendingFutures.isEmpty()){
 				Future<CrailResult> future = pendingFutures.poll();
 				future.get();
+				pendingSlices.poll();
 			}
 			
 			while(!originalBuffers.isEmpty()){
@@ -296,19 +306,30 @@ public class CrailBufferedOutputStream extends OutputStream {
 
 	private CrailBuffer getSlice() throws Exception {
 		CrailBuffer slice = readySlices.peek();
-		if (slice == null){
-			Future<CrailResult> future = pendingFutures.poll();
-			statistics.incTotalOps();
-			if (future.isDone()){
-				statistics.incNonBlockingOps();
+		while (slice == null){
+			if (originalBuffers.size() < window.getDepth()){
+				slice = crailFS.allocateBuffer();
+				originalBuffers.add(slice);
+				slice.clear();
+				readySlices.add(slice);
 			} else {
-				statistics.incBlockingOps();
+				Future<CrailResult> future = pendingFutures.peek();
+				statistics.incTotalOps();
+				if (future.isDone()){
+					statistics.incNonBlockingOps();
+				} else {
+					statistics.incBlockingOps();
+					window.stalled();
+				}
+				future.get();
+				reclaimSlice();
+				slice = readySlices.peek();
 			}
-			future.get();
-			slice = pendingSlices.poll();
-			slice.clear();
-			readySlices.add(slice);
 		} 
+		if (slice.position() == 0){
+			window.idle(readySlices.size() - 1);
+			slice.limit(Math.min(slice.capacity(), window.getSliceSize()));
+		}
 		return slice;
 	}
 	
@@ -316,10 +337,104 @@ public class CrailBufferedOutputStream extends OutputStream {
 		CrailBuffer slice = readySlices.peek();
 		if (slice != null && slice.remaining() == 0){
 			slice = readySlices.poll();
-			slice.flip();
-			Future<CrailResult> future = outputStream().write(slice);
-			pendingSlices.add(slice);
-			pendingFutures.add(future);
+			writeSlice(slice);
+			while(!pendingFutures.isEmpty() && pendingFutures.peek().isDone()){
+				reclaimSlice();
+			}
+		}
+	}
+	
+	//fills the free space of a slice with one bulk transfer through a typed view of the slice, a value 
+	//not fitting the rest of a slice goes through the boundary buffer
+	private void writeValues(Object values, int off, int len, int size) throws Exception {
+		if (off < 0 || len < 0 || len > Array.getLength(values) - off) {
+			throw new IndexOutOfBoundsException("off " + off + ", len " + len + ", length " + Array.getLength(values));
+		} else if (!open) {
+			throw new IOException("stream closed");
+		}
+		while (len > 0){
+			CrailBuffer slice = getSlice();
+			int count = Math.min(len, slice.remaining() / size);
+			if (count > 0){
+				putValues(slice.getByteBuffer(), values, off, count);
+				slice.position(slice.position() + count*size);
+				position += count*size;
+				syncSlice();
+			} else {
+				count = 1;
+				tmpBoundaryBuffer.clear();
+				tmpBoundaryBuffer.limit(size);
+				putValues(tmpBoundaryBuffer, values, off, count);
+				write(tmpBoundaryBuffer);
+			}
+			off += count;
+			len -= count;
+		}
+	}
+	
+	private static void putValues(ByteBuffer buffer, Object values, int off, int count){
+		if (values instanceof int[]){
+			buffer.asIntBuffer().put((int[]) values, off, count);
+		} else if (values instanceof long[]){
+			buffer.asLongBuffer().put((long[]) values, off, count);
+		} else if (values instanceof float[]){
+			buffer.asFloatBuffer().put((float[]) values, off, count);
+		} else {
+			buffer.asDoubleBuffer().put((double[]) values, off, count);
+		}
+	}
+	
+	//large writes from buffers allocated through the file system skip the slices once no slice holds unwritten 
+	//data. Other memory is not registered with the storage tiers and goes through the slices
+	private boolean isPassthrough(ByteBuffer dataBuf, int len) throws Exception {
+		if (CrailConstants.BUFFERED_PASSTHROUGH == 0 || len < CrailConstants.BUFFERED_PASSTHROUGH || !dataBuf.isDirect()){
+			return false;
+		}
+		CrailBuffer slice = readySlices.peek();
+		return (slice == null || slice.position() == 0) && crailFS.wrapBuffer(dataBuf) != null;
+	}
+	
+	//writes straight from the caller's memory behind the slices already in flight. The write 
+	//completes before the caller gets the buffer back
+	private void writeDirect(ByteBuffer dataBuf, int len) throws Exception {
+		ByteBuffer view = dataBuf.duplicate();
+		view.limit(view.position() + len);
+		CrailBuffer directBuffer = crailFS.wrapBuffer(view.slice());
+		outputStream().write(directBuffer).get();
+		dataBuf.position(dataBuf.position() + len);
+		position += len;
+		statistics.incPassthroughOps();
+	}
+	
+	private void writeSlice(CrailBuffer slice) throws Exception {
+		slice.flip();
+		Future<CrailResult> future = outputStream().write(slice);
+		pendingSlices.add(slice);
+		pendingFutures.add(future);
+	}
+	
+	//returns the oldest pending slice to the ready slices, or to the buffer cache if the window shrunk
+	private void reclaimSlice() throws Exception {
+		pendingFutures.poll().get();
+		CrailBuffer slice = pendingSlices.poll();
+		window.completed(slice.limit());
+		slice.clear();
+		if (originalBuffers.size() > window.getDepth()){
+			originalBuffers.remove(slice);
+			crailFS.freeBuffer(slice);
+		} else {
+			readySlices.add(slice);
+		}
+	}
+	
+	private void flushSlices() throws Exception {
+		for (int i = readySlices.size(); i > 0; i--){
+			CrailBuffer slice = readySlices.poll();
+			if (slice.position() > 0){
+				writeSlice(slice);
+			} else {
+				readySlices.add(slice);
+			}
 		}
 	}
 	
@@ -8,12 +8,20 @@ class CrailBufferedStatistics implements StatisticsProvider {
 	private AtomicLong totalOps;
 	private AtomicLong blockingOps;
 	private AtomicLong nonBlockingOps;
+	private AtomicLong rangeOps;
+	private AtomicLong cachedRangeOps;
+	private AtomicLong rangeReads;
+	private AtomicLong passthroughOps;
 	
 	public CrailBufferedStatistics(String type){
 		this.type = type;
 		this.totalOps = new AtomicLong(0);
 		this.blockingOps = new AtomicLong(0);
 		this.nonBlockingOps = new AtomicLong(0);
+		this.rangeOps = new AtomicLong(0);
+		this.cachedRangeOps = new AtomicLong(0);
+		this.rangeReads = new AtomicLong(0);
+		this.passthroughOps = new AtomicLong(0);
 	}
 	
 	public void mergeStatistics(StatisticsProvider provider){
@@ -22,6 +30,10 @@ class CrailBufferedStatistics implements StatisticsProvider {
 			this.totalOps.addAndGet(newProvider.getTotalOps());
 			this.blockingOps.addAndGet(newProvider.getBlockingOps());
 			this.nonBlockingOps.addAndGet(newProvider.getNonBlockingOps());
+			this.rangeOps.addAndGet(newProvider.getRangeOps());
+			this.cachedRangeOps.addAndGet(newProvider.getCachedRangeOps());
+			this.rangeReads.addAndGet(newProvider.getRangeReads());
+			this.passthroughOps.addAndGet(newProvider.getPassthroughOps());
 		}
 	}
 	
@@ -32,7 +44,9 @@ class CrailBufferedStatistics implements StatisticsProvider {
 
 	@Override
 	public String printStatistics() {
-		return "totalOps " + getTotalOps() + ", blockingOps " + getBlockingOps() + ", nonBlockingOps " + getNonBlockingOps();
+		return "totalOps " + getTotalOps() + ", blockingOps " + getBlockingOps() + ", nonBlockingOps " + getNonBlockingOps() + 
+				", rangeOps " + getRangeOps() + ", cachedRangeOps " + getCachedRangeOps() + ", rangeReads " + getRangeReads() + 
+				", passthroughOps " + getPassthroughOps();
 	}
 
 	@Override
@@ -40,6 +54,10 @@ class CrailBufferedStatistics implements StatisticsProvider {
 		this.totalOps.set(0);
 		this.blockingOps.set(0);
 		this.nonBlockingOps.set(0);
+		this.rangeOps.set(0);
+		this.cachedRangeOps.set(0);
+		this.rangeReads.set(0);
+		this.passthroughOps.set(0);
 	}
 	
 	public void incTotalOps(){
@@ -54,6 +72,24 @@ class CrailBufferedStatistics implements StatisticsProvider {
 		this.nonBlockingOps.incrementAndGet();
 	}
 	
+	//positional ranges requested, served from the range cache, and reads issued for the rest
+	public void incRangeOps(){
+		this.rangeOps.incrementAndGet();
+	}
+	
+	public void incCachedRangeOps(){
+		this.cachedRangeOps.incrementAndGet();
+	}
+	
+	public void incRangeReads(long reads){
+		this.rangeReads.addAndGet(reads);
+	}
+	
+	//large operations issued directly on the caller's buffer
+	public void incPassthroughOps(){
+		this.passthroughOps.incrementAndGet();
+	}
+	
 	public long getTotalOps(){
 		return totalOps.get();
 	}
@@ -65,4 +101,20 @@ class CrailBufferedStatistics implements StatisticsProvider {
 	public long getNonBlockingOps(){
 		return nonBlockingOps.get();
 	}
+	
+	public long getRangeOps(){
+		return rangeOps.get();
+	}
+	
+	public long getCachedRangeOps(){
+		return cachedRangeOps.get();
+	}
+	
+	public long getRangeReads(){
+		return rangeReads.get();
+	}
+	
+	public long getPassthroughOps(){
+		return passthroughOps.get();
+	}
 }
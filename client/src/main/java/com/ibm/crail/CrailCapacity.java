@@ -0,0 +1,125 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.CapacityInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+
+public class CrailCapacity {
+	private CapacityInfo[] storageClasses;
+	private ArrayList<ArrayList<DataNodeCapacity>> dataNodes;
+	
+	public CrailCapacity(int storageClassCount){
+		this.storageClasses = new CapacityInfo[storageClassCount];
+		this.dataNodes = new ArrayList<ArrayList<DataNodeCapacity>>(storageClassCount);
+		for (int i = 0; i < storageClassCount; i++){
+			storageClasses[i] = new CapacityInfo();
+			dataNodes.add(new ArrayList<DataNodeCapacity>());
+		}
+	}
+	
+	public void setStorageClass(int storageClass, CapacityInfo capacity){
+		storageClasses[storageClass].setCapacityInfo(capacity);
+	}
+	
+	public void addDataNode(int storageClass, DataNodeInfo dnInfo, CapacityInfo capacity){
+		dataNodes.get(storageClass).add(new DataNodeCapacity(dnInfo, capacity));
+	}
+	
+	public int getStorageClassCount(){
+		return storageClasses.length;
+	}
+	
+	public CapacityInfo getStorageClass(int storageClass){
+		return storageClasses[storageClass];
+	}
+	
+	public List<DataNodeCapacity> getDataNodes(int storageClass){
+		return dataNodes.get(storageClass);
+	}
+	
+	public long getTotalBlocks(){
+		long blocks = 0;
+		for (CapacityInfo info : storageClasses){
+			blocks += info.getTotalBlocks();
+		}
+		return blocks;
+	}
+	
+	public long getFreeBlocks(){
+		long blocks = 0;
+		for (CapacityInfo info : storageClasses){
+			blocks += info.getFreeBlocks();
+		}
+		return blocks;
+	}
+	
+	public long getReservedBlocks(){
+		long blocks = 0;
+		for (CapacityInfo info : storageClasses){
+			blocks += info.getReservedBlocks();
+		}
+		return blocks;
+	}
+	
+	public double getAllocationRate(){
+		double rate = 0;
+		for (CapacityInfo info : storageClasses){
+			rate += info.getAllocationRate();
+		}
+		return rate;
+	}
+	
+	public long getCapacity(){
+		return getTotalBlocks()*CrailConstants.BLOCK_SIZE;
+	}
+	
+	public long getUsed(){
+		return getReservedBlocks()*CrailConstants.BLOCK_SIZE;
+	}
+	
+	public long getRemaining(){
+		return getFreeBlocks()*CrailConstants.BLOCK_SIZE;
+	}
+	
+	public static class DataNodeCapacity {
+		private DataNodeInfo dnInfo;
+		private CapacityInfo capacity;
+		
+		public DataNodeCapacity(DataNodeInfo dnInfo, CapacityInfo capacity){
+			this.dnInfo = dnInfo;
+			this.capacity = capacity;
+		}
+
+		public DataNodeInfo getInfo() {
+			return dnInfo;
+		}
+
+		public CapacityInfo getCapacity() {
+			return capacity;
+		}
+	}
+}
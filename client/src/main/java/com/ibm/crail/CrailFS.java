@@ -22,6 +22,7 @@
 package com.ibm.crail;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -37,13 +38,18 @@ public abstract class CrailFS {
 	private static CrailFS instance = null;
 	
 	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, int locationAffinity, int storageAffinity) throws Exception;
+	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth) throws Exception;
 	public abstract Upcoming<CrailNode> lookup(String path) throws Exception;
 	public abstract Upcoming<CrailNode> rename(String srcPath, String dstPath) throws Exception;
 	public abstract Upcoming<CrailNode> delete(String path, boolean recursive) throws Exception;
 	public abstract CrailBuffer allocateBuffer() throws Exception;
 	public abstract void freeBuffer(CrailBuffer buffer) throws Exception;
+	public abstract CrailBuffer wrapBuffer(ByteBuffer buffer) throws Exception;
 	public abstract CrailStatistics getStatistics();
+	public abstract CrailCapacity getCapacity() throws Exception;
+	public abstract CrailCapacity getCapacity(boolean dataNodes) throws Exception;
 	public abstract int getHostHash();
+	public abstract int getRackHash();
 	protected abstract void closeFileSystem() throws Exception;
 	
 	public void close() throws Exception {
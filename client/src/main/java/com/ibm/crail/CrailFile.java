@@ -23,10 +23,13 @@ package com.ibm.crail;
 
 public interface CrailFile extends CrailNode {
 	public abstract CrailInputStream getDirectInputStream(long readHint) throws Exception;
+	public abstract CrailReadHandle getReadHandle() throws Exception;
 	public abstract CrailOutputStream getDirectOutputStream(long writeHint) throws Exception;
 	public abstract CrailBlockLocation[] getBlockLocations(long start, long len) throws Exception;
+	public abstract CrailMapping map(long offset, long length) throws Exception;
 	public abstract int locationAffinity();
 	public abstract int storageAffinity();
+	public abstract int stripeWidth();
 	public abstract long getToken();
 	public abstract long getFd();
 
@@ -27,6 +27,7 @@ import java.util.concurrent.Future;
 public interface CrailInputStream {
 	public CrailNode getFile();
 	public Future<CrailResult> read(CrailBuffer dataBuf) throws Exception;
+	public Future<CrailResult> readv(long[] offsets, CrailBuffer[] buffers) throws Exception;
 	public void seek(long pos) throws IOException;
 	public int available();
 	public long position();
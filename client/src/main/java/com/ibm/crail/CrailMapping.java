@@ -0,0 +1,37 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail;
+
+//read-only view of a file range, one buffer per block fragment in file order. A zero-copy mapping 
+//shares memory with node-local storage and holds a lease on the file so that its blocks are not 
+//freed or moved while mapped, otherwise the range is a private copy
+public interface CrailMapping {
+	public CrailFile getFile();
+	public long getOffset();
+	public long getLength();
+	//fails once the lease of a zero-copy mapping has expired, null after close
+	public CrailBuffer[] getBuffers();
+	public boolean isZeroCopy();
+	//extends the lease of a zero-copy mapping by crail.map.lease milliseconds, at most crail.namenode.lease.max
+	public void renew() throws Exception;
+	public void close() throws Exception;
+}
@@ -29,7 +29,8 @@ class FileBufferedInputStream extends CrailBufferedInputStream {
 	private CrailInputStream inputStream;
 	
 	FileBufferedInputStream(CrailFile file, long readHint) throws Exception {
-		super(file.getFileSystem(), Math.max(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE)/Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE), file.getCapacity());
+		super(file.getFileSystem(), Math.max(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE)/Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE), 
+				(int) (CrailConstants.READAHEAD_MAX/Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE)), file.getCapacity());
 		this.inputStream = file.getDirectInputStream(readHint);
 	}
 
@@ -1,6 +1,7 @@
 package com.ibm.crail;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -75,5 +76,15 @@ class MultiFileBufferedInputStream extends CrailBufferedInputStream {
 		throw new IOException("Seek not supported on multistream");
 	}	
 	
+	@Override
+	public long readv(long[] positions, ByteBuffer[] buffers) throws IOException {
+		throw new IOException("Vectored read not supported on multistream");
+	}
+	
+	@Override
+	boolean isPassthrough(ByteBuffer dataBuf, int len) {
+		return false;
+	}
+	
 }
 
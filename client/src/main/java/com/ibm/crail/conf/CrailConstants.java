@@ -44,6 +44,24 @@ public class CrailConstants {
 	public static final String BLOCK_SIZE_KEY = "crail.blocksize";
 	public static long BLOCK_SIZE = 67108864;
 	
+	public static final String INLINE_THRESHOLD_KEY = "crail.inline.threshold";
+	public static int INLINE_THRESHOLD = 0;
+	
+	public static final String STRIPE_WIDTH_KEY = "crail.stripe.width";
+	public static int STRIPE_WIDTH = 1;
+	
+	public static final String STRIPE_UNIT_KEY = "crail.stripe.unit";
+	public static int STRIPE_UNIT = 1048576;
+	
+	public static final String MAP_LEASE_KEY = "crail.map.lease";
+	public static long MAP_LEASE = 60000;
+	
+	public static final String STREAM_POLL_KEY = "crail.stream.poll";
+	public static long STREAM_POLL = 16;
+	
+	public static final String STREAM_TIMEOUT_KEY = "crail.stream.timeout";
+	public static long STREAM_TIMEOUT = 60000;
+	
 	public static final String CACHE_LIMIT_KEY = "crail.cachelimit";
 	public static long CACHE_LIMIT = 1073741824;
 	
@@ -74,6 +92,27 @@ public class CrailConstants {
 	public static final String SLICE_SIZE_KEY = "crail.slicesize";
 	public static int SLICE_SIZE = BUFFER_SIZE;		
 	
+	public static final String READAHEAD_MAX_KEY = "crail.readahead.max";
+	public static long READAHEAD_MAX = 8388608;
+	
+	public static final String WRITEBEHIND_MAX_KEY = "crail.writebehind.max";
+	public static long WRITEBEHIND_MAX = 8388608;
+	
+	public static final String BUFFERED_PASSTHROUGH_KEY = "crail.buffered.passthrough";
+	public static int BUFFERED_PASSTHROUGH = 4194304;
+	
+	public static final String READ_COALESCE_GAP_KEY = "crail.read.coalesce.gap";
+	public static int READ_COALESCE_GAP = 32768;
+	
+	public static final String READ_COALESCE_MAX_KEY = "crail.read.coalesce.max";
+	public static int READ_COALESCE_MAX = 1048576;
+	
+	public static final String READ_CACHE_SIZE_KEY = "crail.read.cache.size";
+	public static int READ_CACHE_SIZE = 1048576;
+	
+	public static final String READ_CACHE_TAIL_KEY = "crail.read.cache.tail";
+	public static int READ_CACHE_TAIL = 65536;
+	
 	public static final String SINGLETON_KEY = "crail.singleton";
 	public static boolean SINGLETON = false;	
 	
@@ -89,6 +128,12 @@ public class CrailConstants {
 	public static final String CACHE_IMPL_KEY = "crail.cacheimpl";
 	public static String CACHE_IMPL = "com.ibm.crail.memory.MappedBufferCache";		
 	
+	public static final String METADATA_CACHE_SIZE_KEY = "crail.metadata.cache.size";
+	public static int METADATA_CACHE_SIZE = 1024;
+	
+	public static final String METADATA_CACHE_TTL_KEY = "crail.metadata.cache.ttl";
+	public static long METADATA_CACHE_TTL = 0;
+	
 	public static final String NAMENODE_ADDRESS_KEY = "crail.namenode.address";
 	public static String NAMENODE_ADDRESS = "";
 	
@@ -101,9 +146,43 @@ public class CrailConstants {
 	public static final String NAMENODE_RPC_TYPE_KEY = "crail.namenode.rpc.type";
 	public static String NAMENODE_RPC_TYPE = "com.ibm.crail.namenode.rpc.darpc.DaRPCNameNode";	
 	
+	public static final String NAMENODE_RPC_CONNECTIONS_KEY = "crail.namenode.rpc.connections";
+	public static int NAMENODE_RPC_CONNECTIONS = 1;
+	
+	public static final String NAMENODE_RPC_PROTOCOL_KEY = "crail.namenode.rpc.protocol";
+	public static int NAMENODE_RPC_PROTOCOL = 2;
+	
+	public static final String NAMENODE_ADMISSION_RATE_KEY = "crail.namenode.admission.rate";
+	public static long NAMENODE_ADMISSION_RATE = 0;
+	
+	public static final String NAMENODE_ADMISSION_BURST_KEY = "crail.namenode.admission.burst";
+	public static long NAMENODE_ADMISSION_BURST = 1024;
+	
+	//comma separated host=weight pairs, clients not listed have weight 1
+	public static final String NAMENODE_ADMISSION_WEIGHTS_KEY = "crail.namenode.admission.weights";
+	public static String NAMENODE_ADMISSION_WEIGHTS = "";
+	
+	public static final String NAMENODE_ADMISSION_RETRIES_KEY = "crail.namenode.admission.retries";
+	public static int NAMENODE_ADMISSION_RETRIES = 10;
+	
+	public static final String NAMENODE_LEASE_MAX_KEY = "crail.namenode.lease.max";
+	public static long NAMENODE_LEASE_MAX = 600000;
+	
+	public static final String NAMENODE_SLOWOP_THRESHOLD_KEY = "crail.namenode.slowop.threshold";
+	public static long NAMENODE_SLOWOP_THRESHOLD = 10000;
+	
+	public static final String NAMENODE_STATS_INTERVAL_KEY = "crail.namenode.stats.interval";
+	public static long NAMENODE_STATS_INTERVAL = 0;
+	
 	public static final String LOCATION_MAP_KEY = "crail.location.map";
 	public static String LOCATION_MAP = "";		
 	
+	public static final String TOPOLOGY_MAP_KEY = "crail.topology.map";
+	public static String TOPOLOGY_MAP = "";
+	
+	public static final String TOPOLOGY_SCRIPT_KEY = "crail.topology.script";
+	public static String TOPOLOGY_SCRIPT = "";
+	
 	public static void updateConstants(CrailConfiguration conf){
 		if (conf.get(STORAGE_TYPES_KEY) != null) {
 			STORAGE_TYPES = conf.get(STORAGE_TYPES_KEY);
@@ -117,6 +196,24 @@ public class CrailConstants {
 		if (conf.get(BLOCK_SIZE_KEY) != null) {
 			BLOCK_SIZE = Long.parseLong(conf.get(BLOCK_SIZE_KEY));
 		}			
+		if (conf.get(INLINE_THRESHOLD_KEY) != null) {
+			INLINE_THRESHOLD = Integer.parseInt(conf.get(INLINE_THRESHOLD_KEY));
+		}
+		if (conf.get(STRIPE_WIDTH_KEY) != null) {
+			STRIPE_WIDTH = Integer.parseInt(conf.get(STRIPE_WIDTH_KEY));
+		}
+		if (conf.get(STRIPE_UNIT_KEY) != null) {
+			STRIPE_UNIT = Integer.parseInt(conf.get(STRIPE_UNIT_KEY));
+		}
+		if (conf.get(MAP_LEASE_KEY) != null) {
+			MAP_LEASE = Long.parseLong(conf.get(MAP_LEASE_KEY));
+		}
+		if (conf.get(STREAM_POLL_KEY) != null) {
+			STREAM_POLL = Long.parseLong(conf.get(STREAM_POLL_KEY));
+		}
+		if (conf.get(STREAM_TIMEOUT_KEY) != null) {
+			STREAM_TIMEOUT = Long.parseLong(conf.get(STREAM_TIMEOUT_KEY));
+		}
 		if (conf.get(CACHE_LIMIT_KEY) != null) {
 			CACHE_LIMIT = Long.parseLong(conf.get(CACHE_LIMIT_KEY));
 		}			
@@ -147,6 +244,27 @@ public class CrailConstants {
 		if (conf.get(SLICE_SIZE_KEY) != null) {
 			SLICE_SIZE = Integer.parseInt(conf.get(SLICE_SIZE_KEY));
 		}			
+		if (conf.get(READAHEAD_MAX_KEY) != null) {
+			READAHEAD_MAX = Long.parseLong(conf.get(READAHEAD_MAX_KEY));
+		}
+		if (conf.get(WRITEBEHIND_MAX_KEY) != null) {
+			WRITEBEHIND_MAX = Long.parseLong(conf.get(WRITEBEHIND_MAX_KEY));
+		}
+		if (conf.get(BUFFERED_PASSTHROUGH_KEY) != null) {
+			BUFFERED_PASSTHROUGH = Integer.parseInt(conf.get(BUFFERED_PASSTHROUGH_KEY));
+		}
+		if (conf.get(READ_COALESCE_GAP_KEY) != null) {
+			READ_COALESCE_GAP = Integer.parseInt(conf.get(READ_COALESCE_GAP_KEY));
+		}
+		if (conf.get(READ_COALESCE_MAX_KEY) != null) {
+			READ_COALESCE_MAX = Integer.parseInt(conf.get(READ_COALESCE_MAX_KEY));
+		}
+		if (conf.get(READ_CACHE_SIZE_KEY) != null) {
+			READ_CACHE_SIZE = Integer.parseInt(conf.get(READ_CACHE_SIZE_KEY));
+		}
+		if (conf.get(READ_CACHE_TAIL_KEY) != null) {
+			READ_CACHE_TAIL = Integer.parseInt(conf.get(READ_CACHE_TAIL_KEY));
+		}
 		if (conf.get(CrailConstants.SINGLETON_KEY) != null) {
 			SINGLETON = conf.getBoolean(CrailConstants.SINGLETON_KEY, false);
 		}	
@@ -165,6 +283,18 @@ public class CrailConstants {
 		if (conf.get(LOCATION_MAP_KEY) != null) {
 			LOCATION_MAP = conf.get(LOCATION_MAP_KEY);
 		}		
+		if (conf.get(TOPOLOGY_MAP_KEY) != null) {
+			TOPOLOGY_MAP = conf.get(TOPOLOGY_MAP_KEY);
+		}
+		if (conf.get(TOPOLOGY_SCRIPT_KEY) != null) {
+			TOPOLOGY_SCRIPT = conf.get(TOPOLOGY_SCRIPT_KEY);
+		}
+		if (conf.get(METADATA_CACHE_SIZE_KEY) != null) {
+			METADATA_CACHE_SIZE = Integer.parseInt(conf.get(METADATA_CACHE_SIZE_KEY));
+		}
+		if (conf.get(METADATA_CACHE_TTL_KEY) != null) {
+			METADATA_CACHE_TTL = Long.parseLong(conf.get(METADATA_CACHE_TTL_KEY));
+		}
 		if (conf.get(NAMENODE_ADDRESS_KEY) != null) {
 			NAMENODE_ADDRESS = conf.get(NAMENODE_ADDRESS_KEY);
 		} 
@@ -177,6 +307,33 @@ public class CrailConstants {
 		if (conf.get(NAMENODE_RPC_TYPE_KEY) != null) {
 			NAMENODE_RPC_TYPE = conf.get(NAMENODE_RPC_TYPE_KEY);
 		}
+		if (conf.get(NAMENODE_RPC_CONNECTIONS_KEY) != null) {
+			NAMENODE_RPC_CONNECTIONS = Integer.parseInt(conf.get(NAMENODE_RPC_CONNECTIONS_KEY));
+		}
+		if (conf.get(NAMENODE_RPC_PROTOCOL_KEY) != null) {
+			NAMENODE_RPC_PROTOCOL = Integer.parseInt(conf.get(NAMENODE_RPC_PROTOCOL_KEY));
+		}
+		if (conf.get(NAMENODE_ADMISSION_RATE_KEY) != null) {
+			NAMENODE_ADMISSION_RATE = Long.parseLong(conf.get(NAMENODE_ADMISSION_RATE_KEY));
+		}
+		if (conf.get(NAMENODE_ADMISSION_BURST_KEY) != null) {
+			NAMENODE_ADMISSION_BURST = Long.parseLong(conf.get(NAMENODE_ADMISSION_BURST_KEY));
+		}
+		if (conf.get(NAMENODE_ADMISSION_WEIGHTS_KEY) != null) {
+			NAMENODE_ADMISSION_WEIGHTS = conf.get(NAMENODE_ADMISSION_WEIGHTS_KEY);
+		}
+		if (conf.get(NAMENODE_ADMISSION_RETRIES_KEY) != null) {
+			NAMENODE_ADMISSION_RETRIES = Integer.parseInt(conf.get(NAMENODE_ADMISSION_RETRIES_KEY));
+		}
+		if (conf.get(NAMENODE_LEASE_MAX_KEY) != null) {
+			NAMENODE_LEASE_MAX = Long.parseLong(conf.get(NAMENODE_LEASE_MAX_KEY));
+		}
+		if (conf.get(NAMENODE_SLOWOP_THRESHOLD_KEY) != null) {
+			NAMENODE_SLOWOP_THRESHOLD = Long.parseLong(conf.get(NAMENODE_SLOWOP_THRESHOLD_KEY));
+		}
+		if (conf.get(NAMENODE_STATS_INTERVAL_KEY) != null) {
+			NAMENODE_STATS_INTERVAL = Long.parseLong(conf.get(NAMENODE_STATS_INTERVAL_KEY));
+		}
 	}
 	
 	public static void printConf(){
@@ -185,6 +342,12 @@ public class CrailConstants {
 		LOG.info(DIRECTORY_DEPTH_KEY + " " + DIRECTORY_DEPTH);
 		LOG.info(TOKEN_EXPIRATION_KEY + " " + TOKEN_EXPIRATION);
 		LOG.info(BLOCK_SIZE_KEY + " " + BLOCK_SIZE);
+		LOG.info(INLINE_THRESHOLD_KEY + " " + INLINE_THRESHOLD);
+		LOG.info(STRIPE_WIDTH_KEY + " " + STRIPE_WIDTH);
+		LOG.info(STRIPE_UNIT_KEY + " " + STRIPE_UNIT);
+		LOG.info(MAP_LEASE_KEY + " " + MAP_LEASE);
+		LOG.info(STREAM_POLL_KEY + " " + STREAM_POLL);
+		LOG.info(STREAM_TIMEOUT_KEY + " " + STREAM_TIMEOUT);
 		LOG.info(CACHE_LIMIT_KEY + " " + CACHE_LIMIT);
 		LOG.info(CACHE_PATH_KEY + " " + CACHE_PATH);
 		LOG.info(USER_KEY + " " + USER);
@@ -195,16 +358,36 @@ public class CrailConstants {
 		LOG.info(DATA_TIMEOUT_KEY + " " + DATA_TIMEOUT);
 		LOG.info(BUFFER_SIZE_KEY + " " + BUFFER_SIZE);
 		LOG.info(SLICE_SIZE_KEY + " " + SLICE_SIZE);		
+		LOG.info(READAHEAD_MAX_KEY + " " + READAHEAD_MAX);
+		LOG.info(WRITEBEHIND_MAX_KEY + " " + WRITEBEHIND_MAX);
+		LOG.info(BUFFERED_PASSTHROUGH_KEY + " " + BUFFERED_PASSTHROUGH);
+		LOG.info(READ_COALESCE_GAP_KEY + " " + READ_COALESCE_GAP);
+		LOG.info(READ_COALESCE_MAX_KEY + " " + READ_COALESCE_MAX);
+		LOG.info(READ_CACHE_SIZE_KEY + " " + READ_CACHE_SIZE);
+		LOG.info(READ_CACHE_TAIL_KEY + " " + READ_CACHE_TAIL);
 		LOG.info(SINGLETON_KEY + " " + SINGLETON);
 		LOG.info(REGION_SIZE_KEY + " " + REGION_SIZE);
 		LOG.info(DIRECTORY_RECORD_KEY + " " + DIRECTORY_RECORD);
 		LOG.info(DIRECTORY_RANDOMIZE_KEY + " " + DIRECTORY_RANDOMIZE);		
 		LOG.info(CACHE_IMPL_KEY + " " + CACHE_IMPL);
+		LOG.info(METADATA_CACHE_SIZE_KEY + " " + METADATA_CACHE_SIZE);
+		LOG.info(METADATA_CACHE_TTL_KEY + " " + METADATA_CACHE_TTL);
 		LOG.info(LOCATION_MAP_KEY + " " + LOCATION_MAP);
+		LOG.info(TOPOLOGY_MAP_KEY + " " + TOPOLOGY_MAP);
+		LOG.info(TOPOLOGY_SCRIPT_KEY + " " + TOPOLOGY_SCRIPT);
 		LOG.info(NAMENODE_ADDRESS_KEY + " " + NAMENODE_ADDRESS);
 		LOG.info(NAMENODE_BLOCKSELECTION_KEY + " " + NAMENODE_BLOCKSELECTION);
 		LOG.info(NAMENODE_FILEBLOCKS_KEY + " " + NAMENODE_FILEBLOCKS);
 		LOG.info(NAMENODE_RPC_TYPE_KEY + " " + NAMENODE_RPC_TYPE);
+		LOG.info(NAMENODE_RPC_CONNECTIONS_KEY + " " + NAMENODE_RPC_CONNECTIONS);
+		LOG.info(NAMENODE_RPC_PROTOCOL_KEY + " " + NAMENODE_RPC_PROTOCOL);
+		LOG.info(NAMENODE_ADMISSION_RATE_KEY + " " + NAMENODE_ADMISSION_RATE);
+		LOG.info(NAMENODE_ADMISSION_BURST_KEY + " " + NAMENODE_ADMISSION_BURST);
+		LOG.info(NAMENODE_ADMISSION_WEIGHTS_KEY + " " + NAMENODE_ADMISSION_WEIGHTS);
+		LOG.info(NAMENODE_ADMISSION_RETRIES_KEY + " " + NAMENODE_ADMISSION_RETRIES);
+		LOG.info(NAMENODE_LEASE_MAX_KEY + " " + NAMENODE_LEASE_MAX);
+		LOG.info(NAMENODE_SLOWOP_THRESHOLD_KEY + " " + NAMENODE_SLOWOP_THRESHOLD);
+		LOG.info(NAMENODE_STATS_INTERVAL_KEY + " " + NAMENODE_STATS_INTERVAL);
 	}
 	
 	public static void verify() throws IOException {
@@ -214,6 +397,54 @@ public class CrailConstants {
 		if (Math.max(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE) % Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE) != 0){
 			throw new IOException("crail.slicesize must be multiple of buffersize " + CrailConstants.BUFFER_SIZE);
 		}		
+		if (CrailConstants.READAHEAD_MAX < 0){
+			throw new IOException("crail.readahead.max must not be negative, found " + CrailConstants.READAHEAD_MAX);
+		}
+		if (CrailConstants.WRITEBEHIND_MAX < 0){
+			throw new IOException("crail.writebehind.max must not be negative, found " + CrailConstants.WRITEBEHIND_MAX);
+		}
+		if (CrailConstants.BUFFERED_PASSTHROUGH < 0){
+			throw new IOException("crail.buffered.passthrough must not be negative, found " + CrailConstants.BUFFERED_PASSTHROUGH);
+		}
+		if (CrailConstants.READ_COALESCE_GAP < 0){
+			throw new IOException("crail.read.coalesce.gap must not be negative, found " + CrailConstants.READ_COALESCE_GAP);
+		}
+		if (CrailConstants.READ_COALESCE_MAX < 0){
+			throw new IOException("crail.read.coalesce.max must not be negative, found " + CrailConstants.READ_COALESCE_MAX);
+		}
+		if (CrailConstants.READ_CACHE_SIZE < 0 || CrailConstants.READ_CACHE_TAIL < 0){
+			throw new IOException("crail.read.cache.size and crail.read.cache.tail must not be negative, found " + CrailConstants.READ_CACHE_SIZE + ", " + CrailConstants.READ_CACHE_TAIL);
+		}
+		if (CrailConstants.NAMENODE_RPC_CONNECTIONS <= 0){
+			throw new IOException("crail.namenode.rpc.connections must be positive, found " + CrailConstants.NAMENODE_RPC_CONNECTIONS);
+		}
+		if (CrailConstants.METADATA_CACHE_SIZE < 0 || CrailConstants.METADATA_CACHE_TTL < 0){
+			throw new IOException("crail.metadata.cache.size and crail.metadata.cache.ttl must not be negative");
+		}
+		if (CrailConstants.NAMENODE_RPC_PROTOCOL < 0){
+			throw new IOException("crail.namenode.rpc.protocol must not be negative, found " + CrailConstants.NAMENODE_RPC_PROTOCOL);
+		}
+		if (CrailConstants.INLINE_THRESHOLD < 0 || CrailConstants.INLINE_THRESHOLD > CrailConstants.BUFFER_SIZE){
+			throw new IOException("crail.inline.threshold must be between 0 and buffersize " + CrailConstants.BUFFER_SIZE);
+		}
+		if (CrailConstants.STRIPE_WIDTH <= 0){
+			throw new IOException("crail.stripe.width must be positive, found " + CrailConstants.STRIPE_WIDTH);
+		}
+		if (CrailConstants.STRIPE_UNIT <= 0 || CrailConstants.BLOCK_SIZE % CrailConstants.STRIPE_UNIT != 0){
+			throw new IOException("crail.stripe.unit must divide blocksize " + CrailConstants.BLOCK_SIZE + ", found " + CrailConstants.STRIPE_UNIT);
+		}
+		if (CrailConstants.MAP_LEASE <= 0){
+			throw new IOException("crail.map.lease must be positive, found " + CrailConstants.MAP_LEASE);
+		}
+		if (CrailConstants.NAMENODE_LEASE_MAX <= 0){
+			throw new IOException("crail.namenode.lease.max must be positive, found " + CrailConstants.NAMENODE_LEASE_MAX);
+		}
+		if (CrailConstants.STREAM_POLL <= 0){
+			throw new IOException("crail.stream.poll must be positive, found " + CrailConstants.STREAM_POLL);
+		}
+		if (CrailConstants.STREAM_TIMEOUT <= 0){
+			throw new IOException("crail.stream.timeout must be positive, found " + CrailConstants.STREAM_TIMEOUT);
+		}
 		
 	}
 }
@@ -43,10 +43,10 @@ class CoreDataOperation extends MultiFuture<StorageResult, CrailResult> implemen
 	private long completedLen;
 	private boolean isSynchronous;
 	
-	public CoreDataOperation(CoreStream stream, CrailBuffer buffer) throws Exception{
+	public CoreDataOperation(CoreStream stream, CrailBuffer buffer, long fileOffset) throws Exception{
 		this.stream = stream;
 		this.buffer = buffer;
-		this.fileOffset = stream.position();
+		this.fileOffset = fileOffset;
 		this.bufferPosition = buffer.position();
 		this.bufferLimit = buffer.limit();
 		this.operationLength = buffer.remaining();
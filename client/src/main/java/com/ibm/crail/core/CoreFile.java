@@ -28,10 +28,12 @@ import com.ibm.crail.CrailDirectory;
 import com.ibm.crail.CrailFS;
 import com.ibm.crail.CrailFile;
 import com.ibm.crail.CrailInputStream;
+import com.ibm.crail.CrailMapping;
 import com.ibm.crail.CrailMultiFile;
 import com.ibm.crail.CrailNode;
 import com.ibm.crail.CrailNodeType;
 import com.ibm.crail.CrailOutputStream;
+import com.ibm.crail.CrailReadHandle;
 import com.ibm.crail.metadata.FileInfo;
 
 public class CoreFile extends CoreNode implements CrailFile {
@@ -50,6 +52,26 @@ public class CoreFile extends CoreNode implements CrailFile {
 		return super.getInputStream(readHint);
 	}	
 	
+	public CrailReadHandle getReadHandle() throws Exception{
+		if (fileInfo.getType().isDirectory()){
+			throw new Exception("Cannot open read handle for directory");
+		}		
+		
+		return fs.getReadHandle(this);
+	}	
+	
+	public CrailMapping map(long offset, long length) throws Exception {
+		if (fileInfo.getType().isDirectory()){
+			throw new Exception("Cannot map directory");
+		}
+		
+		return fs.map(this, offset, length);
+	}
+	
+	public int stripeWidth() {
+		return fileInfo.getStripeWidth();
+	}
+	
 	public synchronized CrailOutputStream getDirectOutputStream(long writeHint) throws Exception {
 		if (fileInfo.getType().isDirectory()){
 			throw new Exception("Cannot open stream for directory");
@@ -106,6 +128,14 @@ class CoreEarlyFile implements CrailFile {
 		return file().getDirectInputStream(readHint);
 	}	
 	
+	public CrailReadHandle getReadHandle() throws Exception{
+		return file().getReadHandle();
+	}	
+	
+	public CrailMapping map(long offset, long length) throws Exception {
+		return file().map(offset, length);
+	}
+	
 	public synchronized CrailOutputStream getDirectOutputStream(long writeHint) throws Exception {
 		return file().getDirectOutputStream(writeHint);
 	}
@@ -172,6 +202,11 @@ class CoreEarlyFile implements CrailFile {
 		return this.storageAffnity;
 	}
 
+	@Override
+	public int stripeWidth() {
+		return file().stripeWidth();
+	}
+
 	@Override
 	public long getFd() {
 		return file().getFd();
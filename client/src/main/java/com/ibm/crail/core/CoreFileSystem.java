@@ -24,7 +24,9 @@ package com.ibm.crail.core;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
@@ -38,8 +40,12 @@ import org.slf4j.Logger;
 
 import com.ibm.crail.CrailBlockLocation;
 import com.ibm.crail.CrailBuffer;
+import com.ibm.crail.CrailCapacity;
 import com.ibm.crail.CrailFS;
+import com.ibm.crail.CrailFile;
+import com.ibm.crail.CrailMapping;
 import com.ibm.crail.CrailNode;
+import com.ibm.crail.CrailReadHandle;
 import com.ibm.crail.CrailResult;
 import com.ibm.crail.CrailStatistics;
 import com.ibm.crail.CrailNodeType;
@@ -47,26 +53,36 @@ import com.ibm.crail.Upcoming;
 import com.ibm.crail.conf.CrailConfiguration;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.memory.BufferCache;
+import com.ibm.crail.memory.OffHeapBuffer;
 import com.ibm.crail.metadata.BlockInfo;
 import com.ibm.crail.metadata.DataNodeInfo;
 import com.ibm.crail.metadata.FileInfo;
 import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.metadata.OperationStatistics;
 import com.ibm.crail.rpc.RpcErrors;
 import com.ibm.crail.rpc.RpcClient;
 import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcConnectionPool;
 import com.ibm.crail.rpc.RpcCreateFile;
 import com.ibm.crail.rpc.RpcDeleteFile;
+import com.ibm.crail.rpc.RpcGetCapacity;
 import com.ibm.crail.rpc.RpcGetFile;
 import com.ibm.crail.rpc.RpcGetLocation;
+import com.ibm.crail.rpc.RpcGetBlock;
+import com.ibm.crail.rpc.RpcGetStats;
+import com.ibm.crail.rpc.RpcLease;
 import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcMoveBlock;
 import com.ibm.crail.rpc.RpcPing;
 import com.ibm.crail.rpc.RpcRenameFile;
 import com.ibm.crail.storage.StorageClient;
+import com.ibm.crail.storage.StorageEndpoint;
 import com.ibm.crail.utils.BlockCache;
 import com.ibm.crail.utils.BufferCheckpoint;
 import com.ibm.crail.utils.EndpointCache;
 import com.ibm.crail.utils.NextBlockCache;
 import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.NetworkTopology;
 import com.ibm.crail.utils.BlockCache.FileBlockCache;
 import com.ibm.crail.utils.NextBlockCache.FileNextBlockCache;
 
@@ -84,16 +100,20 @@ public class CoreFileSystem extends CrailFS {
 	private AtomicLong streamCounter;
 	private ConcurrentHashMap<Long, CoreInputStream> openInputStreams;
 	private ConcurrentHashMap<Long, CoreOutputStream> openOutputStreams;
+	private ConcurrentHashMap<Long, CoreReadHandle> openReadHandles;
 	
 	private BlockCache blockCache;
 	private NextBlockCache nextBlockCache;
+	private CoreMetaDataCache metaDataCache;
 	private BufferCache bufferCache;
 	private BufferCheckpoint bufferCheckpoint;
 	private ConcurrentHashMap<String, String> locationMap;
+	private NetworkTopology topology;
 	
 	private boolean isOpen;
 	private int fsId;
 	private int hostHash;
+	private int rackHash;
 	
 	private CoreIOStatistics ioStatsIn;
 	private CoreIOStatistics ioStatsOut;
@@ -122,8 +142,12 @@ public class CoreFileSystem extends CrailFS {
 		this.rpcNameNode = RpcClient.createInstance(CrailConstants.NAMENODE_RPC_TYPE);
 		rpcNameNode.init(conf, null);
 		rpcNameNode.printConf(LOG);		
-		this.namenodeClientRpc = rpcNameNode.connect(nnAddr);
-		LOG.info("connected to namenode at " + nnAddr);		
+		if (CrailConstants.NAMENODE_RPC_CONNECTIONS > 1){
+			this.namenodeClientRpc = new RpcConnectionPool(rpcNameNode, nnAddr, CrailConstants.NAMENODE_RPC_CONNECTIONS);
+		} else {
+			this.namenodeClientRpc = rpcNameNode.connect(nnAddr);
+		}
+		LOG.info("connected to namenode at " + nnAddr + ", connections " + CrailConstants.NAMENODE_RPC_CONNECTIONS);		
 		
 		//Client
 		this.fsId = fsCount.getAndIncrement();
@@ -131,13 +155,17 @@ public class CoreFileSystem extends CrailFS {
 		this.bufferCache = BufferCache.createInstance(CrailConstants.CACHE_IMPL);
 		this.blockCache = new BlockCache();
 		this.nextBlockCache = new NextBlockCache();
+		this.metaDataCache = new CoreMetaDataCache(CrailConstants.METADATA_CACHE_SIZE, CrailConstants.METADATA_CACHE_TTL);
 		this.openInputStreams = new ConcurrentHashMap<Long, CoreInputStream>();
 		this.openOutputStreams = new ConcurrentHashMap<Long, CoreOutputStream>();
+		this.openReadHandles = new ConcurrentHashMap<Long, CoreReadHandle>();
 		this.streamCounter = new AtomicLong(0);
 		this.isOpen = true;
 		this.bufferCheckpoint = new BufferCheckpoint();
 		this.locationMap = new ConcurrentHashMap<String, String>();
 		CrailUtils.parseMap(CrailConstants.LOCATION_MAP, locationMap);
+		this.topology = new NetworkTopology();
+		this.rackHash = topology.getLocalRackHash();
 		
 		this.statistics = new CrailStatistics();
 		this.ioStatsIn = new CoreIOStatistics("core/input");
@@ -148,16 +176,25 @@ public class CoreFileSystem extends CrailFS {
 		statistics.addProvider(streamStats);
 		statistics.addProvider(bufferCache);
 		statistics.addProvider(datanodeEndpointCache);
+		statistics.addProvider(metaDataCache);
 	}
 	
 	public Upcoming<CrailNode> create(String path, CrailNodeType type, int storageAffinity, int locationAffinity) throws Exception {
+		return create(path, type, storageAffinity, locationAffinity, CrailConstants.STRIPE_WIDTH);
+	}
+	
+	//data files created with a stripe width > 1 spread each group of stripeWidth blocks across distinct datanodes
+	public Upcoming<CrailNode> create(String path, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth) throws Exception {
 		FileName name = new FileName(path);
 		
 		if (CrailConstants.DEBUG){
-			LOG.info("createNode: name " + path + ", type " + type + ", storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity);
+			LOG.info("createNode: name " + path + ", type " + type + ", storageAffinity " + storageAffinity + ", locationAffinity " + locationAffinity + ", stripeWidth " + stripeWidth);
+		}
+		if (stripeWidth <= 0){
+			throw new IOException("createNode: stripe width must be positive, found " + stripeWidth);
 		}
 
-		RpcFuture<RpcCreateFile> fileRes = namenodeClientRpc.createFile(name, type, storageAffinity, locationAffinity);
+		RpcFuture<RpcCreateFile> fileRes = namenodeClientRpc.createFile(name, type, storageAffinity, locationAffinity, stripeWidth, CrailConstants.STRIPE_UNIT);
 		return new CreateNodeFuture(this, path, type, storageAffinity, locationAffinity, fileRes);
 	}	
 	
@@ -182,9 +219,14 @@ public class CoreFileSystem extends CrailFS {
 
 		blockCache.remove(fileInfo.getFd());
 		nextBlockCache.remove(fileInfo.getFd());
+		metaDataCache.invalidate(path);
 		
-		BlockInfo fileBlock = fileRes.getFileBlock();
-		getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+		//inline files get their first block only once they outgrow the threshold
+		boolean inline = CrailConstants.INLINE_THRESHOLD > 0 && type == CrailNodeType.DATAFILE;
+		if (!inline){
+			BlockInfo fileBlock = fileRes.getFileBlock();
+			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+		}
 		BlockInfo dirBlock = fileRes.getDirBlock();
 		getBlockCache(dirInfo.getFd()).put(CoreSubOperation.createKey(dirInfo.getFd(), fileInfo.getDirOffset()), dirBlock);
 		
@@ -201,6 +243,9 @@ public class CoreFileSystem extends CrailFS {
 		}
 		
 		CoreNode node = CoreNode.create(this, fileInfo, path, storageAffinity, locationAffinity);
+		if (inline){
+			node.setInlineData(new byte[0]);
+		}
 		node.addSyncOperation(syncOperation);
 		return node;
 	}	
@@ -212,12 +257,22 @@ public class CoreFileSystem extends CrailFS {
 			LOG.info("lookupDirectory: path " + path);
 		}
 		
-		RpcFuture<RpcGetFile> fileRes = namenodeClientRpc.getFile(name, false);
-		return new LookupNodeFuture(this, path, fileRes);
+		CoreMetaDataCache.Entry entry = metaDataCache.get(path);
+		if (entry == null){
+			RpcFuture<RpcGetFile> fileRes = namenodeClientRpc.getFile(name, false);
+			return new LookupNodeFuture(this, path, fileRes, null);
+		} else if (metaDataCache.isFresh(entry)){
+			metaDataCache.incHits();
+			return new CachedNodeFuture(_cachedNode(entry, path));
+		} else {
+			RpcFuture<RpcGetFile> fileRes = namenodeClientRpc.getFile(name, false, entry.getFd(), entry.getVersion());
+			return new LookupNodeFuture(this, path, fileRes, entry);
+		}
 	}	
 	
-	CoreNode _lookupNode(RpcGetFile fileRes, String path) throws Exception {
+	CoreNode _lookupNode(RpcGetFile fileRes, String path, CoreMetaDataCache.Entry entry) throws Exception {
 		if (fileRes.getError() == RpcErrors.ERR_GET_FILE_FAILED){
+			metaDataCache.invalidate(path);
 			return null;
 		}
 		else if (fileRes.getError() != RpcErrors.ERR_OK){
@@ -225,21 +280,57 @@ public class CoreFileSystem extends CrailFS {
 			return null;
 		}		
 		
-		FileInfo fileInfo = fileRes.getFile();
+		if (entry != null && fileRes.isNotModified()){
+			metaDataCache.refresh(entry);
+			metaDataCache.incRevalidated();
+			return _cachedNode(entry, path);
+		}
+		metaDataCache.incMisses();
+		if (entry != null && (fileRes.getFile() == null || entry.getFd() != fileRes.getFile().getFd())){
+			blockCache.remove(entry.getFd());
+			nextBlockCache.remove(entry.getFd());
+		}
 		
 		CoreNode node = null;
-		if (fileInfo != null){
+		if (fileRes.getFile() != null){
+			//copy out of the response, which is recycled by the caller
+			FileInfo fileInfo = new FileInfo();
+			fileInfo.setFileInfo(fileRes.getFile());
+			if (!getBlockCache(fileInfo.getFd()).validate(fileInfo.getVersion())){
+				nextBlockCache.remove(fileInfo.getFd());
+			}
 			if (CrailConstants.DEBUG){
 				LOG.info("lookup: name " + path + ", success, fd " + fileInfo.getFd());
 			}
-			BlockInfo fileBlock = fileRes.getFileBlock();
-			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
-			
 			node = CoreNode.create(this, fileInfo, path, 0, 0);
+			if (fileRes.getInlineLength() >= 0){
+				node.setInlineData(Arrays.copyOf(fileRes.getInlineData(), fileRes.getInlineLength()));
+				metaDataCache.put(path, fileInfo, null, Arrays.copyOf(fileRes.getInlineData(), fileRes.getInlineLength()));
+			} else {
+				BlockInfo fileBlock = new BlockInfo();
+				fileBlock.setBlockInfo(fileRes.getFileBlock());
+				getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+				metaDataCache.put(path, fileInfo, fileBlock, null);
+			}
 		} 
 		return node;
 	}	
 	
+	//builds a node from cached metadata, the node gets its own copies
+	CoreNode _cachedNode(CoreMetaDataCache.Entry entry, String path) throws Exception {
+		FileInfo fileInfo = new FileInfo();
+		fileInfo.setFileInfo(entry.getFileInfo());
+		CoreNode node = CoreNode.create(this, fileInfo, path, 0, 0);
+		if (entry.getInlineData() != null){
+			node.setInlineData(Arrays.copyOf(entry.getInlineData(), entry.getInlineData().length));
+		} else {
+			BlockInfo fileBlock = new BlockInfo();
+			fileBlock.setBlockInfo(entry.getFileBlock());
+			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+		}
+		return node;
+	}
+	
 
 	public Upcoming<CrailNode> rename(String src, String dst) throws Exception {
 		FileName srcPath = new FileName(src);
@@ -299,6 +390,8 @@ public class CoreFileSystem extends CrailFS {
 		CoreSyncOperation syncOperationDst = new CoreSyncOperation(streamDst, futureDst);
 		
 		blockCache.remove(srcFile.getFd());
+		metaDataCache.invalidateTree(src);
+		metaDataCache.invalidateTree(dst);
 		
 		if (CrailConstants.DEBUG){
 			LOG.info("rename: srcname " + src + ", dstname " + dst + ", success");
@@ -341,6 +434,7 @@ public class CoreFileSystem extends CrailFS {
 		CoreSyncOperation syncOperation = new CoreSyncOperation(stream, future);
 		
 		blockCache.remove(fileInfo.getFd());
+		metaDataCache.invalidateTree(path);
 		
 		if (CrailConstants.DEBUG){
 			LOG.info("delete: name " + path + ", recursive " + recursive + ", success");
@@ -407,6 +501,13 @@ public class CoreFileSystem extends CrailFS {
 	
 		for (long current = CrailUtils.blockStartAddress(start); current < start + len; current += CrailConstants.BLOCK_SIZE){
 			RpcGetLocation getLocationRes = namenodeClientRpc.getLocation(name, current).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (getLocationRes.getError() == RpcErrors.ERR_OFFSET_TOO_LARGE && current == 0){
+				//inline files have no blocks, their data is kept with the file on the namenode
+				CrailNode node = lookup(path).get();
+				if (node instanceof CoreNode && ((CoreNode) node).getInlineData() != null){
+					return getInlineLocations(start, len);
+				}
+			}
 			if (getLocationRes.getError() != RpcErrors.ERR_OK) {
 				LOG.info("location: " + RpcErrors.messages[getLocationRes.getError()]);
 				throw new IOException(RpcErrors.messages[getLocationRes.getError()]);
@@ -445,7 +546,7 @@ public class CoreFileSystem extends CrailFS {
 			InetSocketAddress address = CrailUtils.datanodeInfo2SocketAddr(mainDataNode);
 			names[0] = getMappedLocation(address.getAddress().getCanonicalHostName()) + ":" + address.getPort(); 
 			hosts[0] = getMappedLocation(address.getAddress().getCanonicalHostName());
-			topology[0] = "/default-rack/" + names[0];
+			topology[0] = this.topology.getRack(address.getAddress()) + "/" + names[0];
 			storageTiers[0] = mainDataNode.getStorageTier();
 			locationTiers[0] = mainDataNode.getLocationAffinity();
 			for (int j = 1; j < locationSize; j++){
@@ -453,7 +554,7 @@ public class CoreFileSystem extends CrailFS {
 				address = CrailUtils.datanodeInfo2SocketAddr(replicaDataNode);
 				names[j] = getMappedLocation(address.getAddress().getCanonicalHostName()) + ":" + address.getPort(); 
 				hosts[j] = getMappedLocation(address.getAddress().getCanonicalHostName());
-				topology[j] = "/default-rack/" + names[j];
+				topology[j] = this.topology.getRack(address.getAddress()) + "/" + names[j];
 				storageTiers[j] = replicaDataNode.getStorageTier();
 				locationTiers[j] = replicaDataNode.getLocationAffinity();				
 				blockIndex = (blockIndex + 1) % dataNodeArray.size();
@@ -468,10 +569,125 @@ public class CoreFileSystem extends CrailFS {
 		return blockLocations;
 	}
 	
+	private CrailBlockLocation[] getInlineLocations(long start, long len) throws Exception {
+		InetSocketAddress address = CrailUtils.getNameNodeAddress();
+		String host = getMappedLocation(address.getAddress().getCanonicalHostName());
+		String name = host + ":" + address.getPort();
+		CoreBlockLocation location = new CoreBlockLocation();
+		location.setOffset(0);
+		location.setLength(start + len);
+		location.setNames(new String[]{ name });
+		location.setHosts(new String[]{ host });
+		location.setTopologyPaths(new String[]{ topology.getRack(address.getAddress()) + "/" + name });
+		location.setStorageTiers(new int[]{ 0 });
+		location.setLocationAffinities(new int[]{ 0 });
+		return new CrailBlockLocation[]{ location };
+	}
+	
 	public void dumpNameNode() throws Exception {
 		namenodeClientRpc.dumpNameNode().get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
 	}	
 	
+	public CrailCapacity getCapacity() throws Exception {
+		return getCapacity(false);
+	}
+	
+	//the totals take one RPC per storage class, listing the datanodes takes one more per datanode
+	public CrailCapacity getCapacity(boolean dataNodes) throws Exception {
+		RpcGetCapacity capacityRes = namenodeClientRpc.getCapacity(0, 0).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (capacityRes.getError() != RpcErrors.ERR_OK) {
+			LOG.info("getCapacity: " + RpcErrors.messages[capacityRes.getError()]);
+			throw new IOException(RpcErrors.messages[capacityRes.getError()]);
+		}
+		
+		CrailCapacity capacity = new CrailCapacity(capacityRes.getStorageClassCount());
+		for (int i = 0; i < capacity.getStorageClassCount(); i++){
+			if (i > 0){
+				capacityRes = namenodeClientRpc.getCapacity(i, 0).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (capacityRes.getError() != RpcErrors.ERR_OK) {
+					throw new IOException(RpcErrors.messages[capacityRes.getError()]);
+				}
+			}
+			capacity.setStorageClass(i, capacityRes.getStorageCapacity());
+			if (!dataNodes){
+				continue;
+			}
+			
+			//the first datanode comes with the storage class, fetch the remaining ones in parallel
+			int dataNodeCount = capacityRes.getStorageCapacity().getDataNodeCount();
+			LinkedList<RpcFuture<RpcGetCapacity>> futures = new LinkedList<RpcFuture<RpcGetCapacity>>();
+			for (int j = 1; j < dataNodeCount; j++){
+				futures.add(namenodeClientRpc.getCapacity(i, j));
+			}
+			addDataNodeCapacity(capacity, i, capacityRes);
+			for (RpcFuture<RpcGetCapacity> future : futures){
+				capacityRes = future.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (capacityRes.getError() != RpcErrors.ERR_OK) {
+					throw new IOException(RpcErrors.messages[capacityRes.getError()]);
+				}
+				addDataNodeCapacity(capacity, i, capacityRes);
+			}
+		}
+		return capacity;
+	}
+	
+	public BlockInfo getBlockInfo(String path, long position) throws Exception {
+		FileName name = new FileName(path);
+		RpcGetLocation getLocationRes = namenodeClientRpc.getLocation(name, position).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (getLocationRes.getError() != RpcErrors.ERR_OK) {
+			LOG.info("location: " + RpcErrors.messages[getLocationRes.getError()]);
+			throw new IOException(RpcErrors.messages[getLocationRes.getError()]);
+		}
+		return getLocationRes.getBlockInfo();
+	}
+	
+	//copies the block at the given position to a free block on the target datanode and swaps the file's block, returns the bytes copied
+	public long moveBlock(CrailFile file, long position, DataNodeInfo target, CrailBuffer buffer) throws Exception {
+		long blockStart = CrailUtils.blockStartAddress(position);
+		BlockInfo targetBlock = new BlockInfo(target, 0, 0, 0);
+		RpcMoveBlock moveRes = namenodeClientRpc.moveBlock(RpcMoveBlock.OP_PREPARE, file.getFd(), blockStart, new BlockInfo(), targetBlock).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (moveRes.getError() != RpcErrors.ERR_OK) {
+			throw new IOException("moveBlock: " + RpcErrors.messages[moveRes.getError()] + ", fd " + file.getFd() + ", position " + blockStart);
+		}
+		BlockInfo srcBlock = moveRes.getSrcBlock();
+		BlockInfo dstBlock = moveRes.getDstBlock();
+		
+		//the whole block is copied, the capacity known to this client may be older than the file the move was prepared on
+		long length = CrailConstants.BLOCK_SIZE;
+		try {
+			StorageEndpoint srcEndpoint = datanodeEndpointCache.getDataEndpoint(srcBlock.getDnInfo());
+			StorageEndpoint dstEndpoint = datanodeEndpointCache.getDataEndpoint(dstBlock.getDnInfo());
+			long offset = 0;
+			while (offset < length){
+				int len = (int) Math.min(buffer.capacity(), length - offset);
+				buffer.clear().limit(len);
+				srcEndpoint.read(buffer, srcBlock, offset).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+				buffer.clear().limit(len);
+				dstEndpoint.write(buffer, dstBlock, offset).get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
+				offset += len;
+			}
+		} catch(Exception e){
+			namenodeClientRpc.moveBlock(RpcMoveBlock.OP_ABORT, file.getFd(), blockStart, srcBlock, dstBlock).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			throw e;
+		}
+		
+		moveRes = namenodeClientRpc.moveBlock(RpcMoveBlock.OP_COMMIT, file.getFd(), blockStart, srcBlock, dstBlock).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (moveRes.getError() != RpcErrors.ERR_OK) {
+			throw new IOException("moveBlock: " + RpcErrors.messages[moveRes.getError()] + ", fd " + file.getFd() + ", position " + blockStart);
+		}
+		blockCache.remove(file.getFd());
+		return length;
+	}
+	
+	public OperationStatistics getOperationStatistics(short cmd) throws Exception {
+		RpcGetStats statsRes = namenodeClientRpc.getStats(cmd).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (statsRes.getError() != RpcErrors.ERR_OK) {
+			LOG.info("getStats: " + RpcErrors.messages[statsRes.getError()]);
+			throw new IOException(RpcErrors.messages[statsRes.getError()]);
+		}
+		return statsRes.getStatistics();
+	}
+	
 	public void ping() throws Exception {
 		RpcPing pingRes = namenodeClientRpc.pingNameNode().get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
 		if (pingRes.getError() != RpcErrors.ERR_OK) {
@@ -488,6 +704,11 @@ public class CoreFileSystem extends CrailFS {
 		this.bufferCache.putBuffer(buffer);
 	}	
 	
+	//null unless the memory belongs to a buffer allocated through this file system
+	public CrailBuffer wrapBuffer(ByteBuffer buffer) throws IOException {
+		return this.bufferCache.wrap(buffer);
+	}
+	
 	public int getFsId() {
 		return fsId;
 	}	
@@ -496,6 +717,10 @@ public class CoreFileSystem extends CrailFS {
 		return hostHash;
 	}
 	
+	public int getRackHash() {
+		return rackHash;
+	}
+	
 	public BufferCheckpoint getBufferCheckpoint() {
 		return bufferCheckpoint;
 	}
@@ -517,6 +742,14 @@ public class CoreFileSystem extends CrailFS {
 			stream.close();
 		}
 		
+		LinkedList<CoreReadHandle> tmpHandles = new LinkedList<CoreReadHandle>();
+		for (CoreReadHandle handle : openReadHandles.values()) {
+			tmpHandles.add(handle);
+		}
+		for (CoreReadHandle handle : tmpHandles) {
+			handle.close();
+		}
+		
 		LinkedList<CoreOutputStream> tmpOut = new LinkedList<CoreOutputStream>();
 		LinkedList<CoreOutputStream> tmpOutDir = new LinkedList<CoreOutputStream>();
 		for (CoreOutputStream stream : openOutputStreams.values()) {
@@ -552,6 +785,7 @@ public class CoreFileSystem extends CrailFS {
 	public void purgeCache() {
 		blockCache.purge();
 		nextBlockCache.purge();
+		metaDataCache.purge();
 	}
 
 	//-------------------------------------------------------------
@@ -603,6 +837,151 @@ public class CoreFileSystem extends CrailFS {
 		return stream;
 	}	
 	
+	//views point directly into node-local blocks if every block of the range can be mapped, 
+	//the file is leased for the lifetime of such a mapping, otherwise the range is copied
+	CrailMapping map(CoreFile file, long offset, long length) throws Exception {
+		FileInfo fileInfo = file.getFileInfo();
+		if (offset < 0 || length <= 0 || offset + length > fileInfo.getCapacity()){
+			throw new IOException("map range invalid, offset " + offset + ", length " + length + ", capacity " + fileInfo.getCapacity());
+		}
+		
+		ArrayList<Long> fragments = new ArrayList<Long>();
+		for (long current = offset; current < offset + length; current += fileInfo.blockRemaining(current)){
+			fragments.add(current);
+		}
+		
+		if (file.getInlineData() == null){
+			//the lease is taken to start before the request is sent, so the client never outlives the namenode's view of it
+			long start = System.currentTimeMillis();
+			RpcLease leaseRes = namenodeClientRpc.leaseFile(RpcLease.OP_ACQUIRE, fileInfo.getFd(), 0, CrailConstants.MAP_LEASE).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (leaseRes.getError() == RpcErrors.ERR_OK){
+				long leaseId = leaseRes.getLeaseId();
+				long expiration = start + leaseRes.getDuration();
+				CrailBuffer[] views = null;
+				try {
+					views = mapLocal(fileInfo, fragments, offset + length);
+				} finally {
+					if (views == null){
+						releaseMapping(fileInfo.getFd(), leaseId);
+					}
+				}
+				if (views != null){
+					return new CoreMapping(this, file, fileInfo.getFd(), leaseId, expiration, offset, length, views);
+				}
+			} else if (CrailConstants.DEBUG){
+				LOG.info("map: " + RpcErrors.messages[leaseRes.getError()]);
+			}
+		}
+		
+		CrailBuffer[] copies = new CrailBuffer[fragments.size()];
+		CrailReadHandle readHandle = getReadHandle(file);
+		try {
+			for (int i = 0; i < copies.length; i++){
+				long current = fragments.get(i);
+				int fragmentLength = (int) Math.min(fileInfo.blockRemaining(current), offset + length - current);
+				CrailBuffer copy = OffHeapBuffer.wrap(ByteBuffer.allocateDirect(fragmentLength));
+				while (copy.hasRemaining()){
+					long read = readHandle.read(current + copy.position(), copy).get().getLen();
+					if (read <= 0){
+						throw new IOException("map: short read at offset " + (current + copy.position()));
+					}
+				}
+				copy.clear();
+				copies[i] = OffHeapBuffer.wrap(copy.getByteBuffer().asReadOnlyBuffer());
+			}
+		} finally {
+			readHandle.close();
+		}
+		return new CoreMapping(this, file, offset, length, copies);
+	}
+	
+	//null as soon as one block is remote or its endpoint cannot map it
+	private CrailBuffer[] mapLocal(FileInfo fileInfo, ArrayList<Long> fragments, long end) throws Exception {
+		FileBlockCache fileBlockCache = getBlockCache(fileInfo.getFd());
+		BlockInfo[] blocks = new BlockInfo[fragments.size()];
+		ArrayList<RpcFuture<RpcGetBlock>> pending = new ArrayList<RpcFuture<RpcGetBlock>>(fragments.size());
+		for (int i = 0; i < blocks.length; i++){
+			long blockAddress = fileInfo.blockAddress(fragments.get(i));
+			long key = CoreSubOperation.createKey(fileInfo.getFd(), blockAddress);
+			if (fileBlockCache.containsKey(key)){
+				blocks[i] = fileBlockCache.get(key);
+				pending.add(null);
+			} else {
+				pending.add(namenodeClientRpc.getBlock(fileInfo.getFd(), 0, blockAddress, 0, 0, fileInfo.getCapacity()));
+			}
+		}
+		
+		boolean mappable = true;
+		CrailBuffer[] views = new CrailBuffer[fragments.size()];
+		for (int i = 0; i < views.length; i++){
+			RpcFuture<RpcGetBlock> rpcFuture = pending.get(i);
+			if (rpcFuture != null){
+				RpcGetBlock getBlockRes = rpcFuture.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+				if (getBlockRes.getError() != RpcErrors.ERR_OK){
+					throw new IOException(RpcErrors.messages[getBlockRes.getError()]);
+				}
+				blocks[i] = new BlockInfo();
+				blocks[i].setBlockInfo(getBlockRes.getBlockInfo());
+				rpcFuture.release();
+				fileBlockCache.put(CoreSubOperation.createKey(fileInfo.getFd(), fileInfo.blockAddress(fragments.get(i))), blocks[i]);
+			}
+			if (!mappable){
+				continue;
+			}
+			long current = fragments.get(i);
+			int fragmentLength = (int) Math.min(fileInfo.blockRemaining(current), end - current);
+			StorageEndpoint endpoint = datanodeEndpointCache.getDataEndpoint(blocks[i].getDnInfo());
+			if (endpoint.isLocal()){
+				views[i] = endpoint.map(blocks[i], fileInfo.blockAddress(current) % CrailConstants.BLOCK_SIZE, fragmentLength);
+			}
+			mappable = views[i] != null;
+		}
+		return mappable ? views : null;
+	}
+	
+	//returns the new expiration of the lease
+	long renewMapping(long fd, long leaseId) throws Exception {
+		long start = System.currentTimeMillis();
+		RpcLease leaseRes = namenodeClientRpc.leaseFile(RpcLease.OP_RENEW, fd, leaseId, CrailConstants.MAP_LEASE).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (leaseRes.getError() != RpcErrors.ERR_OK){
+			LOG.info("map: " + RpcErrors.messages[leaseRes.getError()]);
+			throw new IOException(RpcErrors.messages[leaseRes.getError()]);
+		}
+		return start + leaseRes.getDuration();
+	}
+	
+	void releaseMapping(long fd, long leaseId) throws Exception {
+		RpcLease leaseRes = namenodeClientRpc.leaseFile(RpcLease.OP_RELEASE, fd, leaseId, 0).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (leaseRes.getError() != RpcErrors.ERR_OK && CrailConstants.DEBUG){
+			LOG.info("map: " + RpcErrors.messages[leaseRes.getError()]);
+		}
+	}
+	
+	CoreReadHandle getReadHandle(CoreNode file) throws Exception {
+		CoreReadHandle readHandle = new CoreReadHandle(file, streamCounter.incrementAndGet());
+		openReadHandles.put(readHandle.getStreamId(), readHandle);
+		
+		if (CrailConstants.STATISTICS){
+			streamStats.incOpen();
+			streamStats.incOpenInput();
+			streamStats.incCurrentInput();
+			streamStats.incMaxInput();
+		}
+		return readHandle;
+	}
+	
+	CoreStream unregisterReadHandle(CoreReadHandle readHandle) {
+		CoreStream stream = this.openReadHandles.remove(readHandle.getStreamId());
+		if (stream != null && CrailConstants.STATISTICS){
+			streamStats.incClose();
+			streamStats.incCloseInput();
+			this.ioStatsIn.mergeStatistics(stream.getCoreStatistics());
+			streamStats.decCurrentInput();
+		}
+		
+		return stream;
+	}
+	
 	CoreStream unregisterOutputStream(CoreOutputStream coreStream) {
 		CoreStream stream = this.openOutputStreams.remove(coreStream.getStreamId());
 		if (stream != null && CrailConstants.STATISTICS){
@@ -625,6 +1004,10 @@ public class CoreFileSystem extends CrailFS {
 	FileNextBlockCache getNextBlockCache(long fd){
 		return nextBlockCache.getFileBlockCache(fd);
 	}	
+	
+	CoreMetaDataCache getMetaDataCache(){
+		return metaDataCache;
+	}
 
 	RpcConnection getNamenodeClientRpc() {
 		return namenodeClientRpc;
@@ -634,6 +1017,12 @@ public class CoreFileSystem extends CrailFS {
 		return datanodeEndpointCache;
 	}
 	
+	private void addDataNodeCapacity(CrailCapacity capacity, int storageClass, RpcGetCapacity capacityRes) {
+		if (capacityRes.getDataNodeCapacity().getDataNodeCount() > 0){
+			capacity.addDataNode(storageClass, capacityRes.getDataNodeInfo(), capacityRes.getDataNodeCapacity());
+		}
+	}
+	
 	String getMappedLocation(String hostname){
 		String mappedValue = locationMap.get(hostname);
 		return mappedValue != null ? mappedValue : hostname;
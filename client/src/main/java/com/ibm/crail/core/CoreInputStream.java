@@ -36,11 +36,13 @@ import com.ibm.crail.storage.StorageEndpoint;
 import com.ibm.crail.storage.StorageFuture;
 import com.ibm.crail.utils.CrailImmediateOperation;
 import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.ReadAheadWindow;
 
 public class CoreInputStream extends CoreStream implements CrailInputStream { 
 	private static final Logger LOG = CrailUtils.getLogger();
 	private AtomicLong inFlight;
 	private long readHint;
+	private ReadAheadWindow readAhead;
 	private CrailImmediateOperation noOp;
 	private boolean open;
 	
@@ -48,6 +50,7 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		super(file, streamId, 0);
 		this.inFlight = new AtomicLong(0);
 		this.readHint = Math.max(0, Math.min(file.getCapacity(), readHint));
+		this.readAhead = new ReadAheadWindow(0, CrailConstants.BUFFER_SIZE, CrailConstants.READAHEAD_MAX);
 		this.noOp = new CrailImmediateOperation(0);
 		this.open = true;
 		if (CrailConstants.DEBUG){
@@ -62,7 +65,7 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		if (dataBuf.remaining() <= 0) {
 			return noOp;
 		}
-		if (position() >= getFile().getCapacity()) {
+		if (position() >= getFile().getCapacity() && !awaitCapacity(position())) {
 			return null;
 		}
 		
@@ -72,6 +75,19 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 			int _fileAvailable = (int) fileAvailable;
 			dataBuf.limit(dataBuf.position() + _fileAvailable);
 		}
+		byte[] inlineData = node.getInlineData();
+		if (inlineData != null){
+			int len = Math.min(dataBuf.remaining(), inlineData.length - (int) position());
+			dataBuf.put(inlineData, (int) position(), len);
+			advance(len);
+			return new CrailImmediateOperation(len);
+		}
+		
+		//sequential runs extend the hint so that block metadata is fetched ahead of the data
+		long window = readAhead.access(position(), dataBuf.remaining());
+		if (window > 0){
+			readHint = Math.max(readHint, Math.min(getFile().getCapacity(), position() + dataBuf.remaining() + window));
+		}
 		
 		inFlight.incrementAndGet();
 		CoreDataOperation future = dataOperation(dataBuf);
@@ -84,6 +100,53 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		return future;
 	}
 	
+	//reads each buffer at its own file offset, the stream position is not changed. Block lookups 
+	//for all ranges are issued before any range waits on one, so a single aggregate future 
+	//covers all sub-operations
+	final public Future<CrailResult> readv(long[] offsets, CrailBuffer[] buffers) throws Exception {
+		if (!open) {
+			throw new IOException("stream already closed");
+		}
+		if (offsets.length != buffers.length){
+			throw new IOException("vectored read, " + offsets.length + " offsets for " + buffers.length + " buffers");
+		}
+		
+		long capacity = getFile().getCapacity();
+		byte[] inlineData = node.getInlineData();
+		CoreVectorOperation vectorOperation = new CoreVectorOperation();
+		for (int i = 0; i < offsets.length; i++){
+			CrailBuffer dataBuf = buffers[i];
+			if (offsets[i] < 0){
+				throw new IOException("vectored read, offset out of range " + offsets[i]);
+			}
+			long fileAvailable = Math.max(0, capacity - offsets[i]);
+			if (fileAvailable < dataBuf.remaining()){
+				dataBuf.limit(dataBuf.position() + (int) fileAvailable);
+			}
+			if (inlineData != null && dataBuf.remaining() > 0){
+				int len = dataBuf.remaining();
+				dataBuf.put(inlineData, (int) offsets[i], len);
+				vectorOperation.add(new CrailImmediateOperation(len));
+			} else if (dataBuf.remaining() > 0){
+				prefetchMetadata(offsets[i], dataBuf.remaining());
+			}
+		}
+		if (inlineData != null){
+			return vectorOperation;
+		}
+		
+		for (int i = 0; i < offsets.length; i++){
+			if (buffers[i].remaining() > 0){
+				inFlight.incrementAndGet();
+				vectorOperation.add(dataOperation(buffers[i], offsets[i]));
+			}
+		}
+		if (vectorOperation.isSynchronous()){
+			vectorOperation.get();
+		}
+		return vectorOperation;
+	}
+	
 	final public int available() {
 		long available = Math.max(0, getFile().getCapacity() - position());
 		long maxint = (long) Integer.MAX_VALUE;
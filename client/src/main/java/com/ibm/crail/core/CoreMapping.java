@@ -0,0 +1,110 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import com.ibm.crail.CrailBuffer;
+import com.ibm.crail.CrailFile;
+import com.ibm.crail.CrailMapping;
+
+class CoreMapping implements CrailMapping {
+	private CoreFileSystem fs;
+	private CrailFile file;
+	private long fd;
+	private long leaseId;
+	private long expiration;
+	private long offset;
+	private long length;
+	private CrailBuffer[] buffers;
+	private boolean zeroCopy;
+	private boolean open;
+	
+	//zero-copy mapping holding the given lease until the expiration
+	CoreMapping(CoreFileSystem fs, CrailFile file, long fd, long leaseId, long expiration, long offset, long length, CrailBuffer[] buffers){
+		this.fs = fs;
+		this.file = file;
+		this.fd = fd;
+		this.leaseId = leaseId;
+		this.expiration = expiration;
+		this.offset = offset;
+		this.length = length;
+		this.buffers = buffers;
+		this.zeroCopy = true;
+		this.open = true;
+	}
+	
+	//private copy of the range, no lease involved
+	CoreMapping(CoreFileSystem fs, CrailFile file, long offset, long length, CrailBuffer[] buffers){
+		this.fs = fs;
+		this.file = file;
+		this.fd = 0;
+		this.leaseId = 0;
+		this.expiration = Long.MAX_VALUE;
+		this.offset = offset;
+		this.length = length;
+		this.buffers = buffers;
+		this.zeroCopy = false;
+		this.open = true;
+	}
+
+	public CrailFile getFile() {
+		return file;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public synchronized CrailBuffer[] getBuffers() {
+		if (open && System.currentTimeMillis() >= expiration){
+			throw new IllegalStateException("mapping lease expired, renew the mapping before it runs out");
+		}
+		return buffers;
+	}
+
+	public boolean isZeroCopy() {
+		return zeroCopy;
+	}
+
+	public synchronized void renew() throws Exception {
+		if (!open){
+			throw new Exception("mapping already closed");
+		}
+		if (zeroCopy){
+			expiration = fs.renewMapping(fd, leaseId);
+		}
+	}
+
+	public synchronized void close() throws Exception {
+		if (!open){
+			return;
+		}
+		open = false;
+		buffers = null;
+		if (zeroCopy){
+			fs.releaseMapping(fd, leaseId);
+		}
+	}
+}
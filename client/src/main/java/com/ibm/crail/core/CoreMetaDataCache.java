@@ -0,0 +1,255 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.CrailStatistics;
+import com.ibm.crail.CrailStatistics.StatisticsProvider;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.FileInfo;
+
+//LRU cache of data file metadata keyed by path. Entries are revalidated against the namenode 
+//version of the node, entries the namenode has confirmed unmodified once are served without 
+//an RPC for crail.metadata.cache.ttl milliseconds. Memory is bounded by the number of entries, 
+//each holding a file info, the first block and at most crail.inline.threshold bytes of data
+public class CoreMetaDataCache implements CrailStatistics.StatisticsProvider {
+	private int capacity;
+	private long ttl;
+	private LinkedHashMap<String, Entry> entries;
+	private AtomicLong hits;
+	private AtomicLong revalidated;
+	private AtomicLong misses;
+	private AtomicLong invalidations;
+	private AtomicLong evictions;
+	
+	public CoreMetaDataCache(int capacity, long ttl){
+		this.capacity = capacity;
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > CoreMetaDataCache.this.capacity){
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		this.hits = new AtomicLong(0);
+		this.revalidated = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+		this.invalidations = new AtomicLong(0);
+		this.evictions = new AtomicLong(0);
+	}
+	
+	public boolean isEnabled(){
+		return capacity > 0;
+	}
+	
+	public synchronized Entry get(String path){
+		if (capacity <= 0){
+			return null;
+		}
+		return entries.get(normalize(path));
+	}
+	
+	//an entry can be used without asking the namenode
+	public boolean isFresh(Entry entry){
+		return ttl > 0 && entry.sealed && System.currentTimeMillis() - entry.validated <= ttl;
+	}
+	
+	public void put(String path, FileInfo fileInfo, BlockInfo fileBlock, byte[] inlineData){
+		if (capacity <= 0 || fileInfo.getType() != CrailNodeType.DATAFILE){
+			return;
+		}
+		Entry entry = new Entry(fileInfo, fileBlock, inlineData);
+		synchronized(this){
+			entries.put(normalize(path), entry);
+		}
+	}
+	
+	//the namenode confirmed the entry, which also tells us the file is sealed
+	public void refresh(Entry entry){
+		entry.validated = System.currentTimeMillis();
+		entry.sealed = true;
+	}
+	
+	public void invalidate(String path){
+		if (capacity <= 0){
+			return;
+		}
+		synchronized(this){
+			if (entries.remove(normalize(path)) != null){
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+	
+	//drops the entry of a path and all entries below it
+	public void invalidateTree(String path){
+		if (capacity <= 0){
+			return;
+		}
+		String key = normalize(path);
+		String prefix = key.equals("/") ? key : key + "/";
+		synchronized(this){
+			Iterator<String> iter = entries.keySet().iterator();
+			while (iter.hasNext()){
+				String next = iter.next();
+				if (next.equals(key) || next.startsWith(prefix)){
+					iter.remove();
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+	
+	public synchronized void purge(){
+		entries.clear();
+	}
+	
+	public synchronized int size(){
+		return entries.size();
+	}
+	
+	public void incHits(){
+		hits.incrementAndGet();
+	}
+	
+	public void incRevalidated(){
+		revalidated.incrementAndGet();
+	}
+	
+	public void incMisses(){
+		misses.incrementAndGet();
+	}
+	
+	public long getHits(){
+		return hits.get();
+	}
+	
+	public long getRevalidated(){
+		return revalidated.get();
+	}
+	
+	public long getMisses(){
+		return misses.get();
+	}
+	
+	public long getInvalidations(){
+		return invalidations.get();
+	}
+	
+	public long getEvictions(){
+		return evictions.get();
+	}
+	
+	@Override
+	public String providerName() {
+		return "cache/metadata";
+	}
+
+	@Override
+	public String printStatistics() {
+		return "size " + size() + ", hits " + getHits() + ", revalidated " + getRevalidated() + ", misses " + getMisses() + 
+				", invalidations " + getInvalidations() + ", evictions " + getEvictions();
+	}
+
+	@Override
+	public void mergeStatistics(StatisticsProvider provider) {
+		if (provider instanceof CoreMetaDataCache){
+			CoreMetaDataCache newProvider = (CoreMetaDataCache) provider;
+			hits.addAndGet(newProvider.getHits());
+			revalidated.addAndGet(newProvider.getRevalidated());
+			misses.addAndGet(newProvider.getMisses());
+			invalidations.addAndGet(newProvider.getInvalidations());
+			evictions.addAndGet(newProvider.getEvictions());
+		}
+	}
+
+	@Override
+	public void resetStatistics() {
+		hits.set(0);
+		revalidated.set(0);
+		misses.set(0);
+		invalidations.set(0);
+		evictions.set(0);
+	}
+	
+	//paths differing only in redundant slashes refer to the same node
+	static String normalize(String path){
+		StringBuilder builder = new StringBuilder();
+		for (String component : path.split("/")){
+			if (!component.isEmpty()){
+				builder.append('/').append(component);
+			}
+		}
+		return builder.length() == 0 ? "/" : builder.toString();
+	}
+	
+	public static class Entry {
+		private FileInfo fileInfo;
+		private BlockInfo fileBlock;
+		private byte[] inlineData;
+		private volatile long validated;
+		private volatile boolean sealed;
+		
+		Entry(FileInfo fileInfo, BlockInfo fileBlock, byte[] inlineData){
+			this.fileInfo = new FileInfo();
+			this.fileInfo.setFileInfo(fileInfo);
+			if (fileBlock != null){
+				this.fileBlock = new BlockInfo();
+				this.fileBlock.setBlockInfo(fileBlock);
+			}
+			this.inlineData = inlineData;
+			this.validated = System.currentTimeMillis();
+			this.sealed = false;
+		}
+		
+		public FileInfo getFileInfo(){
+			return fileInfo;
+		}
+		
+		public BlockInfo getFileBlock(){
+			return fileBlock;
+		}
+		
+		public byte[] getInlineData(){
+			return inlineData;
+		}
+		
+		public long getFd(){
+			return fileInfo.getFd();
+		}
+		
+		public long getVersion(){
+			return fileInfo.getVersion();
+		}
+	}
+}
@@ -34,6 +34,7 @@ import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.rpc.RpcErrors;
 import com.ibm.crail.rpc.RpcCreateFile;
 import com.ibm.crail.rpc.RpcDeleteFile;
+import com.ibm.crail.rpc.RpcFuture;
 import com.ibm.crail.rpc.RpcGetFile;
 import com.ibm.crail.rpc.RpcRenameFile;
 import com.ibm.crail.rpc.RpcVoid;
@@ -42,6 +43,7 @@ public abstract class CoreMetaDataOperation<R,T> implements Upcoming<T> {
 	protected static int RPC_PENDING = 0;
 	protected static int RPC_DONE = 1;
 	protected static int RPC_ERROR = 2;		
+	protected static int RPC_PROCESSING = 3;
 	
 	private AtomicInteger status;
 	protected Future<R> rpcResult;
@@ -62,74 +64,42 @@ public abstract class CoreMetaDataOperation<R,T> implements Upcoming<T> {
 		if (status.get() == RPC_PENDING){
 			try {
 				if (rpcResult.isDone()){
-					R tmp = rpcResult.get();
-					finalResult = process(tmp);
-					status.set(RPC_DONE);
+					complete(rpcResult.get());
 				}
 			} catch (Exception e) {
-				status.set(RPC_ERROR);
-				this.exception = e;
+				fail(e);
 			}
 		}
 		
-		return status.get() > 0;
+		int current = status.get();
+		return current == RPC_DONE || current == RPC_ERROR;
 	}
 
 	@Override
 	public T get() throws InterruptedException, ExecutionException {
-		if (this.exception != null){
-			throw new ExecutionException(exception);
-		}
-		
 		if (status.get() == RPC_PENDING){
 			try {
-				R tmp = rpcResult.get();
-				finalResult = process(tmp);
-				status.set(RPC_DONE);
+				complete(rpcResult.get());
 			} catch (Exception e) {
-				status.set(RPC_ERROR);
-				this.exception = e;
+				fail(e);
 			}
 		}	
 		
-		if (status.get() == RPC_DONE){
-			return finalResult;
-		} else if (status.get() == RPC_PENDING){
-			throw new InterruptedException("RPC timeout");
-		} else if (exception != null) {
-			throw new ExecutionException(exception);
-		} else {
-			throw new InterruptedException("RPC error");
-		}	
+		return result();
 	}
 
 	@Override
 	public T get(long timeout, TimeUnit unit) throws InterruptedException,
 			ExecutionException, TimeoutException {
-		if (this.exception != null){
-			throw new ExecutionException(exception);
-		}		
-		
 		if (status.get() == RPC_PENDING){
 			try {
-				R tmp = rpcResult.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS);
-				finalResult = process(tmp);
-				status.set(RPC_DONE);
+				complete(rpcResult.get(CrailConstants.DATA_TIMEOUT, TimeUnit.MILLISECONDS));
 			} catch (Exception e) {
-				status.set(RPC_ERROR);
-				this.exception = e;
+				fail(e);
 			}
 		}	
 		
-		if (status.get() == RPC_DONE){
-			return finalResult;
-		} else if (status.get() == RPC_PENDING){
-			throw new InterruptedException("RPC timeout");
-		} else if (exception != null) {
-			throw new ExecutionException(exception);
-		} else {
-			throw new InterruptedException("RPC error");
-		}
+		return result();
 	}
 	
 	public T early() throws Exception {
@@ -145,6 +115,46 @@ public abstract class CoreMetaDataOperation<R,T> implements Upcoming<T> {
 	public boolean isCancelled() {
 		return false;
 	}	
+	
+	//only the thread that moves the operation out of pending processes the response, 
+	//so process (and with it the release of recycled RPC objects) runs exactly once
+	private void complete(R tmp){
+		if (status.compareAndSet(RPC_PENDING, RPC_PROCESSING)){
+			try {
+				finalResult = process(tmp);
+				status.set(RPC_DONE);
+			} catch (Exception e) {
+				this.exception = e;
+				status.set(RPC_ERROR);
+			}
+		}
+	}
+	
+	private void fail(Exception e){
+		if (status.compareAndSet(RPC_PENDING, RPC_PROCESSING)){
+			this.exception = e;
+			status.set(RPC_ERROR);
+		}
+	}
+	
+	//waits for a concurrent caller that is still processing the response
+	private T result() throws InterruptedException, ExecutionException {
+		int current = status.get();
+		while (current == RPC_PROCESSING){
+			Thread.yield();
+			current = status.get();
+		}
+		
+		if (current == RPC_DONE){
+			return finalResult;
+		} else if (current == RPC_PENDING){
+			throw new InterruptedException("RPC timeout");
+		} else if (exception != null) {
+			throw new ExecutionException(exception);
+		} else {
+			throw new InterruptedException("RPC error");
+		}
+	}
 }
 
 class CreateNodeFuture extends CoreMetaDataOperation<RpcCreateFile, CrailNode> {
@@ -172,6 +182,7 @@ class CreateNodeFuture extends CoreMetaDataOperation<RpcCreateFile, CrailNode> {
 	public CrailNode early() throws Exception {
 		switch(type){
 		case DATAFILE:
+		case STREAMFILE:
 			return new CoreEarlyFile(fs, path, type, storageAffinity, locationAffinity, this);
 		case DIRECTORY:
 		case MULTIFILE:
@@ -186,18 +197,65 @@ class CreateNodeFuture extends CoreMetaDataOperation<RpcCreateFile, CrailNode> {
 class LookupNodeFuture extends CoreMetaDataOperation<RpcGetFile, CrailNode> {
 	private String path;
 	private CoreFileSystem fs;	
+	private RpcFuture<RpcGetFile> fileRes;
+	private CoreMetaDataCache.Entry entry;
 
-	public LookupNodeFuture(CoreFileSystem fs, String path, Future<RpcGetFile> fileRes) {
+	public LookupNodeFuture(CoreFileSystem fs, String path, RpcFuture<RpcGetFile> fileRes, CoreMetaDataCache.Entry entry) {
 		super(fileRes);
 		this.fs = fs;
 		this.path = path;
+		this.fileRes = fileRes;
+		this.entry = entry;
 	}
 
 	@Override
 	CrailNode process(RpcGetFile tmp) throws Exception {
-		return fs._lookupNode(tmp, path);
+		try {
+			return fs._lookupNode(tmp, path, entry);
+		} finally {
+			fileRes.release();
+		}
+	}
+
+}
+
+//lookup served from the metadata cache
+class CachedNodeFuture implements Upcoming<CrailNode> {
+	private CrailNode node;
+	
+	public CachedNodeFuture(CrailNode node) {
+		this.node = node;
 	}
 
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return true;
+	}
+
+	@Override
+	public CrailNode get() throws InterruptedException, ExecutionException {
+		return node;
+	}
+
+	@Override
+	public CrailNode get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return node;
+	}
+
+	@Override
+	public CrailNode early() throws Exception {
+		return node;
+	}
 }
 
 class DeleteNodeFuture extends CoreMetaDataOperation<RpcDeleteFile, CrailNode> {
@@ -35,6 +35,7 @@ public class CoreNode implements CrailNode {
 	protected int storageAffinity;
 	protected int locationAffinity;	
 	private LinkedBlockingQueue<CoreSyncOperation> syncOperations;
+	private volatile byte[] inlineData;
 	
 	public static CoreNode create(CoreFileSystem fs, FileInfo fileInfo, String path, int storageAffinity, int locationAffinity) {
 		if (fileInfo.getType().isContainer()){
@@ -51,6 +52,7 @@ public class CoreNode implements CrailNode {
 		this.storageAffinity = storageAffinity;
 		this.locationAffinity = locationAffinity;
 		this.syncOperations = new LinkedBlockingQueue<CoreSyncOperation>();
+		this.inlineData = null;
 	}	
 
 	@Override
@@ -129,6 +131,15 @@ public class CoreNode implements CrailNode {
 		return fileInfo;
 	}	
 	
+	//content of small files kept on the namenode, null for block backed files
+	byte[] getInlineData(){
+		return inlineData;
+	}
+	
+	void setInlineData(byte[] inlineData){
+		this.inlineData = inlineData;
+	}
+	
 	void addSyncOperation(CoreSyncOperation operation){
 		this.syncOperations.add(operation);
 	}
@@ -22,6 +22,7 @@
 package com.ibm.crail.core;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -43,6 +44,8 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 	private long writeHint;
 	private CrailImmediateOperation noOp;
 	private boolean open;
+	private byte[] inlineData;
+	private int inlineLength;
 	
 	public CoreOutputStream(CoreNode file, long streamId, long writeHint) throws Exception {
 		super(file, streamId, file.getCapacity());
@@ -50,6 +53,13 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		this.inFlight = new AtomicLong(0);
 		this.noOp = new CrailImmediateOperation(0);
 		this.open = true;
+		this.inlineData = null;
+		this.inlineLength = -1;
+		byte[] nodeData = file.getInlineData();
+		if (nodeData != null){
+			this.inlineData = Arrays.copyOf(nodeData, CrailConstants.INLINE_THRESHOLD);
+			this.inlineLength = nodeData.length;
+		}
 		if (CrailConstants.DEBUG){
 			LOG.info("CoreOutputStream, open, path " + file.getPath() + ", fd " + file.getFd() + ", streamId " + streamId + ", isDir " + file.getType().isDirectory() + ", writeHint " + this.writeHint);
 		}
@@ -62,6 +72,17 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		if (dataBuf.remaining() <= 0) {
 			return noOp;
 		}
+		if (inlineData != null){
+			int len = dataBuf.remaining();
+			if (inlineLength + len <= inlineData.length){
+				dataBuf.get(inlineData, inlineLength, len);
+				inlineLength += len;
+				advance(len);
+				setCapacity(position());
+				return new CrailImmediateOperation(len);
+			}
+			flushInline();
+		}
 		
 		inFlight.incrementAndGet();
 		CoreDataOperation future = dataOperation(dataBuf);
@@ -83,6 +104,9 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 			LOG.info("Cannot sync, pending operations, opcount " + inFlight.get());
 			throw new IOException("Cannot close, pending operations, opcount " + inFlight.get());
 		}		
+		if (inlineData != null){
+			return super.sync(inlineData, inlineLength);
+		}
 		return super.sync();
 	}
 	
@@ -96,6 +120,9 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		}
 		
 		sync().get();
+		if (inlineData != null){
+			node.setInlineData(Arrays.copyOf(inlineData, inlineLength));
+		}
 		updateIOStats();
 		node.closeOutputStream(this);
 		open = false;
@@ -106,6 +133,30 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 	
 	// ----------------------
 	
+	//the file outgrows the inline threshold, move the buffered content to the first block
+	private void flushInline() throws Exception {
+		byte[] data = inlineData;
+		int length = inlineLength;
+		inlineData = null;
+		inlineLength = -1;
+		node.setInlineData(null);
+		if (length == 0){
+			return;
+		}
+		
+		CrailBuffer buffer = fs.allocateBuffer();
+		try {
+			buffer.clear();
+			buffer.put(data, 0, length);
+			buffer.flip();
+			seek(0);
+			inFlight.incrementAndGet();
+			dataOperation(buffer).get();
+		} finally {
+			fs.freeBuffer(buffer);
+		}
+	}
+	
 	StorageFuture trigger(StorageEndpoint endpoint, CoreSubOperation opDesc, CrailBuffer buffer, BlockInfo block) throws Exception {
 		StorageFuture dataFuture = endpoint.write(buffer, block, opDesc.getBlockOffset());
 		return dataFuture;		
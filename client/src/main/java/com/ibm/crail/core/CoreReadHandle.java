@@ -0,0 +1,126 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailBuffer;
+import com.ibm.crail.CrailReadHandle;
+import com.ibm.crail.CrailResult;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcGetBlock;
+import com.ibm.crail.storage.StorageEndpoint;
+import com.ibm.crail.storage.StorageFuture;
+import com.ibm.crail.utils.CrailImmediateOperation;
+import com.ibm.crail.utils.CrailUtils;
+
+//read handle shared by many threads, every read works on its own offset and lookup state, block 
+//metadata and storage endpoints come from the file system wide caches
+public class CoreReadHandle extends CoreStream implements CrailReadHandle {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private AtomicLong inFlight;
+	private CrailImmediateOperation noOp;
+	private volatile boolean open;
+	
+	public CoreReadHandle(CoreNode file, long streamId) throws Exception {
+		super(file, streamId, 0);
+		this.inFlight = new AtomicLong(0);
+		this.noOp = new CrailImmediateOperation(0);
+		this.open = true;
+		if (CrailConstants.DEBUG){
+			LOG.info("CoreReadHandle: open, path  " + file.getPath() + ", fd " + file.getFd() + ", streamId " + streamId);
+		}
+	}
+	
+	public Future<CrailResult> read(long offset, CrailBuffer dataBuf) throws Exception {
+		if (!open) {
+			throw new IOException("read handle already closed");
+		}
+		if (offset < 0){
+			throw new IOException("read offset out of range " + offset);
+		}
+		if (dataBuf.remaining() <= 0) {
+			return noOp;
+		}
+		long capacity = getCapacity();
+		if (offset >= capacity) {
+			return null;
+		}
+		
+		if (capacity - offset < dataBuf.remaining()){
+			dataBuf.limit(dataBuf.position() + (int) (capacity - offset));
+		}
+		byte[] inlineData = node.getInlineData();
+		if (inlineData != null){
+			int len = dataBuf.remaining();
+			dataBuf.put(inlineData, (int) offset, len);
+			return new CrailImmediateOperation(len);
+		}
+		
+		inFlight.incrementAndGet();
+		CoreDataOperation future = dataOperation(dataBuf, offset, new HashMap<Integer, CoreSubOperation>(), new LinkedList<RpcFuture<RpcGetBlock>>());
+		if (future.isSynchronous()){
+			future.get();
+		}
+		return future;
+	}
+	
+	public long getCapacity() {
+		return getFile().getCapacity();
+	}
+	
+	public void close() throws Exception {
+		if (!open){
+			return;
+		}
+		if (inFlight.get() != 0){
+			LOG.info("Cannot close, pending operations, opcount " + inFlight.get() + ", path " + getFile().getPath());
+			throw new IOException("Cannot close, pending operations, opcount " + inFlight.get());
+		}
+		
+		updateIOStats();
+		fs.unregisterReadHandle(this);
+		open = false;
+		if (CrailConstants.DEBUG){
+			LOG.info("CoreReadHandle, close, path " + this.getFile().getPath() + ", fd " + getFile().getFd() + ", streamId " + getStreamId());
+		}	
+	}
+	
+	// --------------------------
+	
+	StorageFuture trigger(StorageEndpoint endpoint, CoreSubOperation opDesc, CrailBuffer buffer, BlockInfo block) throws Exception {
+		StorageFuture future = endpoint.read(buffer, block, opDesc.getBlockOffset());
+		return future;
+	}	
+	
+	void update(long newCapacity) {
+		inFlight.decrementAndGet();
+	}
+}
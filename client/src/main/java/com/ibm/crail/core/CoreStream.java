@@ -37,6 +37,7 @@ import com.ibm.crail.rpc.RpcErrors;
 import com.ibm.crail.rpc.RpcConnection;
 import com.ibm.crail.rpc.RpcGetBlock;
 import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcPollFile;
 import com.ibm.crail.storage.StorageEndpoint;
 import com.ibm.crail.storage.StorageFuture;
 import com.ibm.crail.utils.BufferCheckpoint;
@@ -58,7 +59,7 @@ public abstract class CoreStream {
 	private BufferCheckpoint bufferCheckpoint;
 	private FileInfo fileInfo;
 	private long position;
-	private long syncedCapacity;
+	private volatile long syncedCapacity;
 	private long streamId;
 	private CoreIOStatistics ioStats;
 	private HashMap<Integer, CoreSubOperation> blockMap;
@@ -89,13 +90,30 @@ public abstract class CoreStream {
 	final CoreDataOperation dataOperation(CrailBuffer dataBuf) throws Exception {
 		blockMap.clear();
 		pendingBlocks.clear();
-		CoreDataOperation multiOperation = new CoreDataOperation(this, dataBuf);
+		CoreDataOperation multiOperation = dataOperation(dataBuf, position, blockMap, pendingBlocks);
+		position += multiOperation.getInProcessLen();
+		return multiOperation;
+	}
+	
+	//positional variant, the stream position is left untouched
+	final CoreDataOperation dataOperation(CrailBuffer dataBuf, long fileOffset) throws Exception {
+		blockMap.clear();
+		pendingBlocks.clear();
+		return dataOperation(dataBuf, fileOffset, blockMap, pendingBlocks);
+	}
+	
+	//works on the given offset and maps only, concurrent callers each pass their own maps 
+	final CoreDataOperation dataOperation(CrailBuffer dataBuf, long fileOffset, HashMap<Integer, CoreSubOperation> blockMap, LinkedList<RpcFuture<RpcGetBlock>> pendingBlocks) throws Exception {
+		CoreDataOperation multiOperation = new CoreDataOperation(this, dataBuf, fileOffset);
+		long position = fileOffset;
 		
-		//compute off, len for the fragments, start transfer or start RPC if block info is missing
+		//compute off, len for the fragments, start transfer or start RPC if block info is missing,
+		//fragments of striped files end at stripe unit boundaries and are addressed in block space
 		while(multiOperation.remaining() > 0){
-			long blockRemaining = blockRemaining();
+			long blockRemaining = fileInfo.blockRemaining(position);
 			int opLen = CrailUtils.minFileBuf(blockRemaining, multiOperation.remaining());	
-			CoreSubOperation subOperation = new CoreSubOperation(fileInfo.getFd(), position, multiOperation.getCurrentBufferPosition(), opLen);
+			long blockAddress = fileInfo.blockAddress(position);
+			CoreSubOperation subOperation = new CoreSubOperation(fileInfo.getFd(), blockAddress, multiOperation.getCurrentBufferPosition(), opLen);
 //			LOG.info("OpDesc: " + opDesc.toString());
 			ioStats.incTotalOps((long) opLen);
 			
@@ -109,8 +127,7 @@ public abstract class CoreStream {
 				blockMap.put(rpcFuture.getTicket(), subOperation);
 				pendingBlocks.add(rpcFuture);
 			} else {
-				this.syncedCapacity = fileInfo.getCapacity();
-				RpcFuture<RpcGetBlock> rpcFuture = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, node.storageAffinity(), node.locationAffinity(), syncedCapacity);
+				RpcFuture<RpcGetBlock> rpcFuture = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), blockAddress, node.storageAffinity(), node.locationAffinity(), syncOnBlock());
 				blockMap.put(rpcFuture.getTicket(), subOperation);
 				pendingBlocks.add(rpcFuture);
 			}
@@ -141,8 +158,13 @@ public abstract class CoreStream {
 				LOG.info("inputStream: " + RpcErrors.messages[getBlockRes.getError()]);
 				throw new IOException(RpcErrors.messages[getBlockRes.getError()]);
 			}				
-			BlockInfo block = getBlockRes.getBlockInfo();
+			//the response goes back to the connection, the cache keeps its own copy of the block
+			BlockInfo block = new BlockInfo();
+			block.setBlockInfo(getBlockRes.getBlockInfo());
 			CoreSubOperation subOperation = blockMap.get(rpcFuture.getTicket());
+			if (!rpcFuture.isPrefetched()){
+				rpcFuture.release();
+			}
 			StorageFuture subFuture = prepareAndTrigger(subOperation, dataBuf, block);
 			multiOperation.add(subFuture);
 			blockCache.put(subOperation.key(), block);
@@ -157,16 +179,29 @@ public abstract class CoreStream {
 		return multiOperation;
 	}
 	
+	//issues getBlock RPCs for all blocks of the range that are not known yet, so that the 
+	//lookups of several ranges overlap instead of being resolved one range at a time
+	final void prefetchMetadata(long fileOffset, long len) throws Exception {
+		long end = fileOffset + len;
+		for (long offset = fileOffset; offset < end; offset += fileInfo.blockRemaining(offset)){
+			prefetchMetadata(offset);
+		}
+	}
+	
 	final void prefetchMetadata() throws Exception {
-		long key = CoreSubOperation.createKey(fileInfo.getFd(), position);
+		prefetchMetadata(position);
+	}
+	
+	private void prefetchMetadata(long position) throws Exception {
+		long blockAddress = fileInfo.blockAddress(position);
+		long key = CoreSubOperation.createKey(fileInfo.getFd(), blockAddress);
 		if (blockCache.containsKey(key)){
 			return;
 		}
 		if (nextBlockCache.containsKey(key)){
 			return;
 		}
-		this.syncedCapacity = fileInfo.getCapacity();
-		RpcFuture<RpcGetBlock> nextBlock = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, node.storageAffinity(), node.locationAffinity(), syncedCapacity);
+		RpcFuture<RpcGetBlock> nextBlock = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), blockAddress, node.storageAffinity(), node.locationAffinity(), syncOnBlock());
 		nextBlock.setPrefetched(true);
 		nextBlockCache.put(key, nextBlock);
 		this.ioStats.incPrefetchedOps();
@@ -182,10 +217,52 @@ public abstract class CoreStream {
 	}	
 	
 	Future<Void> sync() throws IOException {
+		return sync(null, -1);
+	}
+	
+	//stream files are read while they are written, waits until the writer has published data 
+	//beyond position, false once the writer has closed the file without doing so
+	boolean awaitCapacity(long position) throws Exception {
+		if (!node.getType().isStreamFile()){
+			return false;
+		}
+		long deadline = System.currentTimeMillis() + CrailConstants.STREAM_TIMEOUT;
+		long wait = 0;
+		while(true){
+			RpcPollFile pollRes = namenodeClientRpc.pollFile(fileInfo.getFd()).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (pollRes.getError() != RpcErrors.ERR_OK){
+				LOG.info("stream: " + RpcErrors.messages[pollRes.getError()]);
+				throw new IOException(RpcErrors.messages[pollRes.getError()]);
+			}
+			if (fileInfo.setCapacity(pollRes.getCapacity()) > position){
+				return true;
+			}
+			if (pollRes.isSealed()){
+				return false;
+			}
+			if (System.currentTimeMillis() >= deadline){
+				throw new IOException("stream file not extended within " + CrailConstants.STREAM_TIMEOUT + "ms, fd " + fileInfo.getFd() + ", position " + position);
+			}
+			Thread.sleep(wait);
+			wait = Math.min(Math.max(1, wait*2), CrailConstants.STREAM_POLL);
+		}
+	}
+	
+	//a block request hands the current capacity to the namenode, except for stream files whose 
+	//readers must only see data the writer has published with sync
+	private long syncOnBlock(){
+		if (!node.getType().isStreamFile()){
+			syncedCapacity = fileInfo.getCapacity();
+		}
+		return syncedCapacity;
+	}
+	
+	Future<Void> sync(byte[] inlineData, int inlineLength) throws IOException {
 		Future<Void> future = null;
 		if (fileInfo.getToken() > 0 && syncedCapacity < fileInfo.getCapacity()){
 			syncedCapacity = fileInfo.getCapacity();
-			future = new SyncNodeFuture(namenodeClientRpc.setFile(fileInfo, false));	
+			fs.getMetaDataCache().invalidate(node.getPath());
+			future = new SyncNodeFuture(namenodeClientRpc.setFile(fileInfo, false, inlineData, inlineLength));	
 		} else {
 			future = new NoOperation();
 		}
@@ -193,6 +270,10 @@ public abstract class CoreStream {
 		return future;
 	}
 	
+	void advance(int len) {
+		position += len;
+	}
+	
 	void updateIOStats() {
 		ioStats.setCapacity(fileInfo.getCapacity());
 	}
@@ -223,12 +304,6 @@ public abstract class CoreStream {
 		fileInfo.setCapacity(currentCapacity);
 	}	
 	
-	private long blockRemaining(){
-		long blockOffset = position % CrailConstants.BLOCK_SIZE;
-		long blockRemaining = CrailConstants.BLOCK_SIZE - blockOffset;
-		return blockRemaining;
-	}
-	
 	private StorageFuture prepareAndTrigger(CoreSubOperation opDesc, CrailBuffer dataBuf, BlockInfo block) throws Exception {
 		try {
 			StorageEndpoint endpoint = endpointCache.getDataEndpoint(block.getDnInfo());
@@ -28,6 +28,8 @@ import com.ibm.crail.CrailStatistics.StatisticsProvider;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.utils.CrailUtils;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -38,6 +40,7 @@ import com.ibm.crail.*;
 public abstract class BufferCache implements CrailStatistics.StatisticsProvider {
 	private static final Logger LOG = CrailUtils.getLogger();
 	private LinkedBlockingQueue<CrailBuffer> cache;
+	private ConcurrentSkipListMap<Long, CrailBuffer> regions;
 	
 	private AtomicLong cacheGet;
 	private AtomicLong cachePut;
@@ -50,6 +53,7 @@ public abstract class BufferCache implements CrailStatistics.StatisticsProvider
 	
 	public BufferCache() throws IOException{
 		this.cache = new LinkedBlockingQueue<CrailBuffer>();
+		this.regions = new ConcurrentSkipListMap<Long, CrailBuffer>();
 		
 		this.cacheGet = new AtomicLong(0);
 		this.cachePut = new AtomicLong(0);
@@ -103,6 +107,7 @@ public abstract class BufferCache implements CrailStatistics.StatisticsProvider
 					} else {
 						cacheMissesMap.incrementAndGet();
 					}
+					regions.putIfAbsent(buffer.getRegion().address(), buffer.getRegion());
 				}
 			}
 		} 
@@ -123,8 +128,23 @@ public abstract class BufferCache implements CrailStatistics.StatisticsProvider
 		cache.add(buffer);
 	}	
 	
+	//a view of memory handed out by this cache, tied to the region the memory was allocated in. Storage tiers 
+	//register memory per region, so such views can be passed to them without copying. Null for other memory
+	public CrailBuffer wrap(ByteBuffer buffer) throws IOException {
+		if (!buffer.isDirect()){
+			return null;
+		}
+		long address = CrailUtils.getAddress(buffer);
+		Map.Entry<Long, CrailBuffer> entry = regions.floorEntry(address);
+		if (entry == null || address + buffer.capacity() > entry.getKey() + entry.getValue().capacity()){
+			return null;
+		}
+		return new OffHeapBuffer(entry.getValue(), buffer);
+	}
+	
 	public void close(){
 		cache.clear();
+		regions.clear();
 	}
 	
 	public abstract CrailBuffer allocateBuffer() throws IOException;
@@ -0,0 +1,129 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.metadata;
+
+import java.nio.ByteBuffer;
+
+public class CapacityInfo {
+	public static final int CSIZE = 40;
+	
+	private int storageClass;
+	private int dataNodeCount;
+	private long totalBlocks;
+	private long freeBlocks;
+	private long allocatedBlocks;
+	private double allocationRate;
+	
+	public CapacityInfo(){
+		this.storageClass = 0;
+		this.dataNodeCount = 0;
+		this.totalBlocks = 0;
+		this.freeBlocks = 0;
+		this.allocatedBlocks = 0;
+		this.allocationRate = 0;
+	}
+	
+	public CapacityInfo(int storageClass, int dataNodeCount, long totalBlocks, long freeBlocks, long allocatedBlocks, double allocationRate){
+		this.storageClass = storageClass;
+		this.dataNodeCount = dataNodeCount;
+		this.totalBlocks = totalBlocks;
+		this.freeBlocks = freeBlocks;
+		this.allocatedBlocks = allocatedBlocks;
+		this.allocationRate = allocationRate;
+	}
+	
+	public int write(ByteBuffer buffer){
+		buffer.putInt(storageClass);
+		buffer.putInt(dataNodeCount);
+		buffer.putLong(totalBlocks);
+		buffer.putLong(freeBlocks);
+		buffer.putLong(allocatedBlocks);
+		buffer.putDouble(allocationRate);
+		return CSIZE;
+	}
+	
+	public void update(ByteBuffer buffer) {
+		this.storageClass = buffer.getInt();
+		this.dataNodeCount = buffer.getInt();
+		this.totalBlocks = buffer.getLong();
+		this.freeBlocks = buffer.getLong();
+		this.allocatedBlocks = buffer.getLong();
+		this.allocationRate = buffer.getDouble();
+	}
+	
+	public void setCapacityInfo(CapacityInfo info){
+		this.storageClass = info.getStorageClass();
+		this.dataNodeCount = info.getDataNodeCount();
+		this.totalBlocks = info.getTotalBlocks();
+		this.freeBlocks = info.getFreeBlocks();
+		this.allocatedBlocks = info.getAllocatedBlocks();
+		this.allocationRate = info.getAllocationRate();
+	}
+	
+	public void reset(){
+		this.storageClass = 0;
+		this.dataNodeCount = 0;
+		this.totalBlocks = 0;
+		this.freeBlocks = 0;
+		this.allocatedBlocks = 0;
+		this.allocationRate = 0;
+	}
+
+	public int getStorageClass() {
+		return storageClass;
+	}
+
+	public int getDataNodeCount() {
+		return dataNodeCount;
+	}
+
+	public long getTotalBlocks() {
+		return totalBlocks;
+	}
+
+	public long getFreeBlocks() {
+		return freeBlocks;
+	}
+	
+	public long getReservedBlocks() {
+		return Math.max(totalBlocks - freeBlocks, 0);
+	}
+
+	//number of blocks handed out since the namenode started
+	public long getAllocatedBlocks() {
+		return allocatedBlocks;
+	}
+
+	//blocks per second, averaged over the namenode's sampling interval
+	public double getAllocationRate() {
+		return allocationRate;
+	}
+	
+	public double getUtilization() {
+		return totalBlocks > 0 ? ((double) getReservedBlocks()) / ((double) totalBlocks) : 0.0;
+	}
+
+	@Override
+	public String toString() {
+		return "storageClass " + storageClass + ", dataNodes " + dataNodeCount + ", totalBlocks " + totalBlocks + ", freeBlocks " + freeBlocks + ", reservedBlocks " + getReservedBlocks() + ", allocatedBlocks " + allocatedBlocks + ", allocationRate " + String.format("%.2f", allocationRate);
+	}
+}
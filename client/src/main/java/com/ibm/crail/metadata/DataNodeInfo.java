@@ -56,7 +56,8 @@ public class DataNodeInfo {
 		this.port = port;
 	}	
 	
-	void setDataNodeInfo(DataNodeInfo info) {
+	public void setDataNodeInfo(DataNodeInfo info) {
+		this.key = 0;
 		this.storageTier = info.getStorageTier();
 		this.locationAffinity = info.getLocationAffinity();
 		for (int i = 0; i < ipAddress.length; i++){
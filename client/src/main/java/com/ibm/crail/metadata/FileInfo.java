@@ -28,9 +28,12 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import com.ibm.crail.CrailNodeType;
 import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.utils.CrailUtils;
 
 public class FileInfo {
 	public static final int CSIZE = 44;
+	//stripe width and unit as variable-length numbers
+	public static final int STRIPE_CSIZE = 10;
 	
 	private long fd;
 	protected AtomicLong capacity;
@@ -38,6 +41,11 @@ public class FileInfo {
 	private long dirOffset;
 	private long token;
 	private long modificationTime;
+	//bumped by the namenode whenever the node is modified, lets clients validate cached metadata
+	private volatile long version;
+	//striped files lay out stripe units round-robin across groups of stripeWidth blocks
+	private int stripeWidth;
+	private int stripeUnit;
 	
 	public FileInfo(){
 		this(-1, CrailNodeType.DATAFILE);
@@ -50,6 +58,9 @@ public class FileInfo {
 		this.capacity = new AtomicLong(0);
 		this.token = 0;
 		this.modificationTime = 0;
+		this.version = 0;
+		this.stripeWidth = 1;
+		this.stripeUnit = 0;
 	}
 	
 	public void setFileInfo(FileInfo fileInfo){
@@ -60,6 +71,9 @@ public class FileInfo {
 		this.capacity.set(fileInfo.getCapacity());
 		this.token = fileInfo.getToken();
 		this.modificationTime = fileInfo.getModificationTime();
+		this.version = fileInfo.getVersion();
+		this.stripeWidth = fileInfo.getStripeWidth();
+		this.stripeUnit = fileInfo.getStripeUnit();
 	}
 	
 	public int write(ByteBuffer buffer, boolean shipToken){
@@ -84,6 +98,45 @@ public class FileInfo {
 		dirOffset = buffer.getLong();
 		token = buffer.getLong();
 		modificationTime = buffer.getLong();
+		stripeWidth = 1;
+		stripeUnit = 0;
+	}
+	
+	//compact encoding, numbers are variable-length and a token that is not shipped takes one byte
+	public int writeCompact(ByteBuffer buffer, boolean shipToken){
+		int written = CrailUtils.putVarLong(buffer, fd);
+		written += CrailUtils.putVarLong(buffer, capacity.get());
+		buffer.put((byte) type.getLabel());
+		written += 1;
+		written += CrailUtils.putVarLong(buffer, dirOffset);
+		written += CrailUtils.putVarLong(buffer, shipToken ? token : 0);
+		written += CrailUtils.putVarLong(buffer, modificationTime);
+		written += CrailUtils.putVarLong(buffer, version);
+		return written;
+	}
+	
+	public void updateCompact(ByteBuffer buffer){
+		fd = CrailUtils.getVarLong(buffer);
+		capacity.set(CrailUtils.getVarLong(buffer));
+		type = CrailNodeType.parse(buffer.get());
+		dirOffset = CrailUtils.getVarLong(buffer);
+		token = CrailUtils.getVarLong(buffer);
+		modificationTime = CrailUtils.getVarLong(buffer);
+		version = CrailUtils.getVarLong(buffer);
+		stripeWidth = 1;
+		stripeUnit = 0;
+	}
+	
+	//the stripe layout follows the compact encoding from protocol version 2 on, earlier versions only know plain files
+	public int writeStripe(ByteBuffer buffer){
+		int written = CrailUtils.putVarLong(buffer, stripeWidth);
+		written += CrailUtils.putVarLong(buffer, stripeUnit);
+		return written;
+	}
+	
+	public void updateStripe(ByteBuffer buffer){
+		stripeWidth = (int) CrailUtils.getVarLong(buffer);
+		stripeUnit = (int) CrailUtils.getVarLong(buffer);
 	}
 	
 	public long getCapacity() {
@@ -131,6 +184,52 @@ public class FileInfo {
 		this.modificationTime = modificationTime;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+
+	protected void setVersion(long version) {
+		this.version = version;
+	}
+
+	public int getStripeWidth() {
+		return stripeWidth;
+	}
+
+	public int getStripeUnit() {
+		return stripeUnit;
+	}
+
+	public void setStripe(int stripeWidth, int stripeUnit) {
+		this.stripeWidth = stripeWidth;
+		this.stripeUnit = stripeUnit;
+	}
+	
+	public boolean isStriped() {
+		return stripeWidth > 1;
+	}
+	
+	//maps a file offset to the offset within the file's sequence of blocks, for striped files 
+	//consecutive stripe units go to consecutive blocks of a group of stripeWidth blocks
+	public long blockAddress(long offset) {
+		if (stripeWidth <= 1){
+			return offset;
+		}
+		long groupSize = CrailConstants.BLOCK_SIZE*stripeWidth;
+		long unit = (offset % groupSize) / stripeUnit;
+		long block = (offset / groupSize)*stripeWidth + unit % stripeWidth;
+		long row = unit / stripeWidth;
+		return block*CrailConstants.BLOCK_SIZE + row*stripeUnit + offset % stripeUnit;
+	}
+	
+	//number of bytes from the offset that are contiguous within one block
+	public long blockRemaining(long offset) {
+		if (stripeWidth <= 1){
+			return CrailConstants.BLOCK_SIZE - offset % CrailConstants.BLOCK_SIZE;
+		}
+		return stripeUnit - offset % stripeUnit;
+	}
+
 	public long getDirOffset() {
 		return dirOffset;
 	}
@@ -144,7 +243,7 @@ public class FileInfo {
 	}
 
 	public String toString() {
-		return "fd " + fd + ", capacity " + capacity + ", type " + type.getLabel() + ", dirOffset " + dirOffset + ", token " + token;
+		return "fd " + fd + ", capacity " + capacity + ", type " + type.getLabel() + ", dirOffset " + dirOffset + ", token " + token + ", stripeWidth " + stripeWidth;
 	}
 
 	public CrailNodeType getType(){
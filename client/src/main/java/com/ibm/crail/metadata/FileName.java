@@ -82,6 +82,30 @@ public class FileName {
 		}
 	}	
 
+	//compact encoding, only the components actually used by the path are shipped
+	public int writeCompact(ByteBuffer buffer) {
+		buffer.put((byte) length);
+		for (int i = 0; i < length; i++){
+			buffer.putInt(components[i]);
+		}
+		return 1 + length*4;
+	}
+	
+	public void updateCompact(ByteBuffer buffer) throws IOException {
+		int oldLength = length;
+		int newLength = buffer.get() & 0xFF;
+		if (newLength > components.length){
+			throw new IOException("filename with too many tokens, tokens " + newLength);
+		}
+		for (int i = 0; i < newLength; i++){
+			components[i] = buffer.getInt();
+		}
+		for (int i = newLength; i < oldLength; i++){
+			components[i] = 0;
+		}
+		this.length = newLength;
+	}
+
 	public int getFileComponent(){
 		return getComponent(length - 1);
 	}	
@@ -0,0 +1,183 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.metadata;
+
+import java.nio.ByteBuffer;
+
+//Latency summary of one namenode operation type, all times in nanoseconds
+public class OperationStatistics {
+	public static final int CSIZE = 4 + 11*8;
+	
+	private int cmd;
+	private long ops;
+	private long errors;
+	private long waitP50;
+	private long waitP99;
+	private long waitP999;
+	private long waitMax;
+	private long serviceP50;
+	private long serviceP99;
+	private long serviceP999;
+	private long serviceMax;
+	private long lockWait;
+	
+	public OperationStatistics(){
+		reset(0);
+	}
+	
+	public void reset(int cmd){
+		this.cmd = cmd;
+		this.ops = 0;
+		this.errors = 0;
+		this.waitP50 = 0;
+		this.waitP99 = 0;
+		this.waitP999 = 0;
+		this.waitMax = 0;
+		this.serviceP50 = 0;
+		this.serviceP99 = 0;
+		this.serviceP999 = 0;
+		this.serviceMax = 0;
+		this.lockWait = 0;
+	}
+	
+	public int write(ByteBuffer buffer){
+		buffer.putInt(cmd);
+		buffer.putLong(ops);
+		buffer.putLong(errors);
+		buffer.putLong(waitP50);
+		buffer.putLong(waitP99);
+		buffer.putLong(waitP999);
+		buffer.putLong(waitMax);
+		buffer.putLong(serviceP50);
+		buffer.putLong(serviceP99);
+		buffer.putLong(serviceP999);
+		buffer.putLong(serviceMax);
+		buffer.putLong(lockWait);
+		return CSIZE;
+	}
+	
+	public void update(ByteBuffer buffer) {
+		this.cmd = buffer.getInt();
+		this.ops = buffer.getLong();
+		this.errors = buffer.getLong();
+		this.waitP50 = buffer.getLong();
+		this.waitP99 = buffer.getLong();
+		this.waitP999 = buffer.getLong();
+		this.waitMax = buffer.getLong();
+		this.serviceP50 = buffer.getLong();
+		this.serviceP99 = buffer.getLong();
+		this.serviceP999 = buffer.getLong();
+		this.serviceMax = buffer.getLong();
+		this.lockWait = buffer.getLong();
+	}
+	
+	public void setStatistics(OperationStatistics statistics){
+		this.cmd = statistics.cmd;
+		this.ops = statistics.ops;
+		this.errors = statistics.errors;
+		this.waitP50 = statistics.waitP50;
+		this.waitP99 = statistics.waitP99;
+		this.waitP999 = statistics.waitP999;
+		this.waitMax = statistics.waitMax;
+		this.serviceP50 = statistics.serviceP50;
+		this.serviceP99 = statistics.serviceP99;
+		this.serviceP999 = statistics.serviceP999;
+		this.serviceMax = statistics.serviceMax;
+		this.lockWait = statistics.lockWait;
+	}
+	
+	public void setCounts(long ops, long errors, long lockWait){
+		this.ops = ops;
+		this.errors = errors;
+		this.lockWait = lockWait;
+	}
+	
+	public void setWait(long p50, long p99, long p999, long max){
+		this.waitP50 = p50;
+		this.waitP99 = p99;
+		this.waitP999 = p999;
+		this.waitMax = max;
+	}
+	
+	public void setService(long p50, long p99, long p999, long max){
+		this.serviceP50 = p50;
+		this.serviceP99 = p99;
+		this.serviceP999 = p999;
+		this.serviceMax = max;
+	}
+
+	public int getCmd() {
+		return cmd;
+	}
+
+	public long getOps() {
+		return ops;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public long getWaitP50() {
+		return waitP50;
+	}
+
+	public long getWaitP99() {
+		return waitP99;
+	}
+
+	public long getWaitP999() {
+		return waitP999;
+	}
+
+	public long getWaitMax() {
+		return waitMax;
+	}
+
+	public long getServiceP50() {
+		return serviceP50;
+	}
+
+	public long getServiceP99() {
+		return serviceP99;
+	}
+
+	public long getServiceP999() {
+		return serviceP999;
+	}
+
+	public long getServiceMax() {
+		return serviceMax;
+	}
+
+	public long getLockWait() {
+		return lockWait;
+	}
+
+	@Override
+	public String toString() {
+		return "ops " + ops + ", errors " + errors 
+				+ ", wait [us] p50 " + waitP50/1000.0 + " p99 " + waitP99/1000.0 + " p999 " + waitP999/1000.0 + " max " + waitMax/1000.0
+				+ ", service [us] p50 " + serviceP50/1000.0 + " p99 " + serviceP99/1000.0 + " p999 " + serviceP999/1000.0 + " max " + serviceMax/1000.0
+				+ ", lockWait [ms] " + lockWait/1000000.0;
+	}
+}
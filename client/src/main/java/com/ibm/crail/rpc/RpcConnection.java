@@ -31,14 +31,21 @@ import com.ibm.crail.metadata.FileName;
 
 public interface RpcConnection {
 	public abstract RpcFuture<RpcCreateFile> createFile(
-			FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity) throws IOException;
+			FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth, int stripeUnit) throws IOException;
 
 	public abstract RpcFuture<RpcGetFile> getFile(FileName filename,
 			boolean writeable) throws IOException;
 
+	//knownFd/knownVersion identify cached metadata, the response is marked not modified if it is still current
+	public abstract RpcFuture<RpcGetFile> getFile(FileName filename,
+			boolean writeable, long knownFd, long knownVersion) throws IOException;
+
 	public abstract RpcFuture<RpcVoid> setFile(FileInfo fileInfo,
 			boolean close) throws IOException;
 
+	public abstract RpcFuture<RpcVoid> setFile(FileInfo fileInfo,
+			boolean close, byte[] inlineData, int inlineLength) throws IOException;
+
 	public abstract RpcFuture<RpcDeleteFile> removeFile(
 			FileName filename, boolean recursive) throws IOException;
 
@@ -57,12 +64,32 @@ public interface RpcConnection {
 	public abstract RpcFuture<RpcGetDataNode> getDataNode(
 			DataNodeInfo dnInfo) throws Exception;
 
+	public abstract RpcFuture<RpcGetCapacity> getCapacity(
+			int storageClass, int dataNodeIndex) throws Exception;
+
+	public abstract RpcFuture<RpcMoveBlock> moveBlock(int op, long fd,
+			long position, BlockInfo srcBlock, BlockInfo dstBlock) throws Exception;
+
+	//op is one of RpcLease.OP_*, leaseId is ignored on acquire, duration is in milliseconds
+	public abstract RpcFuture<RpcLease> leaseFile(int op, long fd,
+			long leaseId, long duration) throws Exception;
+
+	public abstract RpcFuture<RpcPollFile> pollFile(long fd)
+			throws Exception;
+
+	public abstract RpcFuture<RpcGetStats> getStats(short cmd)
+			throws Exception;
+
 	public abstract RpcFuture<RpcVoid> dumpNameNode()
 			throws Exception;
 
 	public abstract RpcFuture<RpcPing> pingNameNode()
 			throws Exception;
 	
+	//tickets of the futures issued from here on satisfy ticket % count == index, which keeps 
+	//them unique across the count connections of a pool
+	public abstract void setTicketRange(int index, int count);
+	
 	@SuppressWarnings("unchecked")
 	public static RpcConnection createInstance(String name) throws Exception {
 		Class<?> nodeClass = Class.forName(name);
@@ -0,0 +1,164 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.rpc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+
+//spreads the namenode traffic of one file system over several connections. Each thread is 
+//assigned a connection round robin on its first call and sticks to it. Every connection tags 
+//its own tickets from a disjoint range, so futures are handed out as they come from the connection
+public class RpcConnectionPool implements RpcConnection {
+	private RpcConnection[] connections;
+	private AtomicInteger nextSlot;
+	private ThreadLocal<Integer> slot;
+	
+	public RpcConnectionPool(RpcClient rpcClient, InetSocketAddress address, int size) throws Exception {
+		this.connections = new RpcConnection[size];
+		for (int i = 0; i < size; i++){
+			connections[i] = rpcClient.connect(address);
+			connections[i].setTicketRange(i, size);
+		}
+		this.nextSlot = new AtomicInteger(0);
+		this.slot = new ThreadLocal<Integer>(){
+			@Override
+			protected Integer initialValue() {
+				return (nextSlot.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+			}
+		};
+	}
+	
+	public int size(){
+		return connections.length;
+	}
+
+	@Override
+	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth, int stripeUnit) throws IOException {
+		return connections[slot.get()].createFile(filename, type, storageAffinity, locationAffinity, stripeWidth, stripeUnit);
+	}
+
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable) throws IOException {
+		return connections[slot.get()].getFile(filename, writeable);
+	}
+
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable, long knownFd, long knownVersion) throws IOException {
+		return connections[slot.get()].getFile(filename, writeable, knownFd, knownVersion);
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close) throws IOException {
+		return connections[slot.get()].setFile(fileInfo, close);
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close, byte[] inlineData, int inlineLength) throws IOException {
+		return connections[slot.get()].setFile(fileInfo, close, inlineData, inlineLength);
+	}
+
+	@Override
+	public RpcFuture<RpcDeleteFile> removeFile(FileName filename, boolean recursive) throws IOException {
+		return connections[slot.get()].removeFile(filename, recursive);
+	}
+
+	@Override
+	public RpcFuture<RpcRenameFile> renameFile(FileName srcHash, FileName dstHash) throws IOException {
+		return connections[slot.get()].renameFile(srcHash, dstHash);
+	}
+
+	@Override
+	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position, int storageAffinity, int locationAffinity, long capacity) throws IOException {
+		return connections[slot.get()].getBlock(fd, token, position, storageAffinity, locationAffinity, capacity);
+	}
+
+	@Override
+	public RpcFuture<RpcGetLocation> getLocation(FileName fileName, long position) throws IOException {
+		return connections[slot.get()].getLocation(fileName, position);
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
+		return connections[slot.get()].setBlock(blockInfo);
+	}
+
+	@Override
+	public RpcFuture<RpcGetDataNode> getDataNode(DataNodeInfo dnInfo) throws Exception {
+		return connections[slot.get()].getDataNode(dnInfo);
+	}
+
+	@Override
+	public RpcFuture<RpcGetCapacity> getCapacity(int storageClass, int dataNodeIndex) throws Exception {
+		return connections[slot.get()].getCapacity(storageClass, dataNodeIndex);
+	}
+
+	@Override
+	public RpcFuture<RpcMoveBlock> moveBlock(int op, long fd, long position, BlockInfo srcBlock, BlockInfo dstBlock) throws Exception {
+		return connections[slot.get()].moveBlock(op, fd, position, srcBlock, dstBlock);
+	}
+
+	@Override
+	public RpcFuture<RpcLease> leaseFile(int op, long fd, long leaseId, long duration) throws Exception {
+		return connections[slot.get()].leaseFile(op, fd, leaseId, duration);
+	}
+
+	@Override
+	public RpcFuture<RpcPollFile> pollFile(long fd) throws Exception {
+		return connections[slot.get()].pollFile(fd);
+	}
+
+	@Override
+	public RpcFuture<RpcGetStats> getStats(short cmd) throws Exception {
+		return connections[slot.get()].getStats(cmd);
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> dumpNameNode() throws Exception {
+		return connections[slot.get()].dumpNameNode();
+	}
+
+	@Override
+	public RpcFuture<RpcPing> pingNameNode() throws Exception {
+		return connections[slot.get()].pingNameNode();
+	}
+	
+	@Override
+	public void setTicketRange(int index, int count) {
+		throw new UnsupportedOperationException("connection pools cannot be nested");
+	}
+	
+	//maps a ticket of a connection into the range of the connection with the given index, 
+	//tickets stay positive and wrap around within the range instead of overflowing
+	public static int tagTicket(int ticket, int index, int count){
+		if (count <= 1){
+			return ticket;
+		}
+		int range = Integer.MAX_VALUE / count;
+		return ((ticket & Integer.MAX_VALUE) % range) * count + index;
+	}
+}
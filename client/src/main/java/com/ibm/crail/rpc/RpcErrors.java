@@ -27,7 +27,7 @@ import com.ibm.crail.utils.CrailUtils;
 
 public class RpcErrors {
 	private static final Logger LOG = CrailUtils.getLogger();
-	public static String[] messages = new String[32];	
+	public static String[] messages = new String[36];	
 	
 	//errors
 	public static short ERR_OK = 0;
@@ -59,6 +59,13 @@ public class RpcErrors {
 	public static short ERR_DIR_LOCATION_AFFINITY_MISMATCH = 26;
 	public static short ERR_ADD_BLOCK_FAILED = 27;
 	public static short ERR_CREATE_FILE_BUG = 28;
+	public static short ERR_INVALID_STORAGE_CLASS = 29;
+	public static short ERR_BLOCK_MOVE_FAILED = 30;
+	public static short ERR_RPC_THROTTLED = 31;
+	public static short ERR_INVALID_STRIPE = 32;
+	public static short ERR_FILE_LEASED = 33;
+	public static short ERR_LEASE_INVALID = 34;
+	public static short ERR_BLOCK_CHANGED = 35;
 	
 	static {
 		messages[ERR_OK] = "ERROR: No error, all fine";
@@ -90,5 +97,12 @@ public class RpcErrors {
 		messages[ERR_DIR_LOCATION_AFFINITY_MISMATCH] = "Directories cannot have local affinity";
 		messages[ERR_ADD_BLOCK_FAILED] = "Could not add block";
 		messages[ERR_CREATE_FILE_BUG] = "Could not retrieve parent block";
+		messages[ERR_INVALID_STORAGE_CLASS] = "ERROR: Invalid storage class";
+		messages[ERR_BLOCK_MOVE_FAILED] = "ERROR: Block move not prepared or not possible";
+		messages[ERR_RPC_THROTTLED] = "ERROR: RPC rejected, client exceeds its namenode share";
+		messages[ERR_INVALID_STRIPE] = "ERROR: Stripe unit must divide the block size";
+		messages[ERR_FILE_LEASED] = "ERROR: File blocks are leased by a client";
+		messages[ERR_LEASE_INVALID] = "ERROR: Lease unknown or expired";
+		messages[ERR_BLOCK_CHANGED] = "ERROR: Block changed while being moved";
 	}
 }
@@ -30,5 +30,9 @@ public interface RpcFuture<T> extends Future<T> {
 	public abstract boolean isPrefetched();
 
 	public abstract void setPrefetched(boolean prefetched);
+	
+	//hands a completed future back to the connection, which may reuse it together with its 
+	//response for a later call. Neither the future nor the response may be accessed afterwards
+	public abstract void release();
 
 }
\ No newline at end of file
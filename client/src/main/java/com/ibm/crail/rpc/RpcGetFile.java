@@ -27,4 +27,7 @@ import com.ibm.crail.metadata.FileInfo;
 public interface RpcGetFile extends RpcResponse {
 	public FileInfo getFile();
 	public BlockInfo getFileBlock();
+	public byte[] getInlineData();
+	public int getInlineLength();
+	public boolean isNotModified();
 }
@@ -0,0 +1,36 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.rpc;
+
+//operations of the leaseFile RPC, the blocks of a leased file are not freed before 
+//all leases are released or have expired, even if the file is deleted. Every acquire 
+//creates a lease of its own, renew and release name it by the id the namenode returned
+public interface RpcLease extends RpcResponse {
+	public static final int OP_ACQUIRE = 1;
+	public static final int OP_RENEW = 2;
+	public static final int OP_RELEASE = 3;
+	
+	public long getLeaseId();
+	
+	//milliseconds granted by the namenode, at most crail.namenode.lease.max
+	public long getDuration();
+}
@@ -36,4 +36,10 @@ public interface StorageEndpoint{
 	public abstract void close() throws IOException, InterruptedException;
 	
 	public abstract boolean isLocal();
+	
+	//read-only view of length bytes of the block at remoteOffset, sharing memory with the storage, 
+	//null if the block cannot be mapped into this process
+	public default CrailBuffer map(BlockInfo remoteMr, long remoteOffset, int length) throws IOException {
+		return null;
+	}
 }
@@ -22,6 +22,7 @@
 package com.ibm.crail.tools;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Random;
@@ -30,6 +31,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import com.ibm.crail.CrailBuffer;
 import com.ibm.crail.CrailBufferedInputStream;
@@ -59,8 +63,8 @@ public class CrailBenchmark {
 		System.out.println("Usage: ");
 		System.out.println(
 				"iobench -t <writeClusterHeap|writeClusterDirect|writeLocalHeap|writeLocalDirect|writeAsyncCluster|writeAsyncLocal|"
-				+ "readSequentialHeap|readSequentialDirect|readRandomHeap|readRandomDirect|readAsync|readMultiStream|"
-				+ "enumerateDir|keyGet|createFile|getFile|createMultiFile|writeInt|readInt|seekInt|readMultiStreamInt>"
+				+ "readSequentialHeap|readSequentialDirect|readRandomHeap|readRandomDirect|readAsync|readMultiStream|readColumnar|"
+				+ "enumerateDir|keyGet|createFile|getFile|createMultiFile|writeInt|readInt|seekInt|readMultiStreamInt|bulkDouble|admission>"
 				+ "-f <filename> -s <size> -k <iterations> -b <batch> -e <experiments>");
 		System.exit(1);
 	}
@@ -398,6 +402,73 @@ public class CrailBenchmark {
 		fs.close();
 	}	
 	
+	//access trace of a columnar reader: footer length and footer at the end of the file, then per row group 
+	//one vectored read of batch column chunks of size bytes a page header apart, plus a small page index
+	void readColumnar(String filename, int size, int loop, int batch) throws Exception {
+		System.out.println("readColumnar, filename " + filename  + ", size " + size + ", loop " + loop + ", batch " + batch);
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailFS fs = CrailFS.newInstance(conf);
+		
+		//benchmark
+		System.out.println("starting benchmark...");
+		fs.getStatistics().reset();
+		CrailFile file = fs.lookup(filename).get().asFile();
+		long capacity = file.getCapacity();
+		int footerSize = 16384;
+		int pageHeader = 2048;
+		int indexSize = 512;
+		long rowGroupSize = ((long) batch)*(size + pageHeader) + indexSize;
+		long rowGroups = Math.max(1, (capacity - footerSize - 8) / rowGroupSize);
+		if (rowGroupSize > capacity - footerSize - 8){
+			System.out.println("file too small for the trace, capacity " + capacity + ", row group " + rowGroupSize);
+			fs.close();
+			return;
+		}
+		
+		byte[] footer = new byte[footerSize];
+		byte[] index = new byte[indexSize];
+		long[] positions = new long[batch];
+		ByteBuffer[] buffers = new ByteBuffer[batch];
+		for (int i = 0; i < batch; i++){
+			buffers[i] = ByteBuffer.allocate(size);
+		}
+		double sumbytes = 0;
+		double ranges = 0;
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < loop; i++){
+			CrailBufferedInputStream bufferedStream = file.getBufferedInputStream(0);
+			sumbytes += bufferedStream.read(capacity - 8, footer, 0, 8);
+			sumbytes += bufferedStream.read(capacity - 8 - footerSize, footer, 0, footerSize);
+			ranges += 2;
+			for (long group = 0; group < rowGroups; group++){
+				long groupStart = group*rowGroupSize;
+				for (int j = 0; j < batch; j++){
+					positions[j] = groupStart + ((long) j)*(size + pageHeader);
+					buffers[j].clear();
+				}
+				sumbytes += bufferedStream.readv(positions, buffers);
+				sumbytes += bufferedStream.read(groupStart + ((long) batch)*(size + pageHeader), index, 0, indexSize);
+				ranges += batch + 1;
+			}
+			bufferedStream.close();
+		}
+		long end = System.currentTimeMillis();
+		double executionTime = ((double) (end - start)) / 1000.0;
+		double latency = 0.0;
+		if (ranges > 0) {
+			latency = 1000000.0 * executionTime / ranges;
+		}
+		
+		System.out.println("execution time " + executionTime);
+		System.out.println("ranges " + ranges);
+		System.out.println("sumbytes " + sumbytes);
+		System.out.println("latency per range " + latency);
+		
+		//rangeReads in buffered/in counts the reads issued for the ranges, core/input the storage operations
+		fs.getStatistics().print("close");
+		fs.close();
+	}
+	
 	void readSequentialAsync(String filename, int size, int loop, int batch, boolean direct) throws Exception {
 		System.out.println("readSequentialAsync, filename " + filename  + ", size " + size + ", loop " + loop + ", batch " + batch + ", direct " + direct);
 		CrailConfiguration conf = new CrailConfiguration();
@@ -627,6 +698,69 @@ public class CrailBenchmark {
 		fs.close();
 	}
 	
+	void admission(String filename, int loop, int batch) throws Exception, InterruptedException {
+		System.out.println("admission, filename " + filename  + ", loop " + loop + ", aggressive clients " + batch);
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailFS fs = CrailFS.newInstance(conf);
+		
+		//aggressive clients, each on its own namenode connection with many lookups in flight
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicLong aggressiveOps = new AtomicLong(0);
+		Thread[] aggressors = new Thread[batch];
+		for (int i = 0; i < batch; i++){
+			final CrailFS aggressiveFs = CrailFS.newInstance(conf);
+			aggressors[i] = new Thread(new Runnable(){
+				public void run() {
+					try {
+						LinkedBlockingQueue<Future<CrailNode>> fileQueue = new LinkedBlockingQueue<Future<CrailNode>>();
+						while(running.get()){
+							for (int j = 0; j < 32; j++){
+								fileQueue.add(aggressiveFs.lookup(filename));
+							}
+							while(!fileQueue.isEmpty()){
+								fileQueue.poll().get();
+								aggressiveOps.incrementAndGet();
+							}
+						}
+						aggressiveFs.close();
+					} catch(Exception e){
+						e.printStackTrace();
+					}
+				}
+			});
+			aggressors[i].start();
+		}
+		Thread.sleep(1000);
+		
+		//well-behaved client issuing one lookup per millisecond
+		System.out.println("starting benchmark...");
+		long[] latencies = new long[loop];
+		long aggressiveStart = aggressiveOps.get();
+		long start = System.nanoTime();
+		for (int i = 0; i < loop; i++){
+			long opStart = System.nanoTime();
+			fs.lookup(filename).get();
+			latencies[i] = System.nanoTime() - opStart;
+			LockSupport.parkNanos(1000000);
+		}
+		long end = System.nanoTime();
+		long aggressiveEnd = aggressiveOps.get();
+		running.set(false);
+		for (int i = 0; i < batch; i++){
+			aggressors[i].join();
+		}
+		
+		Arrays.sort(latencies);
+		double executionTime = ((double) (end - start)) / 1000000000.0;
+		System.out.println("execution time [s] " + executionTime);
+		System.out.println("aggressive ops/s " + ((double) (aggressiveEnd - aggressiveStart)) / executionTime);
+		System.out.println("latency p50 [us] " + latencies[(int) (loop*0.5)] / 1000.0);
+		System.out.println("latency p99 [us] " + latencies[(int) (loop*0.99)] / 1000.0);
+		System.out.println("latency p999 [us] " + latencies[(int) (loop*0.999)] / 1000.0);
+		System.out.println("latency max [us] " + latencies[loop - 1] / 1000.0);
+		fs.close();
+	}
+	
 	void createFile(String filename, int loop) throws Exception, InterruptedException {
 		System.out.println("createFile, filename " + filename  + ", loop " + loop);
 		CrailConfiguration conf = new CrailConfiguration();
@@ -796,6 +930,7 @@ public class CrailBenchmark {
 		CrailFS fs = CrailFS.newInstance(conf);
 		
 		CrailBuffer buf = fs.allocateBuffer();
+		buf.limit(Math.min(size, buf.capacity()));
 		CrailFile file = fs.create(filename, CrailNodeType.DATAFILE, 0, 0).get().asFile();
 		file.syncDir();
 		CrailOutputStream directOutputStream = file.getDirectOutputStream(0);
@@ -809,6 +944,7 @@ public class CrailBenchmark {
 		for (int i = 0; i < loop; i++){
 			CrailInputStream directInputStream = fs.lookup(filename).get().asFile().getDirectInputStream(0);
 			buf.clear();
+			buf.limit(Math.min(size, buf.capacity()));
 			directInputStream.read(buf).get();
 			directInputStream.close();
 		}
@@ -896,6 +1032,61 @@ public class CrailBenchmark {
 		fs.getStatistics().print("close");		
 	}
 	
+	//writes and reads loop doubles once value by value and once as a bulk array, to files filename.scalar and filename.bulk
+	void bulkDouble(String filename, int loop) throws Exception {
+		System.out.println("bulkDouble, filename " + filename  + ", loop " + loop);
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailFS fs = CrailFS.newInstance(conf);
+		
+		double[] values = new double[loop];
+		for (int i = 0; i < loop; i++){
+			values[i] = i;
+		}
+		double[] readValues = new double[loop];
+		
+		//benchmark
+		System.out.println("starting benchmark...");
+		for (int bulk = 0; bulk < 2; bulk++){
+			String path = filename + (bulk == 1 ? ".bulk" : ".scalar");
+			CrailFile file = fs.create(path, CrailNodeType.DATAFILE, 0, 0).get().asFile();
+			CrailBufferedOutputStream outputStream = file.getBufferedOutputStream(((long) loop)*Double.BYTES);
+			long start = System.currentTimeMillis();
+			if (bulk == 1){
+				outputStream.writeDouble(values);
+			} else {
+				for (int i = 0; i < loop; i++){
+					outputStream.writeDouble(values[i]);
+				}
+			}
+			outputStream.close();
+			long end = System.currentTimeMillis();
+			double writeTime = ((double) (end - start)) / 1000.0;
+			
+			file = fs.lookup(path).get().asFile();
+			CrailBufferedInputStream inputStream = file.getBufferedInputStream(file.getCapacity());
+			start = System.currentTimeMillis();
+			if (bulk == 1){
+				inputStream.readDouble(readValues);
+			} else {
+				for (int i = 0; i < loop; i++){
+					readValues[i] = inputStream.readDouble();
+				}
+			}
+			end = System.currentTimeMillis();
+			double readTime = ((double) (end - start)) / 1000.0;
+			inputStream.close();
+			if (!Arrays.equals(values, readValues)){
+				System.out.println("mismatch in " + path);
+			}
+			
+			System.out.println((bulk == 1 ? "bulk" : "scalar") + ", write time " + writeTime + ", read time " + readTime);
+			fs.delete(path, false).get().syncDir();
+		}
+		
+		fs.getStatistics().print("close");
+		fs.close();
+	}
+	
 	void seekInt(String filename, int loop) throws Exception {
 		System.out.println("seek, filename " + filename  + ", loop " + loop);
 		CrailConfiguration conf = new CrailConfiguration();
@@ -1131,6 +1322,11 @@ public class CrailBenchmark {
 				System.out.println("experiment " + i);
 				benchmark.readSequentialAsync(filename, size, loop, batch, true);
 			}
+		} else if (type.equalsIgnoreCase("readColumnar")) {
+			for (int i = 0; i < experiments; i++){
+				System.out.println("experiment " + i);
+				benchmark.readColumnar(filename, size, loop, batch);
+			}
 		} else if (type.equalsIgnoreCase("readMultiStream")) {
 			for (int i = 0; i < experiments; i++){
 				System.out.println("experiment " + i);
@@ -1146,6 +1342,11 @@ public class CrailBenchmark {
 				System.out.println("experiment " + i);
 				benchmark.getFileAsync(filename, loop, batch);
 			}
+		} else if (type.equalsIgnoreCase("admission")){
+			for (int i = 0; i < experiments; i++){
+				System.out.println("experiment " + i);
+				benchmark.admission(filename, loop, batch);
+			}
 		} else if (type.equals("createFile")){
 			for (int i = 0; i < experiments; i++){
 				System.out.println("experiment " + i);
@@ -1176,6 +1377,11 @@ public class CrailBenchmark {
 			benchmark.writeInt(filename, loop);
 		} else if (type.equalsIgnoreCase("readInt")) {
 			benchmark.readInt(filename, loop);
+		} else if (type.equalsIgnoreCase("bulkDouble")) {
+			for (int i = 0; i < experiments; i++){
+				System.out.println("experiment " + i);
+				benchmark.bulkDouble(filename, loop);
+			}
 		} else if (type.equalsIgnoreCase("seekInt")) {
 			benchmark.seekInt(filename, loop);
 		} else if (type.equalsIgnoreCase("readMultiStreamInt")) {
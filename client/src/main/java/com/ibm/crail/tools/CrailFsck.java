@@ -21,11 +21,13 @@
 
 package com.ibm.crail.tools;
 
+import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ibm.crail.CrailBlockLocation;
+import com.ibm.crail.CrailCapacity;
 import com.ibm.crail.CrailDirectory;
 import com.ibm.crail.CrailFS;
 import com.ibm.crail.CrailFile;
@@ -35,6 +37,7 @@ import com.ibm.crail.core.CoreFileSystem;
 import com.ibm.crail.core.DirectoryInputStream;
 import com.ibm.crail.core.DirectoryRecord;
 import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.metadata.OperationStatistics;
 import com.ibm.crail.utils.GetOpt;
 import com.ibm.crail.utils.CrailUtils;
 
@@ -46,7 +49,7 @@ public class CrailFsck {
 	
 	public static void usage() {
 		System.out.println("Usage: ");
-		System.out.println("fsck -t <getLocations|directoryDump|namenodeDump|blockStatistics|ping> " + 
+		System.out.println("fsck -t <getLocations|directoryDump|namenodeDump|blockStatistics|ping|capacity|stats> " + 
 		"-f <file/dir> -y <offset> -l <length> -r <true/false>");
 		System.exit(1);
 	}		
@@ -111,6 +114,35 @@ public class CrailFsck {
 		fs.closeFileSystem();		
 	}
 	
+	private void capacity() throws Exception {
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailFS fs = CrailFS.newInstance(conf);
+		CrailCapacity capacity = fs.getCapacity(true);
+		System.out.println("capacity " + capacity.getCapacity() + ", used " + capacity.getUsed() + ", remaining " + capacity.getRemaining());
+		for (int i = 0; i < capacity.getStorageClassCount(); i++){
+			System.out.println(capacity.getStorageClass(i).toString());
+			for (CrailCapacity.DataNodeCapacity dataNode : capacity.getDataNodes(i)){
+				InetSocketAddress address = CrailUtils.datanodeInfo2SocketAddr(dataNode.getInfo());
+				System.out.println("..........datanode " + address + ", " + dataNode.getCapacity().toString());
+			}
+		}
+		fs.close();
+	}
+	
+	//latency statistics of every namenode operation that has been called at least once
+	private void stats() throws Exception {
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailConstants.updateConstants(conf);
+		CoreFileSystem fs = new CoreFileSystem(conf);
+		for (short cmd = 1; cmd < 16; cmd++){
+			OperationStatistics statistics = fs.getOperationStatistics(cmd);
+			if (statistics.getOps() > 0){
+				System.out.println("cmd " + cmd + ", " + statistics.toString());
+			}
+		}
+		fs.closeFileSystem();
+	}
+	
 	//-----------------
 
 	private String padRight(String s, int n) {
@@ -188,6 +220,10 @@ public class CrailFsck {
 			fsck.blockStatistics(filename);
 		} else if (type.equals("ping")){
 			fsck.ping();
+		} else if (type.equals("capacity")){
+			fsck.capacity();
+		} else if (type.equals("stats")){
+			fsck.stats();
 		} else {
 			usage();
 			System.exit(0);			
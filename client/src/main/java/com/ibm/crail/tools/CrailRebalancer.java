@@ -0,0 +1,230 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.tools;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.ibm.crail.CrailBuffer;
+import com.ibm.crail.CrailCapacity;
+import com.ibm.crail.CrailFile;
+import com.ibm.crail.CrailNode;
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.core.CoreFileSystem;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.GetOpt;
+
+public class CrailRebalancer {
+	private CoreFileSystem fs;
+	private CrailBuffer buffer;
+	private HashMap<Long, DataNodeUsage> usageMap;
+	private ArrayList<ArrayList<DataNodeUsage>> storageClasses;
+	private double[] meanUtilization;
+	private double threshold;
+	private long bandwidth;
+	private int maxMoves;
+	
+	private int moves;
+	private long bytesMoved;
+	private long startTime;
+	
+	public CrailRebalancer(double threshold, long bandwidth, int maxMoves){
+		this.threshold = threshold;
+		this.bandwidth = bandwidth;
+		this.maxMoves = maxMoves;
+		this.usageMap = new HashMap<Long, DataNodeUsage>();
+		this.storageClasses = new ArrayList<ArrayList<DataNodeUsage>>();
+	}
+	
+	public static void usage() {
+		System.out.println("Usage: ");
+		System.out.println("rebalance -f <dir> -t <threshold> -b <bandwidth MB/s> -m <maxmoves>");
+		System.exit(1);
+	}
+	
+	public void rebalance(String filename) throws Exception {
+		CrailConfiguration conf = new CrailConfiguration();
+		this.fs = new CoreFileSystem(conf);
+		this.buffer = fs.allocateBuffer();
+		
+		CrailCapacity capacity = fs.getCapacity(true);
+		this.meanUtilization = new double[capacity.getStorageClassCount()];
+		for (int i = 0; i < capacity.getStorageClassCount(); i++){
+			ArrayList<DataNodeUsage> dataNodes = new ArrayList<DataNodeUsage>();
+			for (CrailCapacity.DataNodeCapacity dataNode : capacity.getDataNodes(i)){
+				DataNodeUsage usage = new DataNodeUsage(dataNode.getInfo(), dataNode.getCapacity().getTotalBlocks(), dataNode.getCapacity().getReservedBlocks());
+				usageMap.put(dataNode.getInfo().key(), usage);
+				dataNodes.add(usage);
+			}
+			storageClasses.add(dataNodes);
+			meanUtilization[i] = capacity.getStorageClass(i).getUtilization();
+			System.out.println("storage class " + i + ", datanodes " + dataNodes.size() + ", mean utilization " + String.format("%.3f", meanUtilization[i]));
+		}
+		
+		this.moves = 0;
+		this.bytesMoved = 0;
+		this.startTime = System.nanoTime();
+		rebalanceNode(fs.lookup(filename).get());
+		long elapsed = Math.max(System.nanoTime() - startTime, 1);
+		
+		System.out.println("moved blocks " + moves + ", bytes " + bytesMoved + ", throughput [MB/s] " + String.format("%.2f", ((double) bytesMoved) * 1000.0 / ((double) elapsed)));
+		for (ArrayList<DataNodeUsage> dataNodes : storageClasses){
+			for (DataNodeUsage usage : dataNodes){
+				System.out.println(usage.toString());
+			}
+		}
+		
+		fs.freeBuffer(buffer);
+		fs.closeFileSystem();
+	}
+	
+	private void rebalanceNode(CrailNode node) throws Exception {
+		if (moves >= maxMoves || node == null){
+			return;
+		}
+		if (node.getType().isContainer()){
+			Iterator<String> iter = node.getType().isDirectory() ? node.asDirectory().listEntries() : node.asMultiFile().listEntries();
+			while (iter.hasNext() && moves < maxMoves){
+				rebalanceNode(fs.lookup(iter.next()).get());
+			}
+		} else if (node.getType().isDataFile()){
+			rebalanceFile(node.asFile());
+		}
+	}
+	
+	//striped files are skipped, moving a block could put two blocks of a stripe group on one datanode
+	private void rebalanceFile(CrailFile file) throws Exception {
+		if (file.stripeWidth() > 1){
+			return;
+		}
+		for (long position = 0; position < file.getCapacity() && moves < maxMoves; position += CrailConstants.BLOCK_SIZE){
+			BlockInfo block = fs.getBlockInfo(file.getPath(), position);
+			DataNodeUsage source = usageMap.get(block.getDnInfo().key());
+			if (source == null){
+				continue;
+			}
+			int storageClass = source.getInfo().getStorageTier();
+			if (source.getUtilization() <= meanUtilization[storageClass] + threshold){
+				continue;
+			}
+			DataNodeUsage target = leastUtilized(storageClass);
+			if (target == null || target == source || target.getUtilization() >= meanUtilization[storageClass]){
+				continue;
+			}
+			
+			try {
+				long bytes = fs.moveBlock(file, position, target.getInfo(), buffer);
+				source.reserved--;
+				target.reserved++;
+				moves++;
+				bytesMoved += bytes;
+				throttle();
+			} catch(Exception e){
+				System.out.println("skipping block, file " + file.getPath() + ", position " + position + ", " + e.getMessage());
+			}
+		}
+	}
+	
+	private DataNodeUsage leastUtilized(int storageClass){
+		DataNodeUsage least = null;
+		for (DataNodeUsage usage : storageClasses.get(storageClass)){
+			if (usage.total > usage.reserved && (least == null || usage.getUtilization() < least.getUtilization())){
+				least = usage;
+			}
+		}
+		return least;
+	}
+	
+	//sleep until the average copy rate is back within the bandwidth budget
+	private void throttle() throws InterruptedException {
+		long elapsed = System.nanoTime() - startTime;
+		long budget = bytesMoved * 1000000000L / bandwidth;
+		if (budget > elapsed){
+			Thread.sleep((budget - elapsed) / 1000000L);
+		}
+	}
+	
+	private static class DataNodeUsage {
+		private DataNodeInfo dnInfo;
+		private long total;
+		private long reserved;
+		
+		public DataNodeUsage(DataNodeInfo dnInfo, long total, long reserved){
+			this.dnInfo = dnInfo;
+			this.total = total;
+			this.reserved = reserved;
+		}
+		
+		public DataNodeInfo getInfo(){
+			return dnInfo;
+		}
+		
+		public double getUtilization(){
+			return total > 0 ? ((double) reserved) / ((double) total) : 1.0;
+		}
+
+		@Override
+		public String toString() {
+			String address = "";
+			try {
+				InetSocketAddress socketAddress = CrailUtils.datanodeInfo2SocketAddr(dnInfo);
+				address = socketAddress.toString();
+			} catch(Exception e){
+			}
+			return "datanode " + address + ", storage class " + dnInfo.getStorageTier() + ", total " + total + ", reserved " + reserved + ", utilization " + String.format("%.3f", getUtilization());
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		String[] _args = args;
+		GetOpt go = new GetOpt(_args, "f:t:b:m:");
+		go.optErr = true;
+		int ch = -1;
+		
+		String filename = "/";
+		double threshold = 0.1;
+		long bandwidth = 100;
+		int maxMoves = Integer.MAX_VALUE;
+		
+		while ((ch = go.getopt()) != GetOpt.optEOF) {
+			if ((char) ch == 'f') {
+				filename = go.optArgGet();
+			} else if ((char) ch == 't') {
+				threshold = Double.parseDouble(go.optArgGet());
+			} else if ((char) ch == 'b') {
+				bandwidth = Long.parseLong(go.optArgGet());
+			} else if ((char) ch == 'm') {
+				maxMoves = Integer.parseInt(go.optArgGet());
+			} else {
+				usage();
+			}
+		}
+		
+		CrailRebalancer rebalancer = new CrailRebalancer(threshold, bandwidth*1024*1024, maxMoves);
+		rebalancer.rebalance(filename);
+	}
+}
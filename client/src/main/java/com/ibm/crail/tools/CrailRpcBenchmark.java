@@ -0,0 +1,177 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.tools;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.rpc.RpcClient;
+import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcGetBlock;
+import com.ibm.crail.rpc.RpcGetFile;
+import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.GetOpt;
+import com.ibm.crail.utils.LatencyHistogram;
+
+//Issues getFile or getBlock calls against the namenode directly on an RpcConnection and 
+//reports throughput, latency and the number of bytes allocated per call by all threads of 
+//the client JVM. Running with -r false keeps the futures from being handed back to the 
+//connection, which gives the allocation profile of the non-recycling path.
+public class CrailRpcBenchmark {
+	private RpcConnection connection;
+	private FileName fileName;
+	private FileInfo fileInfo;
+	
+	public CrailRpcBenchmark(RpcConnection connection, String filename) throws Exception {
+		this.connection = connection;
+		this.fileName = new FileName(filename);
+		RpcGetFile getRes = connection.getFile(fileName, false).get();
+		if (getRes.getError() == RpcErrors.ERR_GET_FILE_FAILED){
+			if (connection.createFile(fileName, CrailNodeType.DATAFILE, 0, 0, 1, 0).get().getError() != RpcErrors.ERR_OK){
+				throw new Exception("cannot create file " + filename);
+			}
+			getRes = connection.getFile(fileName, false).get();
+		}
+		if (getRes.getError() != RpcErrors.ERR_OK){
+			throw new Exception("cannot lookup file " + filename + ", error " + RpcErrors.messages[getRes.getError()]);
+		}
+		this.fileInfo = new FileInfo();
+		fileInfo.setFileInfo(getRes.getFile());
+	}
+	
+	public void run(String type, int loop, int batch, boolean release) throws Exception {
+		boolean getBlock = type.equals("getBlock");
+		@SuppressWarnings("unchecked")
+		RpcFuture<?>[] futures = new RpcFuture[batch];
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		//warmup so that the pools and the JIT are settled before measuring
+		issue(futures, getBlock, Math.max(loop / 10, batch), batch, release, histogram);
+		histogram = new LatencyHistogram();
+		
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long errors = issue(futures, getBlock, loop, batch, release, histogram);
+		long end = System.nanoTime();
+		long bytesAfter = allocatedBytes();
+		
+		double executionTime = ((double) (end - start)) / 1000000000.0;
+		System.out.println(type + ", ops " + loop + ", batch " + batch + ", release " + release + ", errors " + errors 
+				+ ", ops/s " + String.format("%.0f", loop / executionTime)
+				+ ", p50 [us] " + histogram.getPercentile(50) / 1000.0 + ", p99 [us] " + histogram.getPercentile(99) / 1000.0
+				+ ", bytes/op " + String.format("%.1f", ((double) (bytesAfter - bytesBefore)) / loop));
+	}
+	
+	private long issue(RpcFuture<?>[] futures, boolean getBlock, int loop, int batch, boolean release, LatencyHistogram histogram) throws Exception {
+		long errors = 0;
+		for (int i = 0; i < loop; i += batch){
+			int ops = Math.min(batch, loop - i);
+			long start = System.nanoTime();
+			for (int j = 0; j < ops; j++){
+				if (getBlock){
+					futures[j] = connection.getBlock(fileInfo.getFd(), fileInfo.getToken(), 0, 0, 0, 0);
+				} else {
+					futures[j] = connection.getFile(fileName, false);
+				}
+			}
+			for (int j = 0; j < ops; j++){
+				short error = getBlock ? ((RpcGetBlock) futures[j].get()).getError() : ((RpcGetFile) futures[j].get()).getError();
+				if (error != RpcErrors.ERR_OK){
+					errors++;
+				}
+				if (release){
+					futures[j].release();
+				}
+				futures[j] = null;
+			}
+			histogram.record((System.nanoTime() - start) / ops);
+		}
+		return errors;
+	}
+	
+	private static long allocatedBytes(){
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())){
+			if (bytes > 0){
+				total += bytes;
+			}
+		}
+		return total;
+	}
+	
+	public static void usage() {
+		System.out.println("Usage: ");
+		System.out.println("rpcbench -t <getFile|getBlock> -f <file> -k <ops> -b <outstanding ops> -r <release true/false>");
+		System.exit(1);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		String[] _args = args;
+		GetOpt go = new GetOpt(_args, "t:f:k:b:r:");
+		go.optErr = true;
+		int ch = -1;
+		
+		String type = "getFile";
+		String filename = "/rpcbench";
+		int loop = 1000000;
+		int batch = 1;
+		boolean release = true;
+		
+		while ((ch = go.getopt()) != GetOpt.optEOF) {
+			if ((char) ch == 't') {
+				type = go.optArgGet();
+			} else if ((char) ch == 'f') {
+				filename = go.optArgGet();
+			} else if ((char) ch == 'k') {
+				loop = Integer.parseInt(go.optArgGet());
+			} else if ((char) ch == 'b') {
+				batch = Integer.parseInt(go.optArgGet());
+			} else if ((char) ch == 'r') {
+				release = Boolean.parseBoolean(go.optArgGet());
+			} else {
+				System.exit(1); // undefined option
+			}
+		}
+		if (!type.equals("getFile") && !type.equals("getBlock")){
+			usage();
+		}
+		
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailConstants.updateConstants(conf);
+		InetSocketAddress nnAddr = CrailUtils.getNameNodeAddress();
+		RpcClient rpcClient = RpcClient.createInstance(CrailConstants.NAMENODE_RPC_TYPE);
+		rpcClient.init(conf, null);
+		RpcConnection connection = rpcClient.connect(nnAddr);
+		
+		CrailRpcBenchmark benchmark = new CrailRpcBenchmark(connection, filename);
+		benchmark.run(type, loop, batch, release);
+		rpcClient.close();
+	}
+}
@@ -55,10 +55,24 @@ public class BlockCache {
 	public static class FileBlockCache {
 		private long fd;
 		private ConcurrentHashMap<Long, BlockInfo> fileBlockCache;
+		private volatile long version;
 		
 		public FileBlockCache(long fd){
 			this.fd = fd;
 			this.fileBlockCache = new ConcurrentHashMap<Long, BlockInfo>();
+			this.version = -1;
+		}
+		
+		//blocks of an older version of the file may have been moved and reused by another file, 
+		//drops them in place so that open streams sharing this cache stop using them as well
+		public synchronized boolean validate(long version){
+			if (this.version == version){
+				return true;
+			}
+			boolean fresh = this.version < 0;
+			this.fileBlockCache.clear();
+			this.version = version;
+			return fresh;
 		}
 
 		public void put(long blockstart, BlockInfo block){
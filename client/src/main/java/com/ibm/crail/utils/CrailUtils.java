@@ -152,6 +152,30 @@ public class CrailUtils {
 		return (int) index;
 	}
 	
+	//7 bits per byte, high bit set on all but the last byte, small values take a single byte
+	public static int putVarLong(ByteBuffer buffer, long value) {
+		int written = 1;
+		while ((value & ~0x7FL) != 0){
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+			written++;
+		}
+		buffer.put((byte) value);
+		return written;
+	}
+	
+	public static long getVarLong(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte tmp = buffer.get();
+		while ((tmp & 0x80) != 0){
+			value |= (long) (tmp & 0x7F) << shift;
+			shift += 7;
+			tmp = buffer.get();
+		}
+		return value | ((long) tmp << shift);
+	}
+	
 	public static boolean isLocalAddress(InetAddress addr) {
 	    // Check if the address is a valid special local or loop back
 	    if (addr.isAnyLocalAddress() || addr.isLoopbackAddress())
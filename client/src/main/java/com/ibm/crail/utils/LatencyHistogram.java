@@ -0,0 +1,125 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+//Log-linear histogram of non-negative values (typically nanoseconds). Every power of two 
+//is split into 32 linear sub-buckets, which bounds the relative error to ~3%. Recording 
+//is not thread-safe, per-thread instances are meant to be merged with add(). 
+public class LatencyHistogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+	
+	private long[] counts;
+	private long count;
+	private long sum;
+	private long max;
+	
+	public LatencyHistogram(){
+		this.counts = new long[BUCKETS];
+		this.count = 0;
+		this.sum = 0;
+		this.max = 0;
+	}
+	
+	public void record(long value){
+		if (value < 0){
+			value = 0;
+		}
+		counts[index(value)]++;
+		count++;
+		sum += value;
+		if (value > max){
+			max = value;
+		}
+	}
+	
+	public void add(LatencyHistogram other){
+		for (int i = 0; i < BUCKETS; i++){
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		max = Math.max(max, other.max);
+	}
+	
+	public void reset(){
+		for (int i = 0; i < BUCKETS; i++){
+			counts[i] = 0;
+		}
+		count = 0;
+		sum = 0;
+		max = 0;
+	}
+	
+	//value at the given percentile (0-100), reported as the midpoint of its bucket
+	public long getPercentile(double percentile){
+		if (count == 0){
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * percentile / 100.0);
+		rank = Math.max(1, Math.min(rank, count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++){
+			seen += counts[i];
+			if (seen >= rank){
+				return Math.min(lowerBound(i) + (width(i) >> 1), max);
+			}
+		}
+		return max;
+	}
+	
+	public long getCount(){
+		return count;
+	}
+	
+	public long getMax(){
+		return max;
+	}
+	
+	public double getMean(){
+		return count > 0 ? ((double) sum) / count : 0.0;
+	}
+	
+	static int index(long value){
+		if (value < SUB_COUNT){
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+	}
+	
+	static long lowerBound(int index){
+		if (index < SUB_COUNT){
+			return index;
+		}
+		int shift = index / SUB_COUNT - 1;
+		return ((long) (index % SUB_COUNT + SUB_COUNT)) << shift;
+	}
+	
+	static long width(int index){
+		if (index < SUB_COUNT){
+			return 1;
+		}
+		return 1L << (index / SUB_COUNT - 1);
+	}
+}
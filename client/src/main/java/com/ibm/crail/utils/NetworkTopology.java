@@ -0,0 +1,116 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConstants;
+
+public class NetworkTopology {
+	private static final Logger LOG = CrailUtils.getLogger();
+	public static final String DEFAULT_RACK = "/default-rack";
+	
+	private ConcurrentHashMap<String, String> rackMap;
+	private ConcurrentHashMap<String, String> resolvedRacks;
+	private String script;
+	
+	public NetworkTopology() throws Exception {
+		this.rackMap = new ConcurrentHashMap<String, String>();
+		this.resolvedRacks = new ConcurrentHashMap<String, String>();
+		this.script = CrailConstants.TOPOLOGY_SCRIPT;
+		CrailUtils.parseMap(CrailConstants.TOPOLOGY_MAP, rackMap);
+	}
+	
+	//hosts are cached by address, the name and the address are tried against the map but the script runs once per host
+	public String getRack(InetAddress address) {
+		String host = address.getHostAddress();
+		String rack = resolvedRacks.get(host);
+		if (rack == null){
+			rack = resolveRack(address.getCanonicalHostName(), host);
+			String oldRack = resolvedRacks.putIfAbsent(host, rack);
+			if (oldRack != null){
+				rack = oldRack;
+			}
+		}
+		return rack;
+	}
+	
+	public String getRack(String host) {
+		String rack = resolvedRacks.get(host);
+		if (rack == null){
+			rack = resolveRack(host, host);
+			String oldRack = resolvedRacks.putIfAbsent(host, rack);
+			if (oldRack != null){
+				rack = oldRack;
+			}
+		}
+		return rack;
+	}
+	
+	public int getRackHash(InetAddress address) {
+		return getRack(address).hashCode();
+	}
+	
+	public int getLocalRackHash() throws Exception {
+		return getRackHash(InetAddress.getLocalHost());
+	}
+	
+	public boolean isEnabled(){
+		return !rackMap.isEmpty() || !script.isEmpty();
+	}
+	
+	private String resolveRack(String name, String host){
+		String rack = rackMap.get(name);
+		if (rack == null){
+			rack = rackMap.get(host);
+		}
+		if (rack == null && !script.isEmpty()){
+			rack = runScript(name);
+		}
+		if (rack == null || rack.isEmpty()){
+			return DEFAULT_RACK;
+		}
+		return rack.startsWith("/") ? rack : "/" + rack;
+	}
+	
+	private String runScript(String host){
+		try {
+			Process process = new ProcessBuilder(script, host).redirectErrorStream(true).start();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			String rack = reader.readLine();
+			reader.close();
+			if (process.waitFor() != 0){
+				LOG.info("topology script " + script + " failed for host " + host);
+				return null;
+			}
+			return rack != null ? rack.trim() : null;
+		} catch(Exception e){
+			LOG.info("topology script " + script + " failed for host " + host + ", " + e.getMessage());
+			return null;
+		}
+	}
+}
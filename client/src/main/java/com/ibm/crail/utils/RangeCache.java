@@ -0,0 +1,108 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+//Recently read ranges of one file, up to capacity bytes, evicted least recently used first. The 
+//tail of the file is held separately and never evicted, footers and indexes of columnar formats 
+//live there and are read over and over.
+public class RangeCache {
+	private int capacity;
+	private int size;
+	private LinkedList<Range> ranges;
+	private Range tail;
+	
+	public RangeCache(int capacity){
+		this.capacity = capacity;
+		this.size = 0;
+		this.ranges = new LinkedList<Range>();
+		this.tail = null;
+	}
+	
+	//copies buffer.remaining() bytes at position into the buffer if a single range holds all of them
+	public boolean get(long position, ByteBuffer buffer){
+		int length = buffer.remaining();
+		if (tail != null && tail.contains(position, length)){
+			tail.copy(position, buffer);
+			return true;
+		}
+		for (Iterator<Range> iter = ranges.iterator(); iter.hasNext(); ){
+			Range range = iter.next();
+			if (range.contains(position, length)){
+				range.copy(position, buffer);
+				if (range != ranges.getFirst()){
+					iter.remove();
+					ranges.addFirst(range);
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	//takes ownership of data
+	public void put(long position, byte[] data){
+		if (data.length > capacity){
+			return;
+		}
+		while (size + data.length > capacity){
+			size -= ranges.removeLast().data.length;
+		}
+		ranges.addFirst(new Range(position, data));
+		size += data.length;
+	}
+	
+	public void putTail(long position, byte[] data){
+		this.tail = new Range(position, data);
+	}
+	
+	public boolean hasTail(){
+		return tail != null;
+	}
+	
+	public void clear(){
+		ranges.clear();
+		size = 0;
+		tail = null;
+	}
+	
+	private static class Range {
+		private long position;
+		private byte[] data;
+		
+		public Range(long position, byte[] data){
+			this.position = position;
+			this.data = data;
+		}
+		
+		public boolean contains(long position, int length){
+			return position >= this.position && position + length <= this.position + data.length;
+		}
+		
+		public void copy(long position, ByteBuffer buffer){
+			buffer.put(data, (int) (position - this.position), buffer.remaining());
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+//Sequential access detector sizing the readahead of a stream. Every access continuing exactly 
+//where the previous one ended doubles the window, starting from unit, up to max. Forward skips 
+//that land within the current window keep the window, anything else is treated as random 
+//access and collapses the window to zero.
+public class ReadAheadWindow {
+	private long unit;
+	private long max;
+	private long window;
+	private long nextOffset;
+	
+	public ReadAheadWindow(long initial, long unit, long max){
+		this.unit = Math.max(1, unit);
+		this.max = Math.max(0, max);
+		this.window = Math.min(Math.max(0, initial), this.max);
+		this.nextOffset = 0;
+	}
+	
+	//records an access of length bytes at offset, returns the new window in bytes
+	public long access(long offset, long length){
+		if (offset == nextOffset){
+			window = Math.min(max, Math.max(unit, window << 1));
+		} else if (offset < nextOffset || offset > nextOffset + window){
+			window = 0;
+		}
+		nextOffset = offset + length;
+		return window;
+	}
+	
+	public long getWindow(){
+		return window;
+	}
+	
+	public long getMax(){
+		return max;
+	}
+}
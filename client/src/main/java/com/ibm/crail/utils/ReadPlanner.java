@@ -0,0 +1,110 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+//Merges the ranges of a vectored read into fewer, larger reads. Ranges are visited in file order 
+//and a range joins the current read if it starts at most gap bytes after the read ends and the 
+//read stays within maxLength bytes. The bytes in the gaps are read and thrown away, which is 
+//cheaper than a separate storage operation as long as the gap is small.
+public class ReadPlanner {
+	private int gap;
+	private int maxLength;
+	
+	//plan of the last call, reads are in file order, every range maps to the read containing it
+	private long[] readPositions;
+	private int[] readLengths;
+	private int[] rangeReads;
+	private int reads;
+	
+	public ReadPlanner(int gap, int maxLength){
+		this.gap = gap;
+		this.maxLength = maxLength;
+		this.readPositions = new long[0];
+		this.readLengths = new int[0];
+		this.rangeReads = new int[0];
+		this.reads = 0;
+	}
+	
+	//ranges of length zero are skipped, they are mapped to read -1
+	public int plan(final long[] positions, int[] lengths){
+		int count = positions.length;
+		if (readPositions.length < count){
+			readPositions = new long[count];
+			readLengths = new int[count];
+			rangeReads = new int[count];
+		}
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(positions[a], positions[b]);
+			}
+		});
+		
+		reads = 0;
+		long start = 0;
+		long end = 0;
+		for (int i = 0; i < count; i++){
+			int range = order[i];
+			rangeReads[range] = -1;
+			if (lengths[range] <= 0){
+				continue;
+			}
+			long rangeStart = positions[range];
+			long rangeEnd = rangeStart + lengths[range];
+			if (reads > 0 && rangeStart <= end + gap && Math.max(end, rangeEnd) - start <= maxLength){
+				end = Math.max(end, rangeEnd);
+			} else {
+				if (reads > 0){
+					readLengths[reads - 1] = (int) (end - start);
+				}
+				start = rangeStart;
+				end = rangeEnd;
+				readPositions[reads] = start;
+				reads++;
+			}
+			rangeReads[range] = reads - 1;
+		}
+		if (reads > 0){
+			readLengths[reads - 1] = (int) (end - start);
+		}
+		return reads;
+	}
+	
+	public long getReadPosition(int read){
+		return readPositions[read];
+	}
+	
+	public int getReadLength(int read){
+		return readLengths[read];
+	}
+	
+	public int getRead(int range){
+		return rangeReads[range];
+	}
+}
@@ -60,6 +60,20 @@ public class RingBuffer<T> {
         return nextObj;
     }
     
+    //element at the given distance from the head, null if there is none
+    public T get(int index) {
+        if(index < 0 || index >= available){
+            return null;
+        }
+        int slot = writePos - available + index;
+        if(slot < 0){
+            slot += size;
+        } else if(slot >= size){
+            slot -= size;
+        }
+        return elements[slot];
+    }
+    
     public T peek() {
         if(available == 0){
             return null;
@@ -0,0 +1,133 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.utils;
+
+//Sizes the write-behind pipeline of a buffered output stream. Completed slices are accounted in 
+//rounds of depth slices. After a round in which the writer had to wait for a slice, either the 
+//depth (up to maxDepth) or the slice size (up to maxSlice) is doubled, preferring the depth. A 
+//growth step is kept only if it raised the throughput of the following round by at least 5%, 
+//otherwise it is undone and that dimension is held off for an increasing number of rounds. 
+//Rounds in which a slice was idle all the time shrink the depth by one.
+public class WriteBehindWindow {
+	private static final int MAX_HOLD = 64;
+	private static final int NONE = 0;
+	private static final int GREW_SLICE = 1;
+	private static final int GREW_DEPTH = 2;
+	
+	private int minSlice;
+	private int maxSlice;
+	private int maxDepth;
+	private int sliceSize;
+	private int depth;
+	
+	private long roundStart;
+	private long roundBytes;
+	private int roundSlices;
+	private int roundStalls;
+	private int roundMinIdle;
+	private double lastThroughput;
+	private int lastAction;
+	private int[] hold;
+	private int[] holdLength;
+	
+	public WriteBehindWindow(int minSlice, int maxSlice, int maxDepth){
+		this.minSlice = Math.max(1, minSlice);
+		this.maxSlice = Math.max(this.minSlice, maxSlice);
+		this.maxDepth = Math.max(1, maxDepth);
+		this.sliceSize = this.minSlice;
+		this.depth = Math.min(2, this.maxDepth);
+		this.lastThroughput = 0;
+		this.lastAction = NONE;
+		this.hold = new int[]{0, 0, 0};
+		this.holdLength = new int[]{1, 1, 1};
+		startRound(System.nanoTime());
+	}
+	
+	//the writer found no free slice and has to wait for a pending one
+	public void stalled(){
+		roundStalls++;
+	}
+	
+	//the writer started a new slice while idle other slices were free
+	public void idle(int slices){
+		roundMinIdle = Math.min(roundMinIdle, slices);
+	}
+	
+	public void completed(long bytes){
+		roundBytes += bytes;
+		roundSlices++;
+		if (roundSlices < depth){
+			return;
+		}
+		
+		long now = System.nanoTime();
+		double throughput = ((double) roundBytes) / Math.max(1, now - roundStart);
+		if (lastAction != NONE && throughput < lastThroughput*1.05){
+			if (lastAction == GREW_SLICE){
+				sliceSize = Math.max(minSlice, sliceSize >> 1);
+			} else {
+				depth = Math.max(1, depth >> 1);
+			}
+			hold[lastAction] = holdLength[lastAction];
+			holdLength[lastAction] = Math.min(MAX_HOLD, holdLength[lastAction] << 1);
+			lastAction = NONE;
+			startRound(now);
+			return;
+		}
+		if (lastAction != NONE){
+			holdLength[lastAction] = 1;
+		}
+		lastThroughput = throughput;
+		lastAction = NONE;
+		
+		boolean growDepth = depth < maxDepth && hold[GREW_DEPTH] == 0;
+		boolean growSlice = sliceSize < maxSlice && hold[GREW_SLICE] == 0;
+		if (roundStalls > 0 && growDepth){
+			depth = Math.min(maxDepth, depth << 1);
+			lastAction = GREW_DEPTH;
+		} else if (roundStalls > 0 && growSlice){
+			sliceSize = Math.min(maxSlice, sliceSize << 1);
+			lastAction = GREW_SLICE;
+		} else if (roundStalls == 0 && roundMinIdle > 0 && depth > 1){
+			depth--;
+		}
+		hold[GREW_SLICE] = Math.max(0, hold[GREW_SLICE] - 1);
+		hold[GREW_DEPTH] = Math.max(0, hold[GREW_DEPTH] - 1);
+		startRound(now);
+	}
+	
+	public int getSliceSize(){
+		return sliceSize;
+	}
+	
+	public int getDepth(){
+		return depth;
+	}
+	
+	private void startRound(long now){
+		this.roundStart = now;
+		this.roundBytes = 0;
+		this.roundSlices = 0;
+		this.roundStalls = 0;
+		this.roundMinIdle = Integer.MAX_VALUE;
+	}
+}
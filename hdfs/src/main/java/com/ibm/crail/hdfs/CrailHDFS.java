@@ -54,6 +54,7 @@ import org.apache.hadoop.util.Progressable;
 import com.ibm.crail.CrailBufferedInputStream;
 import com.ibm.crail.CrailBufferedOutputStream;
 import com.ibm.crail.CrailBlockLocation;
+import com.ibm.crail.CrailCapacity;
 import com.ibm.crail.CrailDirectory;
 import com.ibm.crail.CrailFile;
 import com.ibm.crail.CrailFS;
@@ -81,6 +82,8 @@ public class CrailHDFS extends AbstractFileSystem {
 			this.localAffinity = 0;
 			if (CrailHDFSConstants.LOCAL_AFFINITY){
 				localAffinity = dfs.getHostHash();
+			} else if (CrailHDFSConstants.RACK_AFFINITY){
+				localAffinity = dfs.getRackHash();
 			}
 			Path _workingDir = new Path("/user/" + CrailConstants.USER);
 			this.workingDir = new Path("/user/" + CrailConstants.USER).makeQualified(uri, _workingDir);
@@ -273,7 +276,12 @@ public class CrailHDFS extends AbstractFileSystem {
 
 	@Override
 	public FsStatus getFsStatus() throws AccessControlException, FileNotFoundException, IOException {
-		return new FsStatus(1000000000, 1000, 1000000000 - 1000);
+		try {
+			CrailCapacity capacity = dfs.getCapacity();
+			return new FsStatus(capacity.getCapacity(), capacity.getUsed(), capacity.getRemaining());
+		} catch(Exception e){
+			throw new IOException(e);
+		}
 	}
 
 	@Override
@@ -33,6 +33,9 @@ public class CrailHDFSConstants {
 	
 	public static final String LOCAL_AFFINITY_KEY = "crail.hdfs.localaffinity";
 	public static boolean LOCAL_AFFINITY = false;
+	
+	public static final String RACK_AFFINITY_KEY = "crail.hdfs.rackaffinity";
+	public static boolean RACK_AFFINITY = false;
 
 	public static void updateConstants(CrailConfiguration conf){
 		if (conf.get(STORAGE_AFFINITY_KEY) != null) {
@@ -41,6 +44,9 @@ public class CrailHDFSConstants {
 		if (conf.get(LOCAL_AFFINITY_KEY) != null) {
 			LOCAL_AFFINITY = Boolean.parseBoolean(conf.get(LOCAL_AFFINITY_KEY));
 		}			
+		if (conf.get(RACK_AFFINITY_KEY) != null) {
+			RACK_AFFINITY = Boolean.parseBoolean(conf.get(RACK_AFFINITY_KEY));
+		}
 	}
 	
 	public static void verify() throws IOException {
@@ -49,5 +55,6 @@ public class CrailHDFSConstants {
 	public static void printConf(Logger logger) {
 		logger.info(STORAGE_AFFINITY_KEY + " " + STORAGE_AFFINITY);
 		logger.info(LOCAL_AFFINITY_KEY + " " + LOCAL_AFFINITY);
+		logger.info(RACK_AFFINITY_KEY + " " + RACK_AFFINITY);
 	}	
 }
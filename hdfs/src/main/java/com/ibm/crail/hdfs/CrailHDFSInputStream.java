@@ -81,6 +81,12 @@ public class CrailHDFSInputStream extends FSDataInputStream {
 		}		
 	}
 
+	//fills each buffer from its own file position with a single vectored read, the stream 
+	//position is not changed
+	public long readv(long[] positions, ByteBuffer[] buffers) throws IOException {
+		return inputStream.readv(positions, buffers);
+	}
+
 	@Override
 	public boolean seekToNewSource(long targetPos) throws IOException {
 		return false;
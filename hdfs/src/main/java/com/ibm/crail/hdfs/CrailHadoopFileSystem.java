@@ -42,6 +42,7 @@ import org.apache.hadoop.util.Progressable;
 import com.ibm.crail.CrailBufferedInputStream;
 import com.ibm.crail.CrailBufferedOutputStream;
 import com.ibm.crail.CrailBlockLocation;
+import com.ibm.crail.CrailCapacity;
 import com.ibm.crail.CrailDirectory;
 import com.ibm.crail.CrailFile;
 import com.ibm.crail.CrailFS;
@@ -77,6 +78,8 @@ public class CrailHadoopFileSystem extends FileSystem {
 			this.localAffinity = 0;
 			if (CrailHDFSConstants.LOCAL_AFFINITY){
 				localAffinity = dfs.getHostHash();
+			} else if (CrailHDFSConstants.RACK_AFFINITY){
+				localAffinity = dfs.getRackHash();
 			}			
 			Path _workingDir = new Path("/user/" + CrailConstants.USER);
 			this.workingDir = new Path("/user/" + CrailConstants.USER).makeQualified(uri, _workingDir);	
@@ -296,7 +299,12 @@ public class CrailHadoopFileSystem extends FileSystem {
 	@Override
 	public FsStatus getStatus(Path p) throws IOException {
 		statistics.incrementReadOps(1);
-		return new FsStatus(Long.MAX_VALUE, 0, Long.MAX_VALUE);
+		try {
+			CrailCapacity capacity = dfs.getCapacity();
+			return new FsStatus(capacity.getCapacity(), capacity.getUsed(), capacity.getRemaining());
+		} catch(Exception e){
+			throw new IOException(e);
+		}
 	}
 	
 	@Override
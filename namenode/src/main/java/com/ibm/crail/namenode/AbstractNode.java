@@ -23,6 +23,7 @@ package com.ibm.crail.namenode;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Delayed;
@@ -42,6 +43,9 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	private AtomicLong dirOffsetCounter;
 	private ConcurrentHashMap<Integer, AbstractNode> children;
 	private long delay;
+	//expiration of the leases clients hold on mapped views by lease id, the blocks stay allocated 
+	//until all leases are released or expire. Created on the first lease only.
+	private HashMap<Long, Long> leases;
 	
 	public static AbstractNode createRoot() throws IOException {
 		return new DirectoryBlocks(new FileName("/").getFileComponent(), CrailNodeType.DIRECTORY);
@@ -52,6 +56,8 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 			return new DirectoryBlocks(fileComponent, CrailNodeType.DIRECTORY);
 		} else if (type == CrailNodeType.MULTIFILE){
 			return new DirectoryBlocks(fileComponent, CrailNodeType.MULTIFILE);
+		} else if (type == CrailNodeType.STREAMFILE){
+			return new FileBlocks(fileComponent, CrailNodeType.STREAMFILE);
 		} else {
 			return new FileBlocks(fileComponent, CrailNodeType.DATAFILE);
 		}
@@ -75,6 +81,7 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 		AbstractNode old = children.putIfAbsent(child.getComponent(), child);
 		if (old == null){
 			child.setDirOffset(dirOffsetCounter.getAndAdd(CrailConstants.DIRECTORY_RECORD));
+			bumpVersion();
 			return true;
 		} else {
 			return false;
@@ -83,19 +90,34 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 
 	AbstractNode removeChild(AbstractNode child) {
 		child = children.remove(child.getComponent());
+		if (child != null){
+			child.bumpVersion();
+			bumpVersion();
+		}
 		return child;
 	}
 	
 	void rename(int newFileComponent) throws Exception {
 		this.fileComponent = newFileComponent;
+		bumpVersion();
 	}	
+	
+	synchronized void bumpVersion(){
+		setVersion(getVersion() + 1);
+	}
 
 	public abstract BlockInfo getBlock(int index);
 
 	public abstract boolean addBlock(int index, BlockInfo block);
 	
+	public abstract boolean swapBlock(int index, BlockInfo oldBlock, BlockInfo newBlock);
+	
 	public abstract void freeBlocks(BlockStore blockStore) throws UnknownHostException;
 	
+	public abstract byte[] getInlineData();
+	
+	public abstract boolean setInlineData(byte[] data);
+	
 	public AbstractNode getChild(int component) {
 		return children.get(component);
 	}
@@ -134,6 +156,63 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	public void setDelay(long delay) {
 		this.delay = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay);
 	}
+	
+	synchronized void acquireLease(long leaseId, long expiration) {
+		if (leases == null){
+			leases = new HashMap<Long, Long>();
+		}
+		leases.put(leaseId, expiration);
+	}
+	
+	//false if the lease is unknown or has already expired
+	synchronized boolean renewLease(long leaseId, long expiration) {
+		if (!hasLease(leaseId)){
+			return false;
+		}
+		leases.put(leaseId, Math.max(leases.get(leaseId), expiration));
+		return true;
+	}
+	
+	synchronized boolean releaseLease(long leaseId) {
+		return leases != null && leases.remove(leaseId) != null;
+	}
+	
+	synchronized boolean hasLease(long leaseId) {
+		if (leases == null){
+			return false;
+		}
+		Long expiration = leases.get(leaseId);
+		if (expiration == null){
+			return false;
+		}
+		if (expiration <= System.currentTimeMillis()){
+			leases.remove(leaseId);
+			return false;
+		}
+		return true;
+	}
+	
+	//milliseconds until all current leases have expired, 0 if the node is not leased
+	synchronized long leaseRemaining() {
+		if (leases == null){
+			return 0;
+		}
+		long now = System.currentTimeMillis();
+		long remaining = 0;
+		Iterator<Long> iter = leases.values().iterator();
+		while (iter.hasNext()){
+			long expiration = iter.next();
+			if (expiration <= now){
+				iter.remove();
+			} else {
+				remaining = Math.max(remaining, expiration - now);
+			}
+		}
+		if (leases.isEmpty()){
+			leases = null;
+		}
+		return remaining;
+	}
 
 	@Override
 	public int compareTo(Delayed o) {
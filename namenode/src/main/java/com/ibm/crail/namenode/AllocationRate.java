@@ -0,0 +1,48 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+//samples a monotonic counter at most once per interval, so the allocation path only ever increments the counter
+class AllocationRate {
+	private static final long INTERVAL = 1000;
+	
+	private long lastCount;
+	private long lastTime;
+	private double rate;
+	
+	public AllocationRate(){
+		this.lastCount = 0;
+		this.lastTime = System.currentTimeMillis();
+		this.rate = 0;
+	}
+	
+	public synchronized double update(long count){
+		long now = System.currentTimeMillis();
+		long elapsed = now - lastTime;
+		if (elapsed >= INTERVAL){
+			rate = ((double) (count - lastCount))*1000.0 / ((double) elapsed);
+			lastCount = count;
+			lastTime = now;
+		}
+		return rate;
+	}
+}
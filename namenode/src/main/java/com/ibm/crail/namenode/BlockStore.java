@@ -21,8 +21,10 @@
 
 package com.ibm.crail.namenode;
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
@@ -32,37 +34,63 @@ import org.slf4j.Logger;
 
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.CapacityInfo;
 import com.ibm.crail.metadata.DataNodeInfo;
 import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcStats;
 import com.ibm.crail.utils.AtomicIntegerModulo;
 import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.NetworkTopology;
 
 public class BlockStore {
 	private StorageTier[] storageTiers;
+	private NetworkTopology topology;
 	
-	public BlockStore(){
+	public BlockStore() throws Exception {
+		this.topology = new NetworkTopology();
 		StringTokenizer tokenizer = new StringTokenizer(CrailConstants.STORAGE_TYPES, ",");
 		storageTiers = new StorageTier[tokenizer.countTokens()];
 		for (int i = 0; i < tokenizer.countTokens(); i++){
-			this.storageTiers[i] = new StorageTier(i);
+			this.storageTiers[i] = new StorageTier(i, topology);
 		}		
 	}
 
 	public short addBlock(BlockInfo blockInfo) throws UnknownHostException {
 		int storageTier = blockInfo.getDnInfo().getStorageTier();
-		return storageTiers[storageTier].addBlock(blockInfo);
+		return storageTiers[storageTier].addBlock(blockInfo, false);
+	}
+	
+	public short registerBlock(BlockInfo blockInfo) throws UnknownHostException {
+		int storageTier = blockInfo.getDnInfo().getStorageTier();
+		return storageTiers[storageTier].addBlock(blockInfo, true);
 	}
 
 	public BlockInfo getBlock(int storageAffinity, int locationAffinity) throws InterruptedException {
+		return getBlock(storageAffinity, locationAffinity, null);
+	}
+	
+	//avoids the datanodes in exclude, falls back to any datanode if only those have free blocks left
+	public BlockInfo getBlock(int storageAffinity, int locationAffinity, Set<Long> exclude) throws InterruptedException {
+		BlockInfo block = null;
+		if (exclude != null && !exclude.isEmpty()){
+			block = selectBlock(storageAffinity, locationAffinity, exclude);
+		}
+		if (block == null){
+			block = selectBlock(storageAffinity, locationAffinity, null);
+		}
+		return block;
+	}
+	
+	private BlockInfo selectBlock(int storageAffinity, int locationAffinity, Set<Long> exclude) throws InterruptedException {
 		BlockInfo block = null;
 		if (storageAffinity > 0){
 			if (storageAffinity < storageTiers.length){
-				block = storageTiers[storageAffinity].getBlock(locationAffinity);
+				block = storageTiers[storageAffinity].getBlock(locationAffinity, exclude);
 			}
 		}
 		if (block == null){
 			for (int i = 0; i < storageTiers.length; i++){
-				block = storageTiers[i].getBlock(locationAffinity);
+				block = storageTiers[i].getBlock(locationAffinity, exclude);
 				if (block != null){
 					break;
 				}
@@ -77,6 +105,18 @@ public class BlockStore {
 		return storageTiers[tier].getDataNode(dnInfo);
 	}
 	
+	public DataNodeBlocks getDataNode(int storageClass, int index) {
+		return storageTiers[storageClass].getDataNode(index);
+	}
+	
+	public CapacityInfo getCapacity(int storageClass) {
+		return storageTiers[storageClass].getCapacity();
+	}
+	
+	public int getStorageClassCount() {
+		return storageTiers.length;
+	}
+	
 }
 
 class StorageTier {
@@ -85,10 +125,14 @@ class StorageTier {
 	private int storageTier;
 	private ConcurrentHashMap<Long, DataNodeBlocks> membership;
 	private ConcurrentHashMap<Integer, DataNodeArray> affinitySets;
+	private ConcurrentHashMap<Integer, DataNodeArray> rackSets;
+	private ConcurrentHashMap<Integer, Integer> hostRacks;
 	private DataNodeArray anySet;
 	private BlockSelection blockSelection;
+	private NetworkTopology topology;
+	private AllocationRate allocationRate;
 	
-	public StorageTier(int storageTier){
+	public StorageTier(int storageTier, NetworkTopology topology){
 		if (CrailConstants.NAMENODE_BLOCKSELECTION.equalsIgnoreCase("roundrobin")){
 			this.blockSelection = new RoundRobinBlockSelection();
 		} else {
@@ -97,11 +141,15 @@ class StorageTier {
 		this.storageTier = storageTier;
 		this.membership = new ConcurrentHashMap<Long, DataNodeBlocks>();
 		this.affinitySets = new ConcurrentHashMap<Integer, DataNodeArray>();
+		this.rackSets = new ConcurrentHashMap<Integer, DataNodeArray>();
+		this.hostRacks = new ConcurrentHashMap<Integer, Integer>();
+		this.topology = topology;
+		this.allocationRate = new AllocationRate();
 		this.anySet = new DataNodeArray(blockSelection);
 //		this.anyCounter = new AtomicIntegerModulo();
 	}
 	
-	short addBlock(BlockInfo block) throws UnknownHostException {
+	short addBlock(BlockInfo block, boolean register) throws UnknownHostException {
 		long dnAddress = block.getDnInfo().key();
 		DataNodeBlocks current = membership.get(dnAddress);
 		if (current == null) {
@@ -110,19 +158,25 @@ class StorageTier {
 			addDataNode(current);
 		}
 
-		current.addFreeBlock(block);
+		if (register){
+			current.registerBlock(block);
+		} else {
+			current.addFreeBlock(block);
+		}
 		return RpcErrors.ERR_OK;
 	}
 
-	BlockInfo getBlock(int affinity) throws InterruptedException {
+	BlockInfo getBlock(int affinity, Set<Long> exclude) throws InterruptedException {
 		BlockInfo block = null;
 		if (affinity == 0) {
-			block = anySet.get();
+			block = anySet.get(exclude);
 		} else {
-			block = _getAffinityBlock(affinity);
+			block = _getAffinityBlock(affinity, exclude);
+			if (block == null) {
+				block = _getRackBlock(affinity, exclude);
+			}
 			if (block == null) {
-				block = anySet.get();
-			} else {
+				block = anySet.get(exclude);
 			}
 		}
 		return block;
@@ -131,8 +185,27 @@ class StorageTier {
 	DataNodeBlocks getDataNode(DataNodeInfo dataNode) {
 		return membership.get(dataNode.key());
 	}
+	
+	DataNodeBlocks getDataNode(int index) {
+		return anySet.get(index);
+	}
+	
+	//aggregated on demand from the per-datanode counters
+	CapacityInfo getCapacity() {
+		long totalBlocks = 0;
+		long freeBlocks = 0;
+		long allocatedBlocks = 0;
+		int dataNodeCount = 0;
+		for (DataNodeBlocks dataNode : membership.values()){
+			totalBlocks += dataNode.getTotalBlocks();
+			freeBlocks += dataNode.getBlockCount();
+			allocatedBlocks += dataNode.getAllocatedBlocks();
+			dataNodeCount++;
+		}
+		return new CapacityInfo(storageTier, dataNodeCount, totalBlocks, freeBlocks, allocatedBlocks, allocationRate.update(allocatedBlocks));
+	}
 
-	short addDataNode(DataNodeBlocks dataNode) {
+	short addDataNode(DataNodeBlocks dataNode) throws UnknownHostException {
 		DataNodeBlocks current = membership.putIfAbsent(dataNode.key(), dataNode);
 		if (current != null) {
 			return RpcErrors.ERR_DATANODE_NOT_REGISTERED;
@@ -147,25 +220,58 @@ class StorageTier {
 	
 	//---------------
 	
-	private void _addDataNode(DataNodeBlocks dataNode){
+	private void _addDataNode(DataNodeBlocks dataNode) throws UnknownHostException{
 //		LOG.info("adding datanode for affinity " + dataNode.getAffinity());
-		DataNodeArray hostMap = affinitySets.get(dataNode.getLocationAffinity());
-		if (hostMap == null){
-			hostMap = new DataNodeArray(blockSelection);
-			DataNodeArray oldMap = affinitySets.putIfAbsent(dataNode.getLocationAffinity(), hostMap);
-			if (oldMap != null){
-				hostMap = oldMap;
-			}
-		}	
+		DataNodeArray hostMap = getOrCreate(affinitySets, dataNode.getLocationAffinity());
 		hostMap.add(dataNode);
+		
+		//without a topology all datanodes share the default rack, no need for a reverse lookup
+		String rack = NetworkTopology.DEFAULT_RACK;
+		if (topology.isEnabled()){
+			rack = topology.getRack(InetAddress.getByAddress(dataNode.getIpAddress()));
+		}
+		LOG.info("datanode " + dataNode.key() + " assigned to rack " + rack);
+		int rackAffinity = rack.hashCode();
+		hostRacks.putIfAbsent(dataNode.getLocationAffinity(), rackAffinity);
+		DataNodeArray rackMap = getOrCreate(rackSets, rackAffinity);
+		rackMap.add(dataNode);
+		
 		anySet.add(dataNode);
 	}
 	
-	private BlockInfo _getAffinityBlock(int affinity) throws InterruptedException {
+	private DataNodeArray getOrCreate(ConcurrentHashMap<Integer, DataNodeArray> sets, int affinity){
+		DataNodeArray set = sets.get(affinity);
+		if (set == null){
+			set = new DataNodeArray(blockSelection);
+			DataNodeArray oldSet = sets.putIfAbsent(affinity, set);
+			if (oldSet != null){
+				set = oldSet;
+			}
+		}
+		return set;
+	}
+	
+	private BlockInfo _getAffinityBlock(int affinity, Set<Long> exclude) throws InterruptedException {
 		BlockInfo block = null;
 		DataNodeArray affinitySet = affinitySets.get(affinity);
 		if (affinitySet != null){
-			block = affinitySet.get();
+			block = affinitySet.get(exclude);
+		}
+		return block;
+	}
+	
+	//affinity is either the rack of the writer, or the host of the writer in which case we fall back to its rack
+	private BlockInfo _getRackBlock(int affinity, Set<Long> exclude) throws InterruptedException {
+		BlockInfo block = null;
+		DataNodeArray rackSet = rackSets.get(affinity);
+		if (rackSet == null){
+			Integer rackAffinity = hostRacks.get(affinity);
+			if (rackAffinity != null){
+				rackSet = rackSets.get(rackAffinity);
+			}
+		}
+		if (rackSet != null){
+			block = rackSet.get(exclude);
 		}
 		return block;
 	}
@@ -211,7 +317,7 @@ class StorageTier {
 		}
 		
 		public void add(DataNodeBlocks dataNode){
-			lock.writeLock().lock();
+			RpcStats.lock(lock.writeLock());
 			try {
 				arrayList.add(dataNode);
 			} finally {
@@ -219,8 +325,20 @@ class StorageTier {
 			}
 		}
 		
-		private BlockInfo get() throws InterruptedException {
-			lock.readLock().lock();
+		private DataNodeBlocks get(int index) {
+			RpcStats.lock(lock.readLock());
+			try {
+				if (index < 0 || index >= arrayList.size()){
+					return null;
+				}
+				return arrayList.get(index);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		
+		private BlockInfo get(Set<Long> exclude) throws InterruptedException {
+			RpcStats.lock(lock.readLock());
 			try {
 				BlockInfo block = null;
 				int size = arrayList.size();
@@ -228,6 +346,9 @@ class StorageTier {
 				for (int i = 0; i < size; i++){
 					int index = (startIndex + i) % size;
 					DataNodeBlocks anyDn = arrayList.get(index);
+					if (exclude != null && exclude.contains(anyDn.key())){
+						continue;
+					}
 					block = anyDn.getFreeBlock();
 					if (block != null){
 						break;
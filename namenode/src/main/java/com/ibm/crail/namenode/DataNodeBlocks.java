@@ -23,12 +23,18 @@ package com.ibm.crail.namenode;
 
 import java.net.UnknownHostException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.CapacityInfo;
 import com.ibm.crail.metadata.DataNodeInfo;
 
 public class DataNodeBlocks extends DataNodeInfo {
 	private LinkedBlockingQueue<BlockInfo> freeBlocks;
+	private AtomicLong totalBlocks;
+	private LongAdder allocatedBlocks;
+	private AllocationRate allocationRate;
 	
 	public static DataNodeBlocks fromDataNodeInfo(DataNodeInfo dnInfo) throws UnknownHostException{
 		DataNodeBlocks dnInfoNn = new DataNodeBlocks(dnInfo.getStorageTier(), dnInfo.getLocationAffinity(), dnInfo.getIpAddress(), dnInfo.getPort());
@@ -38,6 +44,14 @@ public class DataNodeBlocks extends DataNodeInfo {
 	public DataNodeBlocks(int tier, int hosthash, byte[] ipAddress, int port) throws UnknownHostException {
 		super(tier, hosthash, ipAddress, port);
 		this.freeBlocks = new LinkedBlockingQueue<BlockInfo>();
+		this.totalBlocks = new AtomicLong(0);
+		this.allocatedBlocks = new LongAdder();
+		this.allocationRate = new AllocationRate();
+	}
+	
+	public void registerBlock(BlockInfo nnBlock) {
+		totalBlocks.incrementAndGet();
+		freeBlocks.add(nnBlock);
 	}
 	
 	public void addFreeBlock(BlockInfo nnBlock) {
@@ -46,9 +60,25 @@ public class DataNodeBlocks extends DataNodeInfo {
 
 	public BlockInfo getFreeBlock() throws InterruptedException {
 		BlockInfo block = this.freeBlocks.poll();
+		if (block != null){
+			allocatedBlocks.increment();
+		}
 		return block;
 	}
 	
+	public long getTotalBlocks() {
+		return totalBlocks.get();
+	}
+	
+	public long getAllocatedBlocks() {
+		return allocatedBlocks.sum();
+	}
+	
+	public CapacityInfo getCapacity() {
+		long allocated = allocatedBlocks.sum();
+		return new CapacityInfo(getStorageTier(), 1, totalBlocks.get(), freeBlocks.size(), allocated, allocationRate.update(allocated));
+	}
+	
 	public int getBlockCount() {
 		return freeBlocks.size();
 	}
@@ -47,6 +47,11 @@ public class DirectoryBlocks extends AbstractNode {
 		return old == null;
 	}
 
+	@Override
+	public boolean swapBlock(int index, BlockInfo oldBlock, BlockInfo newBlock) {
+		return false;
+	}
+
 	@Override
 	public void freeBlocks(BlockStore blockStore) throws UnknownHostException {
 		Iterator<BlockInfo> iter = blocks.values().iterator();
@@ -55,4 +60,14 @@ public class DirectoryBlocks extends AbstractNode {
 			blockStore.addBlock(blockInfo);
 		}	
 	}
+
+	@Override
+	public byte[] getInlineData() {
+		return null;
+	}
+
+	@Override
+	public boolean setInlineData(byte[] data) {
+		return false;
+	}
 }
@@ -30,9 +30,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import com.ibm.crail.CrailNodeType;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.rpc.RpcStats;
 
 public class FileBlocks extends AbstractNode {
 	private ArrayList<BlockInfo> blocks;
+	//content of small files, null once the file is block backed
+	private byte[] inlineData;
 	private final ReentrantReadWriteLock lock;
 	private final Lock readLock;
 	private final Lock writeLock;
@@ -40,6 +43,7 @@ public class FileBlocks extends AbstractNode {
 	public FileBlocks(int fileComponent, CrailNodeType type) {
 		super(fileComponent, type);
 		this.blocks = new ArrayList<BlockInfo>(CrailConstants.NAMENODE_FILEBLOCKS);
+		this.inlineData = null;
 		this.lock = new ReentrantReadWriteLock();
 		this.readLock = lock.readLock();
 		this.writeLock = lock.writeLock();
@@ -47,7 +51,7 @@ public class FileBlocks extends AbstractNode {
 
 	@Override
 	public BlockInfo getBlock(int index) {
-		readLock.lock();
+		RpcStats.lock(readLock);
 		try {
 			if (index < blocks.size()){
 				return blocks.get(index);
@@ -63,10 +67,11 @@ public class FileBlocks extends AbstractNode {
 
 	@Override
 	public boolean addBlock(int index, BlockInfo block) {
-		writeLock.lock();
+		RpcStats.lock(writeLock);
 		try {
 			if (index == blocks.size()){
 				blocks.add(index, block);
+				inlineData = null;
 				return true;
 			} else {
 				return false;
@@ -76,9 +81,27 @@ public class FileBlocks extends AbstractNode {
 		}
 	}
 
+	@Override
+	public boolean swapBlock(int index, BlockInfo oldBlock, BlockInfo newBlock) {
+		RpcStats.lock(writeLock);
+		try {
+			if (index >= blocks.size()){
+				return false;
+			}
+			BlockInfo current = blocks.get(index);
+			if (current.getDnInfo().key() != oldBlock.getDnInfo().key() || current.getAddr() != oldBlock.getAddr()){
+				return false;
+			}
+			blocks.set(index, newBlock);
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
 	@Override
 	public void freeBlocks(BlockStore blockStore) throws UnknownHostException {
-		readLock.lock();
+		RpcStats.lock(readLock);
 		try {
 			Iterator<BlockInfo> iter = blocks.iterator();
 			while (iter.hasNext()){
@@ -90,4 +113,28 @@ public class FileBlocks extends AbstractNode {
 		}
 	}
 
+	@Override
+	public byte[] getInlineData() {
+		RpcStats.lock(readLock);
+		try {
+			return inlineData;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean setInlineData(byte[] data) {
+		RpcStats.lock(writeLock);
+		try {
+			if (blocks.isEmpty()){
+				inlineData = data;
+				return true;
+			} else {
+				return false;
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
 }
@@ -23,6 +23,7 @@ package com.ibm.crail.namenode;
 
 import java.util.Iterator;
 import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 
@@ -44,18 +45,29 @@ public class GCServer implements Runnable {
 		while(true){
 			try{
 				AbstractNode file = deleteQueue.take();
-//				LOG.info("GC: removing deleted file to queue, fd " + file.getFd() + ", queue size " + deleteQueue.size());
-				Iterator<AbstractNode> iter = file.childIterator();
-				while(iter.hasNext()){
-					AbstractNode child = iter.next();
-					deleteQueue.add(child);
-//					LOG.info("GC: adding deleted child to queue, fd " + child.getFd() + ", queue size " + deleteQueue.size());
-				}
-				rpcService.freeFile(file);
+				collect(file);
 			} catch(Exception e){
 				LOG.info("Exception during GC: " + e.getMessage());
 			}
 		}
 	}
+	
+	//frees a deleted file, files still leased by a client go back to the queue until the leases end
+	void collect(AbstractNode file) throws Exception {
+		long leased = file.leaseRemaining();
+		if (leased > 0){
+			file.setDelay(TimeUnit.MILLISECONDS.toSeconds(leased) + 1);
+			deleteQueue.add(file);
+			return;
+		}
+//		LOG.info("GC: removing deleted file to queue, fd " + file.getFd() + ", queue size " + deleteQueue.size());
+		Iterator<AbstractNode> iter = file.childIterator();
+		while(iter.hasNext()){
+			AbstractNode child = iter.next();
+			deleteQueue.add(child);
+//			LOG.info("GC: adding deleted child to queue, fd " + child.getFd() + ", queue size " + deleteQueue.size());
+		}
+		rpcService.freeFile(file);
+	}
 
 }
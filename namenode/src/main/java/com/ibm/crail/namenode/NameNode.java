@@ -28,6 +28,7 @@ import org.slf4j.Logger;
 import com.ibm.crail.conf.CrailConfiguration;
 import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.rpc.RpcBinding;
+import com.ibm.crail.rpc.RpcNameNodeService;
 import com.ibm.crail.utils.CrailUtils;
 
 public class NameNode {
@@ -41,19 +42,27 @@ public class NameNode {
 		CrailConstants.printConf();
 		CrailConstants.verify();
 		
-		DelayQueue<AbstractNode> deleteQueue = new DelayQueue<AbstractNode>();
-		NameNodeService service = new NameNodeService(deleteQueue);
-		
 		RpcBinding rpcBinding = RpcBinding.createInstance(CrailConstants.NAMENODE_RPC_TYPE);
 		rpcBinding.init(conf, null);
 		rpcBinding.printConf(LOG);
 		
+		RpcNameNodeService service = createService();
+		
+		rpcBinding.run(service);
+		System.exit(0);;
+	}
+	
+	//namenode service with its garbage collector running in the background, also used for embedded deployments
+	public static RpcNameNodeService createService() throws Exception {
+		DelayQueue<AbstractNode> deleteQueue = new DelayQueue<AbstractNode>();
+		NameNodeService service = new NameNodeService(deleteQueue);
+		
 		GCServer gcServer = new GCServer(service, deleteQueue);
 		
 		Thread gc = new Thread(gcServer);
+		gc.setDaemon(true);
 		gc.start();
 		
-		rpcBinding.run(service);
-		System.exit(0);;
+		return service;
 	}
 }
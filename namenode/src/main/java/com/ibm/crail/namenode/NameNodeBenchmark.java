@@ -0,0 +1,445 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.nio.ByteBuffer;
+import java.util.StringTokenizer;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcNameNodeState;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.rpc.RpcResponseMessage;
+import com.ibm.crail.utils.GetOpt;
+import com.ibm.crail.utils.LatencyHistogram;
+
+//In-process load generator for NameNodeService. Synthetic datanodes are registered through 
+//setBlock and worker threads call the RpcNameNodeService interface directly, without any 
+//network in between. Requests are deserialized into per-thread message objects the same way 
+//the RPC dispatcher does it, so the measured loop does not allocate on the client side.
+public class NameNodeBenchmark {
+	private static final int OP_CREATE = 0;
+	private static final int OP_GET = 1;
+	private static final int OP_BLOCK = 2;
+	private static final int OP_RENAME = 3;
+	private static final int OP_REMOVE = 4;
+	private static final int MAX_BLOCKS = 8;
+	private static final String[] OP_NAMES = {"createFile", "getFile", "getBlock", "renameFile", "removeFile"};
+	
+	private int dataNodes;
+	private int blocksPerDataNode;
+	private int files;
+	private int loop;
+	private int[] mix;
+	
+	public NameNodeBenchmark(int dataNodes, int blocksPerDataNode, int files, int loop, int[] mix){
+		this.dataNodes = dataNodes;
+		this.blocksPerDataNode = blocksPerDataNode;
+		this.files = files;
+		this.loop = loop;
+		this.mix = mix;
+	}
+	
+	public void run(int threads) throws Exception {
+		DelayQueue<AbstractNode> deleteQueue = new DelayQueue<AbstractNode>();
+		NameNodeService service = new NameNodeService(deleteQueue);
+		Thread gc = new Thread(new GCServer(service, deleteQueue));
+		gc.setDaemon(true);
+		gc.start();
+		registerDataNodes(service);
+		
+		Worker[] workers = new Worker[threads];
+		CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+		for (int i = 0; i < threads; i++){
+			workers[i] = new Worker(service, i, barrier);
+			workers[i].setup();
+			workers[i].start();
+		}
+		barrier.await();
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++){
+			workers[i].join();
+		}
+		long end = System.nanoTime();
+		double executionTime = ((double) (end - start)) / 1000000000.0;
+		
+		LatencyHistogram[] histograms = new LatencyHistogram[OP_NAMES.length];
+		long[] errors = new long[OP_NAMES.length];
+		long total = 0;
+		for (int op = 0; op < OP_NAMES.length; op++){
+			histograms[op] = new LatencyHistogram();
+			for (int i = 0; i < threads; i++){
+				histograms[op].add(workers[i].histograms[op]);
+				errors[op] += workers[i].errors[op];
+			}
+			total += histograms[op].getCount();
+		}
+		
+		System.out.println("threads " + threads + ", execution time [s] " + executionTime + ", ops/s " + String.format("%.0f", total / executionTime));
+		for (int op = 0; op < OP_NAMES.length; op++){
+			LatencyHistogram histogram = histograms[op];
+			if (histogram.getCount() == 0){
+				continue;
+			}
+			System.out.println("  " + OP_NAMES[op] + ", ops " + histogram.getCount() + ", errors " + errors[op] + ", ops/s " + String.format("%.0f", histogram.getCount() / executionTime) 
+					+ ", p50 [us] " + histogram.getPercentile(50) / 1000.0 + ", p99 [us] " + histogram.getPercentile(99) / 1000.0 
+					+ ", p999 [us] " + histogram.getPercentile(99.9) / 1000.0 + ", max [us] " + histogram.getMax() / 1000.0);
+		}
+	}
+	
+	private void registerDataNodes(NameNodeService service) throws Exception {
+		RpcResponseMessage.VoidRes response = new RpcResponseMessage.VoidRes();
+		ErrorState errorState = new ErrorState();
+		int blocksPerCall = (int) (Integer.MAX_VALUE / CrailConstants.BLOCK_SIZE);
+		for (int i = 0; i < dataNodes; i++){
+			byte[] address = new byte[]{10, 0, (byte) (i >>> 8), (byte) i};
+			DataNodeInfo dnInfo = new DataNodeInfo(0, 0, address, 50020);
+			long addr = 0;
+			for (int registered = 0; registered < blocksPerDataNode; registered += blocksPerCall){
+				int length = (int) (Math.min(blocksPerCall, blocksPerDataNode - registered) * CrailConstants.BLOCK_SIZE);
+				BlockInfo blockInfo = new BlockInfo(dnInfo, addr, length, 0);
+				short error = service.setBlock(new RpcRequestMessage.SetBlockReq(blockInfo), response, errorState);
+				if (error != RpcErrors.ERR_OK){
+					throw new Exception("cannot register synthetic datanode, error " + RpcErrors.messages[error]);
+				}
+				addr += length;
+			}
+		}
+	}
+	
+	private static class ErrorState implements RpcNameNodeState {
+		private short error;
+
+		public short getError() {
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	private class Worker extends Thread {
+		private NameNodeService service;
+		private CyclicBarrier barrier;
+		private int dirHash;
+		private LatencyHistogram[] histograms;
+		private long[] errors;
+		
+		//live files, swap-removed
+		private int[] names;
+		private long[] fds;
+		private long[] tokens;
+		private int[] blocks;
+		private int live;
+		private int nextName;
+		
+		private ByteBuffer wire;
+		private ErrorState errorState;
+		private RpcRequestMessage.CreateFileReq createReq;
+		private RpcRequestMessage.GetFileReq getReq;
+		private RpcRequestMessage.GetBlockReq blockReq;
+		private RpcRequestMessage.RenameFileReq renameReq;
+		private RpcRequestMessage.RemoveFileReq removeReq;
+		private RpcResponseMessage.CreateFileRes createRes;
+		private RpcResponseMessage.GetFileRes getRes;
+		private RpcResponseMessage.GetBlockRes blockRes;
+		private RpcResponseMessage.RenameRes renameRes;
+		private RpcResponseMessage.DeleteFileRes removeRes;
+		
+		public Worker(NameNodeService service, int id, CyclicBarrier barrier) throws Exception {
+			this.service = service;
+			this.barrier = barrier;
+			this.dirHash = ("bench" + id).hashCode();
+			this.histograms = new LatencyHistogram[OP_NAMES.length];
+			this.errors = new long[OP_NAMES.length];
+			for (int i = 0; i < OP_NAMES.length; i++){
+				histograms[i] = new LatencyHistogram();
+			}
+			
+			this.names = new int[files];
+			this.fds = new long[files];
+			this.tokens = new long[files];
+			this.blocks = new int[files];
+			this.live = 0;
+			this.nextName = 0;
+			
+			this.wire = ByteBuffer.allocate(2*FileName.CSIZE + RpcRequestMessage.GetBlockReq.CSIZE);
+			this.errorState = new ErrorState();
+			this.createReq = new RpcRequestMessage.CreateFileReq();
+			this.getReq = new RpcRequestMessage.GetFileReq();
+			this.blockReq = new RpcRequestMessage.GetBlockReq();
+			this.renameReq = new RpcRequestMessage.RenameFileReq();
+			this.removeReq = new RpcRequestMessage.RemoveFileReq();
+			this.createRes = new RpcResponseMessage.CreateFileRes();
+			this.getRes = new RpcResponseMessage.GetFileRes();
+			this.blockRes = new RpcResponseMessage.GetBlockRes();
+			this.renameRes = new RpcResponseMessage.RenameRes();
+			this.removeRes = new RpcResponseMessage.DeleteFileRes();
+		}
+		
+		//create the private directory and half of the file population, not measured
+		public void setup() throws Exception {
+			wire.clear();
+			putFileName(dirHash, 0, 1);
+			wire.putInt(CrailNodeType.DIRECTORY.getLabel());
+			wire.putInt(0);
+			wire.putInt(0);
+			wire.putInt(1);
+			wire.putInt(0);
+			wire.flip();
+			createReq.update(wire);
+			errorState.setError(RpcErrors.ERR_OK);
+			short error = service.createFile(createReq, createRes, errorState);
+			if (error != RpcErrors.ERR_OK){
+				throw new Exception("cannot create benchmark directory, error " + RpcErrors.messages[error]);
+			}
+			while (live < files / 2){
+				doCreate();
+			}
+		}
+		
+		@Override
+		public void run() {
+			try {
+				barrier.await();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < loop; i++){
+					int op = nextOp(random.nextInt(100));
+					if (op != OP_CREATE && live == 0){
+						op = OP_CREATE;
+					} else if (op == OP_CREATE && live == files){
+						op = OP_REMOVE;
+					}
+					
+					long start = System.nanoTime();
+					short error = RpcErrors.ERR_OK;
+					switch(op){
+					case OP_CREATE:
+						error = doCreate();
+						break;
+					case OP_GET:
+						error = doGet(random.nextInt(live));
+						break;
+					case OP_BLOCK:
+						error = doGetBlock(random.nextInt(live), random);
+						break;
+					case OP_RENAME:
+						error = doRename(random.nextInt(live));
+						break;
+					case OP_REMOVE:
+						error = doRemove(random.nextInt(live));
+						break;
+					}
+					histograms[op].record(System.nanoTime() - start);
+					if (error != RpcErrors.ERR_OK){
+						errors[op]++;
+					}
+				}
+			} catch(Exception e){
+				e.printStackTrace();
+			}
+		}
+		
+		private int nextOp(int dice){
+			for (int op = 0; op < mix.length; op++){
+				if (dice < mix[op]){
+					return op;
+				}
+				dice -= mix[op];
+			}
+			return OP_GET;
+		}
+		
+		private short doCreate() throws Exception {
+			int name = nameHash(nextName++);
+			wire.clear();
+			putFileName(dirHash, name, 2);
+			wire.putInt(CrailNodeType.DATAFILE.getLabel());
+			wire.putInt(0);
+			wire.putInt(0);
+			wire.putInt(1);
+			wire.putInt(0);
+			wire.flip();
+			createReq.update(wire);
+			errorState.setError(RpcErrors.ERR_OK);
+			short error = service.createFile(createReq, createRes, errorState);
+			if (error == RpcErrors.ERR_OK){
+				names[live] = name;
+				fds[live] = createRes.getFile().getFd();
+				tokens[live] = createRes.getFile().getToken();
+				blocks[live] = 1;
+				live++;
+			}
+			return error;
+		}
+		
+		private short doGet(int slot) throws Exception {
+			wire.clear();
+			putFileName(dirHash, names[slot], 2);
+			wire.putInt(0);
+			wire.flip();
+			getReq.update(wire);
+			errorState.setError(RpcErrors.ERR_OK);
+			return service.getFile(getReq, getRes, errorState);
+		}
+		
+		//blocks are appended in order, so either read an existing block or allocate the next one
+		private short doGetBlock(int slot, ThreadLocalRandom random) throws Exception {
+			int index = random.nextInt(Math.min(blocks[slot] + 1, MAX_BLOCKS));
+			long position = index * CrailConstants.BLOCK_SIZE;
+			wire.clear();
+			wire.putLong(fds[slot]);
+			wire.putLong(tokens[slot]);
+			wire.putLong(position);
+			wire.putInt(0);
+			wire.putInt(0);
+			wire.putLong(position);
+			wire.flip();
+			blockReq.update(wire);
+			errorState.setError(RpcErrors.ERR_OK);
+			short error = service.getBlock(blockReq, blockRes, errorState);
+			if (error == RpcErrors.ERR_OK && index == blocks[slot]){
+				blocks[slot]++;
+			}
+			return error;
+		}
+		
+		private short doRename(int slot) throws Exception {
+			int name = nameHash(nextName++);
+			wire.clear();
+			putFileName(dirHash, names[slot], 2);
+			putFileName(dirHash, name, 2);
+			wire.flip();
+			renameReq.update(wire);
+			errorState.setError(RpcErrors.ERR_OK);
+			short error = service.renameFile(renameReq, renameRes, errorState);
+			if (error == RpcErrors.ERR_OK){
+				names[slot] = name;
+			}
+			return error;
+		}
+		
+		private short doRemove(int slot) throws Exception {
+			wire.clear();
+			putFileName(dirHash, names[slot], 2);
+			wire.putInt(0);
+			wire.flip();
+			removeReq.update(wire);
+			errorState.setError(RpcErrors.ERR_OK);
+			short error = service.removeFile(removeReq, removeRes, errorState);
+			live--;
+			names[slot] = names[live];
+			fds[slot] = fds[live];
+			tokens[slot] = tokens[live];
+			blocks[slot] = blocks[live];
+			return error;
+		}
+		
+		private void putFileName(int dir, int file, int length){
+			wire.putInt(length);
+			wire.putInt(dir);
+			wire.putInt(file);
+			for (int i = 2; i < CrailConstants.DIRECTORY_DEPTH; i++){
+				wire.putInt(0);
+			}
+		}
+	}
+	
+	//same value as ("f" + id).hashCode(), computed without building the string
+	static int nameHash(int id){
+		int hash = 'f';
+		int divisor = 1;
+		while (id / divisor >= 10){
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10){
+			hash = 31*hash + ('0' + (id / divisor) % 10);
+		}
+		return hash;
+	}
+	
+	public static void usage() {
+		System.out.println("Usage: ");
+		System.out.println("nnbench -t <threads,threads,...> -k <ops per thread> -n <datanodes> -b <blocks per datanode> -f <files per thread> "
+				+ "-m <create,get,getBlock,rename,remove percentages>");
+		System.exit(1);
+	}
+	
+	public static void main(String[] args) throws Exception {
+		String[] _args = args;
+		GetOpt go = new GetOpt(_args, "t:k:n:b:f:m:");
+		go.optErr = true;
+		int ch = -1;
+		
+		String threadList = "1,2,4,8";
+		int loop = 100000;
+		int dataNodes = 4;
+		int blocks = 262144;
+		int files = 4096;
+		String mixList = "20,50,15,10,5";
+		
+		while ((ch = go.getopt()) != GetOpt.optEOF) {
+			if ((char) ch == 't') {
+				threadList = go.optArgGet();
+			} else if ((char) ch == 'k') {
+				loop = Integer.parseInt(go.optArgGet());
+			} else if ((char) ch == 'n') {
+				dataNodes = Integer.parseInt(go.optArgGet());
+			} else if ((char) ch == 'b') {
+				blocks = Integer.parseInt(go.optArgGet());
+			} else if ((char) ch == 'f') {
+				files = Integer.parseInt(go.optArgGet());
+			} else if ((char) ch == 'm') {
+				mixList = go.optArgGet();
+			} else {
+				usage();
+			}
+		}
+		
+		int[] mix = new int[OP_NAMES.length];
+		StringTokenizer tokenizer = new StringTokenizer(mixList, ",");
+		for (int i = 0; i < mix.length && tokenizer.hasMoreTokens(); i++){
+			mix[i] = Integer.parseInt(tokenizer.nextToken().trim());
+		}
+		
+		CrailConfiguration conf = new CrailConfiguration();
+		CrailConstants.updateConstants(conf);
+		CrailConstants.verify();
+		System.out.println("nnbench, ops per thread " + loop + ", datanodes " + dataNodes + ", blocks per datanode " + blocks + ", files per thread " + files + ", mix " + mixList);
+		
+		NameNodeBenchmark benchmark = new NameNodeBenchmark(dataNodes, blocks, files, loop, mix);
+		tokenizer = new StringTokenizer(threadList, ",");
+		while (tokenizer.hasMoreTokens()){
+			benchmark.run(Integer.parseInt(tokenizer.nextToken().trim()));
+		}
+		System.exit(0);
+	}
+}
@@ -22,6 +22,10 @@
 package com.ibm.crail.namenode;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.DelayQueue;
 
@@ -34,6 +38,8 @@ import com.ibm.crail.metadata.DataNodeInfo;
 import com.ibm.crail.metadata.FileInfo;
 import com.ibm.crail.metadata.FileName;
 import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcLease;
+import com.ibm.crail.rpc.RpcMoveBlock;
 import com.ibm.crail.rpc.RpcNameNodeService;
 import com.ibm.crail.rpc.RpcNameNodeState;
 import com.ibm.crail.rpc.RpcProtocol;
@@ -43,19 +49,30 @@ import com.ibm.crail.utils.CrailUtils;
 
 public class NameNodeService implements RpcNameNodeService {
 	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int LEASE_PURGE = 64;
 	
 	//data structures for datanodes, blocks, files
 	private BlockStore blockStore;
 	private DelayQueue<AbstractNode> deleteQueue;
 	private FileStore fileTree;
 	private ConcurrentHashMap<Long, AbstractNode> fileTable;	
+	//blocks handed out by moveBlock prepare, owned by the namenode until commit or abort
+	private HashMap<PreparedMove, PreparedMove> preparedMoves;
+	//files by the id of the leases held on them, deleted files stay reachable until their leases end
+	private HashMap<Long, AbstractNode> leases;
+	private long leaseCount;
+	private int leasePurge;
 
 	
-	NameNodeService(DelayQueue<AbstractNode> deleteQueue) throws IOException {
+	NameNodeService(DelayQueue<AbstractNode> deleteQueue) throws Exception {
 		this.blockStore = new BlockStore();
 		this.deleteQueue = deleteQueue;
 		this.fileTree = new FileStore();
 		this.fileTable = new ConcurrentHashMap<Long, AbstractNode>();
+		this.preparedMoves = new HashMap<PreparedMove, PreparedMove>();
+		this.leases = new HashMap<Long, AbstractNode>();
+		this.leaseCount = 0;
+		this.leasePurge = LEASE_PURGE;
 		
 		AbstractNode root = fileTree.getRoot();
 		fileTable.put(root.getFd(), root);
@@ -74,11 +91,16 @@ public class NameNodeService implements RpcNameNodeService {
 		boolean writeable = type.isDirectory() ? false : true; 
 		int storageAffinity = request.getStorageAffinity();
 		int locationAffinity = request.getLocationAffinity();
+		int stripeWidth = type == CrailNodeType.DATAFILE ? request.getStripeWidth() : 1;
+		int stripeUnit = request.getStripeUnit();
 		
 		//check params
 		if (type.isContainer() && locationAffinity > 0){
 			return RpcErrors.ERR_DIR_LOCATION_AFFINITY_MISMATCH;
 		}
+		if (stripeWidth > 1 && (stripeUnit <= 0 || CrailConstants.BLOCK_SIZE % stripeUnit != 0)){
+			return RpcErrors.ERR_INVALID_STRIPE;
+		}
 		
 		//rpc
 		AbstractNode parentInfo = fileTree.retrieveParent(fileHash, errorState);
@@ -93,16 +115,25 @@ public class NameNodeService implements RpcNameNodeService {
 		}
 		
 		AbstractNode fileInfo = FileBlocks.createNode(fileHash.getFileComponent(), type);
+		if (stripeWidth > 1){
+			fileInfo.setStripe(stripeWidth, stripeUnit);
+		}
 		if (!parentInfo.addChild(fileInfo)){
 			return RpcErrors.ERR_FILE_EXISTS;
 		}
 		
-		BlockInfo fileBlock = blockStore.getBlock(storageAffinity, locationAffinity);
-		if (fileBlock == null){
-			return RpcErrors.ERR_NO_FREE_BLOCKS;
-		}			
-		if (!fileInfo.addBlock(0, fileBlock)){
-			return RpcErrors.ERR_ADD_BLOCK_FAILED;
+		//small files start out inline, the first block is allocated once they outgrow the threshold
+		BlockInfo fileBlock = null;
+		if (CrailConstants.INLINE_THRESHOLD > 0 && type == CrailNodeType.DATAFILE){
+			fileInfo.setInlineData(new byte[0]);
+		} else {
+			fileBlock = blockStore.getBlock(storageAffinity, locationAffinity);
+			if (fileBlock == null){
+				return RpcErrors.ERR_NO_FREE_BLOCKS;
+			}			
+			if (!fileInfo.addBlock(0, fileBlock)){
+				return RpcErrors.ERR_ADD_BLOCK_FAILED;
+			}
 		}
 		
 		int index = CrailUtils.computeIndex(fileInfo.getDirOffset());
@@ -116,7 +147,9 @@ public class NameNodeService implements RpcNameNodeService {
 				blockStore.addBlock(parentBlock);
 				parentBlock = parentInfo.getBlock(index);
 				if (parentBlock == null){
-					blockStore.addBlock(fileBlock);
+					if (fileBlock != null){
+						blockStore.addBlock(fileBlock);
+					}
 					return RpcErrors.ERR_CREATE_FILE_FAILED;
 				}
 			}
@@ -166,7 +199,9 @@ public class NameNodeService implements RpcNameNodeService {
 		} 
 		
 		if (writeable){
+			//a writer may overwrite blocks without ever syncing, handing out the token already counts as a modification
 			fileInfo.updateToken();
+			fileInfo.bumpVersion();
 		}
 		fileTable.put(fileInfo.getFd(), fileInfo);
 		
@@ -174,6 +209,9 @@ public class NameNodeService implements RpcNameNodeService {
 		
 		response.setFileInfo(fileInfo);
 		response.setFileBlock(fileBlock);
+		response.setInlineData(fileInfo.getInlineData());
+		//a client holding the current version of a sealed file gets away without the payload
+		response.setNotModified(!writeable && fileInfo.tokenFree() && request.getKnownFd() == fileInfo.getFd() && request.getKnownVersion() == fileInfo.getVersion());
 		if (writeable){
 			response.shipToken();
 		}
@@ -195,6 +233,12 @@ public class NameNodeService implements RpcNameNodeService {
 		//get params
 		FileInfo fileInfo = request.getFileInfo();
 		boolean close = request.isClose();
+		int inlineLength = request.getInlineLength();
+		
+		//check params
+		if (inlineLength > CrailConstants.INLINE_THRESHOLD){
+			return RpcErrors.ERR_CAPACITY_EXCEEDED;
+		}
 
 		//rpc
 		AbstractNode storedFile = fileTable.get(fileInfo.getFd());
@@ -203,7 +247,15 @@ public class NameNodeService implements RpcNameNodeService {
 		}
 		
 		if (!storedFile.getType().isDirectory() && storedFile.getToken() > 0 && storedFile.getToken() == fileInfo.getToken()){
+			if (inlineLength >= 0){
+				byte[] inlineData = new byte[inlineLength];
+				System.arraycopy(request.getInlineData(), 0, inlineData, 0, inlineLength);
+				if (!storedFile.setInlineData(inlineData)){
+					return RpcErrors.ERR_CAPACITY_EXCEEDED;
+				}
+			}
 			storedFile.setCapacity(fileInfo.getCapacity());	
+			storedFile.bumpVersion();
 		}
 		
 		if (close){
@@ -385,6 +437,235 @@ public class NameNodeService implements RpcNameNodeService {
 		return RpcErrors.ERR_OK;
 	}	
 
+	@Override
+	public short getCapacity(RpcRequestMessage.GetCapacityReq request, RpcResponseMessage.GetCapacityRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_CAPACITY, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		int storageClass = request.getStorageClass();
+		int dataNodeIndex = request.getDataNodeIndex();
+		
+		//rpc
+		response.setStorageClassCount(blockStore.getStorageClassCount());
+		if (storageClass < 0 || storageClass >= blockStore.getStorageClassCount()){
+			return RpcErrors.ERR_INVALID_STORAGE_CLASS;
+		}
+		response.setStorageCapacity(blockStore.getCapacity(storageClass));
+		DataNodeBlocks dataNode = blockStore.getDataNode(storageClass, dataNodeIndex);
+		if (dataNode != null){
+			response.setDataNodeInfo(dataNode);
+			response.setDataNodeCapacity(dataNode.getCapacity());
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short moveBlock(RpcRequestMessage.MoveBlockReq request, RpcResponseMessage.MoveBlockRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_MOVE_BLOCK, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		int op = request.getOp();
+		long fd = request.getFd();
+		long position = request.getPosition();
+		BlockInfo srcBlock = request.getSrcBlock();
+		BlockInfo dstBlock = request.getDstBlock();
+		
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return RpcErrors.ERR_FILE_NOT_OPEN;			
+		}
+		int index = CrailUtils.computeIndex(position);
+		
+		PreparedMove key = new PreparedMove(fd, index);
+		if (op == RpcMoveBlock.OP_PREPARE){
+			if (fileInfo.getType() != CrailNodeType.DATAFILE){
+				return RpcErrors.ERR_BLOCK_MOVE_FAILED;
+			}
+			if (!fileInfo.tokenFree()){
+				return RpcErrors.ERR_TOKEN_TAKEN;
+			}
+			if (fileInfo.leaseRemaining() > 0){
+				return RpcErrors.ERR_FILE_LEASED;
+			}
+			BlockInfo block = fileInfo.getBlock(index);
+			if (block == null){
+				return RpcErrors.ERR_CAPACITY_EXCEEDED;
+			}
+			if (block.getDnInfo().getStorageTier() != dstBlock.getDnInfo().getStorageTier()){
+				return RpcErrors.ERR_INVALID_STORAGE_CLASS;
+			}
+			if (block.getDnInfo().key() == dstBlock.getDnInfo().key()){
+				return RpcErrors.ERR_BLOCK_MOVE_FAILED;
+			}
+			DataNodeBlocks dataNode = blockStore.getDataNode(dstBlock.getDnInfo());
+			if (dataNode == null){
+				return RpcErrors.ERR_DATANODE_NOT_REGISTERED;
+			}
+			synchronized(preparedMoves){
+				//a prepared move abandoned by its client is reclaimed once the token expiration has passed
+				PreparedMove stale = preparedMoves.get(key);
+				if (stale != null && !stale.isExpired()){
+					return RpcErrors.ERR_BLOCK_MOVE_FAILED;
+				}
+				BlockInfo freeBlock = dataNode.getFreeBlock();
+				if (freeBlock == null){
+					return RpcErrors.ERR_NO_FREE_BLOCKS;
+				}
+				if (stale != null){
+					blockStore.addBlock(stale.getDstBlock());
+				}
+				PreparedMove move = new PreparedMove(fd, index, block, freeBlock, fileInfo.getVersion(), fileInfo.getCapacity());
+				preparedMoves.put(move, move);
+				response.setSrcBlock(block);
+				response.setDstBlock(freeBlock);
+			}
+		} else if (op == RpcMoveBlock.OP_COMMIT){
+			//only a move prepared by this namenode can be committed, and only once
+			PreparedMove move = takePreparedMove(key, srcBlock, dstBlock);
+			if (move == null){
+				return RpcErrors.ERR_BLOCK_MOVE_FAILED;
+			}
+			if (!fileInfo.tokenFree()){
+				blockStore.addBlock(move.getDstBlock());
+				return RpcErrors.ERR_TOKEN_TAKEN;
+			}
+			if (fileInfo.leaseRemaining() > 0){
+				blockStore.addBlock(move.getDstBlock());
+				return RpcErrors.ERR_FILE_LEASED;
+			}
+			if (!move.isUnchanged(fileInfo)){
+				blockStore.addBlock(move.getDstBlock());
+				return RpcErrors.ERR_BLOCK_CHANGED;
+			}
+			BlockInfo oldBlock = move.getSrcBlock();
+			BlockInfo newBlock = move.getDstBlock();
+			if (!fileInfo.swapBlock(index, oldBlock, newBlock)){
+				blockStore.addBlock(newBlock);
+				return RpcErrors.ERR_BLOCK_MOVE_FAILED;
+			}
+			//the version bump makes clients drop their cached blocks of this file at the next lookup, 
+			//the token expiration only covers reads already issued against the old location
+			AbstractNode retired = AbstractNode.createNode(0, CrailNodeType.DATAFILE);
+			retired.addBlock(0, oldBlock);
+			appendToDeleteQueue(retired);
+			fileInfo.bumpVersion();
+			response.setSrcBlock(oldBlock);
+			response.setDstBlock(newBlock);
+		} else if (op == RpcMoveBlock.OP_ABORT){
+			PreparedMove move = takePreparedMove(key, srcBlock, dstBlock);
+			if (move == null){
+				return RpcErrors.ERR_BLOCK_MOVE_FAILED;
+			}
+			blockStore.addBlock(move.getDstBlock());
+		} else {
+			return RpcErrors.ERR_INVALID_RPC_CMD;
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("moveBlock: op " + op + ", fd " + fd + ", position " + position);
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short leaseFile(RpcRequestMessage.LeaseFileReq request, RpcResponseMessage.LeaseFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_LEASE_FILE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		int op = request.getOp();
+		long fd = request.getFd();
+		long leaseId = request.getLeaseId();
+		long duration = Math.min(request.getDuration(), CrailConstants.NAMENODE_LEASE_MAX);
+		
+		//check params
+		if (op != RpcLease.OP_RELEASE && duration <= 0){
+			return RpcErrors.ERR_LEASE_INVALID;
+		}
+		
+		//rpc
+		if (op == RpcLease.OP_ACQUIRE){
+			AbstractNode fileInfo = fileTable.get(fd);
+			if (fileInfo == null){
+				return RpcErrors.ERR_FILE_NOT_OPEN;
+			}
+			synchronized(leases){
+				leaseId = ++leaseCount;
+				fileInfo.acquireLease(leaseId, leaseExpiration(duration));
+				leases.put(leaseId, fileInfo);
+				if (leases.size() >= leasePurge){
+					purgeLeases();
+				}
+			}
+		} else if (op == RpcLease.OP_RENEW){
+			AbstractNode fileInfo = getLeasedFile(fd, leaseId);
+			if (fileInfo == null || !fileInfo.renewLease(leaseId, leaseExpiration(duration))){
+				return RpcErrors.ERR_LEASE_INVALID;
+			}
+		} else if (op == RpcLease.OP_RELEASE){
+			AbstractNode fileInfo = getLeasedFile(fd, leaseId);
+			if (fileInfo == null){
+				return RpcErrors.ERR_LEASE_INVALID;
+			}
+			synchronized(leases){
+				leases.remove(leaseId);
+			}
+			if (!fileInfo.releaseLease(leaseId)){
+				return RpcErrors.ERR_LEASE_INVALID;
+			}
+			duration = 0;
+		} else {
+			return RpcErrors.ERR_INVALID_RPC_CMD;
+		}
+		response.setLeaseId(leaseId);
+		response.setDuration(duration);
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("leaseFile: op " + op + ", fd " + fd + ", lease " + leaseId + ", duration " + duration);
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+	
+	@Override
+	public short pollFile(RpcRequestMessage.PollFileReq request, RpcResponseMessage.PollFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_POLL_FILE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		//get params
+		long fd = request.getFd();
+		
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return RpcErrors.ERR_FILE_NOT_OPEN;
+		}
+		
+		//the token is reset when the writer closes the file, an expired token is not a close
+		response.setCapacity(fileInfo.getCapacity());
+		response.setSealed(fileInfo.getToken() == 0);
+		
+		return RpcErrors.ERR_OK;
+	}
+
 	@Override
 	public short setBlock(RpcRequestMessage.SetBlockReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
 		//check protocol
@@ -403,7 +684,7 @@ public class NameNodeService implements RpcNameNodeService {
 		for (int i = 0; i < realBlocks; i++){
 			long newAddr = blockInfo.getAddr() + offset;
 			BlockInfo nnBlock = new BlockInfo(dnInfoExt, newAddr, (int) CrailConstants.BLOCK_SIZE, blockInfo.getLkey());
-			error = blockStore.addBlock(nnBlock);
+			error = blockStore.registerBlock(nnBlock);
 			offset += CrailConstants.BLOCK_SIZE;
 			
 			if (error != RpcErrors.ERR_OK){
@@ -447,7 +728,7 @@ public class NameNodeService implements RpcNameNodeService {
 		
 		BlockInfo block = fileInfo.getBlock(index);
 		if (block == null && fileInfo.getToken() == token){
-			block = blockStore.getBlock(storageAffinity, locationAffinitiy);
+			block = blockStore.getBlock(storageAffinity, locationAffinitiy, stripeGroup(fileInfo, index));
 			if (block == null){
 				return RpcErrors.ERR_NO_FREE_BLOCKS;
 			}
@@ -469,6 +750,21 @@ public class NameNodeService implements RpcNameNodeService {
 		return RpcErrors.ERR_OK;
 	}
 	
+	//datanodes already holding a block of the stripe group the index belongs to, null for unstriped files
+	private HashSet<Long> stripeGroup(AbstractNode fileInfo, int index){
+		if (!fileInfo.isStriped()){
+			return null;
+		}
+		HashSet<Long> dataNodes = new HashSet<Long>();
+		for (int i = index - index % fileInfo.getStripeWidth(); i < index; i++){
+			BlockInfo block = fileInfo.getBlock(i);
+			if (block != null){
+				dataNodes.add(block.getDnInfo().key());
+			}
+		}
+		return dataNodes;
+	}
+	
 	@Override
 	public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) throws Exception {
 		//check protocol
@@ -494,7 +790,7 @@ public class NameNodeService implements RpcNameNodeService {
 			return RpcErrors.ERR_GET_FILE_FAILED;
 		}	
 		
-		int index = CrailUtils.computeIndex(position);
+		int index = CrailUtils.computeIndex(fileInfo.blockAddress(position));
 		if (index < 0){
 			return RpcErrors.ERR_POSITION_NEGATIV;			
 		}		
@@ -531,6 +827,7 @@ public class NameNodeService implements RpcNameNodeService {
 		}	
 		
 		response.setData(request.getOp()+1);
+		response.setVersion(Math.min(request.getVersion(), RpcProtocol.PROTOCOL_VERSION));
 		
 		return RpcErrors.ERR_OK;
 	}
@@ -538,6 +835,35 @@ public class NameNodeService implements RpcNameNodeService {
 	
 	//--------------- helper functions
 	
+	//the file a lease was granted on, null if the lease is unknown or belongs to another file
+	private AbstractNode getLeasedFile(long fd, long leaseId){
+		synchronized(leases){
+			AbstractNode fileInfo = leases.get(leaseId);
+			if (fileInfo == null || fileInfo.getFd() != fd){
+				return null;
+			}
+			return fileInfo;
+		}
+	}
+	
+	//drops leases that expired without being released, the table is scanned each time it doubles
+	private void purgeLeases(){
+		Iterator<Map.Entry<Long, AbstractNode>> iter = leases.entrySet().iterator();
+		while (iter.hasNext()){
+			Map.Entry<Long, AbstractNode> entry = iter.next();
+			if (!entry.getValue().hasLease(entry.getKey())){
+				iter.remove();
+			}
+		}
+		leasePurge = Math.max(LEASE_PURGE, leases.size()*2);
+	}
+	
+	//the duration is capped by crail.namenode.lease.max, the sum is kept from overflowing in case the cap is huge
+	private static long leaseExpiration(long duration){
+		long now = System.currentTimeMillis();
+		return duration > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + duration;
+	}
+	
 	void appendToDeleteQueue(AbstractNode fileInfo) throws Exception {
 		if (fileInfo != null) {
 			fileInfo.setDelay(CrailConstants.TOKEN_EXPIRATION);
@@ -545,6 +871,17 @@ public class NameNodeService implements RpcNameNodeService {
 		}
 	}	
 	
+	//removes the move prepared for the same file and block, null if there is none or the client names other blocks
+	private PreparedMove takePreparedMove(PreparedMove key, BlockInfo srcBlock, BlockInfo dstBlock){
+		synchronized(preparedMoves){
+			PreparedMove move = preparedMoves.get(key);
+			if (move == null || !move.matches(srcBlock, dstBlock)){
+				return null;
+			}
+			return preparedMoves.remove(key);
+		}
+	}
+	
 	void freeFile(AbstractNode fileInfo) throws Exception {
 		if (fileInfo != null) {
 			fileInfo.freeBlocks(blockStore);
@@ -0,0 +1,95 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.FileInfo;
+
+//a block move between prepare and commit, identified by file and block index. The target block 
+//belongs to the move until it is either swapped into the file or given back to the block store
+class PreparedMove {
+	private long fd;
+	private int index;
+	private BlockInfo srcBlock;
+	private BlockInfo dstBlock;
+	private long version;
+	private long capacity;
+	private long expiration;
+	
+	public PreparedMove(long fd, int index){
+		this(fd, index, null, null, 0, 0);
+	}
+	
+	public PreparedMove(long fd, int index, BlockInfo srcBlock, BlockInfo dstBlock, long version, long capacity){
+		this.fd = fd;
+		this.index = index;
+		this.srcBlock = srcBlock;
+		this.dstBlock = dstBlock;
+		this.version = version;
+		this.capacity = capacity;
+		this.expiration = System.nanoTime() + TimeUnit.SECONDS.toNanos(CrailConstants.TOKEN_EXPIRATION);
+	}
+	
+	public BlockInfo getSrcBlock() {
+		return srcBlock;
+	}
+
+	public BlockInfo getDstBlock() {
+		return dstBlock;
+	}
+	
+	public boolean isExpired(){
+		return System.nanoTime() > expiration;
+	}
+	
+	//a writer that opened the file since prepare may have changed the block after it was copied
+	public boolean isUnchanged(FileInfo fileInfo){
+		return fileInfo.getVersion() == version && fileInfo.getCapacity() == capacity;
+	}
+	
+	//the blocks named by the client must be the ones handed out at prepare
+	public boolean matches(BlockInfo src, BlockInfo dst){
+		return sameBlock(srcBlock, src) && sameBlock(dstBlock, dst);
+	}
+	
+	private static boolean sameBlock(BlockInfo block, BlockInfo other){
+		return other != null && other.getDnInfo() != null && block.getDnInfo().key() == other.getDnInfo().key() 
+				&& block.getAddr() == other.getAddr() && block.getLkey() == other.getLkey();
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (fd ^ (fd >>> 32)) * 31 + index;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PreparedMove)){
+			return false;
+		}
+		PreparedMove other = (PreparedMove) obj;
+		return fd == other.fd && index == other.index;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.local;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.namenode.NameNode;
+import com.ibm.crail.rpc.RpcBinding;
+import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcNameNodeService;
+import com.ibm.crail.utils.CrailUtils;
+
+//namenode and clients share one JVM, the namenode address is ignored. The first binding to 
+//either run or connect installs the namenode service, all later connections of the process use it
+public class LocalNameNode implements RpcBinding {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private static LocalServiceDispatcher dispatcher = null;
+	
+	private CountDownLatch closed;
+	
+	public LocalNameNode(){
+		this.closed = new CountDownLatch(1);
+	}
+	
+	public void init(CrailConfiguration conf, String[] args) throws IOException{
+	}
+	
+	public void printConf(Logger logger){
+	}
+
+	@Override
+	public RpcConnection connect(InetSocketAddress address) throws Exception {
+		LOG.info("connecting to in-process namenode");
+		return new LocalNameNodeClient(getDispatcher(null));
+	}
+
+	@Override
+	public void run(RpcNameNodeService service) {
+		getDispatcher(service);
+		LOG.info("in-process namenode ready");
+		try {
+			closed.await();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		closed.countDown();
+	}
+	
+	private static synchronized LocalServiceDispatcher getDispatcher(RpcNameNodeService service) throws IllegalStateException {
+		if (dispatcher == null){
+			try {
+				if (service == null){
+					service = NameNode.createService();
+				}
+				dispatcher = new LocalServiceDispatcher(service);
+			} catch(Exception e){
+				throw new IllegalStateException("cannot create in-process namenode, " + e.getMessage());
+			}
+		} else if (service != null){
+			LOG.info("in-process namenode already running, ignoring service");
+		}
+		return dispatcher;
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.local;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcConnectionPool;
+import com.ibm.crail.rpc.RpcCreateFile;
+import com.ibm.crail.rpc.RpcDeleteFile;
+import com.ibm.crail.rpc.RpcGetBlock;
+import com.ibm.crail.rpc.RpcGetCapacity;
+import com.ibm.crail.rpc.RpcGetDataNode;
+import com.ibm.crail.rpc.RpcGetFile;
+import com.ibm.crail.rpc.RpcGetStats;
+import com.ibm.crail.rpc.RpcPollFile;
+import com.ibm.crail.rpc.RpcGetLocation;
+import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcLease;
+import com.ibm.crail.rpc.RpcMoveBlock;
+import com.ibm.crail.rpc.RpcPing;
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.rpc.RpcRenameFile;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.rpc.RpcResponseMessage;
+import com.ibm.crail.rpc.RpcVoid;
+import com.ibm.crail.utils.CrailUtils;
+
+//requests are executed in the calling thread, the messages are never serialized. The only 
+//side effect of the wire format the client relies on is that tokens are not shipped 
+//unless requested, this is emulated by resetting the token on the response 
+public class LocalNameNodeClient implements RpcConnection {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private LocalServiceDispatcher dispatcher;
+	private AtomicInteger ticketCount;
+	private int ticketIndex;
+	private int ticketStride;
+	
+	public LocalNameNodeClient(LocalServiceDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+		this.ticketCount = new AtomicInteger(0);
+		this.ticketIndex = 0;
+		this.ticketStride = 1;
+	}	
+	
+	@Override
+	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth, int stripeUnit) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: createFile, fileType " + type + ", affinity " + locationAffinity);
+		}
+		
+		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageAffinity, locationAffinity, stripeWidth, stripeUnit);
+		RpcResponseMessage.CreateFileRes fileRes = new RpcResponseMessage.CreateFileRes();
+		fileRes.setError(dispatcher.processRequest(RpcProtocol.CMD_CREATE_FILE, createFileReq, fileRes));
+		if (!fileRes.isShipToken()){
+			fileRes.getFile().resetToken();
+		}
+		fileRes.getParent().resetToken();
+		
+		return new LocalNameNodeFuture<RpcCreateFile>(nextTicket(), fileRes);
+	}
+	
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable) throws IOException {
+		return getFile(filename, writeable, -1, 0);
+	}
+	
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable, long knownFd, long knownVersion) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getFile, writeable " + writeable);
+		}
+		
+		RpcRequestMessage.GetFileReq getFileReq = new RpcRequestMessage.GetFileReq(filename, writeable, knownFd, knownVersion);
+		RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
+		fileRes.setError(dispatcher.processRequest(RpcProtocol.CMD_GET_FILE, getFileReq, fileRes));
+		if (!fileRes.isShipToken()){
+			fileRes.getFile().resetToken();
+		}
+		
+		return new LocalNameNodeFuture<RpcGetFile>(nextTicket(), fileRes);
+	}
+	
+	@Override
+	public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close) throws IOException {
+		return setFile(fileInfo, close, null, -1);
+	}
+	
+	@Override
+	public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close, byte[] inlineData, int inlineLength) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: setFile, id " + fileInfo.getFd() + ", close " + close + ", inline " + inlineLength);
+		}
+		
+		RpcRequestMessage.SetFileReq setFileReq = new RpcRequestMessage.SetFileReq(fileInfo, close, inlineData, inlineLength);
+		RpcResponseMessage.VoidRes voidRes = new RpcResponseMessage.VoidRes();
+		voidRes.setError(dispatcher.processRequest(RpcProtocol.CMD_SET_FILE, setFileReq, voidRes));
+		
+		return new LocalNameNodeFuture<RpcVoid>(nextTicket(), voidRes);		
+	}
+	
+	@Override
+	public RpcFuture<RpcDeleteFile> removeFile(FileName filename, boolean recursive) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: removeFile");
+		}
+		
+		RpcRequestMessage.RemoveFileReq removeReq = new RpcRequestMessage.RemoveFileReq(filename, recursive);
+		RpcResponseMessage.DeleteFileRes fileRes = new RpcResponseMessage.DeleteFileRes();
+		fileRes.setError(dispatcher.processRequest(RpcProtocol.CMD_REMOVE_FILE, removeReq, fileRes));
+		if (!fileRes.isShipToken()){
+			fileRes.getFile().resetToken();
+		}
+		fileRes.getParent().resetToken();
+		
+		return new LocalNameNodeFuture<RpcDeleteFile>(nextTicket(), fileRes);			
+	}
+	
+	@Override
+	public RpcFuture<RpcRenameFile> renameFile(FileName srcHash, FileName dstHash) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: renameFile");
+		}
+		
+		RpcRequestMessage.RenameFileReq renameReq = new RpcRequestMessage.RenameFileReq(srcHash, dstHash);
+		RpcResponseMessage.RenameRes renameRes = new RpcResponseMessage.RenameRes();
+		renameRes.setError(dispatcher.processRequest(RpcProtocol.CMD_RENAME_FILE, renameReq, renameRes));
+		renameRes.getSrcParent().resetToken();
+		renameRes.getSrcFile().resetToken();
+		renameRes.getDstParent().resetToken();
+		renameRes.getDstFile().resetToken();
+		
+		return new LocalNameNodeFuture<RpcRenameFile>(nextTicket(), renameRes);	
+	}
+	
+	@Override
+	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position, int storageAffinity, int locationAffinity, long capacity) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getBlock, fd " + fd + ", token " + token + ", position " + position + ", capacity " + capacity);
+		}
+		
+		RpcRequestMessage.GetBlockReq getBlockReq = new RpcRequestMessage.GetBlockReq(fd, token, position, storageAffinity, locationAffinity, capacity);
+		RpcResponseMessage.GetBlockRes getBlockRes = new RpcResponseMessage.GetBlockRes();
+		getBlockRes.setError(dispatcher.processRequest(RpcProtocol.CMD_GET_BLOCK, getBlockReq, getBlockRes));
+		
+		return new LocalNameNodeFuture<RpcGetBlock>(nextTicket(), getBlockRes);	
+	}
+	
+	@Override
+	public RpcFuture<RpcGetLocation> getLocation(FileName fileName, long position) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getLocation, position " + position);
+		}		
+		
+		RpcRequestMessage.GetLocationReq getLocationReq = new RpcRequestMessage.GetLocationReq(fileName, position);
+		RpcResponseMessage.GetLocationRes getLocationRes = new RpcResponseMessage.GetLocationRes();
+		getLocationRes.setError(dispatcher.processRequest(RpcProtocol.CMD_GET_LOCATION, getLocationReq, getLocationRes));
+		
+		return new LocalNameNodeFuture<RpcGetLocation>(nextTicket(), getLocationRes);			
+	}	
+	
+	@Override
+	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: setBlock, ");
+		}		
+		
+		RpcRequestMessage.SetBlockReq setBlockReq = new RpcRequestMessage.SetBlockReq(blockInfo);
+		RpcResponseMessage.VoidRes voidRes = new RpcResponseMessage.VoidRes();
+		voidRes.setError(dispatcher.processRequest(RpcProtocol.CMD_SET_BLOCK, setBlockReq, voidRes));
+		
+		return new LocalNameNodeFuture<RpcVoid>(nextTicket(), voidRes);	
+	}
+	
+	@Override
+	public RpcFuture<RpcGetDataNode> getDataNode(DataNodeInfo dnInfo) throws Exception {
+		RpcRequestMessage.GetDataNodeReq getDataNodeReq = new RpcRequestMessage.GetDataNodeReq(dnInfo);
+		RpcResponseMessage.GetDataNodeRes getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
+		getDataNodeRes.setError(dispatcher.processRequest(RpcProtocol.CMD_GET_DATANODE, getDataNodeReq, getDataNodeRes));
+		
+		return new LocalNameNodeFuture<RpcGetDataNode>(nextTicket(), getDataNodeRes);	
+	}	
+	
+	@Override
+	public RpcFuture<RpcGetCapacity> getCapacity(int storageClass, int dataNodeIndex) throws Exception {
+		RpcRequestMessage.GetCapacityReq getCapacityReq = new RpcRequestMessage.GetCapacityReq(storageClass, dataNodeIndex);
+		RpcResponseMessage.GetCapacityRes getCapacityRes = new RpcResponseMessage.GetCapacityRes();
+		getCapacityRes.setError(dispatcher.processRequest(RpcProtocol.CMD_GET_CAPACITY, getCapacityReq, getCapacityRes));
+		
+		return new LocalNameNodeFuture<RpcGetCapacity>(nextTicket(), getCapacityRes);	
+	}
+	
+	@Override
+	public RpcFuture<RpcMoveBlock> moveBlock(int op, long fd, long position, BlockInfo srcBlock, BlockInfo dstBlock) throws Exception {
+		RpcRequestMessage.MoveBlockReq moveBlockReq = new RpcRequestMessage.MoveBlockReq(op, fd, position, srcBlock, dstBlock);
+		RpcResponseMessage.MoveBlockRes moveBlockRes = new RpcResponseMessage.MoveBlockRes();
+		moveBlockRes.setError(dispatcher.processRequest(RpcProtocol.CMD_MOVE_BLOCK, moveBlockReq, moveBlockRes));
+		
+		return new LocalNameNodeFuture<RpcMoveBlock>(nextTicket(), moveBlockRes);	
+	}
+	
+	@Override
+	public RpcFuture<RpcLease> leaseFile(int op, long fd, long leaseId, long duration) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: leaseFile, op " + op + ", fd " + fd + ", lease " + leaseId + ", duration " + duration);
+		}
+		
+		RpcRequestMessage.LeaseFileReq leaseFileReq = new RpcRequestMessage.LeaseFileReq(op, fd, leaseId, duration);
+		RpcResponseMessage.LeaseFileRes leaseFileRes = new RpcResponseMessage.LeaseFileRes();
+		leaseFileRes.setError(dispatcher.processRequest(RpcProtocol.CMD_LEASE_FILE, leaseFileReq, leaseFileRes));
+		
+		return new LocalNameNodeFuture<RpcLease>(nextTicket(), leaseFileRes);
+	}
+	
+	@Override
+	public RpcFuture<RpcPollFile> pollFile(long fd) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: pollFile, fd " + fd);
+		}
+		
+		RpcRequestMessage.PollFileReq pollFileReq = new RpcRequestMessage.PollFileReq(fd);
+		RpcResponseMessage.PollFileRes pollFileRes = new RpcResponseMessage.PollFileRes();
+		pollFileRes.setError(dispatcher.processRequest(RpcProtocol.CMD_POLL_FILE, pollFileReq, pollFileRes));
+		
+		return new LocalNameNodeFuture<RpcPollFile>(nextTicket(), pollFileRes);
+	}
+	
+	@Override
+	public RpcFuture<RpcGetStats> getStats(short cmd) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getStats, cmd " + cmd);
+		}
+		
+		RpcRequestMessage.GetStatsReq getStatsReq = new RpcRequestMessage.GetStatsReq(cmd);
+		RpcResponseMessage.GetStatsRes getStatsRes = new RpcResponseMessage.GetStatsRes();
+		getStatsRes.setError(dispatcher.processRequest(RpcProtocol.CMD_GET_STATS, getStatsReq, getStatsRes));
+		
+		return new LocalNameNodeFuture<RpcGetStats>(nextTicket(), getStatsRes);
+	}
+	
+	@Override
+	public RpcFuture<RpcVoid> dumpNameNode() throws Exception {
+		RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
+		RpcResponseMessage.VoidRes voidRes = new RpcResponseMessage.VoidRes();
+		voidRes.setError(dispatcher.processRequest(RpcProtocol.CMD_DUMP_NAMENODE, dumpNameNodeReq, voidRes));
+		
+		return new LocalNameNodeFuture<RpcVoid>(nextTicket(), voidRes);	
+	}	
+	
+	@Override
+	public RpcFuture<RpcPing> pingNameNode() throws Exception {
+		RpcRequestMessage.PingNameNodeReq pingReq = new RpcRequestMessage.PingNameNodeReq();
+		RpcResponseMessage.PingNameNodeRes pingRes = new RpcResponseMessage.PingNameNodeRes();
+		pingRes.setError(dispatcher.processRequest(RpcProtocol.CMD_PING_NAMENODE, pingReq, pingRes));
+		
+		return new LocalNameNodeFuture<RpcPing>(nextTicket(), pingRes);	
+	}
+	
+	@Override
+	public void setTicketRange(int index, int count) {
+		this.ticketIndex = index;
+		this.ticketStride = count;
+	}
+	
+	private int nextTicket(){
+		return RpcConnectionPool.tagTicket(ticketCount.incrementAndGet(), ticketIndex, ticketStride);
+	}
+}
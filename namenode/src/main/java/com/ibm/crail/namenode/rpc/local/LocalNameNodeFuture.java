@@ -0,0 +1,82 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.local;
+
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.crail.rpc.RpcFuture;
+
+//loopback calls complete in the calling thread, the future only carries the result
+public class LocalNameNodeFuture<T> implements RpcFuture<T> {
+	private int ticket;
+	private boolean prefetched;
+	private T response;
+	
+	public LocalNameNodeFuture(int ticket, T response) {
+		this.ticket = ticket;
+		this.response = response;
+		this.prefetched = false;
+	}
+
+	@Override
+	public T get() {
+		return response;
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) {
+		return response;
+	}
+	
+	@Override
+	public boolean isDone() {
+		return true;
+	}	
+
+	@Override
+	public int getTicket() {
+		return ticket;
+	}
+	
+	@Override
+	public boolean isPrefetched() {
+		return prefetched;
+	}
+
+	@Override
+	public void setPrefetched(boolean prefetched) {
+		this.prefetched = prefetched;
+	}	
+
+	@Override
+	public void release() {
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+}
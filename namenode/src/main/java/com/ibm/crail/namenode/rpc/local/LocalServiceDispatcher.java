@@ -0,0 +1,140 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.local;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcNameNodeService;
+import com.ibm.crail.rpc.RpcNameNodeState;
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.rpc.RpcResponseMessage;
+import com.ibm.crail.rpc.RpcStats;
+import com.ibm.crail.utils.CrailUtils;
+
+//hands the request objects of the caller straight to the namenode service, no serialization involved
+public class LocalServiceDispatcher {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private RpcNameNodeService service;
+	private RpcStats stats;
+	
+	public LocalServiceDispatcher(RpcNameNodeService service){
+		this.service = service;
+		this.stats = new RpcStats(CrailConstants.NAMENODE_SLOWOP_THRESHOLD);
+		this.stats.startDump(CrailConstants.NAMENODE_STATS_INTERVAL);
+	}
+	
+	public short processRequest(short cmd, RpcProtocol.NameNodeRpcMessage request, RpcProtocol.NameNodeRpcMessage response) {
+		LocalNameNodeState state = new LocalNameNodeState();
+		RpcStats.Stripe stripe = stats.begin();
+		long start = System.nanoTime();
+		short error = RpcErrors.ERR_OK;
+		try {
+			switch(cmd) {
+			case RpcProtocol.CMD_CREATE_FILE:
+				error = service.createFile((RpcRequestMessage.CreateFileReq) request, (RpcResponseMessage.CreateFileRes) response, state);
+				break;			
+			case RpcProtocol.CMD_GET_FILE:
+				error = service.getFile((RpcRequestMessage.GetFileReq) request, (RpcResponseMessage.GetFileRes) response, state);
+				break;
+			case RpcProtocol.CMD_SET_FILE:
+				error = service.setFile((RpcRequestMessage.SetFileReq) request, (RpcResponseMessage.VoidRes) response, state);
+				break;
+			case RpcProtocol.CMD_REMOVE_FILE:
+				error = service.removeFile((RpcRequestMessage.RemoveFileReq) request, (RpcResponseMessage.DeleteFileRes) response, state);
+				break;				
+			case RpcProtocol.CMD_RENAME_FILE:
+				error = service.renameFile((RpcRequestMessage.RenameFileReq) request, (RpcResponseMessage.RenameRes) response, state);
+				break;		
+			case RpcProtocol.CMD_GET_BLOCK:
+				error = service.getBlock((RpcRequestMessage.GetBlockReq) request, (RpcResponseMessage.GetBlockRes) response, state);
+				break;
+			case RpcProtocol.CMD_GET_LOCATION:
+				error = service.getLocation((RpcRequestMessage.GetLocationReq) request, (RpcResponseMessage.GetLocationRes) response, state);
+				break;				
+			case RpcProtocol.CMD_SET_BLOCK:
+				error = service.setBlock((RpcRequestMessage.SetBlockReq) request, (RpcResponseMessage.VoidRes) response, state);
+				break;
+			case RpcProtocol.CMD_GET_DATANODE:
+				error = service.getDataNode((RpcRequestMessage.GetDataNodeReq) request, (RpcResponseMessage.GetDataNodeRes) response, state);
+				break;					
+			case RpcProtocol.CMD_GET_CAPACITY:
+				error = service.getCapacity((RpcRequestMessage.GetCapacityReq) request, (RpcResponseMessage.GetCapacityRes) response, state);
+				break;
+			case RpcProtocol.CMD_MOVE_BLOCK:
+				error = service.moveBlock((RpcRequestMessage.MoveBlockReq) request, (RpcResponseMessage.MoveBlockRes) response, state);
+				break;
+			case RpcProtocol.CMD_LEASE_FILE:
+				error = service.leaseFile((RpcRequestMessage.LeaseFileReq) request, (RpcResponseMessage.LeaseFileRes) response, state);
+				break;
+			case RpcProtocol.CMD_POLL_FILE:
+				error = service.pollFile((RpcRequestMessage.PollFileReq) request, (RpcResponseMessage.PollFileRes) response, state);
+				break;
+			case RpcProtocol.CMD_GET_STATS:
+				error = this.getStats((RpcRequestMessage.GetStatsReq) request, (RpcResponseMessage.GetStatsRes) response, state);
+				break;
+			case RpcProtocol.CMD_DUMP_NAMENODE:
+				error = service.dump((RpcRequestMessage.DumpNameNodeReq) request, (RpcResponseMessage.VoidRes) response, state);
+				break;			
+			case RpcProtocol.CMD_PING_NAMENODE:
+				stats.dump();
+				error = service.ping((RpcRequestMessage.PingNameNodeReq) request, (RpcResponseMessage.PingNameNodeRes) response, state);
+				break;
+			default:
+				error = RpcErrors.ERR_INVALID_RPC_CMD;
+				LOG.info("Rpc command not valid, opcode " + cmd);
+			}
+		} catch(Exception e){
+			error = RpcErrors.ERR_UNKNOWN;
+			LOG.info(RpcErrors.messages[RpcErrors.ERR_UNKNOWN] + e.getMessage());
+			e.printStackTrace();
+		}
+		if (stats.end(stripe, cmd, error, start, System.nanoTime())){
+			LOG.info("slow operation " + RpcStats.getName(cmd) + ", error " + error 
+					+ ", service [us] " + stripe.getService()/1000.0 + ", lockWait [us] " + stripe.getLockWait()/1000.0);
+		}
+		return error;
+	}
+	
+	public short getStats(RpcRequestMessage.GetStatsReq request, RpcResponseMessage.GetStatsRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_STATS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		stats.getStatistics(request.getCmd(), response.getStatistics());
+		return RpcErrors.ERR_OK;
+	}
+	
+	private static class LocalNameNodeState implements RpcNameNodeState {
+		private short error = RpcErrors.ERR_OK;
+
+		public short getError() {
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.namenode.rpc.local.LocalNameNodeClient;
+import com.ibm.crail.namenode.rpc.local.LocalServiceDispatcher;
+import com.ibm.crail.rpc.RpcClient;
+import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcConnectionPool;
+import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcPing;
+
+public class ConnectionPoolTest {
+	LoopbackNameNode namenode;
+	RpcConnectionPool pool;
+
+	@Before
+	public void init() throws Exception {
+		namenode = new LoopbackNameNode();
+		RpcClient rpcClient = new RpcClient() {
+			public void init(CrailConfiguration conf, String[] args) throws IOException {
+			}
+			
+			public void printConf(Logger log) {
+			}
+			
+			public RpcConnection connect(InetSocketAddress address) throws Exception {
+				return new LocalNameNodeClient(new LocalServiceDispatcher(namenode.getService()));
+			}
+			
+			public void close() {
+			}
+		};
+		pool = new RpcConnectionPool(rpcClient, null, 3);
+	}
+	
+	@After
+	public void reset() {
+		namenode.close();
+	}
+	
+	@Test
+	public void testTicketsUniqueAcrossConnections() throws Exception {
+		final HashSet<Integer> tickets = new HashSet<Integer>();
+		Thread[] threads = new Thread[pool.size()];
+		final Throwable[] failure = new Throwable[1];
+		for (int i = 0; i < threads.length; i++){
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int j = 0; j < 100; j++){
+							RpcFuture<RpcPing> future = pool.pingNameNode();
+							synchronized(tickets){
+								Assert.assertTrue(tickets.add(future.getTicket()));
+							}
+						}
+					} catch(Throwable e){
+						failure[0] = e;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		Assert.assertNull(failure[0]);
+		Assert.assertEquals(300, tickets.size());
+	}
+	
+	@Test
+	public void testTicketRange() throws Exception {
+		Assert.assertEquals(7, RpcConnectionPool.tagTicket(7, 0, 1));
+		for (int index = 0; index < 3; index++){
+			for (int ticket : new int[]{ 1, Integer.MAX_VALUE / 3 - 1, Integer.MAX_VALUE / 3, Integer.MAX_VALUE, Integer.MIN_VALUE, -1 }){
+				int tagged = RpcConnectionPool.tagTicket(ticket, index, 3);
+				Assert.assertTrue(tagged >= 0);
+				Assert.assertEquals(index, tagged % 3);
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.namenode.rpc.local.LocalNameNodeClient;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcLease;
+
+public class LeaseTest {
+	LoopbackNameNode namenode;
+	GCServer gc;
+	LocalNameNodeClient client;
+	FileInfo file;
+
+	@Before
+	public void init() throws Exception {
+		namenode = new LoopbackNameNode();
+		CrailConstants.TOKEN_EXPIRATION = 0;
+		gc = new GCServer(namenode.getService(), namenode.getDeleteQueue());
+		client = namenode.getClient();
+		namenode.addDataNode(new byte[]{10, 0, 0, 1});
+		
+		file = client.createFile(new FileName("/lease"), CrailNodeType.DATAFILE, 0, 0, 1, 0).get().getFile();
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getBlock(file.getFd(), file.getToken(), 0, 0, 0, 0).get().getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(file, true).get().getError());
+	}
+	
+	@After
+	public void reset() {
+		namenode.close();
+	}
+	
+	@Test
+	public void testReleaseOwnLease() throws Exception {
+		RpcLease first = lease(RpcLease.OP_ACQUIRE, 0, 60000);
+		RpcLease second = lease(RpcLease.OP_ACQUIRE, 0, 60000);
+		Assert.assertEquals(RpcErrors.ERR_OK, first.getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, second.getError());
+		Assert.assertNotEquals(first.getLeaseId(), second.getLeaseId());
+		
+		Assert.assertEquals(RpcErrors.ERR_OK, lease(RpcLease.OP_RELEASE, first.getLeaseId(), 0).getError());
+		Assert.assertEquals(RpcErrors.ERR_LEASE_INVALID, lease(RpcLease.OP_RELEASE, first.getLeaseId(), 0).getError());
+		Assert.assertEquals(RpcErrors.ERR_LEASE_INVALID, lease(RpcLease.OP_RENEW, first.getLeaseId(), 60000).getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, lease(RpcLease.OP_RENEW, second.getLeaseId(), 60000).getError());
+	}
+	
+	@Test
+	public void testForeignFile() throws Exception {
+		RpcLease acquired = lease(RpcLease.OP_ACQUIRE, 0, 60000);
+		Assert.assertEquals(RpcErrors.ERR_OK, acquired.getError());
+		Assert.assertEquals(RpcErrors.ERR_LEASE_INVALID, client.leaseFile(RpcLease.OP_RELEASE, file.getFd() + 1, acquired.getLeaseId(), 0).get().getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, lease(RpcLease.OP_RELEASE, acquired.getLeaseId(), 0).getError());
+	}
+	
+	@Test
+	public void testMaxDuration() throws Exception {
+		CrailConstants.NAMENODE_LEASE_MAX = 1000;
+		RpcLease acquired = lease(RpcLease.OP_ACQUIRE, 0, Long.MAX_VALUE);
+		Assert.assertEquals(RpcErrors.ERR_OK, acquired.getError());
+		Assert.assertEquals(1000, acquired.getDuration());
+		Assert.assertEquals(1000, lease(RpcLease.OP_RENEW, acquired.getLeaseId(), 5000).getDuration());
+		Assert.assertEquals(RpcErrors.ERR_LEASE_INVALID, lease(RpcLease.OP_ACQUIRE, 0, 0).getError());
+	}
+	
+	@Test
+	public void testUnboundedDuration() throws Exception {
+		CrailConstants.NAMENODE_LEASE_MAX = Long.MAX_VALUE;
+		RpcLease acquired = lease(RpcLease.OP_ACQUIRE, 0, Long.MAX_VALUE);
+		Assert.assertEquals(RpcErrors.ERR_OK, acquired.getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, lease(RpcLease.OP_RENEW, acquired.getLeaseId(), Long.MAX_VALUE).getError());
+	}
+	
+	@Test
+	public void testExpiry() throws Exception {
+		CrailConstants.NAMENODE_LEASE_MAX = 20;
+		RpcLease acquired = lease(RpcLease.OP_ACQUIRE, 0, 60000);
+		Assert.assertEquals(RpcErrors.ERR_OK, acquired.getError());
+		Thread.sleep(50);
+		Assert.assertEquals(RpcErrors.ERR_LEASE_INVALID, lease(RpcLease.OP_RENEW, acquired.getLeaseId(), 60000).getError());
+	}
+	
+	@Test
+	public void testDeferredFree() throws Exception {
+		RpcLease acquired = lease(RpcLease.OP_ACQUIRE, 0, 60000);
+		Assert.assertEquals(RpcErrors.ERR_OK, acquired.getError());
+		AbstractNode deleted = delete();
+		long free = namenode.freeBlocks();
+		
+		gc.collect(deleted);
+		Assert.assertEquals(free, namenode.freeBlocks());
+		Assert.assertEquals(1, namenode.getDeleteQueue().size());
+		
+		//the lease outlives the file table entry and is still released by its id
+		Assert.assertEquals(RpcErrors.ERR_OK, lease(RpcLease.OP_RELEASE, acquired.getLeaseId(), 0).getError());
+		gc.collect(deleted);
+		Assert.assertEquals(free + 1, namenode.freeBlocks());
+	}
+	
+	@Test
+	public void testFreeAfterExpiry() throws Exception {
+		CrailConstants.NAMENODE_LEASE_MAX = 20;
+		Assert.assertEquals(RpcErrors.ERR_OK, lease(RpcLease.OP_ACQUIRE, 0, 60000).getError());
+		AbstractNode deleted = delete();
+		long free = namenode.freeBlocks();
+		
+		gc.collect(deleted);
+		Assert.assertEquals(free, namenode.freeBlocks());
+		Thread.sleep(50);
+		gc.collect(deleted);
+		Assert.assertEquals(free + 1, namenode.freeBlocks());
+	}
+	
+	private RpcLease lease(int op, long leaseId, long duration) throws Exception {
+		return client.leaseFile(op, file.getFd(), leaseId, duration).get();
+	}
+	
+	private AbstractNode delete() throws Exception {
+		Assert.assertEquals(RpcErrors.ERR_OK, client.removeFile(new FileName("/lease"), false).get().getError());
+		AbstractNode deleted = namenode.getDeleteQueue().poll();
+		Assert.assertNotNull(deleted);
+		Assert.assertEquals(file.getFd(), deleted.getFd());
+		return deleted;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import java.util.concurrent.DelayQueue;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.namenode.rpc.local.LocalNameNodeClient;
+import com.ibm.crail.namenode.rpc.local.LocalServiceDispatcher;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.rpc.RpcResponseMessage;
+
+//In-process namenode for tests, clients talk to the service through the local RPC binding. 
+//The global constants the tests depend on are saved on creation and restored by close().
+class LoopbackNameNode {
+	private long blockSize;
+	private String storageTypes;
+	private int inlineThreshold;
+	private long tokenExpiration;
+	private long leaseMax;
+	
+	private DelayQueue<AbstractNode> deleteQueue;
+	private NameNodeService service;
+	private LocalNameNodeClient client;
+	
+	public LoopbackNameNode() throws Exception {
+		this.blockSize = CrailConstants.BLOCK_SIZE;
+		this.storageTypes = CrailConstants.STORAGE_TYPES;
+		this.inlineThreshold = CrailConstants.INLINE_THRESHOLD;
+		this.tokenExpiration = CrailConstants.TOKEN_EXPIRATION;
+		this.leaseMax = CrailConstants.NAMENODE_LEASE_MAX;
+		CrailConstants.BLOCK_SIZE = 1 << 20;
+		CrailConstants.STORAGE_TYPES = "x";
+		CrailConstants.INLINE_THRESHOLD = 0;
+		
+		this.deleteQueue = new DelayQueue<AbstractNode>();
+		this.service = new NameNodeService(deleteQueue);
+		this.client = new LocalNameNodeClient(new LocalServiceDispatcher(service));
+	}
+	
+	//registers a datanode serving four blocks
+	public DataNodeInfo addDataNode(byte[] ipAddress) throws Exception {
+		DataNodeInfo dnInfo = new DataNodeInfo(0, 0, ipAddress, 50020);
+		BlockInfo region = new BlockInfo(dnInfo, 0, (int) (4 * CrailConstants.BLOCK_SIZE), 0);
+		service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), null);
+		return dnInfo;
+	}
+	
+	public long freeBlocks() throws Exception {
+		return client.getCapacity(0, 0).get().getStorageCapacity().getFreeBlocks();
+	}
+	
+	public void close() {
+		CrailConstants.BLOCK_SIZE = blockSize;
+		CrailConstants.STORAGE_TYPES = storageTypes;
+		CrailConstants.INLINE_THRESHOLD = inlineThreshold;
+		CrailConstants.TOKEN_EXPIRATION = tokenExpiration;
+		CrailConstants.NAMENODE_LEASE_MAX = leaseMax;
+	}
+	
+	public DelayQueue<AbstractNode> getDeleteQueue() {
+		return deleteQueue;
+	}
+
+	public NameNodeService getService() {
+		return service;
+	}
+
+	public LocalNameNodeClient getClient() {
+		return client;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.namenode.rpc.local.LocalNameNodeClient;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcMoveBlock;
+
+public class MoveBlockTest {
+	LoopbackNameNode namenode;
+	LocalNameNodeClient client;
+	FileInfo file;
+	BlockInfo block;
+	DataNodeInfo target;
+
+	@Before
+	public void init() throws Exception {
+		namenode = new LoopbackNameNode();
+		client = namenode.getClient();
+		DataNodeInfo first = namenode.addDataNode(new byte[]{10, 0, 0, 1});
+		DataNodeInfo second = namenode.addDataNode(new byte[]{10, 0, 0, 2});
+		
+		file = client.createFile(new FileName("/move"), CrailNodeType.DATAFILE, 0, 0, 1, 0).get().getFile();
+		block = client.getBlock(file.getFd(), file.getToken(), 0, 0, 0, 0).get().getBlockInfo();
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(file, true).get().getError());
+		target = block.getDnInfo().key() == first.key() ? second : first;
+	}
+	
+	@After
+	public void reset() {
+		namenode.close();
+	}
+	
+	@Test
+	public void testPrepareCommit() throws Exception {
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		Assert.assertEquals(block.getAddr(), prepare.getSrcBlock().getAddr());
+		Assert.assertEquals(target.key(), prepare.getDstBlock().getDnInfo().key());
+		long free = namenode.freeBlocks();
+		
+		RpcMoveBlock commit = move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock());
+		Assert.assertEquals(RpcErrors.ERR_OK, commit.getError());
+		Assert.assertEquals(target.key(), location().getDnInfo().key());
+		Assert.assertEquals(free, namenode.freeBlocks());
+	}
+	
+	@Test
+	public void testDuplicateCommit() throws Exception {
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		long free = namenode.freeBlocks();
+		
+		//the block now backing the file must not be handed back to the block store
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_ABORT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		Assert.assertEquals(free, namenode.freeBlocks());
+		Assert.assertEquals(prepare.getDstBlock().getAddr(), location().getAddr());
+	}
+	
+	@Test
+	public void testAbort() throws Exception {
+		long free = namenode.freeBlocks();
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		Assert.assertEquals(free - 1, namenode.freeBlocks());
+		
+		Assert.assertEquals(RpcErrors.ERR_OK, move(RpcMoveBlock.OP_ABORT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		Assert.assertEquals(free, namenode.freeBlocks());
+		Assert.assertEquals(block.getAddr(), location().getAddr());
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+	}
+	
+	@Test
+	public void testAbortWithoutPrepare() throws Exception {
+		long free = namenode.freeBlocks();
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_ABORT, block, block).getError());
+		Assert.assertEquals(free, namenode.freeBlocks());
+		Assert.assertEquals(block.getAddr(), location().getAddr());
+	}
+	
+	@Test
+	public void testCommitForeignBlocks() throws Exception {
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getSrcBlock()).getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+	}
+	
+	@Test
+	public void testPrepareTwice() throws Exception {
+		Assert.assertEquals(RpcErrors.ERR_OK, move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0)).getError());
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0)).getError());
+	}
+	
+	@Test
+	public void testSameDataNode() throws Exception {
+		long free = namenode.freeBlocks();
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_MOVE_FAILED, move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(block.getDnInfo(), 0, 0, 0)).getError());
+		Assert.assertEquals(free, namenode.freeBlocks());
+	}
+	
+	@Test
+	public void testCommitWhileOpen() throws Exception {
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		long free = namenode.freeBlocks();
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getFile(new FileName("/move"), true).get().getError());
+		
+		Assert.assertEquals(RpcErrors.ERR_TOKEN_TAKEN, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		Assert.assertEquals(free + 1, namenode.freeBlocks());
+		Assert.assertEquals(block.getAddr(), location().getAddr());
+	}
+	
+	@Test
+	public void testOverwriteBeforeCommit() throws Exception {
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		long free = namenode.freeBlocks();
+		
+		//the writer overwrites the existing block in place and closes without extending the file
+		FileInfo writer = client.getFile(new FileName("/move"), true).get().getFile();
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getBlock(writer.getFd(), writer.getToken(), 0, 0, 0, 0).get().getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(writer, true).get().getError());
+		
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_CHANGED, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		Assert.assertEquals(free + 1, namenode.freeBlocks());
+		Assert.assertEquals(block.getAddr(), location().getAddr());
+	}
+	
+	@Test
+	public void testAppendBeforeCommit() throws Exception {
+		RpcMoveBlock prepare = move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0));
+		Assert.assertEquals(RpcErrors.ERR_OK, prepare.getError());
+		long free = namenode.freeBlocks();
+		
+		FileInfo writer = client.getFile(new FileName("/move"), true).get().getFile();
+		writer.setCapacity(writer.getCapacity() + 100);
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(writer, true).get().getError());
+		
+		Assert.assertEquals(RpcErrors.ERR_BLOCK_CHANGED, move(RpcMoveBlock.OP_COMMIT, prepare.getSrcBlock(), prepare.getDstBlock()).getError());
+		Assert.assertEquals(free + 1, namenode.freeBlocks());
+		Assert.assertEquals(block.getAddr(), location().getAddr());
+		Assert.assertEquals(RpcErrors.ERR_OK, move(RpcMoveBlock.OP_PREPARE, new BlockInfo(), new BlockInfo(target, 0, 0, 0)).getError());
+	}
+	
+	private RpcMoveBlock move(int op, BlockInfo srcBlock, BlockInfo dstBlock) throws Exception {
+		return client.moveBlock(op, file.getFd(), 0, srcBlock, dstBlock).get();
+	}
+	
+	private BlockInfo location() throws Exception {
+		return client.getLocation(new FileName("/move"), 0).get().getBlockInfo();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.namenode.rpc.local.LocalNameNodeClient;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcPollFile;
+
+public class StreamFileTest {
+	LoopbackNameNode namenode;
+	LocalNameNodeClient client;
+	FileInfo writer;
+	FileInfo reader;
+
+	@Before
+	public void init() throws Exception {
+		namenode = new LoopbackNameNode();
+		client = namenode.getClient();
+		namenode.addDataNode(new byte[]{10, 0, 0, 1});
+		
+		writer = client.createFile(new FileName("/stream"), CrailNodeType.STREAMFILE, 0, 0, 1, 0).get().getFile();
+		reader = client.getFile(new FileName("/stream"), false).get().getFile();
+		Assert.assertEquals(CrailNodeType.STREAMFILE, writer.getType());
+		Assert.assertEquals(CrailNodeType.STREAMFILE, reader.getType());
+		Assert.assertEquals(writer.getFd(), reader.getFd());
+	}
+	
+	@After
+	public void reset() {
+		namenode.close();
+	}
+	
+	@Test
+	public void testBlockDoesNotPublish() throws Exception {
+		//stream writers allocate blocks with the capacity they last synced
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getBlock(writer.getFd(), writer.getToken(), 0, 0, 0, 0).get().getError());
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getBlock(writer.getFd(), writer.getToken(), CrailConstants.BLOCK_SIZE, 0, 0, 0).get().getError());
+		
+		RpcPollFile poll = poll();
+		Assert.assertEquals(0, poll.getCapacity());
+		Assert.assertFalse(poll.isSealed());
+	}
+	
+	@Test
+	public void testTailRead() throws Exception {
+		final long chunk = 4096;
+		final int chunks = 64;
+		final long[] seen = new long[]{ 0, 0 };
+		final Throwable[] failure = new Throwable[1];
+		Thread tail = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while(true){
+						RpcPollFile pollRes = poll();
+						Assert.assertTrue(pollRes.getCapacity() >= seen[0]);
+						seen[0] = pollRes.getCapacity();
+						if (pollRes.isSealed()){
+							seen[1] = 1;
+							return;
+						}
+						Thread.sleep(1);
+					}
+				} catch(Throwable e){
+					failure[0] = e;
+				}
+			}
+		});
+		tail.start();
+		
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getBlock(writer.getFd(), writer.getToken(), 0, 0, 0, 0).get().getError());
+		for (int i = 1; i <= chunks; i++){
+			writer.setCapacity(i * chunk);
+			Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(writer, false).get().getError());
+			Assert.assertEquals(i * chunk, poll().getCapacity());
+			Assert.assertFalse(poll().isSealed());
+		}
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(writer, true).get().getError());
+		
+		tail.join(10000);
+		Assert.assertFalse(tail.isAlive());
+		Assert.assertNull(failure[0]);
+		Assert.assertEquals(1, seen[1]);
+		Assert.assertEquals(chunks * chunk, seen[0]);
+	}
+	
+	@Test
+	public void testSealOnClose() throws Exception {
+		Assert.assertEquals(RpcErrors.ERR_OK, client.getBlock(writer.getFd(), writer.getToken(), 0, 0, 0, 0).get().getError());
+		writer.setCapacity(100);
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(writer, true).get().getError());
+		
+		RpcPollFile poll = poll();
+		Assert.assertEquals(100, poll.getCapacity());
+		Assert.assertTrue(poll.isSealed());
+		
+		//a sealed file is not extended by the writer's stale token
+		writer.setCapacity(200);
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(writer, false).get().getError());
+		Assert.assertEquals(RpcErrors.ERR_TOKEN_MISMATCH, client.getBlock(writer.getFd(), writer.getToken(), CrailConstants.BLOCK_SIZE, 0, 0, 200).get().getError());
+		poll = poll();
+		Assert.assertEquals(100, poll.getCapacity());
+		Assert.assertTrue(poll.isSealed());
+	}
+	
+	@Test
+	public void testReaderDoesNotPublish() throws Exception {
+		reader.setCapacity(100);
+		Assert.assertEquals(RpcErrors.ERR_OK, client.setFile(reader, false).get().getError());
+		
+		RpcPollFile poll = poll();
+		Assert.assertEquals(0, poll.getCapacity());
+		Assert.assertFalse(poll.isSealed());
+	}
+	
+	@Test
+	public void testPollClosedFile() throws Exception {
+		Assert.assertEquals(RpcErrors.ERR_OK, client.removeFile(new FileName("/stream"), false).get().getError());
+		Assert.assertEquals(RpcErrors.ERR_FILE_NOT_OPEN, client.pollFile(reader.getFd()).get().getError());
+	}
+	
+	private RpcPollFile poll() throws Exception {
+		RpcPollFile pollRes = client.pollFile(reader.getFd()).get();
+		Assert.assertEquals(RpcErrors.ERR_OK, pollRes.getError());
+		return pollRes;
+	}
+}
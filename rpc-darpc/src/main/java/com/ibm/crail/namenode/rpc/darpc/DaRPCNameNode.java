@@ -24,11 +24,14 @@ package com.ibm.crail.namenode.rpc.darpc;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.LinkedList;
 import org.slf4j.Logger;
 import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.rpc.RpcBinding;
 import com.ibm.crail.rpc.RpcConnection;
 import com.ibm.crail.rpc.RpcNameNodeService;
+import com.ibm.crail.rpc.RpcProtocol;
 import com.ibm.crail.utils.CrailUtils;
 import com.ibm.darpc.DaRPCClientEndpoint;
 import com.ibm.darpc.DaRPCClientGroup;
@@ -40,13 +43,13 @@ public class DaRPCNameNode implements RpcBinding {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
 	private DaRPCClientGroup<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeClientGroup;
-	private DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeClientEp;
+	private LinkedList<DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse>> namenodeClientEps;
 	
 	private DaRPCServerGroup<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeServerGroup;
 	private RdmaServerEndpoint<DaRPCServerEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse>> namenodeServerEp;
 	
 	public DaRPCNameNode(){
-		this.namenodeClientEp = null;
+		this.namenodeClientEps = new LinkedList<DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse>>();
 		this.namenodeClientGroup = null;
 		this.namenodeServerEp = null;
 		this.namenodeServerGroup = null;
@@ -62,16 +65,22 @@ public class DaRPCNameNode implements RpcBinding {
 	}
 
 	@Override
-	public RpcConnection connect(InetSocketAddress address) throws Exception {
-		DaRPCNameNodeProtocol namenodeProtocol = new DaRPCNameNodeProtocol();
-		this.namenodeClientGroup = DaRPCClientGroup.createClientGroup(namenodeProtocol, 100, DaRPCConstants.NAMENODE_DARPC_MAXINLINE, DaRPCConstants.NAMENODE_DARPC_RECVQUEUE, DaRPCConstants.NAMENODE_DARPC_SENDQUEUE);
-		LOG.info("rpc group started, recvQueue " + namenodeClientGroup.recvQueueSize());
-		this.namenodeClientEp = namenodeClientGroup.createEndpoint();
+	public synchronized RpcConnection connect(InetSocketAddress address) throws Exception {
+		if (namenodeClientGroup == null){
+			DaRPCNameNodeProtocol namenodeProtocol = new DaRPCNameNodeProtocol();
+			this.namenodeClientGroup = DaRPCClientGroup.createClientGroup(namenodeProtocol, 100, DaRPCConstants.NAMENODE_DARPC_MAXINLINE, DaRPCConstants.NAMENODE_DARPC_RECVQUEUE, DaRPCConstants.NAMENODE_DARPC_SENDQUEUE);
+			LOG.info("rpc group started, recvQueue " + namenodeClientGroup.recvQueueSize());
+		}
+		DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeClientEp = namenodeClientGroup.createEndpoint();
 		InetSocketAddress nnAddr = CrailUtils.getNameNodeAddress();
 		LOG.info("connecting to namenode at " + nnAddr);
 		URI uri = URI.create("rdma://" + nnAddr.getAddress().getHostAddress() + ":" + nnAddr.getPort());
 		namenodeClientEp.connect(uri);
+		namenodeClientEps.add(namenodeClientEp);
 		DaRPCNameNodeClient namenodeClientRpc = new DaRPCNameNodeClient(namenodeClientEp);
+		if (CrailConstants.NAMENODE_RPC_PROTOCOL > RpcProtocol.PROTOCOL_FIXED){
+			namenodeClientRpc.handshake(CrailConstants.NAMENODE_RPC_PROTOCOL);
+		}
 		return namenodeClientRpc;
 		
 	}
@@ -109,10 +118,10 @@ public class DaRPCNameNode implements RpcBinding {
 	@Override
 	public void close() {
 		try {
-			if (namenodeClientEp != null){
+			for (DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> namenodeClientEp : namenodeClientEps){
 				namenodeClientEp.close();
-				namenodeClientEp = null;
 			}
+			namenodeClientEps.clear();
 			if (namenodeClientGroup != null){
 				namenodeClientGroup.close();
 				namenodeClientGroup = null;
@@ -32,13 +32,20 @@ import com.ibm.crail.metadata.DataNodeInfo;
 import com.ibm.crail.metadata.FileInfo;
 import com.ibm.crail.metadata.FileName;
 import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcConnectionPool;
 import com.ibm.crail.rpc.RpcCreateFile;
 import com.ibm.crail.rpc.RpcDeleteFile;
 import com.ibm.crail.rpc.RpcGetBlock;
+import com.ibm.crail.rpc.RpcGetCapacity;
 import com.ibm.crail.rpc.RpcGetDataNode;
 import com.ibm.crail.rpc.RpcGetFile;
+import com.ibm.crail.rpc.RpcGetStats;
+import com.ibm.crail.rpc.RpcPollFile;
 import com.ibm.crail.rpc.RpcGetLocation;
+import com.ibm.crail.rpc.RpcFreeList;
 import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcLease;
+import com.ibm.crail.rpc.RpcMoveBlock;
 import com.ibm.crail.rpc.RpcPing;
 import com.ibm.crail.rpc.RpcProtocol;
 import com.ibm.crail.rpc.RpcRenameFile;
@@ -52,22 +59,38 @@ import com.ibm.darpc.DaRPCStream;
 
 public class DaRPCNameNodeClient implements RpcConnection {
 	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int FREELIST_SIZE = 64;
 	
 	private DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> rpcEndpoint;
 	private DaRPCStream<DaRPCNameNodeRequest, DaRPCNameNodeResponse> stream;
+	private int version;
+	//getFile and getBlock dominate the metadata traffic, their futures and messages are recycled
+	private RpcFreeList<DaRPCNameNodeFuture<RpcGetFile>> getFileFutures;
+	private RpcFreeList<DaRPCNameNodeFuture<RpcGetBlock>> getBlockFutures;
+	private int ticketIndex;
+	private int ticketStride;
 	
 	public DaRPCNameNodeClient(DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> endpoint) throws IOException {
 		this.rpcEndpoint = endpoint;
 		this.stream = endpoint.createStream();
+		this.version = RpcProtocol.PROTOCOL_FIXED;
+		this.getFileFutures = new RpcFreeList<DaRPCNameNodeFuture<RpcGetFile>>(FREELIST_SIZE);
+		this.getBlockFutures = new RpcFreeList<DaRPCNameNodeFuture<RpcGetBlock>>(FREELIST_SIZE);
+		this.ticketIndex = 0;
+		this.ticketStride = 1;
 	}	
 	
 	@Override
-	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity) throws IOException {
+	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth, int stripeUnit) throws IOException {
 		if (CrailConstants.DEBUG){
 			LOG.debug("RPC: createFile, fileType " + type + ", affinity " + locationAffinity);
 		}
 		
-		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageAffinity, locationAffinity);
+		//the stripe layout cannot be expressed before protocol version 2
+		if (stripeWidth > 1 && version < RpcProtocol.PROTOCOL_STRIPED){
+			throw new IOException("striped files need namenode protocol version " + RpcProtocol.PROTOCOL_STRIPED + ", connection uses " + version);
+		}
+		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageAffinity, locationAffinity, stripeWidth, stripeUnit);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(createFileReq);
 		request.setCommand(RpcProtocol.CMD_CREATE_FILE);
 		
@@ -76,38 +99,51 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcCreateFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcCreateFile>(future, fileRes);
+		DaRPCNameNodeFuture<RpcCreateFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcCreateFile>(this, future, fileRes);
 		
 		return nameNodeFuture;
 	}
 	
 	@Override
 	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable) throws IOException {
+		return getFile(filename, writeable, -1, 0);
+	}
+	
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable, long knownFd, long knownVersion) throws IOException {
 		if (CrailConstants.DEBUG){
 			LOG.debug("RPC: getFile, writeable " + writeable);
 		}
 		
-		RpcRequestMessage.GetFileReq getFileReq = new RpcRequestMessage.GetFileReq(filename, writeable);
-		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getFileReq);
-		request.setCommand(RpcProtocol.CMD_GET_FILE);
+		DaRPCNameNodeFuture<RpcGetFile> nameNodeFuture = getFileFutures.poll();
+		if (nameNodeFuture == null){
+			RpcRequestMessage.GetFileReq getFileReq = new RpcRequestMessage.GetFileReq();
+			DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getFileReq);
+			request.setCommand(RpcProtocol.CMD_GET_FILE);
 
-		RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
-		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(fileRes);
-		
-		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
-		
-		DaRPCNameNodeFuture<RpcGetFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetFile>(future, fileRes);
+			RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
+			DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(fileRes);
+			
+			nameNodeFuture = new DaRPCNameNodeFuture<RpcGetFile>(this, request, response, fileRes, getFileFutures);
+		}
+		nameNodeFuture.getSendMessage().getFile().set(filename, writeable, knownFd, knownVersion);
+		nameNodeFuture.issue();
 		
 		return nameNodeFuture;
 	}
 	
 	@Override
 	public DaRPCNameNodeFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close) throws IOException {
+		return setFile(fileInfo, close, null, -1);
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close, byte[] inlineData, int inlineLength) throws IOException {
 		if (CrailConstants.DEBUG){
-			LOG.debug("RPC: setFile, id " + fileInfo.getFd() + ", close " + close);
+			LOG.debug("RPC: setFile, id " + fileInfo.getFd() + ", close " + close + ", inline " + inlineLength);
 		}
 		
-		RpcRequestMessage.SetFileReq setFileReq = new RpcRequestMessage.SetFileReq(fileInfo, close);
+		RpcRequestMessage.SetFileReq setFileReq = new RpcRequestMessage.SetFileReq(fileInfo, close, inlineData, inlineLength);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(setFileReq);
 		request.setCommand(RpcProtocol.CMD_SET_FILE);
 		
@@ -116,7 +152,7 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcVoid> nameNodeFuture = new DaRPCNameNodeFuture<RpcVoid>(future, voidRes);
+		DaRPCNameNodeFuture<RpcVoid> nameNodeFuture = new DaRPCNameNodeFuture<RpcVoid>(this, future, voidRes);
 		
 		return nameNodeFuture;		
 	}
@@ -136,7 +172,7 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcDeleteFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcDeleteFile>(future, fileRes);
+		DaRPCNameNodeFuture<RpcDeleteFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcDeleteFile>(this, future, fileRes);
 		
 		return nameNodeFuture;			
 	}
@@ -156,7 +192,7 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcRenameFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcRenameFile>(future, renameRes);
+		DaRPCNameNodeFuture<RpcRenameFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcRenameFile>(this, future, renameRes);
 		
 		return nameNodeFuture;	
 	}
@@ -167,16 +203,19 @@ public class DaRPCNameNodeClient implements RpcConnection {
 			LOG.debug("RPC: getBlock, fd " + fd + ", token " + token + ", position " + position + ", capacity " + capacity);
 		}
 		
-		RpcRequestMessage.GetBlockReq getBlockReq = new RpcRequestMessage.GetBlockReq(fd, token, position, storageAffinity, locationAffinity, capacity);
-		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getBlockReq);
-		request.setCommand(RpcProtocol.CMD_GET_BLOCK);
-		
-		RpcResponseMessage.GetBlockRes getBlockRes = new RpcResponseMessage.GetBlockRes();
-		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getBlockRes);
-		
-		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
-		
-		DaRPCNameNodeFuture<RpcGetBlock> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetBlock>(future, getBlockRes);
+		DaRPCNameNodeFuture<RpcGetBlock> nameNodeFuture = getBlockFutures.poll();
+		if (nameNodeFuture == null){
+			RpcRequestMessage.GetBlockReq getBlockReq = new RpcRequestMessage.GetBlockReq();
+			DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getBlockReq);
+			request.setCommand(RpcProtocol.CMD_GET_BLOCK);
+			
+			RpcResponseMessage.GetBlockRes getBlockRes = new RpcResponseMessage.GetBlockRes();
+			DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getBlockRes);
+			
+			nameNodeFuture = new DaRPCNameNodeFuture<RpcGetBlock>(this, request, response, getBlockRes, getBlockFutures);
+		}
+		nameNodeFuture.getSendMessage().getBlock().set(fd, token, position, storageAffinity, locationAffinity, capacity);
+		nameNodeFuture.issue();
 		
 		return nameNodeFuture;	
 	}
@@ -196,7 +235,7 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcGetLocation> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetLocation>(future, getLocationRes);
+		DaRPCNameNodeFuture<RpcGetLocation> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetLocation>(this, future, getLocationRes);
 		
 		return nameNodeFuture;			
 	}	
@@ -216,7 +255,7 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcVoid> nameNodeFuture = new DaRPCNameNodeFuture<RpcVoid>(future, voidRes);
+		DaRPCNameNodeFuture<RpcVoid> nameNodeFuture = new DaRPCNameNodeFuture<RpcVoid>(this, future, voidRes);
 		
 		return nameNodeFuture;	
 	}
@@ -232,11 +271,103 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcGetDataNode> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetDataNode>(future, getDataNodeRes);
+		DaRPCNameNodeFuture<RpcGetDataNode> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetDataNode>(this, future, getDataNodeRes);
 		
 		return nameNodeFuture;	
 	}	
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetCapacity> getCapacity(int storageClass, int dataNodeIndex) throws Exception {
+		RpcRequestMessage.GetCapacityReq getCapacityReq = new RpcRequestMessage.GetCapacityReq(storageClass, dataNodeIndex);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getCapacityReq);
+		request.setCommand(RpcProtocol.CMD_GET_CAPACITY);
+		
+		RpcResponseMessage.GetCapacityRes getCapacityRes = new RpcResponseMessage.GetCapacityRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getCapacityRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetCapacity> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetCapacity>(this, future, getCapacityRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcMoveBlock> moveBlock(int op, long fd, long position, BlockInfo srcBlock, BlockInfo dstBlock) throws Exception {
+		RpcRequestMessage.MoveBlockReq moveBlockReq = new RpcRequestMessage.MoveBlockReq(op, fd, position, srcBlock, dstBlock);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(moveBlockReq);
+		request.setCommand(RpcProtocol.CMD_MOVE_BLOCK);
+		
+		RpcResponseMessage.MoveBlockRes moveBlockRes = new RpcResponseMessage.MoveBlockRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(moveBlockRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcMoveBlock> nameNodeFuture = new DaRPCNameNodeFuture<RpcMoveBlock>(this, future, moveBlockRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcLease> leaseFile(int op, long fd, long leaseId, long duration) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: leaseFile, op " + op + ", fd " + fd + ", lease " + leaseId + ", duration " + duration);
+		}
+		
+		RpcRequestMessage.LeaseFileReq leaseFileReq = new RpcRequestMessage.LeaseFileReq(op, fd, leaseId, duration);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(leaseFileReq);
+		request.setCommand(RpcProtocol.CMD_LEASE_FILE);
+		
+		RpcResponseMessage.LeaseFileRes leaseFileRes = new RpcResponseMessage.LeaseFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(leaseFileRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcLease> nameNodeFuture = new DaRPCNameNodeFuture<RpcLease>(this, future, leaseFileRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcPollFile> pollFile(long fd) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: pollFile, fd " + fd);
+		}
+		
+		RpcRequestMessage.PollFileReq pollFileReq = new RpcRequestMessage.PollFileReq(fd);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(pollFileReq);
+		request.setCommand(RpcProtocol.CMD_POLL_FILE);
+		
+		RpcResponseMessage.PollFileRes pollFileRes = new RpcResponseMessage.PollFileRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(pollFileRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcPollFile> nameNodeFuture = new DaRPCNameNodeFuture<RpcPollFile>(this, future, pollFileRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetStats> getStats(short cmd) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getStats, cmd " + cmd);
+		}
+		
+		RpcRequestMessage.GetStatsReq getStatsReq = new RpcRequestMessage.GetStatsReq(cmd);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getStatsReq);
+		request.setCommand(RpcProtocol.CMD_GET_STATS);
+
+		RpcResponseMessage.GetStatsRes getStatsRes = new RpcResponseMessage.GetStatsRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getStatsRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetStats> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetStats>(this, future, getStatsRes);
+		
+		return nameNodeFuture;
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcVoid> dumpNameNode() throws Exception {
 		
@@ -250,7 +381,7 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcVoid> nameNodeFuture = new DaRPCNameNodeFuture<RpcVoid>(future, voidRes);
+		DaRPCNameNodeFuture<RpcVoid> nameNodeFuture = new DaRPCNameNodeFuture<RpcVoid>(this, future, voidRes);
 		
 		return nameNodeFuture;	
 	}	
@@ -267,12 +398,40 @@ public class DaRPCNameNodeClient implements RpcConnection {
 		
 		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
 		
-		DaRPCNameNodeFuture<RpcPing> nameNodeFuture = new DaRPCNameNodeFuture<RpcPing>(future, pingRes);
+		DaRPCNameNodeFuture<RpcPing> nameNodeFuture = new DaRPCNameNodeFuture<RpcPing>(this, future, pingRes);
 		
 		return nameNodeFuture;	
 	}
 	
-	private DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> issueRPC(DaRPCNameNodeRequest request, DaRPCNameNodeResponse response) throws IOException{
+	@Override
+	public void setTicketRange(int index, int count) {
+		this.ticketIndex = index;
+		this.ticketStride = count;
+	}
+	
+	//agrees on the wire format with the namenode, a namenode without versioning answers the 
+	//ping without a version and the connection stays on the fixed layout
+	void handshake(int maxVersion) throws Exception {
+		RpcRequestMessage.PingNameNodeReq pingReq = new RpcRequestMessage.PingNameNodeReq(Math.min(maxVersion, RpcProtocol.PROTOCOL_VERSION));
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(pingReq);
+		request.setCommand(RpcProtocol.CMD_PING_NAMENODE);
+
+		RpcResponseMessage.PingNameNodeRes pingRes = new RpcResponseMessage.PingNameNodeRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(pingRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		new DaRPCNameNodeFuture<RpcPing>(this, future, pingRes).get();
+		
+		this.version = Math.min(pingRes.getVersion(), pingReq.getVersion());
+		LOG.info("namenode protocol version " + version);
+	}
+	
+	int tagTicket(int ticket){
+		return RpcConnectionPool.tagTicket(ticket, ticketIndex, ticketStride);
+	}
+	
+	DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> issueRPC(DaRPCNameNodeRequest request, DaRPCNameNodeResponse response) throws IOException{
+		request.setVersion(version);
 		try {
 			DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = stream.request(request, response, false);
 			return future;
@@ -21,33 +21,93 @@
 
 package com.ibm.crail.namenode.rpc.darpc;
 
+import java.io.IOException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcFreeList;
 import com.ibm.crail.rpc.RpcFuture;
 import com.ibm.darpc.DaRPCFuture;
 
 public class DaRPCNameNodeFuture<T> implements RpcFuture<T> {
+	private static final long MAX_BACKOFF = 1000;
+	
+	private DaRPCNameNodeClient client;
 	private DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future;
+	private int ticket;
 	private boolean prefetched;
 	private T response;
+	private DaRPCNameNodeRequest request;
+	private DaRPCNameNodeResponse responseMessage;
+	private RpcFreeList<DaRPCNameNodeFuture<T>> freeList;
+	private boolean inUse;
 	
-	public DaRPCNameNodeFuture(DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future, T response) {
+	public DaRPCNameNodeFuture(DaRPCNameNodeClient client, DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future, T response) {
+		this.client = client;
 		this.future = future;
+		this.ticket = client.tagTicket(future.getTicket());
+		this.response = response;
+		this.prefetched = false;
+		this.request = future.getSendMessage();
+		this.responseMessage = future.getReceiveMessage();
+		this.freeList = null;
+		this.inUse = true;
+	}
+	
+	//reusable future, owns its request and response messages and goes back to the free list on release
+	public DaRPCNameNodeFuture(DaRPCNameNodeClient client, DaRPCNameNodeRequest request, DaRPCNameNodeResponse responseMessage, T response, RpcFreeList<DaRPCNameNodeFuture<T>> freeList) {
+		this.client = client;
+		this.future = null;
+		this.ticket = 0;
 		this.response = response;
 		this.prefetched = false;
+		this.request = request;
+		this.responseMessage = responseMessage;
+		this.freeList = freeList;
+		this.inUse = false;
+	}
+	
+	void issue() throws IOException {
+		this.future = client.issueRPC(request, responseMessage);
+		this.ticket = client.tagTicket(future.getTicket());
+		this.prefetched = false;
+		this.inUse = true;
+	}
+	
+	DaRPCNameNodeRequest getSendMessage(){
+		return request;
 	}
 
 	@Override
 	public T get() throws InterruptedException, ExecutionException {
 		future.get();
+		int retries = 0;
+		while (isThrottled() && retries < CrailConstants.NAMENODE_ADMISSION_RETRIES){
+			Thread.sleep(backoff(retries++));
+			reissue();
+			future.get();
+		}
 		return response;
 	}
 
 	@Override
 	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
 		future.get(timeout, unit);
+		int retries = 0;
+		while (isThrottled() && retries < CrailConstants.NAMENODE_ADMISSION_RETRIES){
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0){
+				throw new TimeoutException("RPC throttled by namenode, retries " + retries);
+			}
+			Thread.sleep(Math.min(backoff(retries++), remaining));
+			reissue();
+			future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		}
 		return response;
 	}
 	
@@ -58,7 +118,7 @@ public class DaRPCNameNodeFuture<T> implements RpcFuture<T> {
 
 	@Override
 	public int getTicket() {
-		return future.getTicket();
+		return ticket;
 	}
 	
 	@Override
@@ -71,6 +131,15 @@ public class DaRPCNameNodeFuture<T> implements RpcFuture<T> {
 		this.prefetched = prefetched;
 	}	
 
+	@Override
+	public void release() {
+		if (freeList != null && inUse && future.isDone()){
+			inUse = false;
+			future = null;
+			freeList.offer(this);
+		}
+	}
+
 	@Override
 	public boolean cancel(boolean mayInterruptIfRunning) {
 		return future.cancel(mayInterruptIfRunning);
@@ -80,4 +149,24 @@ public class DaRPCNameNodeFuture<T> implements RpcFuture<T> {
 	public boolean isCancelled() {
 		return future.isCancelled();
 	}
+	
+	private boolean isThrottled(){
+		return future.getReceiveMessage().getError() == RpcErrors.ERR_RPC_THROTTLED;
+	}
+	
+	//exponential backoff seeded with the namenode's retry hint, randomized so that 
+	//throttled clients do not come back in lockstep
+	private long backoff(int retries){
+		long delay = Math.max(future.getReceiveMessage().getRetryHint(), 1);
+		delay = Math.min(delay << Math.min(retries, 10), MAX_BACKOFF);
+		return delay/2 + ThreadLocalRandom.current().nextLong(delay/2 + 1);
+	}
+	
+	private void reissue() throws ExecutionException {
+		try {
+			future = client.issueRPC(request, responseMessage);
+		} catch(IOException e){
+			throw new ExecutionException(e);
+		}
+	}
 }
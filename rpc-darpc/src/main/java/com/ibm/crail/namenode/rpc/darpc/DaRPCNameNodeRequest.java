@@ -33,10 +33,12 @@ import com.ibm.darpc.DaRPCMessage;
 
 public class DaRPCNameNodeRequest implements DaRPCMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 4 + Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE), RpcRequestMessage.MoveBlockReq.CSIZE);
 	
 	private short cmd;
 	private short type;
+	private int version;
+	private long arrival;
 	private RpcRequestMessage.CreateFileReq createFileReq;
 	private RpcRequestMessage.GetFileReq fileReq;
 	private RpcRequestMessage.SetFileReq setFileReq;
@@ -46,6 +48,11 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 	private RpcRequestMessage.GetLocationReq getLocationReq;
 	private RpcRequestMessage.SetBlockReq setBlockReq;
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
+	private RpcRequestMessage.GetCapacityReq getCapacityReq;
+	private RpcRequestMessage.MoveBlockReq moveBlockReq;
+	private RpcRequestMessage.LeaseFileReq leaseFileReq;
+	private RpcRequestMessage.PollFileReq pollFileReq;
+	private RpcRequestMessage.GetStatsReq getStatsReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
 	private RpcRequestMessage.PingNameNodeReq pingNameNodeReq;
 
@@ -63,6 +70,11 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
 		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
 		this.getDataNodeReq = new RpcRequestMessage.GetDataNodeReq();
+		this.getCapacityReq = new RpcRequestMessage.GetCapacityReq();
+		this.moveBlockReq = new RpcRequestMessage.MoveBlockReq();
+		this.leaseFileReq = new RpcRequestMessage.LeaseFileReq();
+		this.pollFileReq = new RpcRequestMessage.PollFileReq();
+		this.getStatsReq = new RpcRequestMessage.GetStatsReq();
 	}
 	
 	public DaRPCNameNodeRequest(RpcRequestMessage.CreateFileReq message) {
@@ -109,6 +121,31 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		this.getDataNodeReq = message;
 	}
 	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetCapacityReq message) {
+		this.type = message.getType();
+		this.getCapacityReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.MoveBlockReq message) {
+		this.type = message.getType();
+		this.moveBlockReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.LeaseFileReq message) {
+		this.type = message.getType();
+		this.leaseFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.PollFileReq message) {
+		this.type = message.getType();
+		this.pollFileReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetStatsReq message) {
+		this.type = message.getType();
+		this.getStatsReq = message;
+	}
+	
 	public DaRPCNameNodeRequest(RpcRequestMessage.DumpNameNodeReq message) {
 		this.type = message.getType();
 		this.dumpNameNodeReq = message;
@@ -129,30 +166,36 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 	
 	public int write(ByteBuffer buffer) throws IOException{
 		buffer.putShort(cmd);
-		buffer.putShort(type);
+		buffer.putShort(RpcProtocol.encodeType(type, version));
 		
 		int written = 4;
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
 		switch(type){
 		case RpcProtocol.REQ_CREATE_FILE:
-			written += createFileReq.write(buffer);
+			if (striped){
+				written += createFileReq.writeStriped(buffer);
+			} else {
+				written += compact ? createFileReq.writeCompact(buffer) : createFileReq.write(buffer);
+			}
 			break;		
 		case RpcProtocol.REQ_GET_FILE:
-			written += fileReq.write(buffer);
+			written += compact ? fileReq.writeCompact(buffer) : fileReq.write(buffer);
 			break;
 		case RpcProtocol.REQ_SET_FILE:
 			written += setFileReq.write(buffer);
 			break;
 		case RpcProtocol.REQ_REMOVE_FILE:
-			written += removeReq.write(buffer);
+			written += compact ? removeReq.writeCompact(buffer) : removeReq.write(buffer);
 			break;			
 		case RpcProtocol.REQ_RENAME_FILE:
-			written += renameFileReq.write(buffer);
+			written += compact ? renameFileReq.writeCompact(buffer) : renameFileReq.write(buffer);
 			break;
 		case RpcProtocol.REQ_GET_BLOCK:
-			written += getBlockReq.write(buffer);
+			written += compact ? getBlockReq.writeCompact(buffer) : getBlockReq.write(buffer);
 			break;
 		case RpcProtocol.REQ_GET_LOCATION:
-			written += getLocationReq.write(buffer);
+			written += compact ? getLocationReq.writeCompact(buffer) : getLocationReq.write(buffer);
 			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			written += setBlockReq.write(buffer);
@@ -160,6 +203,21 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		case RpcProtocol.REQ_GET_DATANODE:
 			written += getDataNodeReq.write(buffer);
 			break;				
+		case RpcProtocol.REQ_GET_CAPACITY:
+			written += getCapacityReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_MOVE_BLOCK:
+			written += moveBlockReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_LEASE_FILE:
+			written += leaseFileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_POLL_FILE:
+			written += pollFileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_GET_STATS:
+			written += getStatsReq.write(buffer);
+			break;
 		case RpcProtocol.REQ_DUMP_NAMENODE:
 			written += dumpNameNodeReq.write(buffer);
 			break;
@@ -171,31 +229,64 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		return written;
 	}
 	
+	//called by the server endpoint on the receive completion, before the event is dispatched, 
+	//so the arrival stamp is taken when the frame is received and parsing counts as wait
 	public void update(ByteBuffer buffer) throws IOException {
+		this.arrival = System.nanoTime();
 		this.cmd = buffer.getShort();
-		this.type = buffer.getShort();
+		short tag = buffer.getShort();
+		this.type = RpcProtocol.decodeType(tag);
+		this.version = RpcProtocol.decodeVersion(tag);
 		
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
 		switch(type){
 		case RpcProtocol.REQ_CREATE_FILE:
-			createFileReq.update(buffer);
+			if (striped){
+				createFileReq.updateStriped(buffer);
+			} else if (compact){
+				createFileReq.updateCompact(buffer);
+			} else {
+				createFileReq.update(buffer);
+			}
 			break;		
 		case RpcProtocol.REQ_GET_FILE:
-			fileReq.update(buffer);
+			if (compact){
+				fileReq.updateCompact(buffer);
+			} else {
+				fileReq.update(buffer);
+			}
 			break;
 		case RpcProtocol.REQ_SET_FILE:
 			setFileReq.update(buffer);
 			break;
 		case RpcProtocol.REQ_REMOVE_FILE:
-			removeReq.update(buffer);
+			if (compact){
+				removeReq.updateCompact(buffer);
+			} else {
+				removeReq.update(buffer);
+			}
 			break;			
 		case RpcProtocol.REQ_RENAME_FILE:
-			renameFileReq.update(buffer);
+			if (compact){
+				renameFileReq.updateCompact(buffer);
+			} else {
+				renameFileReq.update(buffer);
+			}
 			break;
 		case RpcProtocol.REQ_GET_BLOCK:
-			getBlockReq.update(buffer);
+			if (compact){
+				getBlockReq.updateCompact(buffer);
+			} else {
+				getBlockReq.update(buffer);
+			}
 			break;
 		case RpcProtocol.REQ_GET_LOCATION:
-			getLocationReq.update(buffer);
+			if (compact){
+				getLocationReq.updateCompact(buffer);
+			} else {
+				getLocationReq.update(buffer);
+			}
 			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
 			setBlockReq.update(buffer);
@@ -203,6 +294,21 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		case RpcProtocol.REQ_GET_DATANODE:
 			getDataNodeReq.update(buffer);
 			break;				
+		case RpcProtocol.REQ_GET_CAPACITY:
+			getCapacityReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_MOVE_BLOCK:
+			moveBlockReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_LEASE_FILE:
+			leaseFileReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_POLL_FILE:
+			pollFileReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_GET_STATS:
+			getStatsReq.update(buffer);
+			break;
 		case RpcProtocol.REQ_DUMP_NAMENODE:
 			dumpNameNodeReq.update(buffer);
 			break;		
@@ -212,6 +318,14 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		}
 	}
 
+	public void setVersion(int version) {
+		this.version = version;
+	}
+	
+	public int getVersion() {
+		return version;
+	}
+
 	public short getCmd() {
 		return cmd;
 	}
@@ -219,6 +333,10 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 	public short getType(){
 		return type;
 	}
+	
+	public long getArrival(){
+		return arrival;
+	}
 
 	public RpcRequestMessage.CreateFileReq createFile(){
 		return this.createFileReq;
@@ -256,6 +374,26 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		return this.getDataNodeReq;
 	}	
 	
+	public RpcRequestMessage.GetCapacityReq getCapacity() {
+		return this.getCapacityReq;
+	}
+	
+	public RpcRequestMessage.MoveBlockReq moveBlock() {
+		return this.moveBlockReq;
+	}
+	
+	public RpcRequestMessage.LeaseFileReq leaseFile() {
+		return this.leaseFileReq;
+	}
+	
+	public RpcRequestMessage.PollFileReq pollFile() {
+		return this.pollFileReq;
+	}
+	
+	public RpcRequestMessage.GetStatsReq getStats() {
+		return this.getStatsReq;
+	}
+	
 	public RpcRequestMessage.DumpNameNodeReq dumpNameNode() {
 		return this.dumpNameNodeReq;
 	}
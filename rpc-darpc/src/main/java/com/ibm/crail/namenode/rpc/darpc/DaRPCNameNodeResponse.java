@@ -29,10 +29,12 @@ import com.ibm.crail.rpc.RpcResponseMessage;
 import com.ibm.darpc.DaRPCMessage;
 
 public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
-	public static final int CSIZE = 4 + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 8 + Math.max(Math.max(Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE), RpcResponseMessage.GetCapacityRes.CSIZE), RpcResponseMessage.GetFileRes.CSIZE);
 	
 	private short type;
+	private int version;
 	private short error;
+	private int retryHint;
 	private RpcResponseMessage.VoidRes voidRes;
 	private RpcResponseMessage.CreateFileRes createFileRes;
 	private RpcResponseMessage.GetFileRes getFileRes;
@@ -41,11 +43,17 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 	private RpcResponseMessage.GetBlockRes getBlockRes;
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
+	private RpcResponseMessage.GetCapacityRes getCapacityRes;
+	private RpcResponseMessage.MoveBlockRes moveBlockRes;
+	private RpcResponseMessage.GetStatsRes getStatsRes;
+	private RpcResponseMessage.LeaseFileRes leaseFileRes;
+	private RpcResponseMessage.PollFileRes pollFileRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
 	
 	public DaRPCNameNodeResponse() {
 		this.type = 0;
 		this.error = 0;
+		this.retryHint = 0;
 		
 		this.voidRes = new RpcResponseMessage.VoidRes();
 		this.createFileRes = new RpcResponseMessage.CreateFileRes();
@@ -55,6 +63,11 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
+		this.getCapacityRes = new RpcResponseMessage.GetCapacityRes();
+		this.moveBlockRes = new RpcResponseMessage.MoveBlockRes();
+		this.getStatsRes = new RpcResponseMessage.GetStatsRes();
+		this.leaseFileRes = new RpcResponseMessage.LeaseFileRes();
+		this.pollFileRes = new RpcResponseMessage.PollFileRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
 	}
 	
@@ -98,6 +111,31 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		this.getDataNodeRes = message;
 	}	
 	
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetCapacityRes message) {
+		this.type = message.getType();
+		this.getCapacityRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.MoveBlockRes message) {
+		this.type = message.getType();
+		this.moveBlockRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.GetStatsRes message) {
+		this.type = message.getType();
+		this.getStatsRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.LeaseFileRes message) {
+		this.type = message.getType();
+		this.leaseFileRes = message;
+	}
+	
+	public DaRPCNameNodeResponse(RpcResponseMessage.PollFileRes message) {
+		this.type = message.getType();
+		this.pollFileRes = message;
+	}
+	
 	public DaRPCNameNodeResponse(RpcResponseMessage.PingNameNodeRes message) {
 		this.type = message.getType();
 		this.pingNameNodeRes = message;
@@ -146,6 +184,31 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 				throw new Exception("Response type not set");
 			}
 			break;			
+		case RpcProtocol.RES_GET_CAPACITY:
+			if (getCapacityRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_MOVE_BLOCK:
+			if (moveBlockRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_GET_STATS:
+			if (getStatsRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_LEASE_FILE:
+			if (leaseFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_POLL_FILE:
+			if (pollFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
 		case RpcProtocol.RES_PING_NAMENODE:
 			if (pingNameNodeRes == null){
 				throw new Exception("Response type not set");
@@ -159,25 +222,40 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 	}
 	
 	public int write(ByteBuffer buffer){
-		buffer.putShort(type);
+		buffer.putShort(RpcProtocol.encodeType(type, version));
 		buffer.putShort(error);
 		
 		int written = 4;
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
+		//the retry hint for throttled requests is part of the header from protocol version 2 on
+		if (striped){
+			buffer.putInt(retryHint);
+			written += 4;
+		}
 		switch(type){
 		case RpcProtocol.RES_VOID:
 			written += voidRes.write(buffer);
 			break;	
 		case RpcProtocol.RES_CREATE_FILE:
-			written += createFileRes.write(buffer);
+			if (striped){
+				written += createFileRes.writeStriped(buffer);
+			} else {
+				written += compact ? createFileRes.writeCompact(buffer) : createFileRes.write(buffer);
+			}
 			break;				
 		case RpcProtocol.RES_GET_FILE:
-			written += getFileRes.write(buffer);
+			if (striped){
+				written += getFileRes.writeStriped(buffer);
+			} else {
+				written += compact ? getFileRes.writeCompact(buffer) : getFileRes.write(buffer);
+			}
 			break;
 		case RpcProtocol.RES_DELETE_FILE:
-			written += delFileRes.write(buffer);
+			written += striped ? delFileRes.writeStriped(buffer) : delFileRes.write(buffer);
 			break;				
 		case RpcProtocol.RES_RENAME_FILE:
-			written += renameRes.write(buffer);
+			written += striped ? renameRes.writeStriped(buffer) : renameRes.write(buffer);
 			break;				
 		case RpcProtocol.RES_GET_BLOCK:
 			written += getBlockRes.write(buffer);
@@ -188,6 +266,21 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		case RpcProtocol.RES_GET_DATANODE:
 			written += getDataNodeRes.write(buffer);
 			break;			
+		case RpcProtocol.RES_GET_CAPACITY:
+			written += getCapacityRes.write(buffer);
+			break;
+		case RpcProtocol.RES_MOVE_BLOCK:
+			written += moveBlockRes.write(buffer);
+			break;
+		case RpcProtocol.RES_GET_STATS:
+			written += getStatsRes.write(buffer);
+			break;
+		case RpcProtocol.RES_LEASE_FILE:
+			written += leaseFileRes.write(buffer);
+			break;
+		case RpcProtocol.RES_POLL_FILE:
+			written += pollFileRes.write(buffer);
+			break;
 		case RpcProtocol.RES_PING_NAMENODE:
 			written += pingNameNodeRes.write(buffer);
 			break;			
@@ -197,28 +290,53 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 	}
 	
 	public void update(ByteBuffer buffer){
-		this.type = buffer.getShort();
+		short tag = buffer.getShort();
+		this.type = RpcProtocol.decodeType(tag);
+		this.version = RpcProtocol.decodeVersion(tag);
 		this.error = buffer.getShort();
 		
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
+		this.retryHint = striped ? buffer.getInt() : 0;
 		switch(type){
 		case RpcProtocol.RES_VOID:
 			voidRes.update(buffer);
 			voidRes.setError(error);
 			break;			
 		case RpcProtocol.RES_CREATE_FILE:
-			createFileRes.update(buffer);
+			if (striped){
+				createFileRes.updateStriped(buffer);
+			} else if (compact){
+				createFileRes.updateCompact(buffer);
+			} else {
+				createFileRes.update(buffer);
+			}
 			createFileRes.setError(error);
 			break;				
 		case RpcProtocol.RES_GET_FILE:
-			getFileRes.update(buffer);
+			if (striped){
+				getFileRes.updateStriped(buffer);
+			} else if (compact){
+				getFileRes.updateCompact(buffer);
+			} else {
+				getFileRes.update(buffer);
+			}
 			getFileRes.setError(error);
 			break;	
 		case RpcProtocol.RES_DELETE_FILE:
-			delFileRes.update(buffer);
+			if (striped){
+				delFileRes.updateStriped(buffer);
+			} else {
+				delFileRes.update(buffer);
+			}
 			delFileRes.setError(error);
 			break;				
 		case RpcProtocol.RES_RENAME_FILE:
-			renameRes.update(buffer);
+			if (striped){
+				renameRes.updateStriped(buffer);
+			} else {
+				renameRes.update(buffer);
+			}
 			renameRes.setError(error);
 			break;				
 		case RpcProtocol.RES_GET_BLOCK:
@@ -233,6 +351,26 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 			getDataNodeRes.update(buffer);
 			getDataNodeRes.setError(error);
 			break;			
+		case RpcProtocol.RES_GET_CAPACITY:
+			getCapacityRes.update(buffer);
+			getCapacityRes.setError(error);
+			break;
+		case RpcProtocol.RES_MOVE_BLOCK:
+			moveBlockRes.update(buffer);
+			moveBlockRes.setError(error);
+			break;
+		case RpcProtocol.RES_GET_STATS:
+			getStatsRes.update(buffer);
+			getStatsRes.setError(error);
+			break;
+		case RpcProtocol.RES_LEASE_FILE:
+			leaseFileRes.update(buffer);
+			leaseFileRes.setError(error);
+			break;
+		case RpcProtocol.RES_POLL_FILE:
+			pollFileRes.update(buffer);
+			pollFileRes.setError(error);
+			break;
 		case RpcProtocol.RES_PING_NAMENODE:
 			pingNameNodeRes.update(buffer);
 			pingNameNodeRes.setError(error);
@@ -240,6 +378,11 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		}
 	}
 	
+	//responses are encoded in the version of the request they answer
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
 	public short getType(){
 		return type;
 	}
@@ -252,6 +395,14 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		this.error = error;
 	}	
 	
+	public int getRetryHint() {
+		return retryHint;
+	}
+
+	public void setRetryHint(int retryHint) {
+		this.retryHint = retryHint;
+	}
+	
 	public RpcResponseMessage.VoidRes getVoid() {
 		return voidRes;
 	}	
@@ -284,6 +435,26 @@ public class DaRPCNameNodeResponse implements DaRPCMessage, RpcNameNodeState {
 		return getDataNodeRes;
 	}	
 	
+	public RpcResponseMessage.GetCapacityRes getCapacity() {
+		return getCapacityRes;
+	}
+	
+	public RpcResponseMessage.MoveBlockRes moveBlock() {
+		return moveBlockRes;
+	}
+	
+	public RpcResponseMessage.GetStatsRes getStats() {
+		return getStatsRes;
+	}
+	
+	public RpcResponseMessage.LeaseFileRes leaseFile() {
+		return leaseFileRes;
+	}
+	
+	public RpcResponseMessage.PollFileRes pollFile() {
+		return pollFileRes;
+	}
+	
 	public RpcResponseMessage.PingNameNodeRes pingNameNode(){
 		return this.pingNameNodeRes;
 	}
@@ -21,16 +21,16 @@
 
 package com.ibm.crail.namenode.rpc.darpc;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 import org.slf4j.Logger;
 
+import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.rpc.RpcErrors;
 import com.ibm.crail.rpc.RpcNameNodeService;
 import com.ibm.crail.rpc.RpcNameNodeState;
 import com.ibm.crail.rpc.RpcProtocol;
 import com.ibm.crail.rpc.RpcRequestMessage;
 import com.ibm.crail.rpc.RpcResponseMessage;
+import com.ibm.crail.rpc.RpcStats;
 import com.ibm.crail.utils.CrailUtils;
 import com.ibm.darpc.DaRPCServerEndpoint;
 import com.ibm.darpc.DaRPCServerEvent;
@@ -40,72 +40,48 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 	private static final Logger LOG = CrailUtils.getLogger();
 	
 	private RpcNameNodeService service;
-	
-	private AtomicLong totalOps;
-	private AtomicLong createOps;
-	private AtomicLong lookupOps;
-	private AtomicLong setOps;
-	private AtomicLong removeOps;
-	private AtomicLong renameOps;
-	private AtomicLong getOps;
-	private AtomicLong locationOps;
-	private AtomicLong errorOps;
+	private RpcStats stats;
 	
 	public DaRPCServiceDispatcher(RpcNameNodeService service){
 		this.service = service;
-		
-		this.totalOps = new AtomicLong(0);
-		this.createOps = new AtomicLong(0);
-		this.lookupOps = new AtomicLong(0);
-		this.setOps = new AtomicLong(0);
-		this.removeOps = new AtomicLong(0);
-		this.renameOps = new AtomicLong(0);
-		this.getOps = new AtomicLong(0);
-		this.locationOps = new AtomicLong(0);
-		this.errorOps = new AtomicLong(0);
+		//DaRPC does not tell the service which connection a request arrived on, so clients cannot be given a fair share
+		if (CrailConstants.NAMENODE_ADMISSION_RATE > 0){
+			LOG.info("admission control is not supported by the DaRPC binding, " + CrailConstants.NAMENODE_ADMISSION_RATE_KEY + " ignored");
+		}
+		this.stats = new RpcStats(CrailConstants.NAMENODE_SLOWOP_THRESHOLD);
+		this.stats.startDump(CrailConstants.NAMENODE_STATS_INTERVAL);
 	}
 	
 	public void processServerEvent(DaRPCServerEvent<DaRPCNameNodeRequest, DaRPCNameNodeResponse> event) {
 		DaRPCNameNodeRequest request = event.getReceiveMessage();
 		DaRPCNameNodeResponse response = event.getSendMessage();
+		RpcStats.Stripe stripe = stats.begin();
 		short error = RpcErrors.ERR_OK;
 		try {
 			response.setType(RpcProtocol.responseTypes[request.getCmd()]);
+			response.setVersion(request.getVersion());
 			response.setError((short) 0);
+			response.setRetryHint(0);
 			switch(request.getCmd()) {
 			case RpcProtocol.CMD_CREATE_FILE:
-				this.totalOps.incrementAndGet();
-				this.createOps.incrementAndGet();
 				error = service.createFile(request.createFile(), response.createFile(), response);
 				break;			
 			case RpcProtocol.CMD_GET_FILE:
-				this.totalOps.incrementAndGet();
-				this.lookupOps.incrementAndGet();
 				error = service.getFile(request.getFile(), response.getFile(), response);
 				break;
 			case RpcProtocol.CMD_SET_FILE:
-				this.totalOps.incrementAndGet();
-				this.setOps.incrementAndGet();
 				error = service.setFile(request.setFile(), response.getVoid(), response);
 				break;
 			case RpcProtocol.CMD_REMOVE_FILE:
-				this.totalOps.incrementAndGet();
-				this.removeOps.incrementAndGet();
 				error = service.removeFile(request.removeFile(), response.delFile(), response);
 				break;				
 			case RpcProtocol.CMD_RENAME_FILE:
-				this.totalOps.incrementAndGet();
-				this.renameOps.incrementAndGet();
 				error = service.renameFile(request.renameFile(), response.getRename(), response);
 				break;		
 			case RpcProtocol.CMD_GET_BLOCK:
-				this.totalOps.incrementAndGet();
-				this.getOps.incrementAndGet();
 				error = service.getBlock(request.getBlock(), response.getBlock(), response);
 				break;
 			case RpcProtocol.CMD_GET_LOCATION:
-				this.totalOps.incrementAndGet();
-				this.locationOps.incrementAndGet();
 				error = service.getLocation(request.getLocation(), response.getLocation(), response);
 				break;				
 			case RpcProtocol.CMD_SET_BLOCK:
@@ -114,11 +90,28 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 			case RpcProtocol.CMD_GET_DATANODE:
 				error = service.getDataNode(request.getDataNode(), response.getDataNode(), response);
 				break;					
+			case RpcProtocol.CMD_GET_CAPACITY:
+				error = service.getCapacity(request.getCapacity(), response.getCapacity(), response);
+				break;
+			case RpcProtocol.CMD_MOVE_BLOCK:
+				error = service.moveBlock(request.moveBlock(), response.moveBlock(), response);
+				break;
+			case RpcProtocol.CMD_LEASE_FILE:
+				error = service.leaseFile(request.leaseFile(), response.leaseFile(), response);
+				break;
+			case RpcProtocol.CMD_POLL_FILE:
+				error = service.pollFile(request.pollFile(), response.pollFile(), response);
+				break;
+			case RpcProtocol.CMD_GET_STATS:
+				error = this.getStats(request.getStats(), response.getStats(), response);
+				break;
 			case RpcProtocol.CMD_DUMP_NAMENODE:
 				error = service.dump(request.dumpNameNode(), response.getVoid(), response);
 				break;			
 			case RpcProtocol.CMD_PING_NAMENODE:
-				error = this.stats(request.pingNameNode(), response.pingNameNode(), response);
+				if (!request.pingNameNode().isHandshake()){
+					error = this.stats(request.pingNameNode(), response.pingNameNode(), response);
+				}
 				error = service.ping(request.pingNameNode(), response.pingNameNode(), response);
 				break;
 			default:
@@ -127,10 +120,13 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 			}
 		} catch(Exception e){
 			error = RpcErrors.ERR_UNKNOWN;
-			this.errorOps.incrementAndGet();
 			LOG.info(RpcErrors.messages[RpcErrors.ERR_UNKNOWN] + e.getMessage());
 			e.printStackTrace();
 		}
+		if (stats.end(stripe, request.getCmd(), error, request.getArrival(), System.nanoTime())){
+			LOG.info("slow operation " + RpcStats.getName(request.getCmd()) + ", depth " + getDepth(request) + ", error " + error 
+					+ ", wait [us] " + stripe.getWait()/1000.0 + ", service [us] " + stripe.getService()/1000.0 + ", lockWait [us] " + stripe.getLockWait()/1000.0);
+		}
 		
 		try {
 			response.setError(error);
@@ -146,19 +142,38 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 			return RpcErrors.ERR_PROTOCOL_MISMATCH;
 		}			
 		
-		LOG.info("totalOps " + totalOps.get());
-		LOG.info("errorOps " + errorOps.get());
-		LOG.info("createOps " + createOps.get());
-		LOG.info("lookupOps " + lookupOps.get());
-		LOG.info("setOps " + setOps.get());
-		LOG.info("removeOps " + removeOps.get());
-		LOG.info("renameOps " + renameOps.get());
-		LOG.info("getOps " + getOps.get());
-		LOG.info("locationOps " + locationOps.get());
+		stats.dump();
 		
 		return RpcErrors.ERR_OK;
 	}	
 	
+	public short getStats(RpcRequestMessage.GetStatsReq request, RpcResponseMessage.GetStatsRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_STATS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		stats.getStatistics(request.getCmd(), response.getStatistics());
+		return RpcErrors.ERR_OK;
+	}
+	
+	//path depth of the file an operation refers to, -1 for operations without a path
+	private static int getDepth(DaRPCNameNodeRequest request){
+		switch(request.getCmd()) {
+		case RpcProtocol.CMD_CREATE_FILE:
+			return request.createFile().getFileName().getLength();
+		case RpcProtocol.CMD_GET_FILE:
+			return request.getFile().getFileName().getLength();
+		case RpcProtocol.CMD_REMOVE_FILE:
+			return request.removeFile().getFileName().getLength();
+		case RpcProtocol.CMD_RENAME_FILE:
+			return Math.max(request.renameFile().getSrcFileName().getLength(), request.renameFile().getDstFileName().getLength());
+		case RpcProtocol.CMD_GET_LOCATION:
+			return request.getLocation().getFileName().getLength();
+		default:
+			return -1;
+		}
+	}
+	
 	@Override
 	public void open(DaRPCServerEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> endpoint) {
 		LOG.info("RPC connection, qpnum " + endpoint.getQp().getQp_num());
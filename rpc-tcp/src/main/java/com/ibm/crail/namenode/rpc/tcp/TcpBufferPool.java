@@ -0,0 +1,66 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//pool of equally sized direct buffers, buffers beyond the pool limit are left to the GC
+public class TcpBufferPool {
+	private final int bufferSize;
+	private final int limit;
+	private final ConcurrentLinkedQueue<ByteBuffer> buffers;
+	private final AtomicInteger count;
+	
+	public TcpBufferPool(int bufferSize, int limit){
+		this.bufferSize = bufferSize;
+		this.limit = limit;
+		this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+		this.count = new AtomicInteger(0);
+	}
+	
+	public ByteBuffer get(){
+		ByteBuffer buffer = buffers.poll();
+		if (buffer == null){
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+		} else {
+			count.decrementAndGet();
+		}
+		buffer.clear();
+		return buffer;
+	}
+	
+	public void put(ByteBuffer buffer){
+		if (buffer.capacity() != bufferSize){
+			return;
+		}
+		if (count.incrementAndGet() <= limit){
+			buffers.add(buffer);
+		} else {
+			count.decrementAndGet();
+		}
+	}
+	
+	public int getBufferSize(){
+		return bufferSize;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import org.slf4j.Logger;
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.rpc.RpcBinding;
+import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcNameNodeService;
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.utils.CrailUtils;
+
+public class TcpNameNode implements RpcBinding {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private LinkedList<TcpRpcEndpoint> namenodeClientEps;
+	private TcpRpcServer namenodeServer;
+	
+	public TcpNameNode(){
+		this.namenodeClientEps = new LinkedList<TcpRpcEndpoint>();
+		this.namenodeServer = null;
+	}
+	
+	public void init(CrailConfiguration conf, String[] args) throws IOException{
+		TcpRpcConstants.updateConstants(conf);
+		TcpRpcConstants.verify();		
+	}
+	
+	public void printConf(Logger logger){
+		TcpRpcConstants.printConf(logger);
+	}
+
+	@Override
+	public synchronized RpcConnection connect(InetSocketAddress address) throws Exception {
+		LOG.info("connecting to namenode at " + address);
+		TcpRpcEndpoint namenodeClientEp = new TcpRpcEndpoint(address, TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH, TcpRpcConstants.NAMENODE_TCP_BATCHSIZE, TcpRpcConstants.NAMENODE_TCP_NODELAY);
+		namenodeClientEps.add(namenodeClientEp);
+		TcpNameNodeClient namenodeClientRpc = new TcpNameNodeClient(namenodeClientEp);
+		if (CrailConstants.NAMENODE_RPC_PROTOCOL > RpcProtocol.PROTOCOL_FIXED){
+			namenodeClientRpc.handshake(CrailConstants.NAMENODE_RPC_PROTOCOL);
+		}
+		return namenodeClientRpc;
+	}
+
+	@Override
+	public void run(RpcNameNodeService service) {
+		try {
+			TcpServiceDispatcher tcpService = new TcpServiceDispatcher(service);
+			TcpBufferPool pool = new TcpBufferPool(TcpRpcEndpoint.FRAMESIZE*TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH, TcpRpcConstants.NAMENODE_TCP_BUFFERPOOL);
+			this.namenodeServer = new TcpRpcServer(tcpService, TcpRpcConstants.NAMENODE_TCP_REACTORS, pool, TcpRpcConstants.NAMENODE_TCP_NODELAY);
+			LOG.info("rpc server started, reactors " + TcpRpcConstants.NAMENODE_TCP_REACTORS);
+			
+			InetSocketAddress addr = CrailUtils.getNameNodeAddress();
+			namenodeServer.bind(addr);
+			LOG.info("opened server at " + addr);
+			while (true) {
+				namenodeServer.accept();
+			}
+		} catch(Exception e){
+			e.printStackTrace();
+			LOG.error(e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			for (TcpRpcEndpoint namenodeClientEp : namenodeClientEps){
+				namenodeClientEp.close();
+			}
+			namenodeClientEps.clear();
+			if (namenodeServer != null){
+				namenodeServer.close();
+				namenodeServer = null;
+			}
+		} catch(Exception e){
+			e.printStackTrace();
+			LOG.info("Error while closing " + e.getMessage());
+		}
+	}
+
+}
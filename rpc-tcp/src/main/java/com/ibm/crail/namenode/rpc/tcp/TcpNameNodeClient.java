@@ -0,0 +1,443 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.rpc.RpcConnection;
+import com.ibm.crail.rpc.RpcConnectionPool;
+import com.ibm.crail.rpc.RpcCreateFile;
+import com.ibm.crail.rpc.RpcDeleteFile;
+import com.ibm.crail.rpc.RpcGetBlock;
+import com.ibm.crail.rpc.RpcGetCapacity;
+import com.ibm.crail.rpc.RpcGetDataNode;
+import com.ibm.crail.rpc.RpcGetFile;
+import com.ibm.crail.rpc.RpcGetStats;
+import com.ibm.crail.rpc.RpcPollFile;
+import com.ibm.crail.rpc.RpcGetLocation;
+import com.ibm.crail.rpc.RpcFreeList;
+import com.ibm.crail.rpc.RpcFuture;
+import com.ibm.crail.rpc.RpcLease;
+import com.ibm.crail.rpc.RpcMoveBlock;
+import com.ibm.crail.rpc.RpcPing;
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.rpc.RpcRenameFile;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.rpc.RpcResponseMessage;
+import com.ibm.crail.rpc.RpcVoid;
+import com.ibm.crail.utils.CrailUtils;
+
+public class TcpNameNodeClient implements RpcConnection {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int FREELIST_SIZE = 64;
+	
+	private TcpRpcEndpoint rpcEndpoint;
+	private int version;
+	//getFile and getBlock dominate the metadata traffic, their futures and messages are recycled
+	private RpcFreeList<TcpNameNodeFuture<RpcGetFile>> getFileFutures;
+	private RpcFreeList<TcpNameNodeFuture<RpcGetBlock>> getBlockFutures;
+	private int ticketIndex;
+	private int ticketStride;
+	
+	public TcpNameNodeClient(TcpRpcEndpoint endpoint) throws IOException {
+		this.rpcEndpoint = endpoint;
+		this.version = RpcProtocol.PROTOCOL_FIXED;
+		this.getFileFutures = new RpcFreeList<TcpNameNodeFuture<RpcGetFile>>(FREELIST_SIZE);
+		this.getBlockFutures = new RpcFreeList<TcpNameNodeFuture<RpcGetBlock>>(FREELIST_SIZE);
+		this.ticketIndex = 0;
+		this.ticketStride = 1;
+	}	
+	
+	@Override
+	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth, int stripeUnit) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: createFile, fileType " + type + ", affinity " + locationAffinity);
+		}
+		
+		//the stripe layout cannot be expressed before protocol version 2
+		if (stripeWidth > 1 && version < RpcProtocol.PROTOCOL_STRIPED){
+			throw new IOException("striped files need namenode protocol version " + RpcProtocol.PROTOCOL_STRIPED + ", connection uses " + version);
+		}
+		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageAffinity, locationAffinity, stripeWidth, stripeUnit);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(createFileReq);
+		request.setCommand(RpcProtocol.CMD_CREATE_FILE);
+		
+		RpcResponseMessage.CreateFileRes fileRes = new RpcResponseMessage.CreateFileRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(fileRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcCreateFile> nameNodeFuture = new TcpNameNodeFuture<RpcCreateFile>(this, future, fileRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable) throws IOException {
+		return getFile(filename, writeable, -1, 0);
+	}
+	
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable, long knownFd, long knownVersion) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getFile, writeable " + writeable);
+		}
+		
+		TcpNameNodeFuture<RpcGetFile> nameNodeFuture = getFileFutures.poll();
+		if (nameNodeFuture == null){
+			RpcRequestMessage.GetFileReq getFileReq = new RpcRequestMessage.GetFileReq();
+			TcpNameNodeRequest request = new TcpNameNodeRequest(getFileReq);
+			request.setCommand(RpcProtocol.CMD_GET_FILE);
+
+			RpcResponseMessage.GetFileRes fileRes = new RpcResponseMessage.GetFileRes();
+			TcpNameNodeResponse response = new TcpNameNodeResponse(fileRes);
+			
+			nameNodeFuture = new TcpNameNodeFuture<RpcGetFile>(this, new TcpRpcFuture(0, request, response), fileRes, getFileFutures);
+		}
+		nameNodeFuture.getSendMessage().getFile().set(filename, writeable, knownFd, knownVersion);
+		nameNodeFuture.issue();
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close) throws IOException {
+		return setFile(fileInfo, close, null, -1);
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close, byte[] inlineData, int inlineLength) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: setFile, id " + fileInfo.getFd() + ", close " + close + ", inline " + inlineLength);
+		}
+		
+		RpcRequestMessage.SetFileReq setFileReq = new RpcRequestMessage.SetFileReq(fileInfo, close, inlineData, inlineLength);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(setFileReq);
+		request.setCommand(RpcProtocol.CMD_SET_FILE);
+		
+		RpcResponseMessage.VoidRes voidRes = new RpcResponseMessage.VoidRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(voidRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcVoid> nameNodeFuture = new TcpNameNodeFuture<RpcVoid>(this, future, voidRes);
+		
+		return nameNodeFuture;		
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcDeleteFile> removeFile(FileName filename, boolean recursive) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: removeFile");
+		}
+		
+		RpcRequestMessage.RemoveFileReq removeReq = new RpcRequestMessage.RemoveFileReq(filename, recursive);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(removeReq);
+		request.setCommand(RpcProtocol.CMD_REMOVE_FILE);
+		
+		RpcResponseMessage.DeleteFileRes fileRes = new RpcResponseMessage.DeleteFileRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(fileRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcDeleteFile> nameNodeFuture = new TcpNameNodeFuture<RpcDeleteFile>(this, future, fileRes);
+		
+		return nameNodeFuture;			
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcRenameFile> renameFile(FileName srcHash, FileName dstHash) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: renameFile");
+		}
+		
+		RpcRequestMessage.RenameFileReq renameReq = new RpcRequestMessage.RenameFileReq(srcHash, dstHash);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(renameReq);
+		request.setCommand(RpcProtocol.CMD_RENAME_FILE);
+		
+		RpcResponseMessage.RenameRes renameRes = new RpcResponseMessage.RenameRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(renameRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcRenameFile> nameNodeFuture = new TcpNameNodeFuture<RpcRenameFile>(this, future, renameRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcGetBlock> getBlock(long fd, long token, long position, int storageAffinity, int locationAffinity, long capacity) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getBlock, fd " + fd + ", token " + token + ", position " + position + ", capacity " + capacity);
+		}
+		
+		TcpNameNodeFuture<RpcGetBlock> nameNodeFuture = getBlockFutures.poll();
+		if (nameNodeFuture == null){
+			RpcRequestMessage.GetBlockReq getBlockReq = new RpcRequestMessage.GetBlockReq();
+			TcpNameNodeRequest request = new TcpNameNodeRequest(getBlockReq);
+			request.setCommand(RpcProtocol.CMD_GET_BLOCK);
+			
+			RpcResponseMessage.GetBlockRes getBlockRes = new RpcResponseMessage.GetBlockRes();
+			TcpNameNodeResponse response = new TcpNameNodeResponse(getBlockRes);
+			
+			nameNodeFuture = new TcpNameNodeFuture<RpcGetBlock>(this, new TcpRpcFuture(0, request, response), getBlockRes, getBlockFutures);
+		}
+		nameNodeFuture.getSendMessage().getBlock().set(fd, token, position, storageAffinity, locationAffinity, capacity);
+		nameNodeFuture.issue();
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcGetLocation> getLocation(FileName fileName, long position) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getLocation, position " + position);
+		}		
+		
+		RpcRequestMessage.GetLocationReq getLocationReq = new RpcRequestMessage.GetLocationReq(fileName, position);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(getLocationReq);
+		request.setCommand(RpcProtocol.CMD_GET_LOCATION);
+
+		RpcResponseMessage.GetLocationRes getLocationRes = new RpcResponseMessage.GetLocationRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(getLocationRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcGetLocation> nameNodeFuture = new TcpNameNodeFuture<RpcGetLocation>(this, future, getLocationRes);
+		
+		return nameNodeFuture;			
+	}	
+	
+	@Override
+	public TcpNameNodeFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: setBlock, ");
+		}		
+		
+		RpcRequestMessage.SetBlockReq setBlockReq = new RpcRequestMessage.SetBlockReq(blockInfo);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(setBlockReq);
+		request.setCommand(RpcProtocol.CMD_SET_BLOCK);
+		
+		RpcResponseMessage.VoidRes voidRes = new RpcResponseMessage.VoidRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(voidRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcVoid> nameNodeFuture = new TcpNameNodeFuture<RpcVoid>(this, future, voidRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcGetDataNode> getDataNode(DataNodeInfo dnInfo) throws Exception {
+		RpcRequestMessage.GetDataNodeReq getDataNodeReq = new RpcRequestMessage.GetDataNodeReq(dnInfo);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(getDataNodeReq);
+		request.setCommand(RpcProtocol.CMD_GET_DATANODE);
+		
+		RpcResponseMessage.GetDataNodeRes getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(getDataNodeRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcGetDataNode> nameNodeFuture = new TcpNameNodeFuture<RpcGetDataNode>(this, future, getDataNodeRes);
+		
+		return nameNodeFuture;	
+	}	
+	
+	@Override
+	public TcpNameNodeFuture<RpcGetCapacity> getCapacity(int storageClass, int dataNodeIndex) throws Exception {
+		RpcRequestMessage.GetCapacityReq getCapacityReq = new RpcRequestMessage.GetCapacityReq(storageClass, dataNodeIndex);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(getCapacityReq);
+		request.setCommand(RpcProtocol.CMD_GET_CAPACITY);
+		
+		RpcResponseMessage.GetCapacityRes getCapacityRes = new RpcResponseMessage.GetCapacityRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(getCapacityRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcGetCapacity> nameNodeFuture = new TcpNameNodeFuture<RpcGetCapacity>(this, future, getCapacityRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcMoveBlock> moveBlock(int op, long fd, long position, BlockInfo srcBlock, BlockInfo dstBlock) throws Exception {
+		RpcRequestMessage.MoveBlockReq moveBlockReq = new RpcRequestMessage.MoveBlockReq(op, fd, position, srcBlock, dstBlock);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(moveBlockReq);
+		request.setCommand(RpcProtocol.CMD_MOVE_BLOCK);
+		
+		RpcResponseMessage.MoveBlockRes moveBlockRes = new RpcResponseMessage.MoveBlockRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(moveBlockRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcMoveBlock> nameNodeFuture = new TcpNameNodeFuture<RpcMoveBlock>(this, future, moveBlockRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcLease> leaseFile(int op, long fd, long leaseId, long duration) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: leaseFile, op " + op + ", fd " + fd + ", lease " + leaseId + ", duration " + duration);
+		}
+		
+		RpcRequestMessage.LeaseFileReq leaseFileReq = new RpcRequestMessage.LeaseFileReq(op, fd, leaseId, duration);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(leaseFileReq);
+		request.setCommand(RpcProtocol.CMD_LEASE_FILE);
+		
+		RpcResponseMessage.LeaseFileRes leaseFileRes = new RpcResponseMessage.LeaseFileRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(leaseFileRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcLease> nameNodeFuture = new TcpNameNodeFuture<RpcLease>(this, future, leaseFileRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcPollFile> pollFile(long fd) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: pollFile, fd " + fd);
+		}
+		
+		RpcRequestMessage.PollFileReq pollFileReq = new RpcRequestMessage.PollFileReq(fd);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(pollFileReq);
+		request.setCommand(RpcProtocol.CMD_POLL_FILE);
+		
+		RpcResponseMessage.PollFileRes pollFileRes = new RpcResponseMessage.PollFileRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(pollFileRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcPollFile> nameNodeFuture = new TcpNameNodeFuture<RpcPollFile>(this, future, pollFileRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcGetStats> getStats(short cmd) throws Exception {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getStats, cmd " + cmd);
+		}
+		
+		RpcRequestMessage.GetStatsReq getStatsReq = new RpcRequestMessage.GetStatsReq(cmd);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(getStatsReq);
+		request.setCommand(RpcProtocol.CMD_GET_STATS);
+
+		RpcResponseMessage.GetStatsRes getStatsRes = new RpcResponseMessage.GetStatsRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(getStatsRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcGetStats> nameNodeFuture = new TcpNameNodeFuture<RpcGetStats>(this, future, getStatsRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public TcpNameNodeFuture<RpcVoid> dumpNameNode() throws Exception {
+		
+		
+		RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
+		TcpNameNodeRequest request = new TcpNameNodeRequest(dumpNameNodeReq);
+		request.setCommand(RpcProtocol.CMD_DUMP_NAMENODE);
+
+		RpcResponseMessage.VoidRes voidRes = new RpcResponseMessage.VoidRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(voidRes);	
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcVoid> nameNodeFuture = new TcpNameNodeFuture<RpcVoid>(this, future, voidRes);
+		
+		return nameNodeFuture;	
+	}	
+	
+	@Override
+	public TcpNameNodeFuture<RpcPing> pingNameNode() throws Exception {
+		
+		RpcRequestMessage.PingNameNodeReq pingReq = new RpcRequestMessage.PingNameNodeReq();
+		TcpNameNodeRequest request = new TcpNameNodeRequest(pingReq);
+		request.setCommand(RpcProtocol.CMD_PING_NAMENODE);
+
+		RpcResponseMessage.PingNameNodeRes pingRes = new RpcResponseMessage.PingNameNodeRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(pingRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		
+		TcpNameNodeFuture<RpcPing> nameNodeFuture = new TcpNameNodeFuture<RpcPing>(this, future, pingRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public void setTicketRange(int index, int count) {
+		this.ticketIndex = index;
+		this.ticketStride = count;
+	}
+	
+	//agrees on the wire format with the namenode, a namenode without versioning answers the 
+	//ping without a version and the connection stays on the fixed layout
+	void handshake(int maxVersion) throws Exception {
+		RpcRequestMessage.PingNameNodeReq pingReq = new RpcRequestMessage.PingNameNodeReq(Math.min(maxVersion, RpcProtocol.PROTOCOL_VERSION));
+		TcpNameNodeRequest request = new TcpNameNodeRequest(pingReq);
+		request.setCommand(RpcProtocol.CMD_PING_NAMENODE);
+
+		RpcResponseMessage.PingNameNodeRes pingRes = new RpcResponseMessage.PingNameNodeRes();
+		TcpNameNodeResponse response = new TcpNameNodeResponse(pingRes);
+		
+		TcpRpcFuture future = issueRPC(request, response);
+		new TcpNameNodeFuture<RpcPing>(this, future, pingRes).get();
+		
+		this.version = Math.min(pingRes.getVersion(), pingReq.getVersion());
+		LOG.info("namenode protocol version " + version);
+	}
+	
+	int tagTicket(int ticket){
+		return RpcConnectionPool.tagTicket(ticket, ticketIndex, ticketStride);
+	}
+	
+	TcpRpcFuture issueRPC(TcpNameNodeRequest request, TcpNameNodeResponse response) throws IOException{
+		TcpRpcFuture future = new TcpRpcFuture(0, request, response);
+		issueRPC(future);
+		return future;
+	}
+	
+	void issueRPC(TcpRpcFuture future) throws IOException{
+		future.getSendMessage().setVersion(version);
+		try {
+			rpcEndpoint.request(future);
+		} catch(IOException e){
+			LOG.info("ERROR: RPC failed, messagesSend " + rpcEndpoint.getMessagesSent() + ", batchesSent " + rpcEndpoint.getBatchesSent() + ", messagesReceived " + rpcEndpoint.getMessagesReceived() + ", isConnected " + rpcEndpoint.isConnected() + "");
+			throw e;
+		}
+	}
+}
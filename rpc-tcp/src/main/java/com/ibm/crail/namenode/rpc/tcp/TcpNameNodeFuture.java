@@ -0,0 +1,164 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcFreeList;
+import com.ibm.crail.rpc.RpcFuture;
+
+public class TcpNameNodeFuture<T> implements RpcFuture<T> {
+	private static final long MAX_BACKOFF = 1000;
+	
+	private TcpNameNodeClient client;
+	private TcpRpcFuture future;
+	private int ticket;
+	private boolean prefetched;
+	private T response;
+	private RpcFreeList<TcpNameNodeFuture<T>> freeList;
+	private boolean inUse;
+	
+	public TcpNameNodeFuture(TcpNameNodeClient client, TcpRpcFuture future, T response) {
+		this.client = client;
+		this.future = future;
+		this.ticket = client.tagTicket(future.getTicket());
+		this.response = response;
+		this.prefetched = false;
+		this.freeList = null;
+		this.inUse = true;
+	}
+	
+	//reusable future, the transport future with its messages is kept and goes back to the free list on release
+	public TcpNameNodeFuture(TcpNameNodeClient client, TcpRpcFuture future, T response, RpcFreeList<TcpNameNodeFuture<T>> freeList) {
+		this.client = client;
+		this.future = future;
+		this.ticket = 0;
+		this.response = response;
+		this.prefetched = false;
+		this.freeList = freeList;
+		this.inUse = false;
+	}
+	
+	void issue() throws IOException {
+		client.issueRPC(future);
+		this.ticket = client.tagTicket(future.getTicket());
+		this.prefetched = false;
+		this.inUse = true;
+	}
+	
+	TcpNameNodeRequest getSendMessage(){
+		return future.getSendMessage();
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		future.get();
+		int retries = 0;
+		while (isThrottled() && retries < CrailConstants.NAMENODE_ADMISSION_RETRIES){
+			Thread.sleep(backoff(retries++));
+			reissue();
+			future.get();
+		}
+		return response;
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		future.get(timeout, unit);
+		int retries = 0;
+		while (isThrottled() && retries < CrailConstants.NAMENODE_ADMISSION_RETRIES){
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0){
+				throw new TimeoutException("RPC throttled by namenode, retries " + retries);
+			}
+			Thread.sleep(Math.min(backoff(retries++), remaining));
+			reissue();
+			future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		}
+		return response;
+	}
+	
+	@Override
+	public boolean isDone() {
+		return future.isDone();
+	}	
+
+	@Override
+	public int getTicket() {
+		return ticket;
+	}
+	
+	@Override
+	public boolean isPrefetched() {
+		return prefetched;
+	}
+
+	@Override
+	public void setPrefetched(boolean prefetched) {
+		this.prefetched = prefetched;
+	}	
+
+	@Override
+	public void release() {
+		if (freeList != null && inUse && future.isDone()){
+			inUse = false;
+			freeList.offer(this);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return future.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return future.isCancelled();
+	}
+	
+	private boolean isThrottled(){
+		return future.getReceiveMessage().getError() == RpcErrors.ERR_RPC_THROTTLED;
+	}
+	
+	//exponential backoff seeded with the namenode's retry hint, randomized so that 
+	//throttled clients do not come back in lockstep
+	private long backoff(int retries){
+		long delay = Math.max(future.getReceiveMessage().getRetryHint(), 1);
+		delay = Math.min(delay << Math.min(retries, 10), MAX_BACKOFF);
+		return delay/2 + ThreadLocalRandom.current().nextLong(delay/2 + 1);
+	}
+	
+	private void reissue() throws ExecutionException {
+		try {
+			client.issueRPC(future);
+		} catch(IOException e){
+			throw new ExecutionException(e);
+		}
+	}
+}
@@ -0,0 +1,405 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.utils.CrailUtils;
+
+public class TcpNameNodeRequest {
+	public static final Logger LOG = CrailUtils.getLogger();
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE), RpcRequestMessage.MoveBlockReq.CSIZE);
+	
+	private short cmd;
+	private short type;
+	private int version;
+	private long arrival;
+	private RpcRequestMessage.CreateFileReq createFileReq;
+	private RpcRequestMessage.GetFileReq fileReq;
+	private RpcRequestMessage.SetFileReq setFileReq;
+	private RpcRequestMessage.RemoveFileReq removeReq;
+	private RpcRequestMessage.RenameFileReq renameFileReq;
+	private RpcRequestMessage.GetBlockReq getBlockReq;
+	private RpcRequestMessage.GetLocationReq getLocationReq;
+	private RpcRequestMessage.SetBlockReq setBlockReq;
+	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
+	private RpcRequestMessage.GetCapacityReq getCapacityReq;
+	private RpcRequestMessage.MoveBlockReq moveBlockReq;
+	private RpcRequestMessage.LeaseFileReq leaseFileReq;
+	private RpcRequestMessage.PollFileReq pollFileReq;
+	private RpcRequestMessage.GetStatsReq getStatsReq;
+	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
+	private RpcRequestMessage.PingNameNodeReq pingNameNodeReq;
+
+	public TcpNameNodeRequest() {
+		this.cmd = 0;
+		this.type = 0;
+		this.createFileReq = new RpcRequestMessage.CreateFileReq();
+		this.fileReq = new RpcRequestMessage.GetFileReq();
+		this.setFileReq = new RpcRequestMessage.SetFileReq();
+		this.removeReq = new RpcRequestMessage.RemoveFileReq();
+		this.renameFileReq = new RpcRequestMessage.RenameFileReq();
+		this.getBlockReq = new RpcRequestMessage.GetBlockReq();
+		this.getLocationReq = new RpcRequestMessage.GetLocationReq();
+		this.setBlockReq = new RpcRequestMessage.SetBlockReq();
+		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
+		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
+		this.getDataNodeReq = new RpcRequestMessage.GetDataNodeReq();
+		this.getCapacityReq = new RpcRequestMessage.GetCapacityReq();
+		this.moveBlockReq = new RpcRequestMessage.MoveBlockReq();
+		this.leaseFileReq = new RpcRequestMessage.LeaseFileReq();
+		this.pollFileReq = new RpcRequestMessage.PollFileReq();
+		this.getStatsReq = new RpcRequestMessage.GetStatsReq();
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.CreateFileReq message) {
+		this.type = message.getType();
+		this.createFileReq = message;
+	}
+	public TcpNameNodeRequest(RpcRequestMessage.GetFileReq message) {
+		this.type = message.getType();
+		this.fileReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.SetFileReq message) {
+		this.type = message.getType();
+		this.setFileReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.RemoveFileReq message) {
+		this.type = message.getType();
+		this.removeReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.RenameFileReq message) {
+		this.type = message.getType();
+		this.renameFileReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.GetBlockReq message) {
+		this.type = message.getType();
+		this.getBlockReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.GetLocationReq message) {
+		this.type = message.getType();
+		this.getLocationReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.SetBlockReq message) {
+		this.type = message.getType();
+		this.setBlockReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.GetDataNodeReq message) {
+		this.type = message.getType();
+		this.getDataNodeReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.GetCapacityReq message) {
+		this.type = message.getType();
+		this.getCapacityReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.MoveBlockReq message) {
+		this.type = message.getType();
+		this.moveBlockReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.LeaseFileReq message) {
+		this.type = message.getType();
+		this.leaseFileReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.PollFileReq message) {
+		this.type = message.getType();
+		this.pollFileReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.GetStatsReq message) {
+		this.type = message.getType();
+		this.getStatsReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.DumpNameNodeReq message) {
+		this.type = message.getType();
+		this.dumpNameNodeReq = message;
+	}
+	
+	public TcpNameNodeRequest(RpcRequestMessage.PingNameNodeReq message) {
+		this.type = message.getType();
+		this.pingNameNodeReq = message;
+	}
+	
+	public void setCommand(short command) {
+		this.cmd = command;
+	}	
+
+	public int size(){
+		return CSIZE;
+	}
+	
+	public int write(ByteBuffer buffer) throws IOException{
+		buffer.putShort(cmd);
+		buffer.putShort(RpcProtocol.encodeType(type, version));
+		
+		int written = 4;
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
+		switch(type){
+		case RpcProtocol.REQ_CREATE_FILE:
+			if (striped){
+				written += createFileReq.writeStriped(buffer);
+			} else {
+				written += compact ? createFileReq.writeCompact(buffer) : createFileReq.write(buffer);
+			}
+			break;		
+		case RpcProtocol.REQ_GET_FILE:
+			written += compact ? fileReq.writeCompact(buffer) : fileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_SET_FILE:
+			written += setFileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_REMOVE_FILE:
+			written += compact ? removeReq.writeCompact(buffer) : removeReq.write(buffer);
+			break;			
+		case RpcProtocol.REQ_RENAME_FILE:
+			written += compact ? renameFileReq.writeCompact(buffer) : renameFileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_GET_BLOCK:
+			written += compact ? getBlockReq.writeCompact(buffer) : getBlockReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_GET_LOCATION:
+			written += compact ? getLocationReq.writeCompact(buffer) : getLocationReq.write(buffer);
+			break;			
+		case RpcProtocol.REQ_SET_BLOCK:
+			written += setBlockReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_GET_DATANODE:
+			written += getDataNodeReq.write(buffer);
+			break;				
+		case RpcProtocol.REQ_GET_CAPACITY:
+			written += getCapacityReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_MOVE_BLOCK:
+			written += moveBlockReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_LEASE_FILE:
+			written += leaseFileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_POLL_FILE:
+			written += pollFileReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_GET_STATS:
+			written += getStatsReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_DUMP_NAMENODE:
+			written += dumpNameNodeReq.write(buffer);
+			break;
+		case RpcProtocol.REQ_PING_NAMENODE:
+			written += pingNameNodeReq.write(buffer);
+			break;
+		}
+		
+		return written;
+	}
+	
+	public void update(ByteBuffer buffer) throws IOException {
+		this.cmd = buffer.getShort();
+		short tag = buffer.getShort();
+		this.type = RpcProtocol.decodeType(tag);
+		this.version = RpcProtocol.decodeVersion(tag);
+		
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
+		switch(type){
+		case RpcProtocol.REQ_CREATE_FILE:
+			if (striped){
+				createFileReq.updateStriped(buffer);
+			} else if (compact){
+				createFileReq.updateCompact(buffer);
+			} else {
+				createFileReq.update(buffer);
+			}
+			break;		
+		case RpcProtocol.REQ_GET_FILE:
+			if (compact){
+				fileReq.updateCompact(buffer);
+			} else {
+				fileReq.update(buffer);
+			}
+			break;
+		case RpcProtocol.REQ_SET_FILE:
+			setFileReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_REMOVE_FILE:
+			if (compact){
+				removeReq.updateCompact(buffer);
+			} else {
+				removeReq.update(buffer);
+			}
+			break;			
+		case RpcProtocol.REQ_RENAME_FILE:
+			if (compact){
+				renameFileReq.updateCompact(buffer);
+			} else {
+				renameFileReq.update(buffer);
+			}
+			break;
+		case RpcProtocol.REQ_GET_BLOCK:
+			if (compact){
+				getBlockReq.updateCompact(buffer);
+			} else {
+				getBlockReq.update(buffer);
+			}
+			break;
+		case RpcProtocol.REQ_GET_LOCATION:
+			if (compact){
+				getLocationReq.updateCompact(buffer);
+			} else {
+				getLocationReq.update(buffer);
+			}
+			break;			
+		case RpcProtocol.REQ_SET_BLOCK:
+			setBlockReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_GET_DATANODE:
+			getDataNodeReq.update(buffer);
+			break;				
+		case RpcProtocol.REQ_GET_CAPACITY:
+			getCapacityReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_MOVE_BLOCK:
+			moveBlockReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_LEASE_FILE:
+			leaseFileReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_POLL_FILE:
+			pollFileReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_GET_STATS:
+			getStatsReq.update(buffer);
+			break;
+		case RpcProtocol.REQ_DUMP_NAMENODE:
+			dumpNameNodeReq.update(buffer);
+			break;		
+		case RpcProtocol.REQ_PING_NAMENODE:
+			pingNameNodeReq.update(buffer);
+			break;
+		}
+	}
+
+	public void setVersion(int version) {
+		this.version = version;
+	}
+	
+	public int getVersion() {
+		return version;
+	}
+
+	public short getCmd() {
+		return cmd;
+	}
+	
+	public short getType(){
+		return type;
+	}
+	
+	public long getArrival(){
+		return arrival;
+	}
+	
+	//time the frame carrying this request was read from the socket
+	public void setArrival(long arrival){
+		this.arrival = arrival;
+	}
+
+	public RpcRequestMessage.CreateFileReq createFile(){
+		return this.createFileReq;
+	}
+	
+	public RpcRequestMessage.GetFileReq getFile(){
+		return fileReq;
+	}
+	
+	public RpcRequestMessage.SetFileReq setFile() {
+		return setFileReq;
+	}
+
+	public RpcRequestMessage.RemoveFileReq removeFile(){
+		return removeReq;
+	}	
+
+	public RpcRequestMessage.RenameFileReq renameFile(){
+		return renameFileReq;
+	}
+
+	public RpcRequestMessage.GetBlockReq getBlock() {
+		return getBlockReq;
+	}
+	
+	public RpcRequestMessage.GetLocationReq getLocation() {
+		return getLocationReq;
+	}	
+
+	public RpcRequestMessage.SetBlockReq setBlock() {
+		return setBlockReq;
+	}
+
+	public RpcRequestMessage.GetDataNodeReq getDataNode() {
+		return this.getDataNodeReq;
+	}	
+	
+	public RpcRequestMessage.GetCapacityReq getCapacity() {
+		return this.getCapacityReq;
+	}
+	
+	public RpcRequestMessage.MoveBlockReq moveBlock() {
+		return this.moveBlockReq;
+	}
+	
+	public RpcRequestMessage.LeaseFileReq leaseFile() {
+		return this.leaseFileReq;
+	}
+	
+	public RpcRequestMessage.PollFileReq pollFile() {
+		return this.pollFileReq;
+	}
+	
+	public RpcRequestMessage.GetStatsReq getStats() {
+		return this.getStatsReq;
+	}
+	
+	public RpcRequestMessage.DumpNameNodeReq dumpNameNode() {
+		return this.dumpNameNodeReq;
+	}
+	
+	public RpcRequestMessage.PingNameNodeReq pingNameNode(){
+		return this.pingNameNodeReq;
+	}
+}
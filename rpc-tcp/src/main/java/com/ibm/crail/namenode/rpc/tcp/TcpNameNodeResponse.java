@@ -0,0 +1,460 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.nio.ByteBuffer;
+
+import com.ibm.crail.rpc.RpcNameNodeState;
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.rpc.RpcResponseMessage;
+
+public class TcpNameNodeResponse implements RpcNameNodeState {
+	public static final int CSIZE = 8 + Math.max(Math.max(Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE), RpcResponseMessage.GetCapacityRes.CSIZE), RpcResponseMessage.GetFileRes.CSIZE);
+	
+	private short type;
+	private int version;
+	private short error;
+	private int retryHint;
+	private RpcResponseMessage.VoidRes voidRes;
+	private RpcResponseMessage.CreateFileRes createFileRes;
+	private RpcResponseMessage.GetFileRes getFileRes;
+	private RpcResponseMessage.DeleteFileRes delFileRes;
+	private RpcResponseMessage.RenameRes renameRes;
+	private RpcResponseMessage.GetBlockRes getBlockRes;
+	private RpcResponseMessage.GetLocationRes getLocationRes;	
+	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
+	private RpcResponseMessage.GetCapacityRes getCapacityRes;
+	private RpcResponseMessage.MoveBlockRes moveBlockRes;
+	private RpcResponseMessage.GetStatsRes getStatsRes;
+	private RpcResponseMessage.LeaseFileRes leaseFileRes;
+	private RpcResponseMessage.PollFileRes pollFileRes;
+	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
+	
+	public TcpNameNodeResponse() {
+		this.type = 0;
+		this.error = 0;
+		this.retryHint = 0;
+		
+		this.voidRes = new RpcResponseMessage.VoidRes();
+		this.createFileRes = new RpcResponseMessage.CreateFileRes();
+		this.getFileRes = new RpcResponseMessage.GetFileRes();
+		this.delFileRes = new RpcResponseMessage.DeleteFileRes();
+		this.renameRes = new RpcResponseMessage.RenameRes();
+		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
+		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
+		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
+		this.getCapacityRes = new RpcResponseMessage.GetCapacityRes();
+		this.moveBlockRes = new RpcResponseMessage.MoveBlockRes();
+		this.getStatsRes = new RpcResponseMessage.GetStatsRes();
+		this.leaseFileRes = new RpcResponseMessage.LeaseFileRes();
+		this.pollFileRes = new RpcResponseMessage.PollFileRes();
+		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.VoidRes message) {
+		this.type = message.getType();
+		this.voidRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.CreateFileRes message) {
+		this.type = message.getType();
+		this.createFileRes = message;
+	}	
+	
+	public TcpNameNodeResponse(RpcResponseMessage.GetFileRes message) {
+		this.type = message.getType();
+		this.getFileRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.DeleteFileRes message) {
+		this.type = message.getType();
+		this.delFileRes = message;
+	}	
+	
+	public TcpNameNodeResponse(RpcResponseMessage.RenameRes message) {
+		this.type = message.getType();
+		this.renameRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.GetBlockRes message) {
+		this.type = message.getType();
+		this.getBlockRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.GetLocationRes message) {
+		this.type = message.getType();
+		this.getLocationRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.GetDataNodeRes message) {
+		this.type = message.getType();
+		this.getDataNodeRes = message;
+	}	
+	
+	public TcpNameNodeResponse(RpcResponseMessage.GetCapacityRes message) {
+		this.type = message.getType();
+		this.getCapacityRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.MoveBlockRes message) {
+		this.type = message.getType();
+		this.moveBlockRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.GetStatsRes message) {
+		this.type = message.getType();
+		this.getStatsRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.LeaseFileRes message) {
+		this.type = message.getType();
+		this.leaseFileRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.PollFileRes message) {
+		this.type = message.getType();
+		this.pollFileRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.PingNameNodeRes message) {
+		this.type = message.getType();
+		this.pingNameNodeRes = message;
+	}
+	
+	public void setType(short type) throws Exception {
+		this.type = type;
+		switch(type){
+		case RpcProtocol.RES_VOID:
+			if (voidRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_CREATE_FILE:
+			if (createFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
+		case RpcProtocol.RES_GET_FILE:
+			if (getFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_DELETE_FILE:
+			if (delFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
+		case RpcProtocol.RES_RENAME_FILE:
+			if (renameRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
+		case RpcProtocol.RES_GET_BLOCK:
+			if (getBlockRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_GET_LOCATION:
+			if (getLocationRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
+		case RpcProtocol.RES_GET_DATANODE:
+			if (getDataNodeRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;			
+		case RpcProtocol.RES_GET_CAPACITY:
+			if (getCapacityRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_MOVE_BLOCK:
+			if (moveBlockRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_GET_STATS:
+			if (getStatsRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_LEASE_FILE:
+			if (leaseFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_POLL_FILE:
+			if (pollFileRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		case RpcProtocol.RES_PING_NAMENODE:
+			if (pingNameNodeRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
+		}		
+	}	
+
+	public int size(){
+		return CSIZE;
+	}
+	
+	public int write(ByteBuffer buffer){
+		buffer.putShort(RpcProtocol.encodeType(type, version));
+		buffer.putShort(error);
+		
+		int written = 4;
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
+		//the retry hint for throttled requests is part of the header from protocol version 2 on
+		if (striped){
+			buffer.putInt(retryHint);
+			written += 4;
+		}
+		switch(type){
+		case RpcProtocol.RES_VOID:
+			written += voidRes.write(buffer);
+			break;	
+		case RpcProtocol.RES_CREATE_FILE:
+			if (striped){
+				written += createFileRes.writeStriped(buffer);
+			} else {
+				written += compact ? createFileRes.writeCompact(buffer) : createFileRes.write(buffer);
+			}
+			break;				
+		case RpcProtocol.RES_GET_FILE:
+			if (striped){
+				written += getFileRes.writeStriped(buffer);
+			} else {
+				written += compact ? getFileRes.writeCompact(buffer) : getFileRes.write(buffer);
+			}
+			break;
+		case RpcProtocol.RES_DELETE_FILE:
+			written += striped ? delFileRes.writeStriped(buffer) : delFileRes.write(buffer);
+			break;				
+		case RpcProtocol.RES_RENAME_FILE:
+			written += striped ? renameRes.writeStriped(buffer) : renameRes.write(buffer);
+			break;				
+		case RpcProtocol.RES_GET_BLOCK:
+			written += getBlockRes.write(buffer);
+			break;
+		case RpcProtocol.RES_GET_LOCATION:
+			written += getLocationRes.write(buffer);
+			break;			
+		case RpcProtocol.RES_GET_DATANODE:
+			written += getDataNodeRes.write(buffer);
+			break;			
+		case RpcProtocol.RES_GET_CAPACITY:
+			written += getCapacityRes.write(buffer);
+			break;
+		case RpcProtocol.RES_MOVE_BLOCK:
+			written += moveBlockRes.write(buffer);
+			break;
+		case RpcProtocol.RES_GET_STATS:
+			written += getStatsRes.write(buffer);
+			break;
+		case RpcProtocol.RES_LEASE_FILE:
+			written += leaseFileRes.write(buffer);
+			break;
+		case RpcProtocol.RES_POLL_FILE:
+			written += pollFileRes.write(buffer);
+			break;
+		case RpcProtocol.RES_PING_NAMENODE:
+			written += pingNameNodeRes.write(buffer);
+			break;			
+		}
+		
+		return written;
+	}
+	
+	public void update(ByteBuffer buffer){
+		short tag = buffer.getShort();
+		this.type = RpcProtocol.decodeType(tag);
+		this.version = RpcProtocol.decodeVersion(tag);
+		this.error = buffer.getShort();
+		
+		boolean compact = version >= RpcProtocol.PROTOCOL_COMPACT;
+		boolean striped = version >= RpcProtocol.PROTOCOL_STRIPED;
+		this.retryHint = striped ? buffer.getInt() : 0;
+		switch(type){
+		case RpcProtocol.RES_VOID:
+			voidRes.update(buffer);
+			voidRes.setError(error);
+			break;			
+		case RpcProtocol.RES_CREATE_FILE:
+			if (striped){
+				createFileRes.updateStriped(buffer);
+			} else if (compact){
+				createFileRes.updateCompact(buffer);
+			} else {
+				createFileRes.update(buffer);
+			}
+			createFileRes.setError(error);
+			break;				
+		case RpcProtocol.RES_GET_FILE:
+			if (striped){
+				getFileRes.updateStriped(buffer);
+			} else if (compact){
+				getFileRes.updateCompact(buffer);
+			} else {
+				getFileRes.update(buffer);
+			}
+			getFileRes.setError(error);
+			break;	
+		case RpcProtocol.RES_DELETE_FILE:
+			if (striped){
+				delFileRes.updateStriped(buffer);
+			} else {
+				delFileRes.update(buffer);
+			}
+			delFileRes.setError(error);
+			break;				
+		case RpcProtocol.RES_RENAME_FILE:
+			if (striped){
+				renameRes.updateStriped(buffer);
+			} else {
+				renameRes.update(buffer);
+			}
+			renameRes.setError(error);
+			break;				
+		case RpcProtocol.RES_GET_BLOCK:
+			getBlockRes.update(buffer);
+			getBlockRes.setError(error);
+			break;
+		case RpcProtocol.RES_GET_LOCATION:
+			getLocationRes.update(buffer);
+			getLocationRes.setError(error);
+			break;			
+		case RpcProtocol.RES_GET_DATANODE:
+			getDataNodeRes.update(buffer);
+			getDataNodeRes.setError(error);
+			break;			
+		case RpcProtocol.RES_GET_CAPACITY:
+			getCapacityRes.update(buffer);
+			getCapacityRes.setError(error);
+			break;
+		case RpcProtocol.RES_MOVE_BLOCK:
+			moveBlockRes.update(buffer);
+			moveBlockRes.setError(error);
+			break;
+		case RpcProtocol.RES_GET_STATS:
+			getStatsRes.update(buffer);
+			getStatsRes.setError(error);
+			break;
+		case RpcProtocol.RES_LEASE_FILE:
+			leaseFileRes.update(buffer);
+			leaseFileRes.setError(error);
+			break;
+		case RpcProtocol.RES_POLL_FILE:
+			pollFileRes.update(buffer);
+			pollFileRes.setError(error);
+			break;
+		case RpcProtocol.RES_PING_NAMENODE:
+			pingNameNodeRes.update(buffer);
+			pingNameNodeRes.setError(error);
+			break;		
+		}
+	}
+	
+	//responses are encoded in the version of the request they answer
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
+	public short getType(){
+		return type;
+	}
+
+	public short getError() {
+		return error;
+	}
+
+	public void setError(short error) {
+		this.error = error;
+	}	
+	
+	public int getRetryHint() {
+		return retryHint;
+	}
+
+	public void setRetryHint(int retryHint) {
+		this.retryHint = retryHint;
+	}
+	
+	public RpcResponseMessage.VoidRes getVoid() {
+		return voidRes;
+	}	
+	
+	public RpcResponseMessage.CreateFileRes createFile() {
+		return createFileRes;
+	}	
+	
+	public RpcResponseMessage.GetFileRes getFile() {
+		return getFileRes;
+	}
+	
+	public RpcResponseMessage.DeleteFileRes delFile() {
+		return delFileRes;
+	}	
+	
+	public RpcResponseMessage.RenameRes getRename() {
+		return renameRes;
+	}	
+
+	public RpcResponseMessage.GetBlockRes getBlock() {
+		return getBlockRes;
+	}	
+	
+	public RpcResponseMessage.GetLocationRes getLocation() {
+		return getLocationRes;
+	}	
+	
+	public RpcResponseMessage.GetDataNodeRes getDataNode() {
+		return getDataNodeRes;
+	}	
+	
+	public RpcResponseMessage.GetCapacityRes getCapacity() {
+		return getCapacityRes;
+	}
+	
+	public RpcResponseMessage.MoveBlockRes moveBlock() {
+		return moveBlockRes;
+	}
+	
+	public RpcResponseMessage.GetStatsRes getStats() {
+		return getStatsRes;
+	}
+	
+	public RpcResponseMessage.LeaseFileRes leaseFile() {
+		return leaseFileRes;
+	}
+	
+	public RpcResponseMessage.PollFileRes pollFile() {
+		return pollFileRes;
+	}
+	
+	public RpcResponseMessage.PingNameNodeRes pingNameNode(){
+		return this.pingNameNodeRes;
+	}
+}
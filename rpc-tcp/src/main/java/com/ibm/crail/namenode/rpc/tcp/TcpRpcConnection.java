@@ -0,0 +1,138 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+
+//server side state of a client connection, owned by exactly one reactor thread
+public class TcpRpcConnection {
+	//response buffers a connection may have queued before the reactor stops reading its requests
+	public static final int MAX_PENDING_WRITES = 4;
+	
+	private SocketChannel channel;
+	private TcpBufferPool pool;
+	private ByteBuffer readBuffer;
+	private ByteBuffer writeBuffer;
+	private LinkedList<ByteBuffer> pendingWrites;
+	private long readTime;
+	
+	public TcpRpcConnection(SocketChannel channel, TcpBufferPool pool){
+		this.channel = channel;
+		this.pool = pool;
+		this.readBuffer = pool.get();
+		this.writeBuffer = null;
+		this.pendingWrites = new LinkedList<ByteBuffer>();
+	}
+	
+	public int read() throws IOException {
+		int ret = channel.read(readBuffer);
+		readTime = System.nanoTime();
+		return ret;
+	}
+	
+	//time of the last socket read, all frames completed by that read arrived at this time
+	public long getReadTime(){
+		return readTime;
+	}
+	
+	//returns the position of the next complete frame in the read buffer (flipped), -1 if none
+	public int nextFrame() throws IOException {
+		if (readBuffer.remaining() < TcpRpcEndpoint.HEADER){
+			return -1;
+		}
+		int position = readBuffer.position();
+		int length = readBuffer.getInt(position);
+		if (length <= 4 || length - 4 > TcpNameNodeRequest.CSIZE){
+			throw new IOException("invalid frame length " + length);
+		}
+		if (readBuffer.remaining() < length + 4){
+			return -1;
+		}
+		return position;
+	}
+	
+	public ByteBuffer getReadBuffer(){
+		return readBuffer;
+	}
+	
+	public void writeResponse(int ticket, TcpNameNodeResponse response){
+		if (writeBuffer != null && writeBuffer.remaining() < TcpRpcEndpoint.FRAMESIZE){
+			writeBuffer.flip();
+			pendingWrites.add(writeBuffer);
+			writeBuffer = null;
+		}
+		if (writeBuffer == null){
+			writeBuffer = pool.get();
+		}
+		int position = writeBuffer.position();
+		writeBuffer.position(position + TcpRpcEndpoint.HEADER);
+		response.write(writeBuffer);
+		writeBuffer.putInt(position, writeBuffer.position() - position - 4);
+		writeBuffer.putInt(position + 4, ticket);
+	}
+	
+	//writes as much as the socket takes, returns true if data is left over
+	public boolean flush() throws IOException {
+		if (writeBuffer != null && writeBuffer.position() > 0){
+			writeBuffer.flip();
+			pendingWrites.add(writeBuffer);
+			writeBuffer = null;
+		}
+		while (!pendingWrites.isEmpty()){
+			ByteBuffer buffer = pendingWrites.peek();
+			channel.write(buffer);
+			if (buffer.hasRemaining()){
+				return true;
+			}
+			pool.put(pendingWrites.poll());
+		}
+		return false;
+	}
+	
+	//true if the client does not drain its responses fast enough, reading is paused until it does
+	public boolean isWriteBlocked(){
+		return pendingWrites.size() > MAX_PENDING_WRITES;
+	}
+	
+	public SocketChannel getChannel(){
+		return channel;
+	}
+	
+	public void close() {
+		try {
+			channel.close();
+		} catch(IOException e){
+		}
+		pool.put(readBuffer);
+		if (writeBuffer != null){
+			pool.put(writeBuffer);
+		}
+		for (ByteBuffer buffer : pendingWrites){
+			pool.put(buffer);
+		}
+		readBuffer = null;
+		writeBuffer = null;
+		pendingWrites.clear();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConfiguration;
+import com.ibm.crail.utils.CrailUtils;
+
+public class TcpRpcConstants {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	public static final String NAMENODE_TCP_QUEUEDEPTH_KEY = "crail.namenode.tcp.queueDepth";
+	public static int NAMENODE_TCP_QUEUEDEPTH = 32;
+	
+	//maximum number of concurrently issued requests coalesced into one socket write, 1 disables batching
+	public static final String NAMENODE_TCP_BATCHSIZE_KEY = "crail.namenode.tcp.batchSize";
+	public static int NAMENODE_TCP_BATCHSIZE = 16;
+	
+	public static final String NAMENODE_TCP_REACTORS_KEY = "crail.namenode.tcp.reactors";
+	public static int NAMENODE_TCP_REACTORS = 2;
+	
+	public static final String NAMENODE_TCP_NODELAY_KEY = "crail.namenode.tcp.nodelay";
+	public static boolean NAMENODE_TCP_NODELAY = true;
+	
+	public static final String NAMENODE_TCP_BUFFERPOOL_KEY = "crail.namenode.tcp.bufferpool";
+	public static int NAMENODE_TCP_BUFFERPOOL = 64;
+	
+	public static void updateConstants(CrailConfiguration conf){
+		if (conf.get(NAMENODE_TCP_QUEUEDEPTH_KEY) != null) {
+			NAMENODE_TCP_QUEUEDEPTH = Integer.parseInt(conf.get(NAMENODE_TCP_QUEUEDEPTH_KEY));
+		}
+		if (conf.get(NAMENODE_TCP_BATCHSIZE_KEY) != null) {
+			NAMENODE_TCP_BATCHSIZE = Integer.parseInt(conf.get(NAMENODE_TCP_BATCHSIZE_KEY));
+		}
+		if (conf.get(NAMENODE_TCP_REACTORS_KEY) != null) {
+			NAMENODE_TCP_REACTORS = Integer.parseInt(conf.get(NAMENODE_TCP_REACTORS_KEY));
+		}
+		if (conf.get(NAMENODE_TCP_NODELAY_KEY) != null) {
+			NAMENODE_TCP_NODELAY = conf.getBoolean(NAMENODE_TCP_NODELAY_KEY, true);
+		}
+		if (conf.get(NAMENODE_TCP_BUFFERPOOL_KEY) != null) {
+			NAMENODE_TCP_BUFFERPOOL = Integer.parseInt(conf.get(NAMENODE_TCP_BUFFERPOOL_KEY));
+		}
+	}
+	
+	public static void verify() throws IOException {
+		if (NAMENODE_TCP_QUEUEDEPTH <= 0){
+			throw new IOException("crail.namenode.tcp.queueDepth must be positive, found " + NAMENODE_TCP_QUEUEDEPTH);
+		}
+		if (NAMENODE_TCP_BATCHSIZE <= 0){
+			throw new IOException("crail.namenode.tcp.batchSize must be positive, found " + NAMENODE_TCP_BATCHSIZE);
+		}
+		if (NAMENODE_TCP_REACTORS <= 0){
+			throw new IOException("crail.namenode.tcp.reactors must be positive, found " + NAMENODE_TCP_REACTORS);
+		}
+	}
+
+	public static void printConf(Logger logger) {
+		LOG.info(NAMENODE_TCP_QUEUEDEPTH_KEY + " " + NAMENODE_TCP_QUEUEDEPTH);
+		LOG.info(NAMENODE_TCP_BATCHSIZE_KEY + " " + NAMENODE_TCP_BATCHSIZE);
+		LOG.info(NAMENODE_TCP_REACTORS_KEY + " " + NAMENODE_TCP_REACTORS);
+		LOG.info(NAMENODE_TCP_NODELAY_KEY + " " + NAMENODE_TCP_NODELAY);
+		LOG.info(NAMENODE_TCP_BUFFERPOOL_KEY + " " + NAMENODE_TCP_BUFFERPOOL);
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.utils.CrailUtils;
+
+//client side of a namenode connection, requests are matched to responses by ticket so that 
+//up to queueDepth requests can be in flight on one socket. Requests issued concurrently by 
+//different threads are coalesced, whichever thread holds the send lock writes all queued 
+//requests (up to batchSize) with a single socket write
+public class TcpRpcEndpoint implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	//frame header: length of the frame excluding the length field, ticket
+	public static final int HEADER = 8;
+	public static final int FRAMESIZE = HEADER + Math.max(TcpNameNodeRequest.CSIZE, TcpNameNodeResponse.CSIZE);
+	
+	private SocketChannel channel;
+	private ByteBuffer sendBuffer;
+	private ByteBuffer recvBuffer;
+	private ReentrantLock sendLock;
+	//requests waiting to be sent, linked through the futures in reverse order of arrival
+	private AtomicReference<TcpRpcFuture> sendStack;
+	private int batchSize;
+	//in-flight requests indexed by ticket, twice the queue depth so that a free slot is always near
+	private AtomicReferenceArray<TcpRpcFuture> pending;
+	private int pendingMask;
+	private AtomicInteger ticketCount;
+	private Semaphore queue;
+	private Thread receiver;
+	private volatile boolean connected;
+	private AtomicLong messagesSent;
+	private AtomicLong messagesReceived;
+	private AtomicLong batchesSent;
+	
+	public TcpRpcEndpoint(InetSocketAddress address, int queueDepth, int batchSize, boolean nodelay) throws IOException {
+		this.channel = SocketChannel.open();
+		channel.configureBlocking(true);
+		channel.socket().setTcpNoDelay(nodelay);
+		channel.connect(address);
+		this.batchSize = Math.min(batchSize, queueDepth);
+		this.sendBuffer = ByteBuffer.allocateDirect(FRAMESIZE*this.batchSize);
+		this.sendLock = new ReentrantLock();
+		this.sendStack = new AtomicReference<TcpRpcFuture>(null);
+		this.recvBuffer = ByteBuffer.allocateDirect(FRAMESIZE*queueDepth);
+		int pendingSize = Integer.highestOneBit(queueDepth*2 - 1) << 1;
+		this.pending = new AtomicReferenceArray<TcpRpcFuture>(pendingSize);
+		this.pendingMask = pendingSize - 1;
+		this.ticketCount = new AtomicInteger(0);
+		this.queue = new Semaphore(queueDepth);
+		this.messagesSent = new AtomicLong(0);
+		this.messagesReceived = new AtomicLong(0);
+		this.batchesSent = new AtomicLong(0);
+		this.connected = true;
+		this.receiver = new Thread(this, "tcp-rpc-" + address);
+		receiver.setDaemon(true);
+		receiver.start();
+	}
+	
+	//issues the request of a new or completed future, the future is assigned a fresh ticket
+	public void request(TcpRpcFuture future) throws IOException {
+		if (!connected){
+			throw new IOException("connection to namenode closed");
+		}
+		queue.acquireUninterruptibly();
+		int ticket = ticketCount.incrementAndGet();
+		future.reset(ticket);
+		while (!pending.compareAndSet(ticket & pendingMask, null, future)){
+			ticket = ticketCount.incrementAndGet();
+			future.reset(ticket);
+		}
+		TcpRpcFuture head = null;
+		do {
+			head = sendStack.get();
+			future.setNext(head);
+		} while (!sendStack.compareAndSet(head, future));
+		if (!connected){
+			failPending(new IOException("connection to namenode closed"));
+			throw new IOException("connection to namenode closed");
+		}
+		flush();
+	}
+	
+	//a thread failing the lock leaves its request to the current lock holder, which re-checks 
+	//the stack after unlocking, so no request can be stranded
+	private void flush() throws IOException {
+		while (sendStack.get() != null && sendLock.tryLock()){
+			try {
+				TcpRpcFuture next = reverse(sendStack.getAndSet(null));
+				while (next != null){
+					sendBuffer.clear();
+					int batched = 0;
+					while (batched < batchSize && next != null){
+						int position = sendBuffer.position();
+						sendBuffer.position(position + HEADER);
+						next.getSendMessage().write(sendBuffer);
+						sendBuffer.putInt(position, sendBuffer.position() - position - 4);
+						sendBuffer.putInt(position + 4, next.getTicket());
+						TcpRpcFuture current = next;
+						next = current.getNext();
+						current.setNext(null);
+						batched++;
+					}
+					sendBuffer.flip();
+					while (sendBuffer.hasRemaining()){
+						channel.write(sendBuffer);
+					}
+					messagesSent.addAndGet(batched);
+					batchesSent.incrementAndGet();
+				}
+			} catch(IOException e){
+				failPending(e);
+				throw e;
+			} finally {
+				sendLock.unlock();
+			}
+		}
+	}
+	
+	//restores the issue order of the drained stack
+	private TcpRpcFuture reverse(TcpRpcFuture head){
+		TcpRpcFuture reversed = null;
+		while (head != null){
+			TcpRpcFuture next = head.getNext();
+			head.setNext(reversed);
+			reversed = head;
+			head = next;
+		}
+		return reversed;
+	}
+	
+	public void run() {
+		try {
+			while (connected){
+				if (channel.read(recvBuffer) < 0){
+					throw new IOException("connection closed by namenode");
+				}
+				recvBuffer.flip();
+				while (recvBuffer.remaining() >= HEADER){
+					int position = recvBuffer.position();
+					int length = recvBuffer.getInt(position);
+					if (length + 4 > recvBuffer.capacity()){
+						throw new IOException("invalid frame length " + length);
+					}
+					if (recvBuffer.remaining() < length + 4){
+						break;
+					}
+					int ticket = recvBuffer.getInt(position + 4);
+					int limit = recvBuffer.limit();
+					TcpRpcFuture future = pending.get(ticket & pendingMask);
+					if (future != null && future.getTicket() == ticket && pending.compareAndSet(ticket & pendingMask, future, null)){
+						recvBuffer.position(position + HEADER);
+						recvBuffer.limit(position + 4 + length);
+						future.getReceiveMessage().update(recvBuffer);
+						recvBuffer.limit(limit);
+						messagesReceived.incrementAndGet();
+						future.signal();
+						queue.release();
+					}
+					recvBuffer.position(position + 4 + length);
+				}
+				recvBuffer.compact();
+			}
+		} catch(Exception e){
+			if (connected){
+				LOG.info("namenode connection failed, " + e.getMessage());
+			}
+		}
+		failPending(new IOException("connection to namenode closed"));
+	}
+	
+	public void close() throws IOException {
+		connected = false;
+		channel.close();
+		failPending(new IOException("connection to namenode closed"));
+	}
+	
+	public boolean isConnected(){
+		return connected;
+	}
+	
+	public long getMessagesSent(){
+		return messagesSent.get();
+	}
+	
+	public long getMessagesReceived(){
+		return messagesReceived.get();
+	}
+	
+	public long getBatchesSent(){
+		return batchesSent.get();
+	}
+	
+	private void failPending(IOException e){
+		connected = false;
+		sendStack.set(null);
+		for (int i = 0; i < pending.length(); i++){
+			TcpRpcFuture future = pending.getAndSet(i, null);
+			if (future != null){
+				future.fail(e);
+				queue.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class TcpRpcFuture {
+	private static final int PENDING = 0;
+	private static final int DONE = 1;
+	private static final int FAILED = 2;
+	
+	private int ticket;
+	private TcpNameNodeRequest request;
+	private TcpNameNodeResponse response;
+	private volatile int status;
+	private IOException failure;
+	private TcpRpcFuture next;
+	
+	public TcpRpcFuture(int ticket, TcpNameNodeRequest request, TcpNameNodeResponse response) {
+		this.ticket = ticket;
+		this.request = request;
+		this.response = response;
+		this.status = PENDING;
+		this.failure = null;
+	}
+	
+	//prepares a completed future to carry the next request
+	void reset(int ticket) {
+		this.ticket = ticket;
+		this.failure = null;
+		this.status = PENDING;
+	}
+	
+	public TcpNameNodeResponse get() throws InterruptedException, ExecutionException {
+		if (status == PENDING){
+			synchronized(this){
+				while (status == PENDING){
+					this.wait();
+				}
+			}
+		}
+		return done();
+	}
+	
+	public TcpNameNodeResponse get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (status == PENDING){
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			synchronized(this){
+				while (status == PENDING){
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0){
+						throw new TimeoutException("RPC timeout, ticket " + ticket);
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			}
+		}
+		return done();
+	}
+	
+	public boolean isDone() {
+		return status != PENDING;
+	}
+	
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+	
+	public boolean isCancelled() {
+		return false;
+	}
+	
+	public int getTicket() {
+		return ticket;
+	}
+	
+	public TcpNameNodeRequest getSendMessage() {
+		return request;
+	}
+	
+	public TcpNameNodeResponse getReceiveMessage() {
+		return response;
+	}
+	
+	TcpRpcFuture getNext() {
+		return next;
+	}
+	
+	void setNext(TcpRpcFuture next) {
+		this.next = next;
+	}
+	
+	synchronized void signal() {
+		this.status = DONE;
+		this.notifyAll();
+	}
+	
+	synchronized void fail(IOException e) {
+		this.failure = e;
+		this.status = FAILED;
+		this.notifyAll();
+	}
+	
+	private TcpNameNodeResponse done() throws ExecutionException {
+		if (status == FAILED){
+			throw new ExecutionException(failure);
+		}
+		return response;
+	}
+}
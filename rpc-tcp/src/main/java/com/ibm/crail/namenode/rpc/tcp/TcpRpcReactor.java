@@ -0,0 +1,157 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.utils.CrailUtils;
+
+//event loop serving a subset of the client connections, requests are processed run-to-completion 
+//on the reactor thread and all responses of one read are sent with a single write
+public class TcpRpcReactor implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private Selector selector;
+	private TcpServiceDispatcher dispatcher;
+	private TcpBufferPool pool;
+	private ConcurrentLinkedQueue<SocketChannel> incoming;
+	private TcpNameNodeRequest request;
+	private TcpNameNodeResponse response;
+	private volatile boolean running;
+	
+	public TcpRpcReactor(TcpServiceDispatcher dispatcher, TcpBufferPool pool) throws IOException {
+		this.selector = Selector.open();
+		this.dispatcher = dispatcher;
+		this.pool = pool;
+		this.incoming = new ConcurrentLinkedQueue<SocketChannel>();
+		this.request = new TcpNameNodeRequest();
+		this.response = new TcpNameNodeResponse();
+		this.running = true;
+	}
+	
+	public void register(SocketChannel channel) {
+		incoming.add(channel);
+		selector.wakeup();
+	}
+	
+	public void run() {
+		while (running){
+			try {
+				selector.select();
+				for (SocketChannel channel = incoming.poll(); channel != null; channel = incoming.poll()){
+					channel.configureBlocking(false);
+					TcpRpcConnection connection = new TcpRpcConnection(channel, pool);
+					channel.register(selector, SelectionKey.OP_READ, connection);
+					dispatcher.open(connection);
+				}
+				Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+				while (iter.hasNext()){
+					SelectionKey key = iter.next();
+					iter.remove();
+					TcpRpcConnection connection = (TcpRpcConnection) key.attachment();
+					try {
+						if (key.isReadable() && !processRead(connection)){
+							close(key, connection);
+							continue;
+						}
+						if (key.isValid() && key.isWritable()){
+							updateInterest(key, connection, connection.flush());
+						}
+					} catch(Exception e){
+						close(key, connection);
+					}
+				}
+			} catch(Exception e){
+				if (running){
+					LOG.info("reactor error " + e.getMessage());
+				}
+			}
+		}
+		for (SelectionKey key : selector.keys()){
+			close(key, (TcpRpcConnection) key.attachment());
+		}
+		try {
+			selector.close();
+		} catch(IOException e){
+		}
+	}
+	
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+	
+	private boolean processRead(TcpRpcConnection connection) throws IOException {
+		if (connection.read() < 0){
+			return false;
+		}
+		ByteBuffer buffer = connection.getReadBuffer();
+		buffer.flip();
+		int position = connection.nextFrame();
+		while (position >= 0){
+			int length = buffer.getInt(position);
+			int ticket = buffer.getInt(position + 4);
+			int limit = buffer.limit();
+			buffer.position(position + TcpRpcEndpoint.HEADER);
+			buffer.limit(position + 4 + length);
+			request.update(buffer);
+			request.setArrival(connection.getReadTime());
+			buffer.limit(limit);
+			buffer.position(position + 4 + length);
+			
+			dispatcher.processRequest(connection, request, response);
+			connection.writeResponse(ticket, response);
+			position = connection.nextFrame();
+		}
+		buffer.compact();
+		
+		SelectionKey key = connection.getChannel().keyFor(selector);
+		updateInterest(key, connection, connection.flush());
+		return true;
+	}
+	
+	private void updateInterest(SelectionKey key, TcpRpcConnection connection, boolean pendingWrites){
+		int ops = pendingWrites ? SelectionKey.OP_WRITE : 0;
+		if (!connection.isWriteBlocked()){
+			ops |= SelectionKey.OP_READ;
+		}
+		if (key.interestOps() != ops){
+			key.interestOps(ops);
+		}
+	}
+	
+	private void close(SelectionKey key, TcpRpcConnection connection){
+		key.cancel();
+		if (connection != null){
+			LOG.info("disconnecting RPC connection " + connection.getChannel().socket().getRemoteSocketAddress());
+			dispatcher.close(connection);
+			connection.close();
+		}
+	}
+}
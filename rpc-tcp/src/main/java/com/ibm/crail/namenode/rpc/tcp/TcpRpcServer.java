@@ -0,0 +1,75 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.utils.CrailUtils;
+
+//accepts connections and assigns them round robin to a fixed set of reactors
+public class TcpRpcServer {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private ServerSocketChannel serverChannel;
+	private TcpRpcReactor[] reactors;
+	private boolean nodelay;
+	private int next;
+	
+	public TcpRpcServer(TcpServiceDispatcher dispatcher, int reactorCount, TcpBufferPool pool, boolean nodelay) throws IOException {
+		this.reactors = new TcpRpcReactor[reactorCount];
+		for (int i = 0; i < reactors.length; i++){
+			reactors[i] = new TcpRpcReactor(dispatcher, pool);
+			Thread thread = new Thread(reactors[i], "tcp-rpc-reactor-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		this.nodelay = nodelay;
+		this.next = 0;
+	}
+	
+	public void bind(InetSocketAddress address) throws IOException {
+		this.serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.bind(address);
+	}
+	
+	public void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		channel.socket().setTcpNoDelay(nodelay);
+		LOG.info("accepting RPC connection " + channel.socket().getRemoteSocketAddress() + ", reactor " + next);
+		reactors[next].register(channel);
+		next = (next + 1) % reactors.length;
+	}
+	
+	public void close() throws IOException {
+		if (serverChannel != null){
+			serverChannel.close();
+		}
+		for (TcpRpcReactor reactor : reactors){
+			reactor.close();
+		}
+	}
+}
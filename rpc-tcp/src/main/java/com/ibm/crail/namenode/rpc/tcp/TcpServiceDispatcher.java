@@ -0,0 +1,198 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.namenode.rpc.tcp;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.conf.CrailConstants;
+import com.ibm.crail.rpc.RpcAdmissionControl;
+import com.ibm.crail.rpc.RpcErrors;
+import com.ibm.crail.rpc.RpcNameNodeService;
+import com.ibm.crail.rpc.RpcNameNodeState;
+import com.ibm.crail.rpc.RpcProtocol;
+import com.ibm.crail.rpc.RpcRequestMessage;
+import com.ibm.crail.rpc.RpcResponseMessage;
+import com.ibm.crail.rpc.RpcStats;
+import com.ibm.crail.utils.CrailUtils;
+
+public class TcpServiceDispatcher {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private RpcNameNodeService service;
+	private RpcAdmissionControl admission;
+	private RpcStats stats;
+	
+	public TcpServiceDispatcher(RpcNameNodeService service){
+		this.service = service;
+		this.admission = new RpcAdmissionControl(CrailConstants.NAMENODE_ADMISSION_RATE, CrailConstants.NAMENODE_ADMISSION_BURST, CrailConstants.NAMENODE_ADMISSION_WEIGHTS);
+		this.stats = new RpcStats(CrailConstants.NAMENODE_SLOWOP_THRESHOLD);
+		this.stats.startDump(CrailConstants.NAMENODE_STATS_INTERVAL);
+	}
+	
+	public void open(TcpRpcConnection connection) {
+		admission.open(connection, connection.getChannel().socket().getRemoteSocketAddress());
+	}
+	
+	public void close(TcpRpcConnection connection) {
+		admission.close(connection);
+	}
+	
+	public void processRequest(TcpRpcConnection connection, TcpNameNodeRequest request, TcpNameNodeResponse response) {
+		RpcStats.Stripe stripe = stats.begin();
+		short error = RpcErrors.ERR_OK;
+		try {
+			response.setType(RpcProtocol.responseTypes[request.getCmd()]);
+			response.setVersion(request.getVersion());
+			response.setError((short) 0);
+			response.setRetryHint(0);
+			int retryHint = 0;
+			if (admission.isEnabled() && isThrottled(request.getCmd())){
+				retryHint = admission.admit(connection);
+			}
+			if (retryHint > 0){
+				response.setRetryHint(retryHint);
+				error = RpcErrors.ERR_RPC_THROTTLED;
+			} else {
+				switch(request.getCmd()) {
+				case RpcProtocol.CMD_CREATE_FILE:
+					error = service.createFile(request.createFile(), response.createFile(), response);
+					break;			
+				case RpcProtocol.CMD_GET_FILE:
+					error = service.getFile(request.getFile(), response.getFile(), response);
+					break;
+				case RpcProtocol.CMD_SET_FILE:
+					error = service.setFile(request.setFile(), response.getVoid(), response);
+					break;
+				case RpcProtocol.CMD_REMOVE_FILE:
+					error = service.removeFile(request.removeFile(), response.delFile(), response);
+					break;				
+				case RpcProtocol.CMD_RENAME_FILE:
+					error = service.renameFile(request.renameFile(), response.getRename(), response);
+					break;		
+				case RpcProtocol.CMD_GET_BLOCK:
+					error = service.getBlock(request.getBlock(), response.getBlock(), response);
+					break;
+				case RpcProtocol.CMD_GET_LOCATION:
+					error = service.getLocation(request.getLocation(), response.getLocation(), response);
+					break;				
+				case RpcProtocol.CMD_SET_BLOCK:
+					error = service.setBlock(request.setBlock(), response.getVoid(), response);
+					break;
+				case RpcProtocol.CMD_GET_DATANODE:
+					error = service.getDataNode(request.getDataNode(), response.getDataNode(), response);
+					break;					
+				case RpcProtocol.CMD_GET_CAPACITY:
+					error = service.getCapacity(request.getCapacity(), response.getCapacity(), response);
+					break;
+				case RpcProtocol.CMD_MOVE_BLOCK:
+					error = service.moveBlock(request.moveBlock(), response.moveBlock(), response);
+					break;
+				case RpcProtocol.CMD_LEASE_FILE:
+					error = service.leaseFile(request.leaseFile(), response.leaseFile(), response);
+					break;
+				case RpcProtocol.CMD_POLL_FILE:
+					error = service.pollFile(request.pollFile(), response.pollFile(), response);
+					break;
+				case RpcProtocol.CMD_GET_STATS:
+					error = this.getStats(request.getStats(), response.getStats(), response);
+					break;
+				case RpcProtocol.CMD_DUMP_NAMENODE:
+					error = service.dump(request.dumpNameNode(), response.getVoid(), response);
+					break;			
+				case RpcProtocol.CMD_PING_NAMENODE:
+					if (!request.pingNameNode().isHandshake()){
+						error = this.stats(request.pingNameNode(), response.pingNameNode(), response);
+					}
+					error = service.ping(request.pingNameNode(), response.pingNameNode(), response);
+					break;
+				default:
+					error = RpcErrors.ERR_INVALID_RPC_CMD;
+					LOG.info("Rpc command not valid, opcode " + request.getCmd());
+				}
+			}
+		} catch(Exception e){
+			error = RpcErrors.ERR_UNKNOWN;
+			LOG.info(RpcErrors.messages[RpcErrors.ERR_UNKNOWN] + e.getMessage());
+			e.printStackTrace();
+		}
+		if (stats.end(stripe, request.getCmd(), error, request.getArrival(), System.nanoTime())){
+			LOG.info("slow operation " + RpcStats.getName(request.getCmd()) + ", depth " + getDepth(request) + ", error " + error 
+					+ ", wait [us] " + stripe.getWait()/1000.0 + ", service [us] " + stripe.getService()/1000.0 + ", lockWait [us] " + stripe.getLockWait()/1000.0);
+		}
+		
+		response.setError(error);
+	}
+	
+	public short stats(RpcRequestMessage.PingNameNodeReq request, RpcResponseMessage.PingNameNodeRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_PING_NAMENODE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}			
+		
+		stats.dump();
+		if (admission.isEnabled()){
+			admission.printStats();
+		}
+		
+		return RpcErrors.ERR_OK;
+	}	
+	
+	public short getStats(RpcRequestMessage.GetStatsReq request, RpcResponseMessage.GetStatsRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_STATS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		stats.getStatistics(request.getCmd(), response.getStatistics());
+		return RpcErrors.ERR_OK;
+	}
+	
+	//path depth of the file an operation refers to, -1 for operations without a path
+	private static int getDepth(TcpNameNodeRequest request){
+		switch(request.getCmd()) {
+		case RpcProtocol.CMD_CREATE_FILE:
+			return request.createFile().getFileName().getLength();
+		case RpcProtocol.CMD_GET_FILE:
+			return request.getFile().getFileName().getLength();
+		case RpcProtocol.CMD_REMOVE_FILE:
+			return request.removeFile().getFileName().getLength();
+		case RpcProtocol.CMD_RENAME_FILE:
+			return Math.max(request.renameFile().getSrcFileName().getLength(), request.renameFile().getDstFileName().getLength());
+		case RpcProtocol.CMD_GET_LOCATION:
+			return request.getLocation().getFileName().getLength();
+		default:
+			return -1;
+		}
+	}
+	
+	//datanode registration and administrative calls bypass admission control
+	private static boolean isThrottled(short cmd){
+		switch(cmd) {
+		case RpcProtocol.CMD_SET_BLOCK:
+		case RpcProtocol.CMD_GET_DATANODE:
+		case RpcProtocol.CMD_DUMP_NAMENODE:
+		case RpcProtocol.CMD_PING_NAMENODE:
+		case RpcProtocol.CMD_GET_STATS:
+			return false;
+		default:
+			return true;
+		}
+	}
+}
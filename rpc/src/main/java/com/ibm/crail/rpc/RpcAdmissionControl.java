@@ -0,0 +1,244 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.rpc;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.utils.CrailUtils;
+
+//Weighted fair-share admission for namenode RPCs. Every client connection owns a token bucket 
+//that is refilled at rate * weight / activeWeight, where activeWeight is the sum of the weights of 
+//all connections seen within the last second. Idle capacity is therefore redistributed to whoever is 
+//active, while a single aggressive client can never consume more than its share once others show up.
+//Buckets are keyed by the server side connection and weights come from the namenode configuration, 
+//so clients can neither choose their bucket nor their weight.
+public class RpcAdmissionControl {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final long REFRESH_INTERVAL = 100000000L;
+	private static final long IDLE_INTERVAL = 1000000000L;
+	private static final int MAX_WEIGHT = 1024;
+	private static final int MAX_RETRY_HINT = 1000;
+	
+	private long rate;
+	private long burst;
+	private HashMap<String, Integer> weights;
+	private ConcurrentHashMap<Object, ClientBucket> buckets;
+	private AtomicLong nextRefresh;
+	private AtomicLong activeWeight;
+	private LongAdder admitted;
+	private LongAdder throttled;
+	
+	public RpcAdmissionControl(long rate, long burst, String weights){
+		this.rate = rate;
+		this.burst = Math.max(burst, 1);
+		this.weights = parseWeights(weights);
+		this.buckets = new ConcurrentHashMap<Object, ClientBucket>();
+		this.nextRefresh = new AtomicLong(System.nanoTime());
+		this.activeWeight = new AtomicLong(0);
+		this.admitted = new LongAdder();
+		this.throttled = new LongAdder();
+	}
+	
+	public boolean isEnabled(){
+		return rate > 0;
+	}
+	
+	//called by the RPC binding when a client connects, the weight is looked up by the client address
+	public void open(Object connection, SocketAddress address){
+		if (!isEnabled()){
+			return;
+		}
+		buckets.put(connection, new ClientBucket(getWeight(address), System.nanoTime()));
+	}
+	
+	public void close(Object connection){
+		if (!isEnabled()){
+			return;
+		}
+		ClientBucket bucket = buckets.remove(connection);
+		if (bucket != null && bucket.close()){
+			activeWeight.addAndGet(-bucket.weight);
+		}
+	}
+	
+	//returns 0 if the request can be served, otherwise the number of milliseconds 
+	//after which the client is expected to have accumulated a token again
+	public int admit(Object connection){
+		long now = System.nanoTime();
+		ClientBucket bucket = buckets.get(connection);
+		if (bucket == null){
+			//connection not announced by the binding or already closed, never create a bucket for it
+			throttled.increment();
+			return MAX_RETRY_HINT;
+		}
+		if (bucket.activate(now)){
+			activeWeight.addAndGet(bucket.weight);
+		}
+		
+		long refresh = nextRefresh.get();
+		if (now - refresh >= 0 && nextRefresh.compareAndSet(refresh, now + REFRESH_INTERVAL)){
+			refresh(now);
+		}
+		
+		int hint = bucket.acquire(now, rate, burst, Math.max(activeWeight.get(), bucket.weight));
+		if (hint == 0){
+			admitted.increment();
+		} else {
+			throttled.increment();
+		}
+		return hint;
+	}
+	
+	public long getAdmitted(){
+		return admitted.sum();
+	}
+	
+	public long getThrottled(){
+		return throttled.sum();
+	}
+	
+	public int getActiveClients(){
+		return buckets.size();
+	}
+	
+	public long getActiveWeight(){
+		return activeWeight.get();
+	}
+	
+	public void printStats(){
+		LOG.info("admission rate " + rate + ", burst " + burst + ", clients " + buckets.size() + ", activeWeight " + activeWeight.get() + ", admitted " + admitted.sum() + ", throttled " + throttled.sum());
+	}
+	
+	//connections that have gone quiet no longer count towards the active weight
+	private void refresh(long now){
+		for (ClientBucket bucket : buckets.values()){
+			if (bucket.deactivate(now)){
+				activeWeight.addAndGet(-bucket.weight);
+			}
+		}
+	}
+	
+	private int getWeight(SocketAddress address){
+		if (weights.isEmpty() || !(address instanceof InetSocketAddress)){
+			return 1;
+		}
+		InetAddress inetAddress = ((InetSocketAddress) address).getAddress();
+		if (inetAddress == null){
+			return 1;
+		}
+		Integer weight = weights.get(inetAddress.getHostAddress());
+		if (weight == null){
+			weight = weights.get(inetAddress.getHostName());
+		}
+		return weight != null ? weight : 1;
+	}
+	
+	//comma separated list of host=weight pairs, hosts are given by name or address
+	public static HashMap<String, Integer> parseWeights(String weights){
+		HashMap<String, Integer> map = new HashMap<String, Integer>();
+		if (weights == null || weights.trim().isEmpty()){
+			return map;
+		}
+		for (String entry : weights.split(",")){
+			String[] pair = entry.trim().split("=");
+			if (pair.length != 2){
+				throw new IllegalArgumentException("invalid admission weight " + entry);
+			}
+			int weight = Integer.parseInt(pair[1].trim());
+			if (weight <= 0 || weight > MAX_WEIGHT){
+				throw new IllegalArgumentException("admission weight out of range (1.." + MAX_WEIGHT + ") " + entry);
+			}
+			map.put(pair[0].trim(), weight);
+		}
+		return map;
+	}
+	
+	//the active flag decides whether the weight is part of activeWeight, it only changes under the bucket lock
+	private static class ClientBucket {
+		private final int weight;
+		private double tokens;
+		private long lastRefill;
+		private long lastSeen;
+		private boolean active;
+		private boolean closed;
+		
+		public ClientBucket(int weight, long now){
+			this.weight = weight;
+			this.tokens = 1;
+			this.lastRefill = now;
+			this.lastSeen = now;
+			this.active = false;
+			this.closed = false;
+		}
+		
+		//returns true if the weight has to be added to the active weight
+		public synchronized boolean activate(long now){
+			lastSeen = now;
+			if (active || closed){
+				return false;
+			}
+			active = true;
+			return true;
+		}
+		
+		//returns true if the weight has to be removed from the active weight
+		public synchronized boolean deactivate(long now){
+			if (!active || now - lastSeen <= IDLE_INTERVAL){
+				return false;
+			}
+			active = false;
+			return true;
+		}
+		
+		public synchronized boolean close(){
+			boolean wasActive = active;
+			active = false;
+			closed = true;
+			return wasActive;
+		}
+		
+		public synchronized int acquire(long now, long rate, long burst, long activeWeight){
+			double share = ((double) rate) * weight / activeWeight;
+			double capacity = Math.max(1.0, ((double) burst) * weight / activeWeight);
+			long elapsed = now - lastRefill;
+			if (elapsed > 0){
+				tokens = Math.min(capacity, tokens + share * elapsed / 1000000000.0);
+				lastRefill = now;
+			}
+			
+			if (tokens >= 1.0){
+				tokens -= 1.0;
+				return 0;
+			}
+			double wait = (1.0 - tokens) * 1000.0 / share;
+			return (int) Math.min(MAX_RETRY_HINT, Math.max(1, Math.ceil(wait)));
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.ibm.crail.rpc;
+
+import java.util.ArrayDeque;
+
+//bounded per-thread stack of reusable RPC objects. Objects go back to the stack of the thread 
+//releasing them, so neither taking nor returning an object synchronizes or allocates
+public class RpcFreeList<T> {
+	private int capacity;
+	private ThreadLocal<ArrayDeque<T>> lists;
+	
+	public RpcFreeList(final int capacity){
+		this.capacity = capacity;
+		this.lists = new ThreadLocal<ArrayDeque<T>>(){
+			@Override
+			protected ArrayDeque<T> initialValue() {
+				return new ArrayDeque<T>(capacity);
+			}
+		};
+	}
+	
+	public T poll(){
+		return lists.get().pollFirst();
+	}
+	
+	public void offer(T object){
+		ArrayDeque<T> list = lists.get();
+		if (list.size() < capacity){
+			list.addFirst(object);
+		}
+	}
+}
@@ -48,6 +48,26 @@ public interface RpcNameNodeService {
 			RpcResponseMessage.GetDataNodeRes response, RpcNameNodeState errorState)
 			throws Exception;
 
+	public abstract short getCapacity(
+			RpcRequestMessage.GetCapacityReq request,
+			RpcResponseMessage.GetCapacityRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short moveBlock(
+			RpcRequestMessage.MoveBlockReq request,
+			RpcResponseMessage.MoveBlockRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short leaseFile(
+			RpcRequestMessage.LeaseFileReq request,
+			RpcResponseMessage.LeaseFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short pollFile(
+			RpcRequestMessage.PollFileReq request,
+			RpcResponseMessage.PollFileRes response, RpcNameNodeState errorState)
+			throws Exception;
+
 	public abstract short setBlock(RpcRequestMessage.SetBlockReq request,
 			RpcResponseMessage.VoidRes response, RpcNameNodeState errorState)
 			throws Exception;
@@ -21,14 +21,30 @@
 
 package com.ibm.crail.rpc;
 
+import java.nio.ByteBuffer;
+
 import org.slf4j.Logger;
 import com.ibm.crail.utils.CrailUtils;
 
 public class RpcProtocol extends RpcErrors {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
-	public static short[] requestTypes = new short[16];
-	public static short[] responseTypes = new short[16];
+	public static short[] requestTypes = new short[18];
+	public static short[] responseTypes = new short[18];
+	
+	//wire format versions, a connection starts with the fixed layout and switches after the handshake
+	public static final int PROTOCOL_FIXED = 0;
+	public static final int PROTOCOL_COMPACT = 1;
+	//compact layout plus the stripe layout of files and the retry hint of throttled responses
+	public static final int PROTOCOL_STRIPED = 2;
+	public static final int PROTOCOL_VERSION = PROTOCOL_STRIPED;
+	
+	//the version of a message travels in the upper byte of its type
+	public static final int VERSION_SHIFT = 8;
+	public static final short TYPE_MASK = 0xFF;
+	
+	//tags the version word appended to ping messages, peers without versioning ignore trailing bytes
+	public static final int HANDSHAKE_MAGIC = 0x43520000;
 	
 	//rpc calls
 	public static final short CMD_CREATE_FILE = 1;	
@@ -42,6 +58,11 @@ public class RpcProtocol extends RpcErrors {
 	public static final short CMD_DUMP_NAMENODE = 10;
 	public static final short CMD_PING_NAMENODE = 11;
 	public static final short CMD_GET_DATANODE = 12;
+	public static final short CMD_GET_CAPACITY = 13;
+	public static final short CMD_MOVE_BLOCK = 14;
+	public static final short CMD_GET_STATS = 15;
+	public static final short CMD_LEASE_FILE = 16;
+	public static final short CMD_POLL_FILE = 17;
 	
 	//request types
 	public static final short REQ_CREATE_FILE = 1;	
@@ -55,6 +76,11 @@ public class RpcProtocol extends RpcErrors {
 	public static final short REQ_DUMP_NAMENODE = 10;
 	public static final short REQ_PING_NAMENODE = 11;
 	public static final short REQ_GET_DATANODE = 12;
+	public static final short REQ_GET_CAPACITY = 13;
+	public static final short REQ_MOVE_BLOCK = 14;
+	public static final short REQ_GET_STATS = 15;
+	public static final short REQ_LEASE_FILE = 16;
+	public static final short REQ_POLL_FILE = 17;
 	
 	//response types
 	public static final short RES_VOID = 1;
@@ -66,6 +92,11 @@ public class RpcProtocol extends RpcErrors {
 	public static final short RES_GET_LOCATION = 7;
 	public static final short RES_PING_NAMENODE = 9;
 	public static final short RES_GET_DATANODE = 10;
+	public static final short RES_GET_CAPACITY = 11;
+	public static final short RES_MOVE_BLOCK = 12;
+	public static final short RES_GET_STATS = 13;
+	public static final short RES_POLL_FILE = 14;
+	public static final short RES_LEASE_FILE = 15;
 	
 	
 	static {
@@ -81,6 +112,11 @@ public class RpcProtocol extends RpcErrors {
 		requestTypes[CMD_DUMP_NAMENODE] = REQ_DUMP_NAMENODE;
 		requestTypes[CMD_PING_NAMENODE] = REQ_PING_NAMENODE;	
 		requestTypes[CMD_GET_DATANODE] = REQ_GET_DATANODE;
+		requestTypes[CMD_GET_CAPACITY] = REQ_GET_CAPACITY;
+		requestTypes[CMD_MOVE_BLOCK] = REQ_MOVE_BLOCK;
+		requestTypes[CMD_GET_STATS] = REQ_GET_STATS;
+		requestTypes[CMD_LEASE_FILE] = REQ_LEASE_FILE;
+		requestTypes[CMD_POLL_FILE] = REQ_POLL_FILE;
 		
 		responseTypes[0] = 0;
 		responseTypes[CMD_CREATE_FILE] = RES_CREATE_FILE;
@@ -94,9 +130,38 @@ public class RpcProtocol extends RpcErrors {
 		responseTypes[CMD_DUMP_NAMENODE] = RES_VOID;
 		responseTypes[CMD_PING_NAMENODE] = RES_PING_NAMENODE;	
 		responseTypes[CMD_GET_DATANODE] = RES_GET_DATANODE;
+		responseTypes[CMD_GET_CAPACITY] = RES_GET_CAPACITY;
+		responseTypes[CMD_MOVE_BLOCK] = RES_MOVE_BLOCK;
+		responseTypes[CMD_GET_STATS] = RES_GET_STATS;
+		responseTypes[CMD_LEASE_FILE] = RES_LEASE_FILE;
+		responseTypes[CMD_POLL_FILE] = RES_POLL_FILE;
 	}
 	
 
+	public static short encodeType(short type, int version){
+		return (short) (type | (version << VERSION_SHIFT));
+	}
+	
+	public static short decodeType(short tag){
+		return (short) (tag & TYPE_MASK);
+	}
+	
+	public static int decodeVersion(short tag){
+		return (tag & 0xFFFF) >>> VERSION_SHIFT;
+	}
+	
+	//the version word is optional, its absence means the peer only speaks the fixed layout
+	public static int readHandshake(ByteBuffer buffer){
+		if (buffer.remaining() < 4){
+			return PROTOCOL_FIXED;
+		}
+		int tag = buffer.getInt();
+		if ((tag & 0xFFFF0000) != HANDSHAKE_MAGIC){
+			return PROTOCOL_FIXED;
+		}
+		return tag & 0xFFFF;
+	}
+	
 	public static boolean verifyProtocol(short cmd, NameNodeRpcMessage request, NameNodeRpcMessage response){
 		if (request.getType() != RpcProtocol.requestTypes[cmd]){
 			LOG.info("protocol mismatch, cmd " + cmd + ", request.type " + request.getType() + ", response.type " + response.getType());
@@ -21,14 +21,17 @@
 
 package com.ibm.crail.rpc;
 
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
 import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.metadata.BlockInfo;
 import com.ibm.crail.metadata.DataNodeInfo;
 import com.ibm.crail.metadata.FileInfo;
 import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.utils.CrailUtils;
 
 public class RpcRequestMessage {
 	public static class CreateFileReq implements RpcProtocol.NameNodeRpcMessage {
@@ -38,19 +41,25 @@ public class RpcRequestMessage {
 		protected CrailNodeType type;
 		protected int storageAffinity;
 		protected int locationAffinity;
+		protected int stripeWidth;
+		protected int stripeUnit;
 		
 		public CreateFileReq(){
 			this.filename = new FileName();
 			this.type = CrailNodeType.DATAFILE;
 			this.storageAffinity = 0;
 			this.locationAffinity = 0;
+			this.stripeWidth = 1;
+			this.stripeUnit = 0;
 		}
 		
-		public CreateFileReq(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity) {
+		public CreateFileReq(FileName filename, CrailNodeType type, int storageAffinity, int locationAffinity, int stripeWidth, int stripeUnit) {
 			this.filename = filename;
 			this.type = type;
 			this.storageAffinity = storageAffinity;
 			this.locationAffinity = locationAffinity;
+			this.stripeWidth = stripeWidth;
+			this.stripeUnit = stripeUnit;
 		}
 
 		public FileName getFileName() {
@@ -69,6 +78,13 @@ public class RpcRequestMessage {
 			return locationAffinity;
 		}
 		
+		public int getStripeWidth() {
+			return stripeWidth;
+		}
+		
+		public int getStripeUnit() {
+			return stripeUnit;
+		}
 		
 		public int size() {
 			return CSIZE;
@@ -94,6 +110,40 @@ public class RpcRequestMessage {
 			type = CrailNodeType.parse(tmp);
 			storageAffinity = buffer.getInt();
 			locationAffinity = buffer.getInt();
+			stripeWidth = 1;
+			stripeUnit = 0;
+		}
+		
+		public int writeCompact(ByteBuffer buffer) {
+			int written = filename.writeCompact(buffer);
+			buffer.put((byte) type.getLabel());
+			written += 1;
+			written += CrailUtils.putVarLong(buffer, storageAffinity);
+			written += CrailUtils.putVarLong(buffer, locationAffinity);
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) throws IOException {
+			filename.updateCompact(buffer);
+			type = CrailNodeType.parse(buffer.get());
+			storageAffinity = (int) CrailUtils.getVarLong(buffer);
+			locationAffinity = (int) CrailUtils.getVarLong(buffer);
+			stripeWidth = 1;
+			stripeUnit = 0;
+		}
+		
+		//protocol version 2 appends the stripe layout to the compact encoding
+		public int writeStriped(ByteBuffer buffer) {
+			int written = writeCompact(buffer);
+			written += CrailUtils.putVarLong(buffer, stripeWidth);
+			written += CrailUtils.putVarLong(buffer, stripeUnit);
+			return written;
+		}
+		
+		public void updateStriped(ByteBuffer buffer) throws IOException {
+			updateCompact(buffer);
+			stripeWidth = (int) CrailUtils.getVarLong(buffer);
+			stripeUnit = (int) CrailUtils.getVarLong(buffer);
 		}
 	}
 	
@@ -102,15 +152,33 @@ public class RpcRequestMessage {
 		
 		protected FileName filename;
 		protected boolean writeable;
+		//metadata the client has cached for this path, only shipped with the compact encoding
+		protected long knownFd;
+		protected long knownVersion;
 		
 		public GetFileReq(){
 			this.filename = new FileName();
 			this.writeable = false;
+			this.knownFd = -1;
+			this.knownVersion = 0;
 		}
 		
 		public GetFileReq(FileName filename, boolean writeable) {
+			this(filename, writeable, -1, 0);
+		}
+		
+		public GetFileReq(FileName filename, boolean writeable, long knownFd, long knownVersion) {
 			this.filename = filename;
 			this.writeable = writeable;
+			this.knownFd = knownFd;
+			this.knownVersion = knownVersion;
+		}
+		
+		public void set(FileName filename, boolean writeable, long knownFd, long knownVersion) {
+			this.filename = filename;
+			this.writeable = writeable;
+			this.knownFd = knownFd;
+			this.knownVersion = knownVersion;
 		}
 
 		public FileName getFileName() {
@@ -121,6 +189,14 @@ public class RpcRequestMessage {
 			return writeable;
 		}
 		
+		public long getKnownFd(){
+			return knownFd;
+		}
+		
+		public long getKnownVersion(){
+			return knownVersion;
+		}
+		
 		
 		public int size() {
 			return CSIZE;
@@ -141,23 +217,52 @@ public class RpcRequestMessage {
 			filename.update(buffer);
 			int tmp = buffer.getInt();
 			writeable = (tmp == 1) ? true : false;
+			knownFd = -1;
+			knownVersion = 0;
 		}		
+		
+		public int writeCompact(ByteBuffer buffer) {
+			int written = filename.writeCompact(buffer);
+			buffer.put((byte) (writeable ? 1 : 0));
+			written += 1;
+			written += CrailUtils.putVarLong(buffer, knownFd + 1);
+			written += CrailUtils.putVarLong(buffer, knownVersion);
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) throws IOException {
+			filename.updateCompact(buffer);
+			writeable = buffer.get() == 1;
+			knownFd = CrailUtils.getVarLong(buffer) - 1;
+			knownVersion = CrailUtils.getVarLong(buffer);
+		}
 	}
 	
 	public static class SetFileReq implements RpcProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileInfo.CSIZE + 4;
+		public static int CSIZE = FileInfo.CSIZE + 8 + CrailConstants.INLINE_THRESHOLD;
 		
 		protected FileInfo fileInfo;
 		protected boolean close;
+		protected byte[] inlineData;
+		protected int inlineLength;
 		
 		public SetFileReq(){
 			this.fileInfo = new FileInfo();
 			this.close = false;
+			this.inlineData = new byte[CrailConstants.INLINE_THRESHOLD];
+			this.inlineLength = -1;
 		}
 		
 		public SetFileReq(FileInfo fileInfo, boolean close) {
+			this(fileInfo, close, null, -1);
+		}
+		
+		//inlineLength < 0 means the file content is not shipped with the request
+		public SetFileReq(FileInfo fileInfo, boolean close, byte[] inlineData, int inlineLength) {
 			this.fileInfo = fileInfo;
 			this.close = close;
+			this.inlineData = inlineData;
+			this.inlineLength = inlineLength;
 		}
 
 		public FileInfo getFileInfo() {
@@ -168,6 +273,14 @@ public class RpcRequestMessage {
 			return close;
 		}
 		
+		public byte[] getInlineData() {
+			return inlineData;
+		}
+
+		public int getInlineLength() {
+			return inlineLength;
+		}
+
 		public int size() {
 			return CSIZE;
 		}
@@ -179,7 +292,12 @@ public class RpcRequestMessage {
 		public int write(ByteBuffer buffer) {
 			int written = fileInfo.write(buffer, true);
 			buffer.putInt(close ? 1 : 0);
-			written += 4;
+			buffer.putInt(inlineLength);
+			written += 8;
+			if (inlineLength > 0){
+				buffer.put(inlineData, 0, inlineLength);
+				written += inlineLength;
+			}
 			return written;
 		}		
 	
@@ -188,6 +306,13 @@ public class RpcRequestMessage {
 				fileInfo.update(buffer);
 				int tmp = buffer.getInt();
 				close = (tmp == 1) ? true : false;
+				inlineLength = buffer.getInt();
+				if (inlineLength > 0){
+					if (inlineData == null || inlineData.length < inlineLength){
+						inlineData = new byte[inlineLength];
+					}
+					buffer.get(inlineData, 0, inlineLength);
+				}
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -239,6 +364,17 @@ public class RpcRequestMessage {
 			int tmp = buffer.getInt();
 			recursive = (tmp == 1) ? true : false;
 		}		
+		
+		public int writeCompact(ByteBuffer buffer) {
+			int written = filename.writeCompact(buffer);
+			buffer.put((byte) (recursive ? 1 : 0));
+			return written + 1;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) throws IOException {
+			filename.updateCompact(buffer);
+			recursive = buffer.get() == 1;
+		}
 	}	
 	
 	public static class RenameFileReq implements RpcProtocol.NameNodeRpcMessage {
@@ -284,6 +420,17 @@ public class RpcRequestMessage {
 			srcFileName.update(buffer);
 			dstFileName.update(buffer);
 		}		
+		
+		public int writeCompact(ByteBuffer buffer) {
+			int written = srcFileName.writeCompact(buffer);
+			written += dstFileName.writeCompact(buffer);
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) throws IOException {
+			srcFileName.updateCompact(buffer);
+			dstFileName.updateCompact(buffer);
+		}
 	}	
 	
 	public static class GetBlockReq implements RpcProtocol.NameNodeRpcMessage {
@@ -311,6 +458,15 @@ public class RpcRequestMessage {
 			this.locationAffinity = locationAffinity;
 			this.capacity = capacity;
 		}
+		
+		public void set(long fd, long token, long position, int storageAffinity, int locationAffinity, long capacity) {
+			this.fd = fd;
+			this.token = token;
+			this.position = position;
+			this.storageAffinity = storageAffinity;
+			this.locationAffinity = locationAffinity;
+			this.capacity = capacity;
+		}
 
 		public long getFd() {
 			return fd;
@@ -363,6 +519,25 @@ public class RpcRequestMessage {
 			locationAffinity = buffer.getInt();
 			capacity = buffer.getLong();
 		}		
+		
+		public int writeCompact(ByteBuffer buffer) {
+			int written = CrailUtils.putVarLong(buffer, fd);
+			written += CrailUtils.putVarLong(buffer, token);
+			written += CrailUtils.putVarLong(buffer, position);
+			written += CrailUtils.putVarLong(buffer, storageAffinity);
+			written += CrailUtils.putVarLong(buffer, locationAffinity);
+			written += CrailUtils.putVarLong(buffer, capacity);
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) {
+			fd = CrailUtils.getVarLong(buffer);
+			token = CrailUtils.getVarLong(buffer);
+			position = CrailUtils.getVarLong(buffer);
+			storageAffinity = (int) CrailUtils.getVarLong(buffer);
+			locationAffinity = (int) CrailUtils.getVarLong(buffer);
+			capacity = CrailUtils.getVarLong(buffer);
+		}
 	}
 	
 	public static class GetLocationReq implements RpcProtocol.NameNodeRpcMessage {
@@ -407,6 +582,17 @@ public class RpcRequestMessage {
 			fileName.update(buffer);
 			position = buffer.getLong();
 		}		
+		
+		public int writeCompact(ByteBuffer buffer) {
+			int written = fileName.writeCompact(buffer);
+			written += CrailUtils.putVarLong(buffer, position);
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) throws IOException {
+			fileName.updateCompact(buffer);
+			position = CrailUtils.getVarLong(buffer);
+		}
 	}
 	
 	public static class SetBlockReq implements RpcProtocol.NameNodeRpcMessage {
@@ -489,6 +675,258 @@ public class RpcRequestMessage {
 	}	
 	
 	
+	public static class GetCapacityReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 8;
+		
+		protected int storageClass;
+		protected int dataNodeIndex;
+		
+		public GetCapacityReq(){
+			this.storageClass = 0;
+			this.dataNodeIndex = 0;
+		}
+		
+		public GetCapacityReq(int storageClass, int dataNodeIndex){
+			this.storageClass = storageClass;
+			this.dataNodeIndex = dataNodeIndex;
+		}
+
+		public int getStorageClass() {
+			return storageClass;
+		}
+
+		public int getDataNodeIndex() {
+			return dataNodeIndex;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_CAPACITY;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(storageClass);
+			buffer.putInt(dataNodeIndex);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			storageClass = buffer.getInt();
+			dataNodeIndex = buffer.getInt();
+		}		
+	}
+	
+	public static class GetStatsReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 4;
+		
+		protected int cmd;
+		
+		public GetStatsReq(){
+			this.cmd = 0;
+		}
+		
+		public GetStatsReq(short cmd){
+			this.cmd = cmd;
+		}
+
+		public short getCmd() {
+			return (short) cmd;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_STATS;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(cmd);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			cmd = buffer.getInt();
+		}		
+	}
+	
+	public static class MoveBlockReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 20 + BlockInfo.CSIZE*2;
+		
+		protected int op;
+		protected long fd;
+		protected long position;
+		protected BlockInfo srcBlock;
+		protected BlockInfo dstBlock;
+		
+		public MoveBlockReq(){
+			this.op = 0;
+			this.fd = 0;
+			this.position = 0;
+			this.srcBlock = new BlockInfo();
+			this.dstBlock = new BlockInfo();
+		}
+		
+		public MoveBlockReq(int op, long fd, long position, BlockInfo srcBlock, BlockInfo dstBlock){
+			this.op = op;
+			this.fd = fd;
+			this.position = position;
+			this.srcBlock = srcBlock;
+			this.dstBlock = dstBlock;
+		}
+
+		public int getOp() {
+			return op;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getPosition() {
+			return position;
+		}
+
+		public BlockInfo getSrcBlock() {
+			return srcBlock;
+		}
+
+		public BlockInfo getDstBlock() {
+			return dstBlock;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_MOVE_BLOCK;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(op);
+			buffer.putLong(fd);
+			buffer.putLong(position);
+			int written = 20;
+			written += srcBlock.write(buffer);
+			written += dstBlock.write(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			op = buffer.getInt();
+			fd = buffer.getLong();
+			position = buffer.getLong();
+			try {
+				srcBlock.update(buffer);
+				dstBlock.update(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}		
+	}
+	
+	public static class LeaseFileReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 28;
+		
+		protected int op;
+		protected long fd;
+		protected long leaseId;
+		protected long duration;
+		
+		public LeaseFileReq(){
+			this.op = 0;
+			this.fd = 0;
+			this.leaseId = 0;
+			this.duration = 0;
+		}
+		
+		public LeaseFileReq(int op, long fd, long leaseId, long duration){
+			this.op = op;
+			this.fd = fd;
+			this.leaseId = leaseId;
+			this.duration = duration;
+		}
+
+		public int getOp() {
+			return op;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+		
+		public long getLeaseId() {
+			return leaseId;
+		}
+
+		public long getDuration() {
+			return duration;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_LEASE_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(op);
+			buffer.putLong(fd);
+			buffer.putLong(leaseId);
+			buffer.putLong(duration);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			op = buffer.getInt();
+			fd = buffer.getLong();
+			leaseId = buffer.getLong();
+			duration = buffer.getLong();
+		}		
+	}
+	
+	public static class PollFileReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 8;
+		
+		protected long fd;
+		
+		public PollFileReq(){
+			this.fd = 0;
+		}
+		
+		public PollFileReq(long fd){
+			this.fd = fd;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_POLL_FILE;
+		}		
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(fd);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			fd = buffer.getLong();
+		}		
+	}
+	
 	public static class DumpNameNodeReq implements RpcProtocol.NameNodeRpcMessage {
 		public static int CSIZE = 4;
 		
@@ -521,18 +959,34 @@ public class RpcRequestMessage {
 	}
 	
 	public static class PingNameNodeReq implements RpcProtocol.NameNodeRpcMessage {
-		public static int CSIZE = 4;
+		public static int CSIZE = 8;
 		
 		protected int op;
+		protected int version;
 		
 		public PingNameNodeReq(){
 			this.op = 0;	
+			this.version = RpcProtocol.PROTOCOL_FIXED;
+		}
+		
+		//a ping carrying a version is the protocol handshake, the namenode answers with the version to use
+		public PingNameNodeReq(int version){
+			this.op = 0;	
+			this.version = version;
 		}
 		
 		public int getOp(){
 			return this.op;
 		}
 		
+		public int getVersion(){
+			return this.version;
+		}
+		
+		public boolean isHandshake(){
+			return version > RpcProtocol.PROTOCOL_FIXED;
+		}
+		
 		public int size() {
 			return CSIZE;
 		}
@@ -543,11 +997,16 @@ public class RpcRequestMessage {
 		
 		public int write(ByteBuffer buffer) {
 			buffer.putInt(op);
-			return CSIZE;
+			if (version > RpcProtocol.PROTOCOL_FIXED){
+				buffer.putInt(RpcProtocol.HANDSHAKE_MAGIC | version);
+				return 8;
+			}
+			return 4;
 		}		
 
 		public void update(ByteBuffer buffer) {
 			op = buffer.getInt();
+			version = RpcProtocol.readHandshake(buffer);
 		}		
 	}	
 	
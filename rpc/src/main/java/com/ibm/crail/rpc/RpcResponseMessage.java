@@ -25,9 +25,14 @@ import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
+import com.ibm.crail.conf.CrailConstants;
 import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.CapacityInfo;
+import com.ibm.crail.metadata.DataNodeInfo;
 import com.ibm.crail.metadata.DataNodeStatistics;
 import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.OperationStatistics;
+import com.ibm.crail.utils.CrailUtils;
 
 public class RpcResponseMessage {
 	public static class VoidRes implements RpcProtocol.NameNodeRpcMessage, RpcVoid {
@@ -70,6 +75,7 @@ public class RpcResponseMessage {
 		private BlockInfo dirBlock;
 		
 		private boolean shipToken;
+		private boolean hasFileBlock;
 		private short error;
 		
 
@@ -80,6 +86,7 @@ public class RpcResponseMessage {
 			this.dirBlock = new BlockInfo();
 		
 			this.shipToken = false;
+			this.hasFileBlock = false;
 			this.error = 0;
 		}
 		
@@ -109,6 +116,45 @@ public class RpcResponseMessage {
 				e.printStackTrace();
 			}
 		}
+		
+		//protocol version 2 appends the stripe layout of the new file
+		public int writeStriped(ByteBuffer buffer) {
+			int written = writeCompact(buffer);
+			written += fileInfo.writeStripe(buffer);
+			return written;
+		}
+		
+		public void updateStriped(ByteBuffer buffer) {
+			updateCompact(buffer);
+			fileInfo.updateStripe(buffer);
+		}
+		
+		//the file block is left out for files that start out inline
+		public int writeCompact(ByteBuffer buffer) {
+			buffer.put((byte) (hasFileBlock ? 1 : 0));
+			int written = 1;
+			written += fileInfo.writeCompact(buffer, shipToken);
+			written += parentInfo.writeCompact(buffer, false);
+			if (hasFileBlock){
+				written += fileBlock.write(buffer);
+			}
+			written += dirBlock.write(buffer);
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) {
+			try {
+				hasFileBlock = buffer.get() == 1;
+				fileInfo.updateCompact(buffer);
+				parentInfo.updateCompact(buffer);
+				if (hasFileBlock){
+					fileBlock.update(buffer);
+				}
+				dirBlock.update(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
 
 		public FileInfo getFile() {
 			return fileInfo;
@@ -135,8 +181,12 @@ public class RpcResponseMessage {
 			return fileBlock;
 		}
 		
+		//null marks a file without a block
 		public void setFileBlock(BlockInfo blockInfo){
-			this.fileBlock.setBlockInfo(blockInfo);
+			if (blockInfo != null){
+				this.fileBlock.setBlockInfo(blockInfo);
+			}
+			this.hasFileBlock = blockInfo != null;
 		}
 		
 		public BlockInfo getDirBlock(){
@@ -165,18 +215,25 @@ public class RpcResponseMessage {
 	}	
 	
 	public static class GetFileRes implements RpcProtocol.NameNodeRpcMessage, RpcGetFile {
-		public static int CSIZE = FileInfo.CSIZE + BlockInfo.CSIZE;
+		public static int CSIZE = FileInfo.CSIZE + BlockInfo.CSIZE + 4 + CrailConstants.INLINE_THRESHOLD;
+		private static final byte FLAG_NOT_MODIFIED = 1;
 		
 		private FileInfo fileInfo;
 		private BlockInfo fileBlock;
+		private byte[] inlineData;
+		private int inlineLength;
 		private boolean shipToken;
+		private boolean notModified;
 		private short error;
 
 		public GetFileRes() {
 			this.fileInfo = new FileInfo();
 			this.fileBlock = new BlockInfo();
+			this.inlineData = new byte[CrailConstants.INLINE_THRESHOLD];
+			this.inlineLength = -1;
 			
 			this.shipToken = false;
+			this.notModified = false;
 			this.error = 0;
 		}
 		
@@ -191,17 +248,87 @@ public class RpcResponseMessage {
 		public int write(ByteBuffer buffer) {
 			int written = fileInfo.write(buffer, shipToken);
 			written += fileBlock.write(buffer);
+			buffer.putInt(inlineLength);
+			written += 4;
+			if (inlineLength > 0){
+				buffer.put(inlineData, 0, inlineLength);
+				written += inlineLength;
+			}
 			return written;
 		}		
 
 		public void update(ByteBuffer buffer) {
 			try {
+				notModified = false;
 				fileInfo.update(buffer);
 				fileBlock.update(buffer);
+				inlineLength = buffer.getInt();
+				if (inlineLength > 0){
+					if (inlineData.length < inlineLength){
+						inlineData = new byte[inlineLength];
+					}
+					buffer.get(inlineData, 0, inlineLength);
+				}
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
 		}
+		
+		//inline files ship their content instead of the first block, a not modified 
+		//response carries only the flags
+		public int writeCompact(ByteBuffer buffer) {
+			buffer.put(notModified ? FLAG_NOT_MODIFIED : 0);
+			int written = 1;
+			if (notModified){
+				return written;
+			}
+			written += fileInfo.writeCompact(buffer, shipToken);
+			written += CrailUtils.putVarLong(buffer, inlineLength + 1);
+			if (inlineLength >= 0){
+				buffer.put(inlineData, 0, inlineLength);
+				written += inlineLength;
+			} else {
+				written += fileBlock.write(buffer);
+			}
+			return written;
+		}
+		
+		public void updateCompact(ByteBuffer buffer) {
+			try {
+				notModified = (buffer.get() & FLAG_NOT_MODIFIED) != 0;
+				if (notModified){
+					return;
+				}
+				fileInfo.updateCompact(buffer);
+				inlineLength = (int) CrailUtils.getVarLong(buffer) - 1;
+				if (inlineLength >= 0){
+					if (inlineData.length < inlineLength){
+						inlineData = new byte[inlineLength];
+					}
+					buffer.get(inlineData, 0, inlineLength);
+				} else {
+					fileBlock.update(buffer);
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		//protocol version 2 appends the stripe layout of the file
+		public int writeStriped(ByteBuffer buffer) {
+			int written = writeCompact(buffer);
+			if (!notModified){
+				written += fileInfo.writeStripe(buffer);
+			}
+			return written;
+		}
+		
+		public void updateStriped(ByteBuffer buffer) {
+			updateCompact(buffer);
+			if (!notModified){
+				fileInfo.updateStripe(buffer);
+			}
+		}
 
 		public FileInfo getFile() {
 			return fileInfo;
@@ -224,9 +351,40 @@ public class RpcResponseMessage {
 			}
 		}
 		
+		public byte[] getInlineData(){
+			return inlineData;
+		}
+		
+		public int getInlineLength(){
+			return inlineLength;
+		}
+		
+		//null marks a block-backed file
+		public void setInlineData(byte[] data){
+			if (data != null){
+				int length = Math.min(data.length, inlineData.length);
+				System.arraycopy(data, 0, inlineData, 0, length);
+				this.inlineLength = length;
+			} else {
+				this.inlineLength = -1;
+			}
+		}
+		
 		public void shipToken(){
 			this.shipToken = true;
 		}
+		
+		public boolean isShipToken(){
+			return shipToken;
+		}
+		
+		public boolean isNotModified(){
+			return notModified;
+		}
+		
+		public void setNotModified(boolean notModified){
+			this.notModified = notModified;
+		}
 
 		public short getError(){
 			return error;
@@ -238,7 +396,7 @@ public class RpcResponseMessage {
 	}
 	
 	public static class DeleteFileRes implements RpcProtocol.NameNodeRpcMessage, RpcDeleteFile {
-		public static int CSIZE = FileInfo.CSIZE*2;
+		public static int CSIZE = FileInfo.CSIZE*2 + FileInfo.STRIPE_CSIZE;
 		
 		private FileInfo fileInfo;
 		private FileInfo parentInfo;
@@ -277,6 +435,18 @@ public class RpcResponseMessage {
 				e.printStackTrace();
 			}
 		}
+		
+		//protocol version 2 appends the stripe layout of the deleted file
+		public int writeStriped(ByteBuffer buffer) {
+			int written = write(buffer);
+			written += fileInfo.writeStripe(buffer);
+			return written;
+		}
+		
+		public void updateStriped(ByteBuffer buffer) {
+			update(buffer);
+			fileInfo.updateStripe(buffer);
+		}
 
 		public FileInfo getFile() {
 			return fileInfo;
@@ -302,6 +472,10 @@ public class RpcResponseMessage {
 		public void shipToken(){
 			this.shipToken = true;
 		}
+		
+		public boolean isShipToken(){
+			return shipToken;
+		}
 
 		public short getError(){
 			return error;
@@ -313,7 +487,7 @@ public class RpcResponseMessage {
 	}	
 	
 	public static class RenameRes implements RpcProtocol.NameNodeRpcMessage, RpcRenameFile {
-		public static int CSIZE = FileInfo.CSIZE*4 + BlockInfo.CSIZE*2;
+		public static int CSIZE = FileInfo.CSIZE*4 + BlockInfo.CSIZE*2 + FileInfo.STRIPE_CSIZE*2;
 		
 		private FileInfo srcParent;
 		private FileInfo srcFile;
@@ -364,6 +538,20 @@ public class RpcResponseMessage {
 			}
 		}
 		
+		//protocol version 2 appends the stripe layout of the file before and after the rename
+		public int writeStriped(ByteBuffer buffer) {
+			int written = write(buffer);
+			written += srcFile.writeStripe(buffer);
+			written += dstFile.writeStripe(buffer);
+			return written;
+		}
+		
+		public void updateStriped(ByteBuffer buffer) {
+			update(buffer);
+			srcFile.updateStripe(buffer);
+			dstFile.updateStripe(buffer);
+		}
+		
 		public FileInfo getSrcParent(){
 			return srcParent;
 		}
@@ -595,14 +783,321 @@ public class RpcResponseMessage {
 		}		
 	}	
 	
+	public static class GetCapacityRes implements RpcProtocol.NameNodeRpcMessage, RpcGetCapacity {
+		public static int CSIZE = 4 + CapacityInfo.CSIZE + DataNodeInfo.CSIZE + CapacityInfo.CSIZE;
+		
+		private int storageClassCount;
+		private CapacityInfo storageCapacity;
+		private DataNodeInfo dnInfo;
+		private CapacityInfo dataNodeCapacity;
+		private short error;
+
+		public GetCapacityRes() {
+			this.storageClassCount = 0;
+			this.storageCapacity = new CapacityInfo();
+			this.dnInfo = new DataNodeInfo();
+			this.dataNodeCapacity = new CapacityInfo();
+			this.error = 0;
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_GET_CAPACITY;
+		}	
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putInt(storageClassCount);
+			int written = 4;
+			written += storageCapacity.write(buffer);
+			written += dnInfo.write(buffer);
+			written += dataNodeCapacity.write(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			storageClassCount = buffer.getInt();
+			storageCapacity.update(buffer);
+			try {
+				dnInfo.update(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+			dataNodeCapacity.update(buffer);
+		}
+
+		public int getStorageClassCount() {
+			return storageClassCount;
+		}
+
+		public void setStorageClassCount(int storageClassCount) {
+			this.storageClassCount = storageClassCount;
+		}
+
+		public CapacityInfo getStorageCapacity() {
+			return storageCapacity;
+		}
+
+		public void setStorageCapacity(CapacityInfo storageCapacity) {
+			this.storageCapacity.setCapacityInfo(storageCapacity);
+		}
+
+		public DataNodeInfo getDataNodeInfo() {
+			return dnInfo;
+		}
+
+		public void setDataNodeInfo(DataNodeInfo dnInfo) {
+			this.dnInfo.setDataNodeInfo(dnInfo);
+		}
+
+		public CapacityInfo getDataNodeCapacity() {
+			return dataNodeCapacity;
+		}
+
+		public void setDataNodeCapacity(CapacityInfo dataNodeCapacity) {
+			this.dataNodeCapacity.setCapacityInfo(dataNodeCapacity);
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class GetStatsRes implements RpcProtocol.NameNodeRpcMessage, RpcGetStats {
+		public static int CSIZE = OperationStatistics.CSIZE;
+		
+		private OperationStatistics statistics;
+		private short error;
+
+		public GetStatsRes() {
+			this.statistics = new OperationStatistics();
+			this.error = 0;
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_GET_STATS;
+		}	
+		
+		public int write(ByteBuffer buffer) {
+			return statistics.write(buffer);
+		}		
+
+		public void update(ByteBuffer buffer) {
+			statistics.update(buffer);
+		}
+
+		public OperationStatistics getStatistics() {
+			return statistics;
+		}
+
+		public void setStatistics(OperationStatistics statistics) {
+			this.statistics.setStatistics(statistics);
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class MoveBlockRes implements RpcProtocol.NameNodeRpcMessage, RpcMoveBlock {
+		public static int CSIZE = BlockInfo.CSIZE*2;
+		
+		private BlockInfo srcBlock;
+		private BlockInfo dstBlock;
+		private short error;
+
+		public MoveBlockRes() {
+			this.srcBlock = new BlockInfo();
+			this.dstBlock = new BlockInfo();
+			this.error = 0;
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_MOVE_BLOCK;
+		}	
+		
+		public int write(ByteBuffer buffer) {
+			int written = srcBlock.write(buffer);
+			written += dstBlock.write(buffer);
+			return written;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			try {
+				srcBlock.update(buffer);
+				dstBlock.update(buffer);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+
+		public BlockInfo getSrcBlock() {
+			return srcBlock;
+		}
+
+		public void setSrcBlock(BlockInfo srcBlock) {
+			this.srcBlock.setBlockInfo(srcBlock);
+		}
+
+		public BlockInfo getDstBlock() {
+			return dstBlock;
+		}
+
+		public void setDstBlock(BlockInfo dstBlock) {
+			this.dstBlock.setBlockInfo(dstBlock);
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class LeaseFileRes implements RpcProtocol.NameNodeRpcMessage, RpcLease {
+		public static int CSIZE = 16;
+		
+		private long leaseId;
+		private long duration;
+		private short error;
+
+		public LeaseFileRes() {
+			this.leaseId = 0;
+			this.duration = 0;
+			this.error = 0;
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_LEASE_FILE;
+		}	
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(leaseId);
+			buffer.putLong(duration);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			leaseId = buffer.getLong();
+			duration = buffer.getLong();
+		}
+
+		public long getLeaseId() {
+			return leaseId;
+		}
+
+		public void setLeaseId(long leaseId) {
+			this.leaseId = leaseId;
+		}
+		
+		public long getDuration() {
+			return duration;
+		}
+
+		public void setDuration(long duration) {
+			this.duration = duration;
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
+	public static class PollFileRes implements RpcProtocol.NameNodeRpcMessage, RpcPollFile {
+		public static int CSIZE = 12;
+		
+		private long capacity;
+		private int sealed;
+		private short error;
+
+		public PollFileRes() {
+			this.capacity = 0;
+			this.sealed = 0;
+			this.error = 0;
+		}
+
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_POLL_FILE;
+		}	
+		
+		public int write(ByteBuffer buffer) {
+			buffer.putLong(capacity);
+			buffer.putInt(sealed);
+			return CSIZE;
+		}		
+
+		public void update(ByteBuffer buffer) {
+			capacity = buffer.getLong();
+			sealed = buffer.getInt();
+		}
+
+		public long getCapacity() {
+			return capacity;
+		}
+
+		public void setCapacity(long capacity) {
+			this.capacity = capacity;
+		}
+		
+		public boolean isSealed() {
+			return sealed > 0;
+		}
+
+		public void setSealed(boolean sealed) {
+			this.sealed = sealed ? 1 : 0;
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
 	public static class PingNameNodeRes implements RpcProtocol.NameNodeRpcMessage, RpcPing {
-		public static int CSIZE = 4;
+		public static int CSIZE = 8;
 		
 		private int data;
+		private int version;
 		private short error;
 		
 		public PingNameNodeRes() {
 			this.data = 0;
+			this.version = RpcProtocol.PROTOCOL_FIXED;
 			this.error = 0;
 		}
 
@@ -616,11 +1111,16 @@ public class RpcResponseMessage {
 		
 		public int write(ByteBuffer buffer) {
 			buffer.putInt(data);
-			return CSIZE;
+			if (version > RpcProtocol.PROTOCOL_FIXED){
+				buffer.putInt(RpcProtocol.HANDSHAKE_MAGIC | version);
+				return 8;
+			}
+			return 4;
 		}		
 
 		public void update(ByteBuffer buffer) {
 			data = buffer.getInt();
+			version = RpcProtocol.readHandshake(buffer);
 		}
 
 		public int getData() {
@@ -630,6 +1130,14 @@ public class RpcResponseMessage {
 		public void setData(int data){
 			this.data = data;
 		}
+		
+		public int getVersion(){
+			return version;
+		}
+		
+		public void setVersion(int version){
+			this.version = version;
+		}
 
 		public short getError(){
 			return error;
@@ -0,0 +1,233 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.rpc;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+
+import com.ibm.crail.metadata.OperationStatistics;
+import com.ibm.crail.utils.CrailUtils;
+import com.ibm.crail.utils.LatencyHistogram;
+
+//Per-operation latency statistics for the namenode RPC path. Every dispatcher thread records 
+//into its own stripe, so the fast path does plain stores on thread-private memory and never 
+//shares a cache line with other threads. Readers merge the stripes and may see slightly stale values.
+public class RpcStats {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final ThreadLocal<long[]> LOCK_WAIT = new ThreadLocal<long[]>(){
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+	
+	private int size;
+	private long slowThreshold;
+	private ThreadLocal<Stripe> local;
+	private CopyOnWriteArrayList<Stripe> stripes;
+	private LatencyHistogram waitSnapshot;
+	private LatencyHistogram serviceSnapshot;
+	
+	public RpcStats(long slowThresholdUs){
+		this.size = RpcProtocol.requestTypes.length;
+		this.slowThreshold = slowThresholdUs > 0 ? slowThresholdUs*1000 : Long.MAX_VALUE;
+		this.stripes = new CopyOnWriteArrayList<Stripe>();
+		this.local = new ThreadLocal<Stripe>(){
+			protected Stripe initialValue() {
+				Stripe stripe = new Stripe(size, LOCK_WAIT.get());
+				stripes.add(stripe);
+				return stripe;
+			}
+		};
+		this.waitSnapshot = new LatencyHistogram();
+		this.serviceSnapshot = new LatencyHistogram();
+	}
+	
+	//lock acquisition that accounts the time spent blocked to the RPC running on this thread
+	public static void lock(Lock lock){
+		if (!lock.tryLock()){
+			long start = System.nanoTime();
+			lock.lock();
+			LOCK_WAIT.get()[0] += System.nanoTime() - start;
+		}
+	}
+	
+	public Stripe begin(){
+		Stripe stripe = local.get();
+		stripe.lockWait[0] = 0;
+		return stripe;
+	}
+	
+	//a dispatcher thread runs one request at a time, so service starts once the request has arrived and 
+	//the previous request on this thread has finished. This saves a clock read per RPC. Returns true if 
+	//the operation exceeded the slow operation threshold.
+	public boolean end(Stripe stripe, short cmd, short error, long arrival, long end){
+		int index = cmd > 0 && cmd < size ? cmd : 0;
+		long start = Math.max(arrival, stripe.lastEnd);
+		stripe.lastEnd = end;
+		stripe.lastWait = start - arrival;
+		stripe.lastService = end - start;
+		stripe.record(index, error != RpcErrors.ERR_OK);
+		return stripe.lastService > slowThreshold;
+	}
+	
+	public synchronized void getStatistics(short cmd, OperationStatistics statistics){
+		statistics.reset(cmd);
+		if (cmd < 0 || cmd >= size){
+			return;
+		}
+		waitSnapshot.reset();
+		serviceSnapshot.reset();
+		long errors = 0;
+		long lockWait = 0;
+		for (Stripe stripe : stripes){
+			LatencyHistogram wait = stripe.wait[cmd];
+			LatencyHistogram service = stripe.service[cmd];
+			if (wait != null && service != null){
+				waitSnapshot.add(wait);
+				serviceSnapshot.add(service);
+				errors += stripe.errors[cmd];
+				lockWait += stripe.lockWaitTotal[cmd];
+			}
+		}
+		statistics.setCounts(serviceSnapshot.getCount(), errors, lockWait);
+		statistics.setWait(waitSnapshot.getPercentile(50), waitSnapshot.getPercentile(99), waitSnapshot.getPercentile(99.9), waitSnapshot.getMax());
+		statistics.setService(serviceSnapshot.getPercentile(50), serviceSnapshot.getPercentile(99), serviceSnapshot.getPercentile(99.9), serviceSnapshot.getMax());
+	}
+	
+	public void dump(){
+		OperationStatistics statistics = new OperationStatistics();
+		for (short cmd = 0; cmd < size; cmd++){
+			getStatistics(cmd, statistics);
+			if (statistics.getOps() > 0){
+				LOG.info(getName(cmd) + ": " + statistics.toString());
+			}
+		}
+	}
+	
+	public void startDump(final long intervalSeconds){
+		if (intervalSeconds <= 0){
+			return;
+		}
+		Thread thread = new Thread(new Runnable(){
+			public void run() {
+				while(true){
+					try {
+						Thread.sleep(intervalSeconds*1000);
+						dump();
+					} catch(InterruptedException e){
+						return;
+					}
+				}
+			}
+		}, "rpc-stats");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	public static String getName(short cmd){
+		switch(cmd){
+		case RpcProtocol.CMD_CREATE_FILE:
+			return "createFile";
+		case RpcProtocol.CMD_GET_FILE:
+			return "getFile";
+		case RpcProtocol.CMD_SET_FILE:
+			return "setFile";
+		case RpcProtocol.CMD_REMOVE_FILE:
+			return "removeFile";
+		case RpcProtocol.CMD_RENAME_FILE:
+			return "renameFile";
+		case RpcProtocol.CMD_GET_BLOCK:
+			return "getBlock";
+		case RpcProtocol.CMD_GET_LOCATION:
+			return "getLocation";
+		case RpcProtocol.CMD_SET_BLOCK:
+			return "setBlock";
+		case RpcProtocol.CMD_DUMP_NAMENODE:
+			return "dump";
+		case RpcProtocol.CMD_PING_NAMENODE:
+			return "ping";
+		case RpcProtocol.CMD_GET_DATANODE:
+			return "getDataNode";
+		case RpcProtocol.CMD_GET_CAPACITY:
+			return "getCapacity";
+		case RpcProtocol.CMD_MOVE_BLOCK:
+			return "moveBlock";
+		case RpcProtocol.CMD_GET_STATS:
+			return "getStats";
+		case RpcProtocol.CMD_LEASE_FILE:
+			return "leaseFile";
+		case RpcProtocol.CMD_POLL_FILE:
+			return "pollFile";
+		default:
+			return "invalid";
+		}
+	}
+	
+	public static class Stripe {
+		private LatencyHistogram[] wait;
+		private LatencyHistogram[] service;
+		private long[] errors;
+		private long[] lockWaitTotal;
+		private long[] lockWait;
+		private long lastEnd;
+		private long lastWait;
+		private long lastService;
+		
+		Stripe(int size, long[] lockWait){
+			this.wait = new LatencyHistogram[size];
+			this.service = new LatencyHistogram[size];
+			this.errors = new long[size];
+			this.lockWaitTotal = new long[size];
+			this.lockWait = lockWait;
+			this.lastEnd = 0;
+			this.lastWait = 0;
+			this.lastService = 0;
+		}
+		
+		void record(int cmd, boolean error){
+			if (service[cmd] == null){
+				wait[cmd] = new LatencyHistogram();
+				service[cmd] = new LatencyHistogram();
+			}
+			wait[cmd].record(lastWait);
+			service[cmd].record(lastService);
+			lockWaitTotal[cmd] += lockWait[0];
+			if (error){
+				errors[cmd]++;
+			}
+		}
+		
+		public long getLockWait(){
+			return lockWait[0];
+		}
+		
+		public long getWait(){
+			return lastWait;
+		}
+		
+		public long getService(){
+			return lastService;
+		}
+	}
+}
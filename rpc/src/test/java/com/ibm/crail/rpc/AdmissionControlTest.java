@@ -0,0 +1,114 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.rpc;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+	
+	@Test
+	public void testWeightsFromConfiguration() throws Exception {
+		RpcAdmissionControl admission = new RpcAdmissionControl(1000, 10, "10.0.0.1=4, 10.0.0.2=2");
+		Object first = new Object();
+		Object second = new Object();
+		Object third = new Object();
+		admission.open(first, new InetSocketAddress("10.0.0.1", 4000));
+		admission.open(second, new InetSocketAddress("10.0.0.2", 4000));
+		admission.open(third, new InetSocketAddress("10.0.0.3", 4000));
+		Assert.assertEquals(0, admission.getActiveWeight());
+		
+		Assert.assertEquals(0, admission.admit(first));
+		Assert.assertEquals(4, admission.getActiveWeight());
+		Assert.assertEquals(0, admission.admit(second));
+		Assert.assertEquals(0, admission.admit(third));
+		Assert.assertEquals(7, admission.getActiveWeight());
+		
+		admission.close(second);
+		Assert.assertEquals(5, admission.getActiveWeight());
+		admission.close(second);
+		Assert.assertEquals(5, admission.getActiveWeight());
+		Assert.assertEquals(2, admission.getActiveClients());
+	}
+	
+	@Test
+	public void testBucketsPerConnection() throws Exception {
+		RpcAdmissionControl admission = new RpcAdmissionControl(1, 1, "");
+		Object greedy = new Object();
+		Object other = new Object();
+		admission.open(greedy, null);
+		admission.open(other, null);
+		Assert.assertEquals(0, admission.admit(greedy));
+		Assert.assertTrue(admission.admit(greedy) > 0);
+		Assert.assertEquals(0, admission.admit(other));
+		Assert.assertEquals(2, admission.getAdmitted());
+		Assert.assertEquals(1, admission.getThrottled());
+	}
+	
+	@Test
+	public void testUnknownConnection() throws Exception {
+		RpcAdmissionControl admission = new RpcAdmissionControl(1000, 10, "");
+		Object unknown = new Object();
+		Assert.assertTrue(admission.admit(unknown) > 0);
+		Assert.assertEquals(0, admission.getActiveClients());
+		Assert.assertEquals(0, admission.getActiveWeight());
+		
+		Object closed = new Object();
+		admission.open(closed, null);
+		Assert.assertEquals(0, admission.admit(closed));
+		admission.close(closed);
+		Assert.assertTrue(admission.admit(closed) > 0);
+		Assert.assertEquals(0, admission.getActiveClients());
+		Assert.assertEquals(2, admission.getThrottled());
+	}
+	
+	@Test
+	public void testConcurrentAccounting() throws Exception {
+		final RpcAdmissionControl admission = new RpcAdmissionControl(1000000, 1000, "");
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++){
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					for (int j = 0; j < 1000; j++){
+						Object connection = new Object();
+						admission.open(connection, null);
+						admission.admit(connection);
+						admission.close(connection);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		Assert.assertEquals(0, admission.getActiveWeight());
+		Assert.assertEquals(0, admission.getActiveClients());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWeight() throws Exception {
+		new RpcAdmissionControl(1000, 10, "10.0.0.1=0");
+	}
+}
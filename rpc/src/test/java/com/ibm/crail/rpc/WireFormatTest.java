@@ -0,0 +1,266 @@
+/*
+ * Crail: A Multi-tiered Distributed Direct Access File System
+ *
+ * Author: Patrick Stuedi <stu@zurich.ibm.com>
+ *
+ * Copyright (C) 2016, IBM Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.ibm.crail.rpc;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.crail.CrailNodeType;
+import com.ibm.crail.metadata.BlockInfo;
+import com.ibm.crail.metadata.FileInfo;
+import com.ibm.crail.metadata.FileName;
+import com.ibm.crail.utils.CrailUtils;
+
+public class WireFormatTest {
+	
+	@Test
+	public void testFixedFileInfoLayout() throws Exception {
+		Assert.assertEquals(44, FileInfo.CSIZE);
+		ByteBuffer expected = buffer();
+		expected.putLong(7);
+		expected.putLong(0);
+		expected.putInt(CrailNodeType.DATAFILE.getLabel());
+		expected.putLong(0);
+		expected.putLong(0);
+		expected.putLong(1000);
+		
+		ByteBuffer buffer = buffer();
+		Assert.assertEquals(FileInfo.CSIZE, stripedFile().write(buffer, false));
+		assertBytes(expected, buffer);
+		
+		buffer.flip();
+		FileInfo decoded = stripedFile();
+		decoded.update(buffer);
+		Assert.assertEquals(7, decoded.getFd());
+		Assert.assertEquals(1000, decoded.getModificationTime());
+		Assert.assertEquals(1, decoded.getStripeWidth());
+	}
+	
+	@Test
+	public void testCompactFileInfoLayout() throws Exception {
+		ByteBuffer expected = buffer();
+		CrailUtils.putVarLong(expected, 7);
+		CrailUtils.putVarLong(expected, 0);
+		expected.put((byte) CrailNodeType.DATAFILE.getLabel());
+		CrailUtils.putVarLong(expected, 0);
+		CrailUtils.putVarLong(expected, 0);
+		CrailUtils.putVarLong(expected, 1000);
+		CrailUtils.putVarLong(expected, 3);
+		
+		ByteBuffer buffer = buffer();
+		Assert.assertEquals(expected.position(), stripedFile().writeCompact(buffer, false));
+		assertBytes(expected, buffer);
+	}
+	
+	@Test
+	public void testFixedCreateFileLayout() throws Exception {
+		Assert.assertEquals(FileName.CSIZE + 12, RpcRequestMessage.CreateFileReq.CSIZE);
+		FileName name = new FileName("/a/b");
+		ByteBuffer expected = buffer();
+		name.write(expected);
+		expected.putInt(CrailNodeType.DATAFILE.getLabel());
+		expected.putInt(1);
+		expected.putInt(2);
+		
+		ByteBuffer buffer = buffer();
+		Assert.assertEquals(RpcRequestMessage.CreateFileReq.CSIZE, createRequest(name).write(buffer));
+		assertBytes(expected, buffer);
+	}
+	
+	@Test
+	public void testCompactCreateFileLayout() throws Exception {
+		FileName name = new FileName("/a/b");
+		ByteBuffer expected = buffer();
+		name.writeCompact(expected);
+		expected.put((byte) CrailNodeType.DATAFILE.getLabel());
+		CrailUtils.putVarLong(expected, 1);
+		CrailUtils.putVarLong(expected, 2);
+		
+		ByteBuffer buffer = buffer();
+		Assert.assertEquals(expected.position(), createRequest(name).writeCompact(buffer));
+		assertBytes(expected, buffer);
+	}
+	
+	@Test
+	public void testStripedRoundTrip() throws Exception {
+		ByteBuffer buffer = buffer();
+		createRequest(new FileName("/a/b")).writeStriped(buffer);
+		buffer.flip();
+		RpcRequestMessage.CreateFileReq request = new RpcRequestMessage.CreateFileReq();
+		request.updateStriped(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(4, request.getStripeWidth());
+		Assert.assertEquals(65536, request.getStripeUnit());
+		Assert.assertEquals(2, request.getLocationAffinity());
+		
+		RpcResponseMessage.CreateFileRes response = new RpcResponseMessage.CreateFileRes();
+		response.setFileInfo(stripedFile());
+		response.setParentInfo(new FileInfo(1, CrailNodeType.DIRECTORY){});
+		buffer.clear();
+		response.writeStriped(buffer);
+		buffer.flip();
+		RpcResponseMessage.CreateFileRes decoded = new RpcResponseMessage.CreateFileRes();
+		decoded.updateStriped(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(7, decoded.getFile().getFd());
+		Assert.assertEquals(4, decoded.getFile().getStripeWidth());
+		Assert.assertEquals(65536, decoded.getFile().getStripeUnit());
+	}
+	
+	//a namenode reuses its messages across connections that speak different versions
+	@Test
+	public void testMixedVersions() throws Exception {
+		RpcRequestMessage.CreateFileReq request = new RpcRequestMessage.CreateFileReq();
+		ByteBuffer buffer = buffer();
+		createRequest(new FileName("/a/b")).writeStriped(buffer);
+		buffer.flip();
+		request.updateStriped(buffer);
+		Assert.assertEquals(4, request.getStripeWidth());
+		
+		buffer.clear();
+		createRequest(new FileName("/a/c")).writeCompact(buffer);
+		buffer.flip();
+		request.updateCompact(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(1, request.getStripeWidth());
+		Assert.assertEquals(0, request.getStripeUnit());
+		
+		buffer.clear();
+		createRequest(new FileName("/a/d")).write(buffer);
+		buffer.flip();
+		request.update(buffer);
+		Assert.assertEquals(1, request.getStripeWidth());
+		
+		RpcResponseMessage.GetFileRes response = new RpcResponseMessage.GetFileRes();
+		response.setFileInfo(stripedFile());
+		response.setInlineData(new byte[0]);
+		RpcResponseMessage.GetFileRes decoded = new RpcResponseMessage.GetFileRes();
+		buffer.clear();
+		response.writeStriped(buffer);
+		buffer.flip();
+		decoded.updateStriped(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(4, decoded.getFile().getStripeWidth());
+		
+		buffer.clear();
+		response.writeCompact(buffer);
+		buffer.flip();
+		decoded.updateCompact(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(1, decoded.getFile().getStripeWidth());
+	}
+	
+	@Test
+	public void testNotModifiedCarriesNoStripe() throws Exception {
+		RpcResponseMessage.GetFileRes response = new RpcResponseMessage.GetFileRes();
+		response.setFileInfo(stripedFile());
+		response.setNotModified(true);
+		ByteBuffer buffer = buffer();
+		Assert.assertEquals(1, response.writeStriped(buffer));
+		buffer.flip();
+		RpcResponseMessage.GetFileRes decoded = new RpcResponseMessage.GetFileRes();
+		decoded.updateStriped(buffer);
+		Assert.assertTrue(decoded.isNotModified());
+		Assert.assertEquals(0, buffer.remaining());
+	}
+	
+	@Test
+	public void testStripedRename() throws Exception {
+		RpcResponseMessage.RenameRes response = new RpcResponseMessage.RenameRes();
+		response.setSrcFile(stripedFile());
+		response.setDstFile(stripedFile());
+		ByteBuffer buffer = buffer();
+		response.writeStriped(buffer);
+		buffer.flip();
+		RpcResponseMessage.RenameRes decoded = new RpcResponseMessage.RenameRes();
+		decoded.updateStriped(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(4, decoded.getSrcFile().getStripeWidth());
+		Assert.assertEquals(4, decoded.getDstFile().getStripeWidth());
+		Assert.assertEquals(65536, decoded.getDstFile().getStripeUnit());
+		
+		//version 0 and 1 keep the fixed layout and only know plain files
+		buffer.clear();
+		Assert.assertEquals(FileInfo.CSIZE*4 + BlockInfo.CSIZE*2, response.write(buffer));
+		buffer.flip();
+		decoded.update(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(1, decoded.getDstFile().getStripeWidth());
+	}
+	
+	@Test
+	public void testStripedDelete() throws Exception {
+		RpcResponseMessage.DeleteFileRes response = new RpcResponseMessage.DeleteFileRes();
+		response.setFileInfo(stripedFile());
+		response.setParentInfo(new FileInfo(1, CrailNodeType.DIRECTORY){});
+		ByteBuffer buffer = buffer();
+		response.writeStriped(buffer);
+		buffer.flip();
+		RpcResponseMessage.DeleteFileRes decoded = new RpcResponseMessage.DeleteFileRes();
+		decoded.updateStriped(buffer);
+		Assert.assertEquals(0, buffer.remaining());
+		Assert.assertEquals(7, decoded.getFile().getFd());
+		Assert.assertEquals(4, decoded.getFile().getStripeWidth());
+		Assert.assertEquals(65536, decoded.getFile().getStripeUnit());
+	}
+	
+	@Test
+	public void testStripedSizeBound() throws Exception {
+		FileInfo widest = stripedFile();
+		widest.setStripe(Integer.MAX_VALUE, Integer.MAX_VALUE);
+		RpcResponseMessage.RenameRes rename = new RpcResponseMessage.RenameRes();
+		rename.setSrcFile(widest);
+		rename.setDstFile(widest);
+		Assert.assertTrue(rename.writeStriped(buffer()) <= RpcResponseMessage.RenameRes.CSIZE);
+		RpcResponseMessage.DeleteFileRes delete = new RpcResponseMessage.DeleteFileRes();
+		delete.setFileInfo(widest);
+		Assert.assertTrue(delete.writeStriped(buffer()) <= RpcResponseMessage.DeleteFileRes.CSIZE);
+	}
+	
+	private static FileInfo stripedFile(){
+		FileInfo fileInfo = new FileInfo(7, CrailNodeType.DATAFILE){
+			{
+				setVersion(3);
+			}
+		};
+		fileInfo.setModificationTime(1000);
+		fileInfo.setStripe(4, 65536);
+		return fileInfo;
+	}
+	
+	private static RpcRequestMessage.CreateFileReq createRequest(FileName name){
+		return new RpcRequestMessage.CreateFileReq(name, CrailNodeType.DATAFILE, 1, 2, 4, 65536);
+	}
+	
+	private static ByteBuffer buffer(){
+		return ByteBuffer.allocate(1024);
+	}
+	
+	private static void assertBytes(ByteBuffer expected, ByteBuffer actual){
+		Assert.assertEquals(expected.position(), actual.position());
+		for (int i = 0; i < expected.position(); i++){
+			Assert.assertEquals("byte " + i, expected.get(i), actual.get(i));
+		}
+	}
+}
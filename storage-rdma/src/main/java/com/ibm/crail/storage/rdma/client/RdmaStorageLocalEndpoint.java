@@ -157,6 +157,35 @@ public class RdmaStorageLocalEndpoint implements StorageEndpoint {
 		return future;
 	}
 
+	@Override
+	public CrailBuffer map(BlockInfo remoteMr, long remoteOffset, int length) throws IOException {
+		if (length <= 0 || length > CrailConstants.BLOCK_SIZE){
+			throw new IOException("map size invalid, len " + length);
+		}
+		if (remoteOffset < 0){
+			throw new IOException("remote offset too small " + remoteOffset);
+		}
+		
+		CrailBuffer mappedBuffer = bufferMap.get(remoteMr.getLkey());
+		if (mappedBuffer == null){
+			return null;
+		}
+		RdmaBlockIndex blockIndex = indexMap.get(remoteMr.getLkey());
+		if (blockIndex == null){
+			return null;
+		}
+		
+		long blockOffset = remoteMr.getAddr() - blockIndex.getAddr();
+		if (blockOffset + remoteOffset + length > RdmaConstants.STORAGE_RDMA_ALLOCATION_SIZE){
+			long tmpAddr = blockOffset + remoteOffset + length;
+			throw new IOException("remote fileOffset + remoteOffset + len too large " + tmpAddr);
+		}
+		ByteBuffer view = mappedBuffer.getByteBuffer().duplicate();
+		view.limit((int) (blockOffset + remoteOffset + length));
+		view.position((int) (blockOffset + remoteOffset));
+		return OffHeapBuffer.wrap(view.slice().asReadOnlyBuffer());
+	}
+
 	@Override
 	public void close() throws IOException, InterruptedException {
 	}